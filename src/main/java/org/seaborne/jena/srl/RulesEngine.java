@@ -21,15 +21,18 @@
 
 package org.seaborne.jena.srl;
 
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.engine.main.solver.SolverRX3;
 import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+import org.seaborne.jena.srl.tuples.Tuple;
 
 /**
  * A {@code RulesEngine} is an execution engine for a given {@link RuleSet} and given
@@ -86,6 +89,50 @@ public interface RulesEngine {
 
     public RuleSetEvaluation eval();
 
+    /**
+     * Evaluate, sending each inferred triple to {@code output}, and each inferred tuple
+     * to {@code tupleOutput} if it is not null, as soon as the engine accepts it as new.
+     * The triples are those of {@link RuleSetEvaluation#inferredTriples()}.
+     * {@code output} is started before the evaluation and finished after it.
+     * <p>
+     * The engine keeps the inferred triples while evaluating, for the rule bodies.
+     * If {@code keepOutput} is false, the results are not kept after the evaluation
+     * and this method returns null; otherwise it returns the evaluation as {@link #eval()}.
+     * <p>
+     * Engines that can not stream evaluate then send the results.
+     */
+    public default RuleSetEvaluation evalStream(StreamRDF output, Consumer<Tuple> tupleOutput, boolean keepOutput) {
+        RuleSetEvaluation e = eval();
+        e.sendTo(output, tupleOutput);
+        return keepOutput ? e : null;
+    }
+
+    /**
+     * Incremental update: add the triples to the base graph and update the inferred
+     * triples from the state of the last {@link #eval()}, rather than evaluating
+     * the rule set again. If there has not been an evaluation, one is done first.
+     * <p>
+     * The graphs of the returned {@link RuleSetEvaluation} are the same objects as
+     * those of the last evaluation, now updated.
+     * <p>
+     * Not all engines support incremental update.
+     */
+    public default RuleSetEvaluation applyInserts(Graph inserts) {
+        throw new UnsupportedOperationException("applyInserts: "+this.getClass().getSimpleName());
+    }
+
+    /**
+     * Incremental update: delete the triples from the base graph and remove the
+     * inferred triples and tuples that no longer have any support, starting from
+     * the state of the last {@link #eval()}.
+     * If there has not been an evaluation, one is done first.
+     * <p>
+     * Not all engines support incremental update.
+     */
+    public default RuleSetEvaluation applyDeletes(Graph deletes) {
+        throw new UnsupportedOperationException("applyDeletes: "+this.getClass().getSimpleName());
+    }
+
 //    /**
 //     * Execute the rule set and enrich the base graph.
 //     * <em>The base graph is modified.</em>
@@ -28,6 +28,7 @@ import org.apache.jena.irix.IRIs;
 import org.apache.jena.sparql.SystemARQ;
 import org.apache.jena.sparql.util.Symbol;
 import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+import org.seaborne.jena.srl.exec.RulesBudget;
 import org.seaborne.jena.srl.lang.parser.ShaclRulesParseException;
 import org.seaborne.jena.srl.sys.P;
 import org.seaborne.jena.srl.sys.SysJenaRules;
@@ -48,6 +49,10 @@ public class ShaclRules {
 
     public static String symbolNS = P.JenaRulesSymbolsNS;;
     public static Symbol symStrict = SystemARQ.allocSymbol(symbolNS, "strict");
+    /** Context setting for the {@link RulesBudget} of each evaluation. */
+    public static Symbol symBudget = SystemARQ.allocSymbol(symbolNS, "budget");
+    /** Context setting for an {@code AtomicBoolean} that cancels evaluations when set. */
+    public static Symbol symCancelSignal = SystemARQ.allocSymbol(symbolNS, "cancelSignal");
 
     // -- Execute
 
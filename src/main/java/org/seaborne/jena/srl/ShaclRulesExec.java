@@ -24,10 +24,13 @@ package org.seaborne.jena.srl;
 import java.util.List;
 
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.util.Context;
 import org.seaborne.jena.srl.exec.EngineType;
 import org.seaborne.jena.srl.exec.RuleSetEvaluation;
 import org.seaborne.jena.srl.exec.RulesEngineRegistry;
+import org.seaborne.jena.srl.exec.RulesExecTxn;
 import org.seaborne.jena.srl.sys.SysSRL;
 import org.seaborne.jena.srl.sys.SysJenaRules;
 import org.seaborne.jena.srl.tuples.TupleStore;
@@ -147,6 +150,16 @@ public class ShaclRulesExec {
 //        return e;
 //    }
 
+    /**
+     * Evaluate the rule set over a graph of a transactional dataset, such as TDB2, and
+     * add the inferred triples to the graph in one write transaction.
+     * The graph is the default graph if {@code graphName} is null.
+     * See {@link RulesExecTxn}.
+     */
+    public static RuleSetEvaluation materialize(DatasetGraph dsg, Node graphName, RuleSet ruleSet) {
+        return RulesExecTxn.materialize(dsg, graphName, ruleSet, SysJenaRules.dftEngineType, null);
+    }
+
     /**
      * Execute a rule and return any new triples not in the baseGraph)
      */
@@ -30,6 +30,7 @@ import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.atlas.lib.FileOps;
 import org.apache.jena.atlas.lib.IRILib;
+import org.apache.jena.cmd.ArgDecl;
 import org.apache.jena.cmd.CmdException;
 import org.apache.jena.cmd.TerminationException;
 import org.apache.jena.graph.Graph;
@@ -62,8 +63,11 @@ public class rules_eval extends CmdRules {
         new rules_eval(argv).mainRun();
     }
 
+    private static ArgDecl argStream = new ArgDecl(ArgDecl.NoValue, "stream");
+
     protected rules_eval(String[] argv) {
         super(argv);
+        super.add(argStream, "--stream", "Print inferred triples as they are inferred");
     }
 
     @Override
@@ -114,7 +118,10 @@ public class rules_eval extends CmdRules {
 
         try {
             RulesEngine engine = defaultRulesEngine(data, ruleSet); //.setTrace(verbose);
-            exec(ruleSet, data, engine);
+            if ( super.contains(argStream) )
+                execStream(ruleSet, data, engine);
+            else
+                exec(ruleSet, data, engine);
         }
         catch (NotWellFormedException ex) {
             System.err.println("Not wellformed");
@@ -215,6 +222,19 @@ public class rules_eval extends CmdRules {
 //            System.out.println();
     }
 
+    /** Print the inferred triples and tuples as the engine accepts them. */
+    private static void execStream(RuleSet ruleSet, Graph baseGraph, RulesEngine engine) {
+        IndentedWriter iOut = IndentedWriter.clone(IndentedWriter.stdout);
+        iOut.incIndent(2);
+        PrefixMap prefixMap = PrefixMapFactory.create(baseGraph.getPrefixMapping());
+        if ( ruleSet.hasPrefixMap() )
+            prefixMap.putAll(ruleSet.getPrefixMap());
+        StreamRDF stream = new PrintingStreamRDF(iOut, prefixMap);
+        System.out.println("## Inferred");
+        engine.evalStream(stream, tuple -> { iOut.println(tuple.toString()); iOut.flush(); }, false);
+        iOut.flush();
+    }
+
     /**
      * Print a graph.
      */
@@ -0,0 +1,776 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import static org.apache.jena.system.G.execTxn;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.main.solver.SolverRX3;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.seaborne.jena.srl.EvalAlgorithm;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.jena.AppendGraph;
+import org.seaborne.jena.srl.jena.SpillGraph;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.lang.RuleBodyElement.EltNegation;
+import org.seaborne.jena.srl.lang.RuleBodyElement.EltTriplePattern;
+import org.seaborne.jena.srl.lang.RuleBodyElement.EltTuplePattern;
+import org.seaborne.jena.srl.sys.RuleDependencies;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
+import org.seaborne.jena.srl.sys.Stratification;
+import org.seaborne.jena.srl.sys.Stratum;
+import org.seaborne.jena.srl.tuples.AppendTupleStore;
+import org.seaborne.jena.srl.tuples.Tuple;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * A framework for semi-naive forward rules engines.
+ * <p>
+ * Within a stratum, the first round evaluates every rule over the whole data.
+ * Each later round only evaluates the rules with one positive body atom
+ * matched against the triples and tuples that were new in the previous round (the delta),
+ * once for each body atom that could match something inferred in the stratum.
+ * Evaluation of a stratum finishes when a round produces nothing new.
+ * <p>
+ * Subclasses provide the evaluation of a rule body, in full and with one atom on the delta.
+ * <p>
+ * The output of each stratum is recorded so that {@link #applyInserts} and {@link #applyDeletes}
+ * can update the materialization without a complete re-evaluation.
+ */
+public abstract class AbstractRulesEngineFwdSemiNaive extends AbstractRulesEngineFwdSimple {
+
+    protected AbstractRulesEngineFwdSemiNaive(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt) {
+        super(baseGraph, tupleStore, ruleSet, rCxt);
+    }
+
+    @Override
+    public EvalAlgorithm engineType() {
+        return EvalAlgorithm.FWD_SEMINAIVE;
+    }
+
+    /** Evaluate a rule over the whole graph and tuple store. The graph is not changed. */
+    protected abstract RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope);
+
+    /**
+     * Evaluate a rule with the body element at {@code deltaIndex} matched
+     * against the delta graph and delta tuple store. The graph is not changed.
+     */
+    protected abstract RuleEval evalRuleDelta(Rule rule, int deltaIndex, Graph graph, TupleStore tupleStore,
+                                              Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope);
+
+    /**
+     * One execution of one rule.
+     * The argument graph is updated.
+     */
+    @Override
+    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope) {
+        RuleEval rEval = evalRule(rule, graph, evalTupleStore, rCxt, scope);
+        RulesExecLib.accumulateOneRuleHead(rEval, graph, evalTupleStore, rCxt);
+    }
+
+    @Override
+    protected int evalStratum(int stratumNumber, Stratum stratum, AppendGraph dataGraph, TupleStore evalTupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        Collection<Rule> runOnceRules = stratum.runOnce();
+        Collection<Rule> runGeneralRules = stratum.runGeneral();
+
+        // == Run once
+        for ( Rule rule : runOnceRules ) {
+            if ( trace() )
+                rCxt.out().printf("Eval(once): %s\n", ruleSet.labelFor(rule));
+            rCxt.checkBudget();
+            executeOneRule(dataGraph, evalTupleStore, rule, rCxt, scope);
+        }
+
+        if ( runGeneralRules.isEmpty() )
+            return 0;
+
+        Map<Rule, int[]> deltaPositions = deltaPositions(runGeneralRules);
+
+        // == Round 1 : full evaluation.
+        int round = 1;
+        rCxt.countRound();
+        scope.nextRound();
+        Graph delta = SpillGraph.createWorkingGraph();
+        TupleStore deltaTuples = TupleStore.create();
+        List<Supplier<RuleEval>> evaluations = new ArrayList<>();
+        for ( Rule rule : runGeneralRules ) {
+            final int r = round;
+            evaluations.add(()->{
+                if ( trace() )
+                    rCxt.out().printf("Eval: round=%d : %s\n", r, ruleSet.str(rule));
+                return evalRule(rule, dataGraph, evalTupleStore, rCxt, scope);
+            });
+        }
+        evalRound(evaluations, dataGraph, evalTupleStore, delta, deltaTuples, rCxt);
+
+        // == Later rounds : delta evaluation.
+        while ( ! delta.isEmpty() || deltaTuples.size() != 0 ) {
+            round++;
+            rCxt.countRound();
+            scope.nextRound();
+            if ( trace() )
+                rCxt.out().printf("Round: %d : delta triples=%d, delta tuples=%d\n", round, delta.size(), deltaTuples.size());
+            Graph nextDelta = SpillGraph.createWorkingGraph();
+            TupleStore nextDeltaTuples = TupleStore.create();
+            final Graph roundDelta = delta;
+            final TupleStore roundDeltaTuples = deltaTuples;
+            final int r = round;
+            evaluations = new ArrayList<>();
+            for ( Rule rule : runGeneralRules ) {
+                for ( int idx : deltaPositions.get(rule) ) {
+                    evaluations.add(()->{
+                        if ( trace() )
+                            rCxt.out().printf("Eval: round=%d : delta=%d : %s\n", r, idx, ruleSet.str(rule));
+                        return evalRuleDelta(rule, idx, dataGraph, evalTupleStore, roundDelta, roundDeltaTuples, rCxt, scope);
+                    });
+                }
+            }
+            evalRound(evaluations, dataGraph, evalTupleStore, nextDelta, nextDeltaTuples, rCxt);
+            // Release any spill files.
+            delta.close();
+            delta = nextDelta;
+            deltaTuples = nextDeltaTuples;
+        }
+        // The last round produced nothing new.
+        return round-1;
+    }
+
+    // ---- Evaluation, recording the output of each stratum.
+
+    /**
+     * State kept from the last evaluation for incremental updates.
+     * The triples and tuples inferred by each stratum are recorded (the lowest stratum
+     * to infer a triple or tuple records it).
+     */
+    private record IncrementalState(AppendGraph dataGraph, TupleStore tupleStore, Stratification stratification,
+                                    List<Graph> stratumTriples, List<TupleStore> stratumTuples) {}
+
+    private IncrementalState incrementalState = null;
+
+    /**
+     * Record the state after an evaluation so that later incremental updates can be applied.
+     * The lists of stratum outputs are indexed from the {@link Stratification#minStratum() minimum stratum}.
+     */
+    protected void setIncrementalState(AppendGraph dataGraph, TupleStore tupleStore, Stratification stratification,
+                                       List<Graph> stratumTriples, List<TupleStore> stratumTuples) {
+        // Evaluations of a rewritten rule set (e.g. for solve) are not recorded.
+        if ( stratification.ofRuleSet() != ruleSet )
+            return;
+        // Streamed evaluations that do not keep their output are not recorded.
+        RulesExecCxt.Output output = rCxt.getOutput();
+        if ( output != null && ! output.keep() )
+            return;
+        synchronized(this) {
+            incrementalState = new IncrementalState(dataGraph, tupleStore, stratification, stratumTriples, stratumTuples);
+        }
+    }
+
+    @Override
+    protected RuleSetEvaluation evalStratification(AppendGraph dataGraph, Stratification stratification, TupleStore tupleStore,
+                                                   EvalScope evaluation) {
+        List<Graph> stratumTriples = new ArrayList<>();
+        List<TupleStore> stratumTuples = new ArrayList<>();
+        for ( int i = stratification.minStratum() ; i <= stratification.maxStratum() ; i++ ) {
+            Stratum stratum = stratification.getLevel(i);
+            if ( trace() )
+                rCxt.out().printf("Level %d -- (Once=%d, General=%d) rules\n", i, stratum.runOnce().size(), stratum.runGeneral().size());
+            Graph triples = SpillGraph.createWorkingGraph();
+            TupleStore tuples = TupleStore.create();
+            evalStratumRecorded(i, stratum, dataGraph, tupleStore, triples, tuples, evaluation);
+            stratumTriples.add(triples);
+            stratumTuples.add(tuples);
+        }
+        rCxt.out().flush();
+        setIncrementalState(dataGraph, tupleStore, stratification, stratumTriples, stratumTuples);
+        return evaluation(dataGraph, tupleStore, StopReason.COMPLETE);
+    }
+
+    /**
+     * Evaluate a stratum in a layer over the data graph and tuple store,
+     * then add the layer's new triples and tuples to the data graph and tuple store,
+     * and to the records for the stratum.
+     */
+    private void evalStratumRecorded(int stratumNumber, Stratum stratum, AppendGraph dataGraph, TupleStore tupleStore,
+                                     Graph recordTriples, TupleStore recordTuples, EvalScope evaluation) {
+        AppendGraph layer = AppendGraph.create(dataGraph);
+        AppendTupleStore layerTuples = AppendTupleStore.create(tupleStore);
+        try {
+            evalStratum(stratumNumber, stratum, layer, layerTuples, rCxt, evaluation.forStratum());
+        } finally {
+            // Including when the evaluation is stopped: the output so far.
+            layer.getAdded().find().forEachRemaining(t -> {
+                if ( dataGraph.addNew(t) )
+                    recordTriples.add(t);
+            });
+            layerTuples.getAdded().all().forEachRemaining(t -> {
+                if ( ! tupleStore.contains(t) ) {
+                    tupleStore.add(t);
+                    recordTuples.add(t);
+                }
+            });
+            // Release any spill files.
+            layer.getAdded().close();
+        }
+    }
+
+    // ---- Incremental update : inserts
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Strata are processed in order. The consequences of the new triples are propagated
+     * semi-naively through each stratum. If the new triples, or triples inferred from them,
+     * can change the outcome of a negation, or the input to a run-once rule, in some stratum, that stratum
+     * and all higher strata are recalculated from the output of the strata below.
+     */
+    @Override
+    public RuleSetEvaluation applyInserts(Graph inserts) {
+        synchronized(this) {
+            if ( incrementalState == null ) {
+                RuleSetEvaluation e = eval();
+                if ( ! e.isComplete() )
+                    return e;
+            }
+            IncrementalState state = incrementalState;
+            AppendGraph dataGraph = state.dataGraph();
+            TupleStore tupleStore = state.tupleStore();
+            Stratification stratification = state.stratification();
+
+            // Triples that are new to the materialization.
+            Graph allNew = SpillGraph.createWorkingGraph();
+            TupleStore allNewTuples = TupleStore.create();
+            execTxn(baseGraph, ()->{
+                inserts.find().forEachRemaining(t -> {
+                    if ( baseGraph.contains(t) )
+                        return;
+                    baseGraph.add(t);
+                    dataGraph.baseGraphAdded(t);
+                    if ( dataGraph.getAdded().contains(t) ) {
+                        // Previously inferred (or DATA); now in the base graph.
+                        dataGraph.getAdded().delete(t);
+                        state.stratumTriples().forEach(g -> g.delete(t));
+                    } else {
+                        allNew.add(t);
+                    }
+                });
+            });
+
+            int min = stratification.minStratum();
+            // The base graph has changed: NOT DATA values are calculated again.
+            EvalScope update = EvalScope.evaluation(groundedGraph(ruleSet));
+            rCxt.startBudget();
+            try {
+                for ( int i = min ; i <= stratification.maxStratum() ; i++ ) {
+                    Stratum stratum = stratification.getLevel(i);
+                    if ( isAffectedNonMonotonic(stratum, allNew, allNewTuples) ) {
+                        if ( trace() )
+                            rCxt.out().printf("Incremental: recalculate from stratum %d\n", i);
+                        recalculateFrom(i, state, update);
+                        break;
+                    }
+                    Graph stratumNew = SpillGraph.createWorkingGraph();
+                    TupleStore stratumNewTuples = TupleStore.create();
+                    propagate(i, stratum, dataGraph, tupleStore, allNew, allNewTuples, stratumNew, stratumNewTuples, update.forStratum());
+                    GraphUtil.addInto(allNew, stratumNew);
+                    allNewTuples.addAll(stratumNewTuples);
+                    GraphUtil.addInto(state.stratumTriples().get(i-min), stratumNew);
+                    state.stratumTuples().get(i-min).addAll(stratumNewTuples);
+                    stratumNew.close();
+                }
+            } catch (RuleSetEvaluationCancelledException ex) {
+                return stopped(state, ex);
+            } finally {
+                allNew.close();
+            }
+            rCxt.out().flush();
+            return evaluation(dataGraph, tupleStore, StopReason.COMPLETE);
+        }
+    }
+
+    // ---- Incremental update : deletes
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is "Delete and Rederive" (DRed), stratum by stratum.
+     * <ul>
+     * <li>Over-delete: remove the triples and tuples inferred by the stratum
+     *     that have a derivation using a deleted triple or tuple.
+     * <li>Rederive: put back any of the deleted triples and tuples that still have a derivation
+     *     from what remains, then propagate them semi-naively within the stratum.
+     * </ul>
+     * What is still deleted after a stratum is the input to the next stratum.
+     * If the deletions can change the outcome of a negation, or the input to a run-once rule,
+     * in some stratum, that stratum and all higher strata are recalculated from the strata below.
+     */
+    @Override
+    public RuleSetEvaluation applyDeletes(Graph deletes) {
+        synchronized(this) {
+            if ( incrementalState == null ) {
+                RuleSetEvaluation e = eval();
+                if ( ! e.isComplete() )
+                    return e;
+            }
+            IncrementalState state = incrementalState;
+            AppendGraph dataGraph = state.dataGraph();
+            TupleStore tupleStore = state.tupleStore();
+            Stratification stratification = state.stratification();
+            Graph ruleSetData = ruleSet.getData();
+
+            // All triples and tuples removed, and not (yet) put back.
+            Graph deleted = SpillGraph.createWorkingGraph();
+            TupleStore deletedTuples = TupleStore.create();
+            execTxn(baseGraph, ()->{
+                deletes.find().forEachRemaining(t -> {
+                    if ( ! baseGraph.contains(t) )
+                        return;
+                    baseGraph.delete(t);
+                    dataGraph.baseGraphDeleted(t);
+                    if ( ruleSetData != null && ruleSetData.contains(t) )
+                        // Still present as DATA
+                        dataGraph.add(t);
+                    else
+                        deleted.add(t);
+                });
+            });
+
+            // The state before deletion: what is there now, and what has been deleted.
+            Graph oldGraph = new Union(dataGraph, deleted);
+            AppendTupleStore oldTuples = AppendTupleStore.create(tupleStore);
+
+            int min = stratification.minStratum();
+            // The base graph has changed: NOT DATA values are calculated again.
+            EvalScope update = EvalScope.evaluation(groundedGraph(ruleSet));
+            rCxt.startBudget();
+            try {
+                for ( int i = min ; i <= stratification.maxStratum() ; i++ ) {
+                    if ( deleted.isEmpty() && deletedTuples.size() == 0 )
+                        break;
+                    Stratum stratum = stratification.getLevel(i);
+                    if ( isAffectedNonMonotonic(stratum, deleted, deletedTuples) ) {
+                        if ( trace() )
+                            rCxt.out().printf("Incremental: recalculate from stratum %d\n", i);
+                        recalculateFrom(i, state, update);
+                        break;
+                    }
+                    Graph recordTriples = state.stratumTriples().get(i-min);
+                    TupleStore recordTuples = state.stratumTuples().get(i-min);
+                    EvalScope scope = update.forStratum();
+                    overDelete(i, stratum, dataGraph, tupleStore, oldGraph, oldTuples, deleted, deletedTuples, recordTriples, recordTuples, scope);
+                    rederive(i, stratum, dataGraph, tupleStore, deleted, deletedTuples, recordTriples, recordTuples, scope);
+                }
+            } catch (RuleSetEvaluationCancelledException ex) {
+                return stopped(state, ex);
+            } finally {
+                deleted.close();
+            }
+            rCxt.out().flush();
+            return evaluation(dataGraph, tupleStore, StopReason.COMPLETE);
+        }
+    }
+
+    /**
+     * An incremental update has been stopped by the budget. The recorded state is not
+     * consistent so it is dropped and the next update evaluates the rule set again.
+     */
+    private RuleSetEvaluation stopped(IncrementalState state, RuleSetEvaluationCancelledException ex) {
+        incrementalState = null;
+        rCxt.out().flush();
+        return evaluation(state.dataGraph(), state.tupleStore(), RulesBudgetExceededException.stopReason(ex));
+    }
+
+    /**
+     * Over-deletion for one stratum.
+     * Remove the triples and tuples, recorded as inferred by this stratum, that have a derivation
+     * in the state before deletion that uses a deleted triple or tuple.
+     * {@code scope} is the pass over the stratum, shared with {@link #rederive}.
+     */
+    private void overDelete(int stratumNumber, Stratum stratum, AppendGraph dataGraph, TupleStore tupleStore,
+                            Graph oldGraph, AppendTupleStore oldTuples,
+                            Graph deleted, TupleStore deletedTuples,
+                            Graph recordTriples, TupleStore recordTuples, EvalScope scope) {
+        Collection<Rule> rules = stratum.runGeneral();
+        if ( rules.isEmpty() )
+            return;
+        Map<Rule, int[]> positions = positiveAtomPositions(rules);
+        // Copy - "deleted" grows during the loop.
+        Graph delta = SpillGraph.createWorkingGraph();
+        GraphUtil.addInto(delta, deleted);
+        TupleStore deltaTuples = TupleStore.create();
+        deltaTuples.addAll(deletedTuples);
+        int round = 0;
+        while ( ! delta.isEmpty() || deltaTuples.size() != 0 ) {
+            round++;
+            rCxt.countRound();
+            scope.nextRound();
+            if ( trace() )
+                rCxt.out().printf("Over-delete: stratum %d : round %d : delta triples=%d, delta tuples=%d\n",
+                                  stratumNumber, round, delta.size(), deltaTuples.size());
+            // Evaluate, then delete.
+            List<RuleEval> results = new ArrayList<>();
+            for ( Rule rule : rules ) {
+                for ( int idx : positions.get(rule) )
+                    results.add(evalRuleDelta(rule, idx, oldGraph, oldTuples, delta, deltaTuples, rCxt, scope));
+            }
+            Graph nextDelta = SpillGraph.createWorkingGraph();
+            TupleStore nextDeltaTuples = TupleStore.create();
+            for ( RuleEval rEval : results ) {
+                for ( Triple t : rEval.triples() ) {
+                    if ( recordTriples.contains(t) ) {
+                        recordTriples.delete(t);
+                        dataGraph.getAdded().delete(t);
+                        deleted.add(t);
+                        nextDelta.add(t);
+                    }
+                }
+                for ( Tuple t : rEval.tuples() ) {
+                    if ( recordTuples.contains(t) ) {
+                        recordTuples.delete(t);
+                        tupleStore.delete(t);
+                        // Keep in the "old" view.
+                        oldTuples.add(t);
+                        deletedTuples.add(t);
+                        nextDeltaTuples.add(t);
+                    }
+                }
+            }
+            // Release any spill files.
+            delta.close();
+            delta = nextDelta;
+            deltaTuples = nextDeltaTuples;
+        }
+        delta.close();
+    }
+
+    /**
+     * Rederivation for one stratum.
+     * Any deleted triple or tuple that a rule of this stratum can still derive is put back,
+     * and the consequences within the stratum are propagated. Triples and tuples put back
+     * are no longer "deleted".
+     */
+    private void rederive(int stratumNumber, Stratum stratum, AppendGraph dataGraph, TupleStore tupleStore,
+                          Graph deleted, TupleStore deletedTuples,
+                          Graph recordTriples, TupleStore recordTuples, EvalScope scope) {
+        Collection<Rule> rules = stratum.runGeneral();
+        if ( rules.isEmpty() )
+            return;
+        Graph rederived = SpillGraph.createWorkingGraph();
+        TupleStore rederivedTuples = TupleStore.create();
+        deleted.find().forEachRemaining(t -> {
+            if ( derivable(t, rules, dataGraph, tupleStore, scope) )
+                rederived.add(t);
+        });
+        deletedTuples.all().forEachRemaining(t -> {
+            if ( derivable(t, rules, dataGraph, tupleStore, scope) )
+                rederivedTuples.add(t);
+        });
+        if ( rederived.isEmpty() && rederivedTuples.size() == 0 ) {
+            rederived.close();
+            return;
+        }
+        if ( trace() )
+            rCxt.out().printf("Rederive: stratum %d : triples=%d, tuples=%d\n", stratumNumber, rederived.size(), rederivedTuples.size());
+
+        rederived.find().forEachRemaining(t -> {
+            if ( dataGraph.addNew(t) )
+                recordTriples.add(t);
+        });
+        rederivedTuples.all().forEachRemaining(t -> {
+            tupleStore.add(t);
+            recordTuples.add(t);
+        });
+        Graph stratumNew = SpillGraph.createWorkingGraph();
+        TupleStore stratumNewTuples = TupleStore.create();
+        propagate(stratumNumber, stratum, dataGraph, tupleStore, rederived, rederivedTuples, stratumNew, stratumNewTuples, scope);
+        GraphUtil.addInto(recordTriples, stratumNew);
+        recordTuples.addAll(stratumNewTuples);
+
+        // Present again.
+        GraphUtil.deleteFrom(deleted, rederived);
+        GraphUtil.deleteFrom(deleted, stratumNew);
+        rederivedTuples.all().forEachRemaining(deletedTuples::delete);
+        stratumNewTuples.all().forEachRemaining(t -> {
+            if ( deletedTuples.contains(t) )
+                deletedTuples.delete(t);
+        });
+        rederived.close();
+        stratumNew.close();
+    }
+
+    /** Whether one of the rules can derive the triple from the current data. */
+    private boolean derivable(Triple triple, Collection<Rule> rules, Graph graph, TupleStore tupleStore, EvalScope scope) {
+        Binding root = BindingFactory.binding();
+        for ( Rule rule : rules ) {
+            for ( Triple template : rule.getHeadTriples() ) {
+                Binding binding = SolverRX3.matchTriple(root, triple, template);
+                if ( binding == null )
+                    continue;
+                RuleEval rEval = RulesExecLib.evalRule(rule, binding, graph, tupleStore, rCxt, scope);
+                if ( rEval.triples().contains(triple) )
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether one of the rules can derive the tuple from the current data. */
+    private boolean derivable(Tuple tuple, Collection<Rule> rules, Graph graph, TupleStore tupleStore, EvalScope scope) {
+        for ( Rule rule : rules ) {
+            for ( Tuple template : rule.getHeadTuples() ) {
+                Binding binding = matchTuple(tuple, template);
+                if ( binding == null )
+                    continue;
+                RuleEval rEval = RulesExecLib.evalRule(rule, binding, graph, tupleStore, rCxt, scope);
+                if ( rEval.tuples().contains(tuple) )
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Match a concrete tuple to a template. Return null for no match. */
+    private static Binding matchTuple(Tuple tuple, Tuple template) {
+        if ( tuple.size() != template.size() )
+            return null;
+        BindingBuilder builder = Binding.builder();
+        for ( int i = 0 ; i < tuple.size() ; i++ ) {
+            Node t = template.get(i);
+            Node x = tuple.get(i);
+            if ( Var.isVar(t) ) {
+                Var var = Var.alloc(t);
+                Node current = builder.get(var);
+                if ( current == null )
+                    builder.add(var, x);
+                else if ( ! current.equals(x) )
+                    return null;
+            } else if ( ! t.equals(x) )
+                return null;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Semi-naive propagation of new triples and tuples through one stratum.
+     * The first round matches each positive body atom, in turn, against all the new triples
+     * and tuples so far; later rounds against the previous round's output.
+     * The new triples and tuples inferred in this stratum are added to {@code stratumNew} and {@code stratumNewTuples}.
+     * {@code scope} is the pass over the stratum.
+     */
+    private void propagate(int stratumNumber, Stratum stratum, AppendGraph dataGraph, TupleStore tupleStore,
+                           Graph initialDelta, TupleStore initialDeltaTuples,
+                           Graph stratumNew, TupleStore stratumNewTuples, EvalScope scope) {
+        Collection<Rule> rules = stratum.runGeneral();
+        if ( rules.isEmpty() )
+            return;
+        Map<Rule, int[]> positions = positiveAtomPositions(rules);
+        Graph delta = initialDelta;
+        TupleStore deltaTuples = initialDeltaTuples;
+        int round = 0;
+        while ( ! delta.isEmpty() || deltaTuples.size() != 0 ) {
+            round++;
+            rCxt.countRound();
+            scope.nextRound();
+            if ( trace() )
+                rCxt.out().printf("Incremental: stratum %d : round %d : delta triples=%d, delta tuples=%d\n",
+                                  stratumNumber, round, delta.size(), deltaTuples.size());
+            Graph nextDelta = SpillGraph.createWorkingGraph();
+            TupleStore nextDeltaTuples = TupleStore.create();
+            final Graph roundDelta = delta;
+            final TupleStore roundDeltaTuples = deltaTuples;
+            List<Supplier<RuleEval>> evaluations = new ArrayList<>();
+            for ( Rule rule : rules ) {
+                for ( int idx : positions.get(rule) )
+                    evaluations.add(()->evalRuleDelta(rule, idx, dataGraph, tupleStore, roundDelta, roundDeltaTuples, rCxt, scope));
+            }
+            evalRound(evaluations, dataGraph, tupleStore, nextDelta, nextDeltaTuples, rCxt);
+            GraphUtil.addInto(stratumNew, nextDelta);
+            stratumNewTuples.addAll(nextDeltaTuples);
+            if ( delta != initialDelta )
+                // Release any spill files.
+                delta.close();
+            delta = nextDelta;
+            deltaTuples = nextDeltaTuples;
+        }
+    }
+
+    /**
+     * Remove the recorded output of the strata from {@code stratumNumber} upwards,
+     * then evaluate those strata again. {@code update} is the scope of the incremental update.
+     */
+    private void recalculateFrom(int stratumNumber, IncrementalState state, EvalScope update) {
+        AppendGraph dataGraph = state.dataGraph();
+        TupleStore tupleStore = state.tupleStore();
+        Stratification stratification = state.stratification();
+        int min = stratification.minStratum();
+        for ( int i = stratumNumber ; i <= stratification.maxStratum() ; i++ ) {
+            Graph triples = state.stratumTriples().get(i-min);
+            TupleStore tuples = state.stratumTuples().get(i-min);
+            triples.find().forEachRemaining(t -> dataGraph.getAdded().delete(t));
+            tuples.all().forEachRemaining(tupleStore::delete);
+            triples.clear();
+            // Replace: TupleStore has no "clear".
+            state.stratumTuples().set(i-min, TupleStore.create());
+        }
+        for ( int i = stratumNumber ; i <= stratification.maxStratum() ; i++ ) {
+            Stratum stratum = stratification.getLevel(i);
+            evalStratumRecorded(i, stratum, dataGraph, tupleStore, state.stratumTriples().get(i-min), state.stratumTuples().get(i-min), update);
+        }
+    }
+
+    /**
+     * Whether the stratum has a rule that is not monotonic (negation, run-once) and where
+     * the new triples or tuples may match the rule body.
+     */
+    private static boolean isAffectedNonMonotonic(Stratum stratum, Graph newTriples, TupleStore newTuples) {
+        for ( Rule rule : stratum.runOnce() ) {
+            if ( mayMatch(rule.getBodyElements(), newTriples, newTuples, false) )
+                return true;
+        }
+        for ( Rule rule : stratum.runGeneral() ) {
+            if ( rule.hasNegation() && mayMatch(rule.getBodyElements(), newTriples, newTuples, true) )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether any triple or tuple pattern matches the new triples and tuples.
+     * If {@code negationOnly}, only consider patterns inside a negation.
+     */
+    private static boolean mayMatch(List<RuleBodyElement> elts, Graph newTriples, TupleStore newTuples, boolean negationOnly) {
+        for ( RuleBodyElement elt : elts ) {
+            switch (elt) {
+                case EltTriplePattern(Triple triplePattern) -> {
+                    if ( ! negationOnly && matches(triplePattern, newTriples) )
+                        return true;
+                }
+                case EltTuplePattern(Tuple tuplePattern) -> {
+                    if ( ! negationOnly && newTuples.find(tuplePattern).hasNext() )
+                        return true;
+                }
+                case EltNegation(List<RuleBodyElement> inner, boolean grounded) -> {
+                    if ( mayMatch(inner, newTriples, newTuples, false) )
+                        return true;
+                }
+                default -> {}
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Triple triplePattern, Graph graph) {
+        ExtendedIterator<Triple> iter = graph.find(any(triplePattern.getSubject()),
+                                                   any(triplePattern.getPredicate()),
+                                                   any(triplePattern.getObject()));
+        try {
+            return iter.hasNext();
+        } finally { iter.close(); }
+    }
+
+    private static Node any(Node node) {
+        return Var.isVar(node) ? Node.ANY : node;
+    }
+
+    /** For each rule, the indexes of all the positive body atoms (triple and tuple patterns). */
+    private static Map<Rule, int[]> positiveAtomPositions(Collection<Rule> rules) {
+        Map<Rule, int[]> positions = new HashMap<>();
+        for ( Rule rule : rules ) {
+            List<RuleBodyElement> elts = rule.getBodyElements();
+            int[] x = new int[elts.size()];
+            int count = 0;
+            for ( int i = 0 ; i < elts.size() ; i++ ) {
+                if ( elts.get(i) instanceof EltTriplePattern || elts.get(i) instanceof EltTuplePattern )
+                    x[count++] = i;
+            }
+            positions.put(rule, Arrays.copyOf(x, count));
+        }
+        return positions;
+    }
+
+    /**
+     * Execute the rule evaluations of one round and add the results to the graph and tuple store,
+     * recording what is new in {@code nextDelta} and {@code nextDeltaTuples}.
+     * <p>
+     * This implementation runs the evaluations in order and adds the results of each
+     * one before the next starts, so later rules see the results of earlier rules in the same round.
+     */
+    protected void evalRound(List<Supplier<RuleEval>> evaluations, AppendGraph dataGraph, TupleStore evalTupleStore,
+                             Graph nextDelta, TupleStore nextDeltaTuples, RulesExecCxt rCxt) {
+        for ( Supplier<RuleEval> evaluation : evaluations ) {
+            RuleEval rEval = evaluation.get();
+            RulesExecLib.accumulateOneRuleHeadDelta(rEval, dataGraph, evalTupleStore, nextDelta, nextDeltaTuples, rCxt);
+        }
+    }
+
+    /**
+     * For each rule, the indexes of the positive body atoms (triple and tuple patterns)
+     * that may match a triple or tuple generated by the rules of the stratum.
+     * Only these need to be evaluated against the delta.
+     */
+    private static Map<Rule, int[]> deltaPositions(Collection<Rule> rules) {
+        Map<Rule, int[]> positions = new HashMap<>();
+        for ( Rule rule : rules ) {
+            List<RuleBodyElement> elts = rule.getBodyElements();
+            int[] x = new int[elts.size()];
+            int count = 0;
+            for ( int i = 0 ; i < elts.size() ; i++ ) {
+                if ( isRecursiveAtom(elts.get(i), rules) )
+                    x[count++] = i;
+            }
+            positions.put(rule, Arrays.copyOf(x, count));
+        }
+        return positions;
+    }
+
+    private static boolean isRecursiveAtom(RuleBodyElement elt, Collection<Rule> rules) {
+        switch (elt) {
+            case EltTriplePattern(Triple triplePattern) -> {
+                for ( Rule r : rules ) {
+                    if ( RuleDependencies.dependsOn(triplePattern, r) )
+                        return true;
+                }
+                return false;
+            }
+            case EltTuplePattern(Tuple tuplePattern) -> {
+                for ( Rule r : rules ) {
+                    if ( RuleDependencies.dependsOn(tuplePattern, r) )
+                        return true;
+                }
+                return false;
+            }
+            default -> { return false; }
+        }
+    }
+}
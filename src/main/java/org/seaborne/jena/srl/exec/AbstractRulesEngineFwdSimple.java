@@ -22,20 +22,28 @@
 package org.seaborne.jena.srl.exec;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Union;
 import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.Prefixes;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.util.Context;
 import org.seaborne.jena.srl.*;
 import org.seaborne.jena.srl.examine.Examine;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
 import org.seaborne.jena.srl.jena.AppendGraph;
+import org.seaborne.jena.srl.sys.MagicSets;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
 import org.seaborne.jena.srl.sys.Stratification;
 import org.seaborne.jena.srl.sys.Stratum;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+import org.seaborne.jena.srl.tuples.Tuple;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
 /**
@@ -62,6 +70,11 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
         return this;
     }
 
+    /** Whether tracing is enabled for this engine. */
+    protected boolean trace() {
+        return TRACE;
+    }
+
     @Override
     public EvalAlgorithm engineType() {
         return EvalAlgorithm.FWD_NAIVE;
@@ -88,12 +101,22 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
     }
 
     /**
-     * This function calculates by all triples, then matches the pattern given.
+     * This function calculates triples, then matches the pattern given.
+     * If {@link SysJenaRules#magicSetsForSolve} is set, the rule set evaluated is
+     * the {@link MagicSets magic sets} rewrite for the pattern, so only triples
+     * relevant to the pattern are inferred; otherwise all triples are calculated.
      */
     @Override
     public Stream<Triple> solve(Node s, Node p, Node o) {
         // Rather than cache, wrap in a "materialize and match" RulesEngine.
-        RuleSetEvaluation e = eval();
+        RuleSetEvaluation e = null;
+        if ( useMagicSets() ) {
+            MagicSets.Rewrite rewrite = MagicSets.transform(ruleSet, Triple.createMatch(s, p, o));
+            if ( rewrite.isRewritten() )
+                e = evalRuleSet(rewrite.ruleSet(), rewrite.stratification(), true);
+        }
+        if ( e == null )
+            e = eval();
         Graph g = e.outputGraph();
         Stream<Triple> stream = g.find(s, p, o).toList().stream();
         return stream;
@@ -107,10 +130,48 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
 
     @Override
     public RuleSetEvaluation eval() {
-        return evalRuleSet();
+        return evalRuleSet(ruleSet);
+    }
+
+    @Override
+    public RuleSetEvaluation evalStream(StreamRDF output, Consumer<Tuple> tupleOutput, boolean keepOutput) {
+        RulesExecCxt.Output previous = rCxt.setOutput(new RulesExecCxt.Output(output, tupleOutput, keepOutput));
+        output.start();
+        try {
+            RuleSetEvaluation e = evalRuleSet(ruleSet);
+            return keepOutput ? e : null;
+        } finally {
+            output.finish();
+            rCxt.setOutput(previous);
+        }
+    }
+
+    /** Whether the engine evaluates tuple patterns and rules with tuples in the head. */
+    protected boolean supportsTuples() {
+        return true;
+    }
+
+    /**
+     * Whether {@link #solve} uses a magic sets rewrite.
+     * The rewrite adds tuples to the rule set so it needs an engine that supports tuples.
+     */
+    private boolean useMagicSets() {
+        return SysJenaRules.magicSetsForSolve && supportsTuples();
+    }
+
+    /** Evaluate the engine's rule set over the base graph. */
+    private RuleSetEvaluation evalRuleSet(RuleSet ruleSet) {
+        Stratification stratification = RulesExecLib.prepare(ruleSet, rCxt);
+        return evalRuleSet(ruleSet, stratification, false);
     }
 
-    private RuleSetEvaluation evalRuleSet() {
+    /**
+     * Evaluate a rule set over the base graph. This is the engine's rule set, or a
+     * rewrite of it that is evaluated once, such as for {@link MagicSets magic sets}.
+     * The rule set has been checked and stratified. The plans of the rules of a rewrite
+     * are only kept for this evaluation.
+     */
+    private RuleSetEvaluation evalRuleSet(RuleSet ruleSet, Stratification stratification, boolean evalOnce) {
         if ( TRACE ) {
             ruleSet.getRules().forEach(rule->{
                 String s = ShaclRulesWriter.asString(rule, ruleSet.getPrefixMap());
@@ -118,8 +179,6 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
             });
         }
 
-        Stratification stratification = RulesExecLib.prepare(ruleSet, rCxt);
-
         int maxStratum = stratification.maxStratum(); // Inclusive.
 
         // NOW()
@@ -130,20 +189,34 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
         // == dataGraph -- base graph + data.
         // This input graph for the algorithm - baseGraph + DATA.
         // It grows as execution proceeds
-        AppendGraph dataGraph = AppendGraph.create(baseGraph);
+        AppendGraph dataGraph = SysJenaRules.membershipFilter
+                ? AppendGraph.createWithFilter(baseGraph, SysJenaRules.membershipFilterBitsPerTriple)
+                : AppendGraph.create(baseGraph);
         // Add DATA
         Graph ruleSetData = ruleSet.getData() ;
         if ( ruleSet.hasData() ) {
-            GraphUtil.addInto(dataGraph, ruleSetData);
+            if ( rCxt.hasOutput() ) {
+                ruleSetData.find().forEachRemaining(t -> {
+                    if ( dataGraph.addNew(t) )
+                        rCxt.output(t);
+                });
+            } else
+                GraphUtil.addInto(dataGraph, ruleSetData);
         }
 
         // rCxt.strict
         TupleStore tupleStore = TupleStore.create();
         if ( ruleSet.hasTupleData() || baseTupleStore != null ) {
-            if ( ruleSet.hasTupleData() )
-                tupleStore.addAll(ruleSet.getDataTuples());
             if ( baseTupleStore != null )
                 tupleStore.addAll(baseTupleStore);
+            if ( ruleSet.hasTupleData() ) {
+                for ( Tuple t : ruleSet.getDataTuples() ) {
+                    if ( tupleStore.contains(t) )
+                        continue;
+                    tupleStore.add(t);
+                    rCxt.output(t);
+                }
+            }
         }
 
         // Prefixes for the inferred graph.
@@ -158,12 +231,38 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
             rCxt.out().println("Initial inferred graph: size = "+inferredGraph.size());
         }
 
+        EvalScope evaluation = evalOnce
+                ? EvalScope.evaluationOnce(groundedGraph(ruleSet))
+                : EvalScope.evaluation(groundedGraph(ruleSet));
+
         // Execute WHERE DATA rules.
+        rCxt.startBudget();
+        try {
+            return evalStratification(dataGraph, stratification, tupleStore, evaluation);
+        } catch (RuleSetEvaluationCancelledException ex) {
+            // Stopped by the budget or cancelled: what has been inferred so far.
+            rCxt.out().flush();
+            return evaluation(dataGraph, tupleStore, RulesBudgetExceededException.stopReason(ex));
+        } finally {
+            if ( TRACE && dataGraph.getMembershipFilter() != null )
+                rCxt.out().println(dataGraph.getMembershipFilter());
+        }
+    }
 
-        return evalStratification(dataGraph, stratification, tupleStore);
+    /**
+     * The graph that {@code NOT DATA} tests: the base graph and the DATA of the rule set.
+     * These do not change during an evaluation or an incremental update.
+     */
+    protected Graph groundedGraph(RuleSet ruleSet) {
+        return ruleSet.hasData() ? new Union(baseGraph, ruleSet.getData()) : baseGraph;
     }
 
-    private RuleSetEvaluation evalStratification(AppendGraph dataGraph, Stratification stratification, TupleStore tupleStore) {
+    /**
+     * Evaluate the strata in order, each to completion before the next one starts.
+     * {@code evaluation} is the scope of this evaluation.
+     */
+    protected RuleSetEvaluation evalStratification(AppendGraph dataGraph, Stratification stratification, TupleStore tupleStore,
+                                                   EvalScope evaluation) {
 
         if ( Examine.EXAMINE )
             rCxt.out().println("==== Evaluation");
@@ -176,7 +275,7 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
                     rCxt.out().incIndent();
                     rCxt.out().flush();
                 }
-                int rounds = evalStratum(i, stratum, dataGraph, tupleStore, rCxt);
+                evalStratum(i, stratum, dataGraph, tupleStore, rCxt, evaluation.forStratum());
 
                 if ( TRACE ) {
                     //rCxt.out().println("Base graph: size = "+baseGraph.size());
@@ -189,11 +288,24 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
         } finally {
             rCxt.out().flush(); }
 
-        return new Evaluation(baseGraph, ruleSet, dataGraph.getAdded(), dataGraph, tupleStore);
+        return evaluation(dataGraph, tupleStore, StopReason.COMPLETE);
     }
 
-    /* Return the number of of the last round that causes more triples */
-    private int evalStratum(int stratumNumber, Stratum stratum, Graph dataGraph, TupleStore evalTupleStore, RulesExecCxt rCxt) {
+    /**
+     * The result of an evaluation or incremental update of the engine's rule set,
+     * from the data graph and the tuple store.
+     */
+    protected RuleSetEvaluation evaluation(AppendGraph dataGraph, TupleStore tupleStore, StopReason stopReason) {
+        return new Evaluation(baseGraph, ruleSet, dataGraph.getAdded(), dataGraph, tupleStore, stopReason, baseTupleStore);
+    }
+
+    /**
+     * Evaluate one stratum to completion.
+     * This is the "naive" algorithm: each round, every rule is evaluated over the whole graph.
+     * {@code scope} is for this pass over the stratum; the caller creates a new one for each pass.
+     * Return the number of of the last round that causes more triples.
+     */
+    protected int evalStratum(int stratumNumber, Stratum stratum, AppendGraph dataGraph, TupleStore evalTupleStore, RulesExecCxt rCxt, EvalScope scope) {
 //        if ( TRACE )
 //            rCxt.out().printf("Eval level -- %d rules\n", rules.size());
 
@@ -233,75 +345,86 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
 //        accumulationGraph.getPrefixMapping().setNsPrefixes(dataGraph.getPrefixMapping());
 
 
-        // == Run once
-        if ( !runOnceRules.isEmpty() ) {
-            if ( TRACE ) {
-                rCxt.out().println("Run once: "+runOnceRules.size());
-                rCxt.out().incIndent();
-            }
-            for ( Rule rule : runOnceRules ) {
-                if ( TRACE )
-                    System.out.printf("Eval(once): %s\n", ruleSet.labelFor(rule));
-                executeOneRule(graph1, evalTupleStore, rule, rCxt);
-                if ( TRACE )
-                    rCxt.out().println("Accumulator: "+graph1.getAdded().size());
-            }
-            flush(graph1);
-
-            if ( TRACE )
-                rCxt.out().decIndent();
-        }
-
         // One or the other must be true in order to expose the stratum changes.
         final boolean flushAfterEachRound = true;
         final boolean flushAfterEachLevel = false;
 
         int round = 0;
 
-        // == Run all
-        while(true) {
-            round++;
-            int sizeAtRoundStart = graph1.getAdded().size() + evalTupleStore.size();
+        try {
+            // == Run once
+            if ( !runOnceRules.isEmpty() ) {
+                if ( TRACE ) {
+                    rCxt.out().println("Run once: "+runOnceRules.size());
+                    rCxt.out().incIndent();
+                }
+                for ( Rule rule : runOnceRules ) {
+                    if ( TRACE )
+                        System.out.printf("Eval(once): %s\n", ruleSet.labelFor(rule));
+                    rCxt.checkBudget();
+                    executeOneRule(graph1, evalTupleStore, rule, rCxt, scope);
+                    if ( TRACE )
+                        rCxt.out().println("Accumulator: "+graph1.getAdded().size());
+                }
+                flush(graph1);
 
-            if ( TRACE ) {
-                rCxt.out().println("Round: "+round);
-                rCxt.out().incIndent();
+                if ( TRACE )
+                    rCxt.out().decIndent();
             }
 
-            // Evaluate one round.
-            // This is the "naive" algorithm.
-            // By tracking rules that actually cause change, we can get semi-naive.
 
-            for ( Rule rule : runGeneralRules ) {
-                if ( TRACE )
-                    rCxt.out().printf("Eval: round=%d : %s\n", round, ruleSet.str(rule));
-                executeOneRule(graph1, evalTupleStore, rule, rCxt);
+            // == Run all
+            while(true) {
+                round++;
+                rCxt.countRound();
+                scope.nextRound();
+                int sizeAtRoundStart = graph1.getAdded().size() + evalTupleStore.size();
 
-                if ( TRACE )
-                    rCxt.out().println("Accumulator: "+graph1.getAdded().size());
+                if ( TRACE ) {
+                    rCxt.out().println("Round: "+round);
+                    rCxt.out().incIndent();
+                }
+
+                // Evaluate one round.
+                // This is the "naive" algorithm.
+                // By tracking rules that actually cause change, we can get semi-naive.
+
+                for ( Rule rule : runGeneralRules ) {
+                    if ( TRACE )
+                        rCxt.out().printf("Eval: round=%d : %s\n", round, ruleSet.str(rule));
+                    executeOneRule(graph1, evalTupleStore, rule, rCxt, scope);
 
-                if ( Examine.EXAMINE ) {
-                    int added = graph1.getAdded().size();
-                    String count = added == 0 ? "*" : Integer.toString(added);
-                    rCxt.out().printf("Eval: round=%d : triples=%s : %s\n", round, count, ruleSet.str(rule));
+                    if ( TRACE )
+                        rCxt.out().println("Accumulator: "+graph1.getAdded().size());
+
+                    if ( Examine.EXAMINE ) {
+                        int added = graph1.getAdded().size();
+                        String count = added == 0 ? "*" : Integer.toString(added);
+                        rCxt.out().printf("Eval: round=%d : triples=%s : %s\n", round, count, ruleSet.str(rule));
+                    }
                 }
-            }
 
-            if ( TRACE )
-                rCxt.out().decIndent();
+                if ( TRACE )
+                    rCxt.out().decIndent();
 
-            int sizeAtRoundEnd = graph1.getAdded().size() + evalTupleStore.size();
-            if ( sizeAtRoundStart == sizeAtRoundEnd ) {
-                // No new triples or tuples this round.
-                --round;
-                // Finished.
-                break;
-            }
+                int sizeAtRoundEnd = graph1.getAdded().size() + evalTupleStore.size();
+                if ( sizeAtRoundStart == sizeAtRoundEnd ) {
+                    // No new triples or tuples this round.
+                    --round;
+                    // Finished.
+                    break;
+                }
 
-            // END of round.
+                // END of round.
 
-            if ( flushAfterEachRound )
-                flush(graph1);
+                if ( flushAfterEachRound )
+                    flush(graph1);
+            }
+        } catch (RuleSetEvaluationCancelledException ex) {
+            // Stopped: keep the output so far.
+            flush(graph1);
+            graph1.getAdded().close();
+            throw ex;
         }
 
         // END of execution for this list of rules.
@@ -309,6 +432,8 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
             // If flushAfterEachRound is true, then exiting
             // the last round did a flush.
             flush(graph1);
+        // Release any spill files.
+        graph1.getAdded().close();
         if ( TRACE )
             rCxt.out().flush();
         return round;
@@ -322,5 +447,5 @@ public abstract class AbstractRulesEngineFwdSimple implements RulesEngine {
      * One execution of one rule.
      * The arguments graph and tupleStore are updated.
      */
-    protected abstract void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt);
+    protected abstract void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope);
 }
@@ -22,8 +22,6 @@
 package org.seaborne.jena.srl.exec;
 
 import java.util.Iterator;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.apache.jena.atlas.iterator.Iter;
@@ -32,7 +30,6 @@ import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingBuilder;
 import org.apache.jena.sparql.engine.main.solver.SolverLib;
-import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
 import org.seaborne.jena.srl.tuples.Tuple;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
@@ -63,18 +60,8 @@ public class AccessTuples {
         Iterator<Tuple> tupleStoreIter = tupleStore.find(groundedPattern);
 
         Iterator<Binding> tuplesIter = Iter.mapRemove(tupleStoreIter, dataTuple -> mapper(resultsBuilder, groundedPattern, dataTuple));
-        // Add cancel.
-        AtomicBoolean cancelSignal = ruleExecCxt.getCancelSignal();
-        Iterator<Binding> iter = tuplesIter;
-        if ( cancelSignal != null ) {
-            Function<Binding, Binding> cancelTest = (row)->{
-                if (cancelSignal.get())
-                    throw new RuleSetEvaluationCancelledException();
-                return row;
-            };
-            iter = Iter.map(iter, cancelTest);
-        }
-        return iter;
+        // Budget and cancel.
+        return ruleExecCxt.countRows(tuplesIter);
     }
 
     private static Node tupleNode(Node node) {
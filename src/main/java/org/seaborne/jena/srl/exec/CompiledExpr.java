@@ -0,0 +1,572 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.*;
+import org.apache.jena.sparql.expr.nodevalue.XSDFuncOp;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+
+/**
+ * An expression of a rule body ({@code FILTER} or {@code SET}) compiled for
+ * evaluation on each solution.
+ * <p>
+ * Common shapes are evaluated directly on the RDF terms of the solution, without
+ * building {@link NodeValue}s and without exceptions for evaluation errors:
+ * {@code BOUND}, {@code &&}, {@code ||}, {@code !}, comparisons of integers,
+ * {@code sameTerm} and {@code =} with an IRI, {@code STR}, {@code STRLEN},
+ * {@code CONTAINS}, {@code STRSTARTS}, {@code STRENDS}, {@code CONCAT} of
+ * {@code xsd:string}s, and {@code IRI} of an absolute IRI string.
+ * Constants are evaluated once. Any other expression, or any other kind of
+ * argument, is evaluated by the ARQ expression, with the same outcome.
+ * <p>
+ * An evaluation error is a null value.
+ */
+public abstract class CompiledExpr {
+
+    /** Compile an expression; if {@link SysJenaRules#compileExpressions} is false, use the expression as given. */
+    public static CompiledExpr compile(Expr expr) {
+        if ( ! SysJenaRules.compileExpressions )
+            return new General(expr);
+        return compile1(expr);
+    }
+
+    // Outcome of a test.
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int ERROR = -1;
+
+    /** The value of the expression, or null for an evaluation error. */
+    public abstract NodeValue eval(Binding binding, FunctionEnv env);
+
+    /** Whether the effective boolean value of the expression is true. An evaluation error is false. */
+    public boolean isSatisfied(Binding binding, FunctionEnv env) {
+        return test(binding, env) == TRUE;
+    }
+
+    /** The effective boolean value, or {@code ERROR}. */
+    int test(Binding binding, FunctionEnv env) {
+        return ebv(eval(binding, env));
+    }
+
+    /** The value as an RDF term, or null for an evaluation error. */
+    Node node(Binding binding, FunctionEnv env) {
+        NodeValue nv = eval(binding, env);
+        return ( nv == null ) ? null : nv.asNode();
+    }
+
+    private static int ebv(NodeValue nv) {
+        if ( nv == null )
+            return ERROR;
+        if ( nv.isBoolean() )
+            return nv.getBoolean() ? TRUE : FALSE;
+        try {
+            return XSDFuncOp.effectiveBooleanValue(nv) ? TRUE : FALSE;
+        } catch (ExprEvalException ex) {
+            return ERROR;
+        }
+    }
+
+    private static CompiledExpr compile1(Expr expr) {
+        if ( expr.isConstant() )
+            return new Constant(expr.getConstant());
+        if ( expr.isVariable() )
+            return new Variable(expr.asVar());
+        if ( ! ( expr instanceof ExprFunction function ) )
+            return new General(expr);
+        General general = new General(expr);
+        CompiledExpr[] args = new CompiledExpr[function.numArgs()];
+        for ( int i = 0 ; i < args.length ; i++ ) {
+            Expr arg = function.getArg(i+1);
+            if ( arg == null )
+                return general;
+            args[i] = compile1(arg);
+        }
+        return switch (function) {
+            case E_Bound e when args.length == 1 && args[0] instanceof Variable v -> new Bound(v.var);
+            case E_LogicalAnd e -> new And(args[0], args[1]);
+            case E_LogicalOr e -> new Or(args[0], args[1]);
+            case E_LogicalNot e -> new Not(args[0]);
+            case E_LessThan e -> new Compare(args[0], args[1], general, c -> c < 0);
+            case E_LessThanOrEqual e -> new Compare(args[0], args[1], general, c -> c <= 0);
+            case E_GreaterThan e -> new Compare(args[0], args[1], general, c -> c > 0);
+            case E_GreaterThanOrEqual e -> new Compare(args[0], args[1], general, c -> c >= 0);
+            case E_Equals e -> new Equals(args[0], args[1], general, true);
+            case E_NotEquals e -> new Equals(args[0], args[1], general, false);
+            case E_SameTerm e -> new SameTerm(args[0], args[1]);
+            case E_Str e -> new Str(args[0], general);
+            case E_StrLength e -> new StrLength(args[0], general);
+            case E_StrContains e -> new StrTest(args[0], args[1], general, String::contains);
+            case E_StrStartsWith e -> new StrTest(args[0], args[1], general, String::startsWith);
+            case E_StrEndsWith e -> new StrTest(args[0], args[1], general, String::endsWith);
+            case E_StrConcat e -> new Concat(args, general);
+            case E_IRI e when args.length == 1 -> new Iri(args[0], general);
+            default -> general;
+        };
+    }
+
+    // ---- Terms
+
+    /** The lexical form of an {@code xsd:string}, or null. */
+    private static String string(Node node) {
+        if ( node == null || ! node.isLiteral() )
+            return null;
+        if ( ! XSDDatatype.XSDstring.equals(node.getLiteralDatatype()) || ! node.getLiteralLanguage().isEmpty() )
+            return null;
+        return node.getLiteralLexicalForm();
+    }
+
+    // Up to 18 digits fits in a long.
+    private static final int MaxDigits = 18;
+
+    /**
+     * Whether the node is an {@code xsd:integer} with a lexical form of an optional sign
+     * and at most 18 digits.
+     */
+    private static boolean isSmallInteger(Node node) {
+        if ( node == null || ! node.isLiteral() || ! XSDDatatype.XSDinteger.equals(node.getLiteralDatatype()) )
+            return false;
+        String lex = node.getLiteralLexicalForm();
+        int start = ( ! lex.isEmpty() && ( lex.charAt(0) == '+' || lex.charAt(0) == '-' ) ) ? 1 : 0;
+        int len = lex.length()-start;
+        if ( len == 0 || len > MaxDigits )
+            return false;
+        for ( int i = start ; i < lex.length() ; i++ ) {
+            char ch = lex.charAt(i);
+            if ( ch < '0' || ch > '9' )
+                return false;
+        }
+        return true;
+    }
+
+    /** The value of a node that passes {@link #isSmallInteger}. */
+    private static long smallInteger(Node node) {
+        String lex = node.getLiteralLexicalForm();
+        int start = ( lex.charAt(0) == '+' || lex.charAt(0) == '-' ) ? 1 : 0;
+        long x = 0;
+        for ( int i = start ; i < lex.length() ; i++ )
+            x = x*10 + (lex.charAt(i)-'0');
+        return ( lex.charAt(0) == '-' ) ? -x : x;
+    }
+
+    /**
+     * Whether a string is an IRI with a scheme and no dot segments,
+     * so resolving it against a base does not change it.
+     */
+    private static boolean isAbsoluteIRI(String str) {
+        if ( str.contains("/.") )
+            return false;
+        int idx = str.indexOf(':');
+        if ( idx <= 0 )
+            return false;
+        if ( ! isAlpha(str.charAt(0)) )
+            return false;
+        for ( int i = 1 ; i < idx ; i++ ) {
+            char ch = str.charAt(i);
+            if ( ! isAlpha(ch) && ! ( ch >= '0' && ch <= '9' ) && ch != '+' && ch != '-' && ch != '.' )
+                return false;
+        }
+        for ( int i = idx+1 ; i < str.length() ; i++ ) {
+            char ch = str.charAt(i);
+            if ( ch <= ' ' || ch == '<' || ch == '>' || ch == '"' || ch == '{' || ch == '}'
+                 || ch == '|' || ch == '\\' || ch == '^' || ch == '`' )
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isAlpha(char ch) {
+        return ( ch >= 'a' && ch <= 'z' ) || ( ch >= 'A' && ch <= 'Z' );
+    }
+
+    private static NodeValue nodeValue(Node node) {
+        return ( node == null ) ? null : NodeValue.makeNode(node);
+    }
+
+    // ---- Compiled forms
+
+    /** The ARQ expression; evaluation errors are caught. */
+    private static final class General extends CompiledExpr {
+        private final Expr expr;
+
+        General(Expr expr) { this.expr = expr; }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            try {
+                return expr.eval(binding, env);
+            } catch (ExprEvalException ex) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Constant extends CompiledExpr {
+        private final NodeValue value;
+        private final Node node;
+        private final int test;
+
+        Constant(NodeValue value) {
+            this.value = value;
+            this.node = value.asNode();
+            this.test = ebv(value);
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) { return value; }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) { return test; }
+
+        @Override
+        Node node(Binding binding, FunctionEnv env) { return node; }
+    }
+
+    private static final class Variable extends CompiledExpr {
+        private final Var var;
+
+        Variable(Var var) { this.var = var; }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) { return nodeValue(binding.get(var)); }
+
+        @Override
+        Node node(Binding binding, FunctionEnv env) { return binding.get(var); }
+    }
+
+    private static final class Bound extends CompiledExpr {
+        private final Var var;
+
+        Bound(Var var) { this.var = var; }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            return NodeValue.booleanReturn(binding.contains(var));
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) { return binding.contains(var) ? TRUE : FALSE; }
+    }
+
+    /** A test; the value is a boolean. */
+    private static abstract class Test extends CompiledExpr {
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            int x = test(binding, env);
+            return ( x == ERROR ) ? null : NodeValue.booleanReturn(x == TRUE);
+        }
+
+        @Override
+        abstract int test(Binding binding, FunctionEnv env);
+    }
+
+    /** SPARQL logical-and: false if either is false, even if the other is an error. */
+    private static final class And extends Test {
+        private final CompiledExpr left;
+        private final CompiledExpr right;
+
+        And(CompiledExpr left, CompiledExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            int x1 = left.test(binding, env);
+            if ( x1 == FALSE )
+                return FALSE;
+            int x2 = right.test(binding, env);
+            if ( x2 == FALSE )
+                return FALSE;
+            return ( x1 == TRUE && x2 == TRUE ) ? TRUE : ERROR;
+        }
+    }
+
+    /** SPARQL logical-or: true if either is true, even if the other is an error. */
+    private static final class Or extends Test {
+        private final CompiledExpr left;
+        private final CompiledExpr right;
+
+        Or(CompiledExpr left, CompiledExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            int x1 = left.test(binding, env);
+            if ( x1 == TRUE )
+                return TRUE;
+            int x2 = right.test(binding, env);
+            if ( x2 == TRUE )
+                return TRUE;
+            return ( x1 == FALSE && x2 == FALSE ) ? FALSE : ERROR;
+        }
+    }
+
+    private static final class Not extends Test {
+        private final CompiledExpr arg;
+
+        Not(CompiledExpr arg) { this.arg = arg; }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            int x = arg.test(binding, env);
+            return ( x == ERROR ) ? ERROR : 1-x;
+        }
+    }
+
+    private interface CompareResult { boolean test(int cmp); }
+
+    /** Comparison of integers; otherwise the ARQ expression. */
+    private static final class Compare extends Test {
+        private final CompiledExpr left;
+        private final CompiledExpr right;
+        private final General general;
+        private final CompareResult result;
+
+        Compare(CompiledExpr left, CompiledExpr right, General general, CompareResult result) {
+            this.left = left;
+            this.right = right;
+            this.general = general;
+            this.result = result;
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            Node n1 = left.node(binding, env);
+            if ( n1 == null )
+                return ERROR;
+            Node n2 = right.node(binding, env);
+            if ( n2 == null )
+                return ERROR;
+            if ( isSmallInteger(n1) && isSmallInteger(n2) )
+                return result.test(Long.compare(smallInteger(n1), smallInteger(n2))) ? TRUE : FALSE;
+            return general.test(binding, env);
+        }
+    }
+
+    /**
+     * {@code =} and {@code !=}. An IRI is only equal to the same IRI; integers are
+     * compared by value; otherwise the ARQ expression.
+     */
+    private static final class Equals extends Test {
+        private final CompiledExpr left;
+        private final CompiledExpr right;
+        private final General general;
+        private final int ifEqual;
+
+        Equals(CompiledExpr left, CompiledExpr right, General general, boolean equals) {
+            this.left = left;
+            this.right = right;
+            this.general = general;
+            this.ifEqual = equals ? TRUE : FALSE;
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            Node n1 = left.node(binding, env);
+            if ( n1 == null )
+                return ERROR;
+            Node n2 = right.node(binding, env);
+            if ( n2 == null )
+                return ERROR;
+            if ( ( n1.isURI() && ( n2.isURI() || n2.isLiteral() ) ) || ( n2.isURI() && n1.isLiteral() ) )
+                return n1.equals(n2) ? ifEqual : 1-ifEqual;
+            if ( isSmallInteger(n1) && isSmallInteger(n2) )
+                return ( smallInteger(n1) == smallInteger(n2) ) ? ifEqual : 1-ifEqual;
+            return general.test(binding, env);
+        }
+    }
+
+    private static final class SameTerm extends Test {
+        private final CompiledExpr left;
+        private final CompiledExpr right;
+
+        SameTerm(CompiledExpr left, CompiledExpr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            Node n1 = left.node(binding, env);
+            if ( n1 == null )
+                return ERROR;
+            Node n2 = right.node(binding, env);
+            if ( n2 == null )
+                return ERROR;
+            return n1.sameTermAs(n2) ? TRUE : FALSE;
+        }
+    }
+
+    /** STR of an IRI or an {@code xsd:string}; otherwise the ARQ expression. */
+    private static final class Str extends CompiledExpr {
+        private final CompiledExpr arg;
+        private final General general;
+
+        Str(CompiledExpr arg, General general) {
+            this.arg = arg;
+            this.general = general;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            Node n = arg.node(binding, env);
+            if ( n == null )
+                return null;
+            if ( n.isURI() )
+                return NodeValue.makeString(n.getURI());
+            String s = string(n);
+            if ( s != null )
+                return NodeValue.makeString(s);
+            return general.eval(binding, env);
+        }
+    }
+
+    /** STRLEN of an {@code xsd:string}; otherwise the ARQ expression. */
+    private static final class StrLength extends CompiledExpr {
+        private final CompiledExpr arg;
+        private final General general;
+
+        StrLength(CompiledExpr arg, General general) {
+            this.arg = arg;
+            this.general = general;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            Node n = arg.node(binding, env);
+            if ( n == null )
+                return null;
+            String s = string(n);
+            if ( s != null )
+                return NodeValue.makeInteger(s.codePointCount(0, s.length()));
+            return general.eval(binding, env);
+        }
+    }
+
+    private interface StringTest { boolean test(String string, String match); }
+
+    /** CONTAINS, STRSTARTS and STRENDS of {@code xsd:string}s; otherwise the ARQ expression. */
+    private static final class StrTest extends Test {
+        private final CompiledExpr left;
+        private final CompiledExpr right;
+        private final General general;
+        private final StringTest stringTest;
+
+        StrTest(CompiledExpr left, CompiledExpr right, General general, StringTest stringTest) {
+            this.left = left;
+            this.right = right;
+            this.general = general;
+            this.stringTest = stringTest;
+        }
+
+        @Override
+        int test(Binding binding, FunctionEnv env) {
+            Node n1 = left.node(binding, env);
+            if ( n1 == null )
+                return ERROR;
+            Node n2 = right.node(binding, env);
+            if ( n2 == null )
+                return ERROR;
+            String s1 = string(n1);
+            String s2 = string(n2);
+            if ( s1 != null && s2 != null )
+                return stringTest.test(s1, s2) ? TRUE : FALSE;
+            return general.test(binding, env);
+        }
+    }
+
+    /** CONCAT of {@code xsd:string}s; otherwise the ARQ expression. */
+    private static final class Concat extends CompiledExpr {
+        private final List<CompiledExpr> args;
+        private final General general;
+
+        Concat(CompiledExpr[] args, General general) {
+            this.args = Arrays.asList(args);
+            this.general = general;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            StringBuilder sb = new StringBuilder();
+            for ( CompiledExpr arg : args ) {
+                Node n = arg.node(binding, env);
+                if ( n == null )
+                    return null;
+                String s = string(n);
+                if ( s == null )
+                    return general.eval(binding, env);
+                sb.append(s);
+            }
+            return NodeValue.makeString(sb.toString());
+        }
+    }
+
+    /** IRI of an IRI, or of an {@code xsd:string} that is an absolute IRI; otherwise the ARQ expression. */
+    private static final class Iri extends CompiledExpr {
+        private final CompiledExpr arg;
+        private final General general;
+
+        Iri(CompiledExpr arg, General general) {
+            this.arg = arg;
+            this.general = general;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            Node n = arg.node(binding, env);
+            if ( n == null )
+                return null;
+            Node iri = iri(n);
+            return ( iri != null ) ? NodeValue.makeNode(iri) : general.eval(binding, env);
+        }
+
+        @Override
+        Node node(Binding binding, FunctionEnv env) {
+            Node n = arg.node(binding, env);
+            if ( n == null )
+                return null;
+            Node iri = iri(n);
+            return ( iri != null ) ? iri : super.node(binding, env);
+        }
+
+        // Null if not one of the direct cases.
+        private static Node iri(Node n) {
+            if ( n.isURI() )
+                return n;
+            String s = string(n);
+            if ( s != null && isAbsoluteIRI(s) )
+                return NodeFactory.createURI(s);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+
+/**
+ * Read-only graph of the rows of an {@link IntTripleStore} from a given row onwards.
+ * Terms are decoded when triples are returned by {@code find}.
+ * The triple store must not change while the graph is in use.
+ */
+class EncodedGraph extends GraphBase {
+
+    private final NodeDictionary dictionary;
+    private final IntTripleStore store;
+    private final int fromRow;
+
+    EncodedGraph(NodeDictionary dictionary, IntTripleStore store, int fromRow) {
+        this.dictionary = dictionary;
+        this.store = store;
+        this.fromRow = fromRow;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+        int s = id(triplePattern.getSubject());
+        int p = id(triplePattern.getPredicate());
+        int o = id(triplePattern.getObject());
+        if ( s == -2 || p == -2 || o == -2 )
+            return NullIterator.instance();
+        int mask = ( s >= 0 ? IntTripleStore.S : 0 ) | ( p >= 0 ? IntTripleStore.P : 0 ) | ( o >= 0 ? IntTripleStore.O : 0 );
+        if ( mask == IntTripleStore.SPO ) {
+            int row = store.find(s, p, o);
+            if ( row < fromRow )
+                return NullIterator.instance();
+            return WrappedIterator.create(List.of(triple(row)).iterator());
+        }
+        Iterator<Triple> iter = new Iterator<>() {
+            // Newest first.
+            int row = ( mask == 0 ) ? store.size()-1 : store.first(mask, s, p, o);
+
+            @Override
+            public boolean hasNext() {
+                return row >= fromRow;
+            }
+
+            @Override
+            public Triple next() {
+                if ( ! hasNext() )
+                    throw new NoSuchElementException();
+                Triple t = triple(row);
+                row = ( mask == 0 ) ? row-1 : store.next(mask, row);
+                return t;
+            }
+        };
+        return WrappedIterator.create(iter);
+    }
+
+    // -1 for any, -2 for a term that is not in the data.
+    private int id(Node node) {
+        if ( node == null || ! node.isConcrete() )
+            return -1;
+        int id = dictionary.get(node);
+        return ( id < 0 ) ? -2 : id;
+    }
+
+    private Triple triple(int row) {
+        return Triple.create(dictionary.decode(store.subject(row)),
+                             dictionary.decode(store.predicate(row)),
+                             dictionary.decode(store.object(row)));
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return store.size()-fromRow;
+    }
+}
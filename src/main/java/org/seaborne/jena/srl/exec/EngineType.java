@@ -34,8 +34,22 @@ public enum EngineType {
     SIMPLE_SPARQL_INSERT("srl:simpleSparqlInsert"),
     // Rule as SPARQL CONSTRUCT
     SIMPLE_SPARQL_CONSTRUCT("srl:simpleSparqConstruct"),
+    // Semi-naive forward evaluation.
+    SEMINAIVE("srl:semiNaive"),
+    // Semi-naive forward evaluation, rules of a round evaluated in parallel.
+    JACOBI("srl:jacobi"),
+    // Semi-naive forward evaluation, scheduled by rule dependencies.
+    DATAFLOW("srl:dataflow"),
+    // Semi-naive forward evaluation over dictionary-encoded terms.
+    ENCODED("srl:encoded"),
+    // As ENCODED, with rules compiled to bytecode.
+    GENERATED("srl:generated"),
+    // Semi-naive forward evaluation, rule bodies as SPARQL with the delta as a named graph.
+    SPARQL_SEMINAIVE("srl:sparqlSemiNaive"),
     // Backwards evaluation.
-    BKD_NON_RECURSIVE("srl:backwardNonRecursive");
+    BKD_NON_RECURSIVE("srl:backwardNonRecursive"),
+    // Backwards evaluation, tabled.
+    BKD_QSQR("srl:backwardQSQR");
 
     // This enum defined the names within jena-rules.
     // Symbols are "open ended enums" - extensions can register with the RulesEngineRegistry by using a symbol.
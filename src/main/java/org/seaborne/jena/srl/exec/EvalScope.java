@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Graph;
+import org.seaborne.jena.srl.Rule;
+
+/**
+ * Values that are fixed during part of an evaluation, computed on first use and kept
+ * until that part finishes.
+ * <p>
+ * There are two levels. An evaluation scope is created for each evaluation of a rule
+ * set and for each incremental update. It has the graph that {@code NOT DATA} tests,
+ * the base graph and the DATA of the rule set, which does not change until the next
+ * update, and values computed from it.
+ * <p>
+ * The compiled plans of rules are kept by the {@link RulesExecCxt} of the engine. A rule
+ * set that is evaluated once, such as a {@link org.seaborne.jena.srl.sys.MagicSets magic
+ * sets} rewrite for a query, has an evaluation scope from {@link #evaluationOnce} which
+ * keeps the plans of its rules, and they are dropped with the scope.
+ * <p>
+ * A stratum scope is created, from the evaluation scope, for each pass over the rules
+ * of a stratum, or over a group of rules of a stratum. A negation only tests what lower
+ * strata infer, and that is complete before the stratum starts, so the solutions of a
+ * negation can be kept for the pass (see {@link RulePlan}).
+ * <p>
+ * A pass over a stratum has rounds. Estimates from the data, such as the number of
+ * matches of a triple pattern, are kept for the rest of the round ({@link #roundValue}).
+ * The evaluation order of a rule body is kept for the pass and checked against these
+ * estimates in each round.
+ * <p>
+ * Scopes are created by the code that runs the evaluation and the passes, and are
+ * passed to each evaluation of a rule. Passes that run at the same time have their own
+ * stratum scopes. A scope can be used from several threads.
+ */
+public final class EvalScope {
+
+    /**
+     * A new scope for an evaluation, or an incremental update.
+     * {@code groundedGraph} is the graph that {@code NOT DATA} tests.
+     */
+    public static EvalScope evaluation(Graph groundedGraph) {
+        return new EvalScope(null, groundedGraph, false);
+    }
+
+    /**
+     * A new scope for the only evaluation of a rule set.
+     * The plans of the rules are kept in the scope, not in the {@link RulesExecCxt}.
+     */
+    public static EvalScope evaluationOnce(Graph groundedGraph) {
+        return new EvalScope(null, groundedGraph, true);
+    }
+
+    private final EvalScope evaluation;
+    private final Graph groundedGraph;
+    private final boolean scopedPlans;
+    private final Map<Object, Object> values = new ConcurrentHashMap<>();
+    // Replaced, between rounds, for each round.
+    private volatile Map<Object, Object> roundValues = new ConcurrentHashMap<>();
+
+    private EvalScope(EvalScope evaluation, Graph groundedGraph, boolean scopedPlans) {
+        this.evaluation = ( evaluation == null ) ? this : evaluation;
+        this.groundedGraph = groundedGraph;
+        this.scopedPlans = scopedPlans;
+    }
+
+    /** A new scope for a pass over the rules of a stratum, in this evaluation. */
+    public EvalScope forStratum() {
+        return new EvalScope(evaluation, groundedGraph, scopedPlans);
+    }
+
+    private record PlanKey(Rule rule) {}
+
+    /** The compiled plan for a rule of the rule set being evaluated. */
+    public RulePlan rulePlan(Rule rule, RulesExecCxt rCxt) {
+        if ( ! scopedPlans )
+            return rCxt.rulePlan(rule);
+        // Rule equality is identity.
+        return evaluationValue(new PlanKey(rule), ()->RulePlan.compile(rule));
+    }
+
+    /** The graph that {@code NOT DATA} tests. */
+    public Graph groundedGraph() {
+        return groundedGraph;
+    }
+
+    /** A value that is fixed for this scope, computed on first use. */
+    public <X> X value(Object key, Supplier<X> supplier) {
+        return cachedValue(values, key, supplier);
+    }
+
+    /**
+     * Start the next round of a pass over a stratum. Values for the previous round are
+     * dropped. This is called between rounds, when no rule of the pass is being evaluated.
+     */
+    public void nextRound() {
+        roundValues = new ConcurrentHashMap<>();
+    }
+
+    /** A value for the current round, computed on first use. */
+    public <X> X roundValue(Object key, Supplier<X> supplier) {
+        return cachedValue(roundValues, key, supplier);
+    }
+
+    /** A value that is fixed for the evaluation or incremental update, computed on first use. */
+    public <X> X evaluationValue(Object key, Supplier<X> supplier) {
+        return cachedValue(evaluation.values, key, supplier);
+    }
+
+    // Not computeIfAbsent: computing a value may use the cache (a negation inside a negation).
+    @SuppressWarnings("unchecked")
+    private static <X> X cachedValue(Map<Object, Object> cache, Object key, Supplier<X> supplier) {
+        Object x = cache.get(key);
+        if ( x == null ) {
+            x = supplier.get();
+            Object x2 = cache.putIfAbsent(key, x);
+            if ( x2 != null )
+                x = x2;
+        }
+        return (X)x;
+    }
+}
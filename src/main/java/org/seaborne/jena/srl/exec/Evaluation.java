@@ -23,6 +23,34 @@ package org.seaborne.jena.srl.exec;
 
 import org.apache.jena.graph.Graph;
 import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
-record Evaluation(Graph baseGraph, RuleSet ruleSet, Graph inferredTriples, Graph outputGraph, TupleStore tupleStore) implements RuleSetEvaluation {}
+/**
+ * The result of an evaluation. {@code baseTupleStore} is the tuple store the evaluation
+ * started from, if any; the tuples of {@code tupleStore} that are not in it are the
+ * {@link #inferredTuples() inferred tuples}.
+ */
+record Evaluation(Graph baseGraph, RuleSet ruleSet, Graph inferredTriples, Graph outputGraph, TupleStore tupleStore,
+                  StopReason stopReason, TupleStore baseTupleStore) implements RuleSetEvaluation {
+    Evaluation(Graph baseGraph, RuleSet ruleSet, Graph inferredTriples, Graph outputGraph, TupleStore tupleStore) {
+        this(baseGraph, ruleSet, inferredTriples, outputGraph, tupleStore, StopReason.COMPLETE);
+    }
+
+    Evaluation(Graph baseGraph, RuleSet ruleSet, Graph inferredTriples, Graph outputGraph, TupleStore tupleStore,
+               StopReason stopReason) {
+        this(baseGraph, ruleSet, inferredTriples, outputGraph, tupleStore, stopReason, null);
+    }
+
+    @Override
+    public TupleStore inferredTuples() {
+        if ( tupleStore == null || baseTupleStore == null || baseTupleStore.size() == 0 )
+            return tupleStore;
+        TupleStore inferred = TupleStore.create();
+        tupleStore.all().forEachRemaining(t -> {
+            if ( ! baseTupleStore.contains(t) )
+                inferred.add(t);
+        });
+        return inferred;
+    }
+}
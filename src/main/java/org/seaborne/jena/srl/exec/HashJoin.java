@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.*;
+import java.util.function.Function;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+
+/**
+ * Join of a stream of solutions with a triple pattern.
+ * <p>
+ * With few incoming solutions, each is looked up in the graph (index nested loop).
+ * When there are at least {@link SysJenaRules#hashJoinThreshold}, and they share
+ * variables with the pattern, the number of matches of the pattern's constant terms is
+ * counted, once for each round of a pass over a stratum ({@link EvalScope#roundValue}).
+ * Incoming solutions are then read, up to {@link SysJenaRules#hashJoinMemoryLimit},
+ * until there are more than the matches or there are no more:
+ * <ul>
+ * <li>More incoming solutions than matches: the pattern's matches are put in a hash table
+ *     on the join variables, and probed by each solution.
+ * <li>All the incoming solutions have been read, and there are no more than the matches:
+ *     each is looked up in the graph. This costs no more than a scan of the matches.
+ * <li>Otherwise, the incoming solutions are put in a hash table, in blocks of at most
+ *     {@link SysJenaRules#hashJoinMemoryLimit}, and the pattern's matches are scanned
+ *     once for each block. If the matches are too many to scan a few times, each
+ *     solution is looked up in the graph.
+ * </ul>
+ */
+class HashJoin {
+
+    // Maximum number of blocks of incoming solutions (each a scan of the pattern's matches).
+    private static final int maxBlocks = 4;
+
+    /**
+     * Join the incoming solutions with the pattern. {@code nestedLoop} is the join by
+     * looking up each solution. {@code scope} may be null. The hash joins used are
+     * counted in {@code rCxt}.
+     */
+    static Iterator<Binding> join(Iterator<Binding> input, Graph graph, Triple pattern, RulesExecCxt rCxt, EvalScope scope,
+                                  Function<Iterator<Binding>, Iterator<Binding>> nestedLoop) {
+        int threshold = SysJenaRules.hashJoinThreshold;
+        if ( threshold <= 0 )
+            return nestedLoop.apply(input);
+        List<Binding> buffer = new ArrayList<>();
+        while ( buffer.size() < threshold && input.hasNext() )
+            buffer.add(input.next());
+        if ( buffer.size() < threshold )
+            return nestedLoop.apply(buffer.iterator());
+
+        Node[] nodes = { pattern.getSubject(), pattern.getPredicate(), pattern.getObject() };
+        Var[] vars = new Var[3];
+        boolean[] joinSlots = new boolean[3];
+        boolean hasJoinVars = false;
+        // All incoming solutions bind the same variables.
+        Binding first = buffer.get(0);
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            if ( Var.isVar(nodes[i]) ) {
+                vars[i] = Var.alloc(nodes[i]);
+                joinSlots[i] = first.contains(vars[i]);
+                hasJoinVars |= joinSlots[i];
+            }
+        }
+        if ( ! hasJoinVars )
+            return nestedLoop.apply(Iter.concat(buffer.iterator(), input));
+
+        int limit = SysJenaRules.hashJoinMemoryLimit;
+        Triple findPattern = Triple.createMatch(concrete(nodes[0]), concrete(nodes[1]), concrete(nodes[2]));
+        int matches = RuleBodyPlanner.count(graph, findPattern, maxBlocks*limit, scope);
+        while ( buffer.size() <= matches && buffer.size() < limit && input.hasNext() )
+            buffer.add(input.next());
+        boolean exhausted = ! input.hasNext();
+        Iterator<Binding> all = Iter.concat(buffer.iterator(), input);
+        JoinKeys joinKeys = new JoinKeys(vars, joinSlots);
+
+        if ( buffer.size() > matches ) {
+            rCxt.countOperator(RulesExecCxt.Operator.HASH_JOIN_BUILD_ON_PATTERN);
+            return buildOnPattern(all, graph, findPattern, joinKeys);
+        }
+        if ( exhausted )
+            // No more incoming solutions than matches of the pattern.
+            return nestedLoop.apply(buffer.iterator());
+        if ( matches < maxBlocks*limit ) {
+            rCxt.countOperator(RulesExecCxt.Operator.HASH_JOIN_BUILD_ON_INPUT);
+            return buildOnInput(all, graph, findPattern, joinKeys, limit);
+        }
+        return nestedLoop.apply(all);
+    }
+
+    private static Node concrete(Node node) {
+        return node.isConcrete() ? node : null;
+    }
+
+    /** Hash the pattern's matches; probe with each solution. */
+    private static Iterator<Binding> buildOnPattern(Iterator<Binding> input, Graph graph, Triple findPattern, JoinKeys joinKeys) {
+        Map<Object, List<Triple>> table = new HashMap<>();
+        ExtendedIterator<Triple> iter = graph.find(findPattern);
+        try {
+            iter.forEachRemaining(triple -> table.computeIfAbsent(joinKeys.key(triple), k -> new ArrayList<>()).add(triple));
+        } finally { iter.close(); }
+        return Iter.flatMap(input, binding -> {
+            List<Triple> bucket = table.get(joinKeys.key(binding));
+            if ( bucket == null )
+                return Iter.nullIterator();
+            return Iter.iter(bucket.iterator()).map(triple -> joinKeys.extend(binding, triple)).removeNulls();
+        });
+    }
+
+    /** Hash the incoming solutions, in blocks; scan the pattern's matches for each block. */
+    private static Iterator<Binding> buildOnInput(Iterator<Binding> input, Graph graph, Triple findPattern, JoinKeys joinKeys, int blockSize) {
+        Iterator<List<Binding>> blocks = new Iterator<>() {
+            @Override
+            public boolean hasNext() { return input.hasNext(); }
+
+            @Override
+            public List<Binding> next() {
+                if ( ! input.hasNext() )
+                    throw new NoSuchElementException();
+                List<Binding> block = new ArrayList<>(Math.min(blockSize, 1024));
+                while ( block.size() < blockSize && input.hasNext() )
+                    block.add(input.next());
+                return block;
+            }
+        };
+        return Iter.flatMap(blocks, block -> {
+            Map<Object, List<Binding>> table = new HashMap<>();
+            for ( Binding binding : block )
+                table.computeIfAbsent(joinKeys.key(binding), k -> new ArrayList<>()).add(binding);
+            return Iter.flatMap(graph.find(findPattern), triple -> {
+                List<Binding> bucket = table.get(joinKeys.key(triple));
+                if ( bucket == null )
+                    return Iter.nullIterator();
+                return Iter.iter(bucket.iterator()).map(binding -> joinKeys.extend(binding, triple)).removeNulls();
+            });
+        });
+    }
+
+    /** Join keys and the extension of a solution by a matched triple. */
+    private record JoinKeys(Var[] vars, boolean[] joinSlots) {
+
+        Object key(Triple triple) {
+            List<Node> key = new ArrayList<>(3);
+            if ( joinSlots[0] ) key.add(triple.getSubject());
+            if ( joinSlots[1] ) key.add(triple.getPredicate());
+            if ( joinSlots[2] ) key.add(triple.getObject());
+            return key;
+        }
+
+        Object key(Binding binding) {
+            List<Node> key = new ArrayList<>(3);
+            for ( int i = 0 ; i < 3 ; i++ ) {
+                if ( joinSlots[i] )
+                    key.add(binding.get(vars[i]));
+            }
+            return key;
+        }
+
+        /** Add the variables of the pattern that are not join variables. Returns null if they are inconsistent. */
+        Binding extend(Binding binding, Triple triple) {
+            BindingBuilder builder = Binding.builder(binding);
+            if ( ! insert(builder, 0, triple.getSubject()) ||
+                 ! insert(builder, 1, triple.getPredicate()) ||
+                 ! insert(builder, 2, triple.getObject()) )
+                return null;
+            return builder.build();
+        }
+
+        private boolean insert(BindingBuilder builder, int i, Node dataNode) {
+            Var var = vars[i];
+            if ( var == null || joinSlots[i] )
+                return true;
+            Node x = builder.get(var);
+            if ( x != null )
+                return x.sameTermAs(dataNode);
+            builder.add(var, dataNode);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.Arrays;
+
+/**
+ * Append-only set of triples of integer ids.
+ * <p>
+ * Rows are numbered in the order they are added, so the triples added since some
+ * point are a range of rows. Indexes are created on first use, for a "mask" of
+ * which of subject ({@link #S}), predicate ({@link #P}) and object ({@link #O})
+ * are given. An index is a chain through the rows for each key, newest row first,
+ * so a range of rows can be found by stopping at the first row before the range.
+ * <p>
+ * Not thread safe for update. When it is no longer being updated, it can be read
+ * from several threads.
+ */
+class IntTripleStore {
+    static final int S = 4;
+    static final int P = 2;
+    static final int O = 1;
+    static final int SPO = S|P|O;
+
+    private int[] rows = new int[3*1024];
+    private int size = 0;
+    // Open addressing: row+1, 0 for an empty slot.
+    private int[] table = new int[2048];
+    // By mask; not 0 (scan) or SPO (table).
+    private final Index[] indexes = new Index[SPO];
+
+    int size() {
+        return size;
+    }
+
+    int subject(int row)   { return rows[3*row]; }
+    int predicate(int row) { return rows[3*row+1]; }
+    int object(int row)    { return rows[3*row+2]; }
+
+    /** Add a triple; return true if it is new. */
+    boolean add(int s, int p, int o) {
+        int i = slot(table, s, p, o);
+        if ( table[i] != 0 )
+            return false;
+        if ( 3*size+3 > rows.length )
+            rows = Arrays.copyOf(rows, 2*rows.length);
+        int row = size++;
+        rows[3*row] = s;
+        rows[3*row+1] = p;
+        rows[3*row+2] = o;
+        table[i] = row+1;
+        if ( 2*size > table.length )
+            rehash();
+        for ( Index index : indexes ) {
+            if ( index != null )
+                index.add(row);
+        }
+        return true;
+    }
+
+    /** The row of a triple, or -1. */
+    int find(int s, int p, int o) {
+        return table[slot(table, s, p, o)]-1;
+    }
+
+    /**
+     * The newest row with the terms of the mask, or -1.
+     * Other rows follow with {@link #next}. The mask is not 0 or {@link #SPO}.
+     */
+    int first(int mask, int s, int p, int o) {
+        return index(mask).heads.get(key(mask, s, p, o));
+    }
+
+    /** The next older row after {@code row} for the index of the mask, or -1. */
+    int next(int mask, int row) {
+        return indexes[mask].next[row];
+    }
+
+    /** Number of rows with the terms of the mask, counting stops at the limit. */
+    int count(int mask, int s, int p, int o, int limit) {
+        if ( mask == 0 )
+            return Math.min(size, limit);
+        if ( mask == SPO )
+            return ( find(s, p, o) >= 0 ) ? 1 : 0;
+        int x = 0;
+        for ( int row = first(mask, s, p, o) ; row >= 0 && x < limit ; row = next(mask, row) )
+            x++;
+        return x;
+    }
+
+    private synchronized Index index(int mask) {
+        Index index = indexes[mask];
+        if ( index == null ) {
+            index = new Index(mask);
+            indexes[mask] = index;
+        }
+        return index;
+    }
+
+    // Slot for the triple: either the row of the triple or an empty slot.
+    private int slot(int[] tbl, int s, int p, int o) {
+        int mask = tbl.length-1;
+        int i = hash(s, p, o) & mask;
+        while ( tbl[i] != 0 ) {
+            int r = tbl[i]-1;
+            if ( rows[3*r] == s && rows[3*r+1] == p && rows[3*r+2] == o )
+                return i;
+            i = (i+1) & mask;
+        }
+        return i;
+    }
+
+    private void rehash() {
+        int[] table2 = new int[2*table.length];
+        for ( int r = 0 ; r < size ; r++ )
+            table2[slot(table2, rows[3*r], rows[3*r+1], rows[3*r+2])] = r+1;
+        table = table2;
+    }
+
+    private static int hash(int s, int p, int o) {
+        int h = (s*31 + p)*31 + o;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static long key(int mask, int s, int p, int o) {
+        return switch (mask) {
+            case S -> s;
+            case P -> p;
+            case O -> o;
+            case S|P -> pack(s, p);
+            case S|O -> pack(s, o);
+            case P|O -> pack(p, o);
+            default -> throw new IllegalArgumentException("Mask: "+mask);
+        };
+    }
+
+    private static long pack(int a, int b) {
+        return ((long)a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    /** Chains of rows, newest first, by key. */
+    private final class Index {
+        private final int mask;
+        private final LongIntMap heads = new LongIntMap();
+        private int[] next;
+
+        Index(int mask) {
+            this.mask = mask;
+            this.next = new int[Math.max(16, size)];
+            for ( int r = 0 ; r < size ; r++ )
+                add(r);
+        }
+
+        void add(int row) {
+            if ( row >= next.length )
+                next = Arrays.copyOf(next, Math.max(2*next.length, row+1));
+            long k = key(mask, rows[3*row], rows[3*row+1], rows[3*row+2]);
+            next[row] = heads.get(k);
+            heads.put(k, row);
+        }
+    }
+
+    /** Open addressing map from non-negative long to int. */
+    private static final class LongIntMap {
+        private long[] keys = newKeys(16);
+        private int[] values = new int[16];
+        private int count = 0;
+
+        private static long[] newKeys(int n) {
+            long[] x = new long[n];
+            Arrays.fill(x, -1L);
+            return x;
+        }
+
+        int get(long key) {
+            int mask = keys.length-1;
+            for ( int i = hash(key) & mask ; keys[i] != -1L ; i = (i+1) & mask ) {
+                if ( keys[i] == key )
+                    return values[i];
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if ( 2*(count+1) > keys.length )
+                resize();
+            int mask = keys.length-1;
+            int i = hash(key) & mask;
+            while ( keys[i] != -1L && keys[i] != key )
+                i = (i+1) & mask;
+            if ( keys[i] == -1L ) {
+                keys[i] = key;
+                count++;
+            }
+            values[i] = value;
+        }
+
+        private void resize() {
+            long[] keys0 = keys;
+            int[] values0 = values;
+            keys = newKeys(2*keys0.length);
+            values = new int[2*values0.length];
+            int mask = keys.length-1;
+            for ( int j = 0 ; j < keys0.length ; j++ ) {
+                if ( keys0[j] == -1L )
+                    continue;
+                int i = hash(keys0[j]) & mask;
+                while ( keys[i] != -1L )
+                    i = (i+1) & mask;
+                keys[i] = keys0[j];
+                values[i] = values0[j];
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h ^ (h >>> 32));
+        }
+    }
+}
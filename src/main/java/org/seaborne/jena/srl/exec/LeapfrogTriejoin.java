@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import static org.seaborne.jena.srl.exec.IntTripleStore.O;
+import static org.seaborne.jena.srl.exec.IntTripleStore.P;
+import static org.seaborne.jena.srl.exec.IntTripleStore.S;
+import static org.seaborne.jena.srl.exec.IntTripleStore.SPO;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Leapfrog Triejoin of the triple patterns of a rule body over an {@link IntTripleStore}.
+ * <p>
+ * Variables are bound one at a time, in a fixed order. For each pattern, the
+ * matching rows are projected onto its variables, in that order, and sorted, which
+ * makes a trie as a flat array. The values of a variable are the intersection of
+ * the values at the current level of the tries of the patterns that have the variable,
+ * found by leapfrogging: each trie seeks forward to the largest value seen so far.
+ * This is worst-case optimal: the work is bounded by the largest possible output,
+ * not by the size of the intermediate results of pairwise joins, as can happen for
+ * cyclic bodies such as {@code ?a :knows ?b . ?b :knows ?c . ?c :knows ?a}.
+ * <p>
+ * Tries are kept while the row limit is the same, so the tries of the whole relation
+ * are shared by the delta steps of a semi-naive round.
+ */
+class LeapfrogTriejoin {
+
+    // The body index and terms of each pattern: an id (>= 0) or a variable slot (-(slot+1)).
+    private final int[] patternIndexes;
+    private final int[][] patternTerms;
+    // Variable slots in order of binding.
+    private final int[] varOrder;
+    // Per pattern, the variable slots in varOrder order (the trie levels).
+    private final int[][] trieVars;
+    // Per level, the patterns with the variable, and the variable's level in each.
+    private final int[][] participants;
+    private final int[][] participantLevels;
+
+    // Cache : key (pattern, from row) for the tries at cachedLimit.
+    private final Map<Long, Trie> tries = new HashMap<>();
+    private int cachedLimit = -1;
+
+    /** A sorted, duplicate-free, array of rows of {@code width} ints. */
+    private record Trie(int[] data, int width, int size) {
+        int value(int row, int level) {
+            return data[row*width+level];
+        }
+    }
+
+    LeapfrogTriejoin(int[] patternIndexes, int[][] patternTerms, int[] varOrder) {
+        this.patternIndexes = patternIndexes;
+        this.patternTerms = patternTerms;
+        this.varOrder = varOrder;
+        int N = patternTerms.length;
+        this.trieVars = new int[N][];
+        for ( int j = 0 ; j < N ; j++ ) {
+            int[] terms = patternTerms[j];
+            int[] x = new int[3];
+            int w = 0;
+            for ( int slot : varOrder ) {
+                if ( terms[0] == -slot-1 || terms[1] == -slot-1 || terms[2] == -slot-1 )
+                    x[w++] = slot;
+            }
+            trieVars[j] = Arrays.copyOf(x, w);
+        }
+        this.participants = new int[varOrder.length][];
+        this.participantLevels = new int[varOrder.length][];
+        for ( int d = 0 ; d < varOrder.length ; d++ ) {
+            int[] p = new int[N];
+            int[] lvl = new int[N];
+            int n = 0;
+            for ( int j = 0 ; j < N ; j++ ) {
+                for ( int k = 0 ; k < trieVars[j].length ; k++ ) {
+                    if ( trieVars[j][k] == varOrder[d] ) {
+                        p[n] = j;
+                        lvl[n] = k;
+                        n++;
+                    }
+                }
+            }
+            participants[d] = Arrays.copyOf(p, n);
+            participantLevels[d] = Arrays.copyOf(lvl, n);
+        }
+    }
+
+    /**
+     * Bind the variables of the patterns, calling {@code action} for each solution.
+     * The pattern at body index {@code deltaIndex}, if not -1, is matched to the rows
+     * from {@code deltaFrom}; all rows are before {@code limit}.
+     * Returns true if the action returned true to stop.
+     */
+    boolean join(IntTripleStore store, int deltaIndex, int deltaFrom, int limit, int[] slots, BooleanSupplier action) {
+        if ( limit != cachedLimit ) {
+            tries.clear();
+            cachedLimit = limit;
+        }
+        int N = patternTerms.length;
+        Trie[] current = new Trie[N];
+        int[] lo = new int[N];
+        int[] hi = new int[N];
+        for ( int j = 0 ; j < N ; j++ ) {
+            int from = ( patternIndexes[j] == deltaIndex ) ? deltaFrom : 0;
+            int jj = j;
+            Trie trie = tries.computeIfAbsent(((long)j << 32) | from, k -> build(store, jj, from, limit));
+            if ( trie.size() == 0 )
+                return false;
+            current[j] = trie;
+            lo[j] = 0;
+            hi[j] = trie.size();
+        }
+        return level(0, current, lo, hi, slots, action);
+    }
+
+    private boolean level(int d, Trie[] current, int[] lo, int[] hi, int[] slots, BooleanSupplier action) {
+        if ( d == varOrder.length )
+            return action.getAsBoolean();
+        int[] parts = participants[d];
+        int[] levels = participantLevels[d];
+        int k = parts.length;
+        int[] pos = new int[k];
+        int[] saveLo = new int[k];
+        int[] saveHi = new int[k];
+        for ( int i = 0 ; i < k ; i++ ) {
+            pos[i] = lo[parts[i]];
+            saveLo[i] = lo[parts[i]];
+            saveHi[i] = hi[parts[i]];
+        }
+        int slot = varOrder[d];
+        while ( true ) {
+            // Leapfrog: seek every trie to the largest current value.
+            int max = -1;
+            for ( int i = 0 ; i < k ; i++ )
+                max = Math.max(max, current[parts[i]].value(pos[i], levels[i]));
+            boolean allEqual = true;
+            for ( int i = 0 ; i < k ; i++ ) {
+                Trie trie = current[parts[i]];
+                if ( trie.value(pos[i], levels[i]) < max ) {
+                    pos[i] = seek(trie, levels[i], pos[i], saveHi[i], max);
+                    if ( pos[i] == saveHi[i] )
+                        return restore(parts, lo, hi, saveLo, saveHi, false);
+                    if ( trie.value(pos[i], levels[i]) != max )
+                        allEqual = false;
+                }
+            }
+            if ( ! allEqual )
+                continue;
+            // All tries are at value "max": narrow each to the rows with that value.
+            int[] ends = new int[k];
+            for ( int i = 0 ; i < k ; i++ ) {
+                ends[i] = seek(current[parts[i]], levels[i], pos[i], saveHi[i], max+1);
+                lo[parts[i]] = pos[i];
+                hi[parts[i]] = ends[i];
+            }
+            slots[slot] = max;
+            boolean stop = level(d+1, current, lo, hi, slots, action);
+            slots[slot] = -1;
+            if ( stop )
+                return restore(parts, lo, hi, saveLo, saveHi, true);
+            for ( int i = 0 ; i < k ; i++ ) {
+                pos[i] = ends[i];
+                if ( pos[i] == saveHi[i] )
+                    return restore(parts, lo, hi, saveLo, saveHi, false);
+            }
+        }
+    }
+
+    private static boolean restore(int[] parts, int[] lo, int[] hi, int[] saveLo, int[] saveHi, boolean result) {
+        for ( int i = 0 ; i < parts.length ; i++ ) {
+            lo[parts[i]] = saveLo[i];
+            hi[parts[i]] = saveHi[i];
+        }
+        return result;
+    }
+
+    /** First row in [from, to) with a value at the level of at least key, or {@code to}. */
+    private static int seek(Trie trie, int level, int from, int to, int key) {
+        // Gallop, then binary search.
+        int step = 1;
+        int lower = from;
+        int upper = from;
+        while ( upper < to && trie.value(upper, level) < key ) {
+            lower = upper+1;
+            upper = upper+step;
+            step = 2*step;
+        }
+        if ( upper > to )
+            upper = to;
+        while ( lower < upper ) {
+            int mid = (lower+upper) >>> 1;
+            if ( trie.value(mid, level) < key )
+                lower = mid+1;
+            else
+                upper = mid;
+        }
+        return lower;
+    }
+
+    /** The trie of the matches of pattern j in the rows [from, limit). */
+    private Trie build(IntTripleStore store, int j, int from, int limit) {
+        int[] terms = patternTerms[j];
+        int[] vars = trieVars[j];
+        int w = vars.length;
+        int s = Math.max(terms[0], -1);
+        int p = Math.max(terms[1], -1);
+        int o = Math.max(terms[2], -1);
+        int mask = ( s >= 0 ? S : 0 ) | ( p >= 0 ? P : 0 ) | ( o >= 0 ? O : 0 );
+        int[] rowTerms = new int[3];
+        int[] data = new int[Math.max(16, 4*w)];
+        int n = 0;
+        if ( mask == SPO ) {
+            int row = store.find(s, p, o);
+            // No variables : one empty row if the triple is present.
+            return new Trie(data, 0, ( row >= from && row < limit ) ? 1 : 0);
+        }
+        int row = ( mask == 0 ) ? limit-1 : store.first(mask, s, p, o);
+        for ( ; row >= from ; row = ( mask == 0 ) ? row-1 : store.next(mask, row) ) {
+            if ( row >= limit )
+                continue;
+            rowTerms[0] = store.subject(row);
+            rowTerms[1] = store.predicate(row);
+            rowTerms[2] = store.object(row);
+            if ( (n+1)*w > data.length )
+                data = Arrays.copyOf(data, 2*data.length);
+            if ( project(terms, vars, rowTerms, data, n*w) )
+                n++;
+        }
+        return sortDistinct(data, w, n);
+    }
+
+    /** Project a row onto the variables; false if a repeated variable has different values. */
+    private static boolean project(int[] terms, int[] vars, int[] rowTerms, int[] data, int offset) {
+        for ( int k = 0 ; k < vars.length ; k++ ) {
+            int code = -vars[k]-1;
+            int value = -1;
+            for ( int i = 0 ; i < 3 ; i++ ) {
+                if ( terms[i] != code )
+                    continue;
+                if ( value >= 0 && value != rowTerms[i] )
+                    return false;
+                value = rowTerms[i];
+            }
+            data[offset+k] = value;
+        }
+        return true;
+    }
+
+    private static Trie sortDistinct(int[] data, int w, int n) {
+        int[] idx = new int[n];
+        for ( int i = 0 ; i < n ; i++ )
+            idx[i] = i;
+        int[] tmp = new int[n];
+        mergeSort(idx, tmp, 0, n, data, w);
+        int[] sorted = new int[n*w];
+        int m = 0;
+        for ( int i = 0 ; i < n ; i++ ) {
+            int r = idx[i];
+            if ( m > 0 && compare(data, r*w, sorted, (m-1)*w, w) == 0 )
+                continue;
+            System.arraycopy(data, r*w, sorted, m*w, w);
+            m++;
+        }
+        return new Trie(sorted, w, m);
+    }
+
+    private static void mergeSort(int[] idx, int[] tmp, int from, int to, int[] data, int w) {
+        if ( to-from < 2 )
+            return;
+        int mid = (from+to) >>> 1;
+        mergeSort(idx, tmp, from, mid, data, w);
+        mergeSort(idx, tmp, mid, to, data, w);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while ( i < mid && j < to ) {
+            if ( compare(data, idx[j]*w, data, idx[i]*w, w) < 0 )
+                tmp[k++] = idx[j++];
+            else
+                tmp[k++] = idx[i++];
+        }
+        while ( i < mid )
+            tmp[k++] = idx[i++];
+        while ( j < to )
+            tmp[k++] = idx[j++];
+        System.arraycopy(tmp, from, idx, from, to-from);
+    }
+
+    private static int compare(int[] a, int offsetA, int[] b, int offsetB, int w) {
+        for ( int k = 0 ; k < w ; k++ ) {
+            int c = Integer.compare(a[offsetA+k], b[offsetB+k]);
+            if ( c != 0 )
+                return c;
+        }
+        return 0;
+    }
+}
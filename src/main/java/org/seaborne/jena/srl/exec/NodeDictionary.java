@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * Dictionary of RDF terms to integer ids, allocated densely from zero.
+ * Not thread safe.
+ */
+class NodeDictionary {
+    private final Map<Node, Integer> ids = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+
+    /** The id for a node, allocating one if the node is new. */
+    int encode(Node node) {
+        Integer id = ids.get(node);
+        if ( id != null )
+            return id;
+        int x = nodes.size();
+        nodes.add(node);
+        ids.put(node, x);
+        return x;
+    }
+
+    /** The id for a node, or -1 if it is not in the dictionary. */
+    int get(Node node) {
+        Integer id = ids.get(node);
+        return ( id == null ) ? -1 : id;
+    }
+
+    Node decode(int id) {
+        return nodes.get(id);
+    }
+
+    int size() {
+        return nodes.size();
+    }
+}
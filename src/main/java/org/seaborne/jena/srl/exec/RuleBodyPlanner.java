@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.lang.RuleBodyElement.*;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+import org.seaborne.jena.srl.tuples.Tuple;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * Order the elements of a rule body for evaluation.
+ * <p>
+ * Triple and tuple patterns are chosen greedily: at each step, the pattern with the
+ * lowest estimated number of matches, given the variables bound so far, is next.
+ * Filters, assignments and negations are placed as soon as the variables they had bound
+ * in the written order are bound. A pattern is not placed before a filter, assignment or
+ * negation if it would bind a variable that was not bound at that element in the
+ * written order, so each element sees the same bindings as it would in the written order.
+ */
+public class RuleBodyPlanner {
+
+    /** Estimate of the number of matches of a triple or tuple pattern, given the variables already bound. */
+    public interface Estimator {
+        public double estimate(RuleBodyElement pattern, Set<Var> bound);
+    }
+
+    // Counting stops at this limit.
+    /*package*/ static final int countLimit = 1000;
+    // Reduction in matches for each position that is a bound variable.
+    private static final double boundFactor = 0.1;
+
+    /**
+     * An estimator using the data: the number of triples that match the constants
+     * of a pattern (up to a limit), for example, the count of a predicate, reduced for each
+     * position that is a bound variable.
+     */
+    public static Estimator estimator(Graph graph, TupleStore tupleStore) {
+        Map<Triple, Integer> counts = new HashMap<>();
+        return estimator(findPattern -> counts.computeIfAbsent(findPattern, t -> count(graph, t, countLimit)), tupleStore);
+    }
+
+    /**
+     * An estimator using {@code matches}, the number of triples that match a find pattern
+     * (the constants of a triple pattern), reduced for each position that is a bound variable.
+     */
+    public static Estimator estimator(ToIntFunction<Triple> matches, TupleStore tupleStore) {
+        return (elt, bound) -> {
+            switch (elt) {
+                case EltTriplePattern(Triple triplePattern) -> {
+                    Triple findPattern = Triple.createMatch(concrete(triplePattern.getSubject()),
+                                                            concrete(triplePattern.getPredicate()),
+                                                            concrete(triplePattern.getObject()));
+                    int count = matches.applyAsInt(findPattern);
+                    return count * factor(triplePattern.getSubject(), bound)
+                                 * factor(triplePattern.getPredicate(), bound)
+                                 * factor(triplePattern.getObject(), bound);
+                }
+                case EltTuplePattern(Tuple tuplePattern) -> {
+                    double x = ( tupleStore == null ) ? 0 : tupleStore.size();
+                    for ( Node n : tuplePattern.terms() )
+                        x = x * ( n.isConcrete() ? boundFactor : factor(n, bound) );
+                    return x;
+                }
+                default -> { return 0; }
+            }
+        };
+    }
+
+    /** Count the matches of a find pattern, stopping at the limit. */
+    /*package*/ static int count(Graph graph, Triple findPattern, int limit) {
+        ExtendedIterator<Triple> iter = graph.find(findPattern);
+        try {
+            int x = 0;
+            while ( x < limit && iter.hasNext() ) {
+                iter.next();
+                x++;
+            }
+            return x;
+        } finally { iter.close(); }
+    }
+
+    private record CountKey(Graph graph, Triple findPattern, int limit) {}
+
+    /**
+     * Count the matches of a find pattern, stopping at the limit, at most once in each
+     * round of the scope. {@code scope} may be null.
+     */
+    /*package*/ static int count(Graph graph, Triple findPattern, int limit, EvalScope scope) {
+        if ( scope == null )
+            return count(graph, findPattern, limit);
+        Integer x = scope.roundValue(new CountKey(graph, findPattern, limit), () -> count(graph, findPattern, limit));
+        return x;
+    }
+
+    private static Node concrete(Node node) {
+        return node.isConcrete() ? node : null;
+    }
+
+    private static double factor(Node node, Set<Var> bound) {
+        if ( Var.isVar(node) && bound.contains(Var.alloc(node)) )
+            return boundFactor;
+        return 1.0;
+    }
+
+    /**
+     * Return the order of evaluation of the body elements, as indexes into the list.
+     * {@code bound} is the set of variables bound before the body is evaluated.
+     */
+    public static int[] plan(List<RuleBodyElement> ruleElts, Set<Var> bound, Estimator estimator) {
+        return plan(ruleElts, bound, estimator, -1);
+    }
+
+    /**
+     * Return the order of evaluation of the body elements, as indexes into the list.
+     * The pattern at {@code firstIndex}, if not -1, is treated as having no cost
+     * so it is placed first if it can be.
+     */
+    public static int[] plan(List<RuleBodyElement> ruleElts, Set<Var> bound, Estimator estimator, int firstIndex) {
+        int N = ruleElts.size();
+        int[] order = new int[N];
+        int patterns = 0;
+        for ( int i = 0 ; i < N ; i++ ) {
+            order[i] = i;
+            if ( isPattern(ruleElts.get(i)) )
+                patterns++;
+        }
+        if ( patterns <= 1 && firstIndex < 0 )
+            return order;
+
+        // Variables each element binds; for filters, assignments and negation,
+        // the variables that must be bound before it, and those that must not be.
+        List<Set<Var>> binds = new ArrayList<>(N);
+        List<Set<Var>> needs = new ArrayList<>(N);
+        List<Set<Var>> forbids = new ArrayList<>(N);
+        Set<Var> boundBefore = new HashSet<>(bound);
+        for ( RuleBodyElement elt : ruleElts ) {
+            Set<Var> b = bindsVars(elt);
+            if ( isPattern(elt) ) {
+                needs.add(Set.of());
+                forbids.add(Set.of());
+            } else {
+                Set<Var> mentioned = mentionedVars(elt);
+                Set<Var> need = new HashSet<>(mentioned);
+                need.retainAll(boundBefore);
+                Set<Var> forbid = new HashSet<>(mentioned);
+                forbid.removeAll(boundBefore);
+                needs.add(need);
+                forbids.add(forbid);
+            }
+            binds.add(b);
+            boundBefore.addAll(b);
+        }
+
+        boolean[] placed = new boolean[N];
+        Set<Var> current = new HashSet<>(bound);
+        int n = 0;
+        while ( n < N ) {
+            // Filters, assignments and negations, as soon as possible.
+            boolean progress = true;
+            while ( progress ) {
+                progress = false;
+                for ( int i = 0 ; i < N ; i++ ) {
+                    if ( placed[i] || isPattern(ruleElts.get(i)) )
+                        continue;
+                    if ( current.containsAll(needs.get(i)) && eligible(i, placed, binds, forbids) ) {
+                        placed[i] = true;
+                        order[n++] = i;
+                        current.addAll(binds.get(i));
+                        progress = true;
+                    }
+                }
+            }
+            if ( n == N )
+                break;
+            // Cheapest pattern.
+            int best = -1;
+            double bestCost = 0;
+            for ( int i = 0 ; i < N ; i++ ) {
+                if ( placed[i] || ! isPattern(ruleElts.get(i)) )
+                    continue;
+                if ( ! eligible(i, placed, binds, forbids) )
+                    continue;
+                double cost = ( i == firstIndex ) ? 0 : estimator.estimate(ruleElts.get(i), current);
+                if ( best < 0 || cost < bestCost ) {
+                    best = i;
+                    bestCost = cost;
+                }
+            }
+            if ( best < 0 ) {
+                // Can not happen: the first unplaced element in the written order can always be placed.
+                for ( int i = 0 ; i < N ; i++ ) {
+                    if ( ! placed[i] ) {
+                        best = i;
+                        break;
+                    }
+                }
+            }
+            placed[best] = true;
+            order[n++] = best;
+            current.addAll(binds.get(best));
+        }
+        return order;
+    }
+
+    /**
+     * Whether the body should be evaluated with a worst-case optimal join
+     * ({@link LeapfrogTriejoin}) of all its triple patterns, followed by the other elements in
+     * the written order. This is chosen for cyclic bodies where each filter, assignment and
+     * negation would see the same bindings as in the written order.
+     */
+    public static boolean useWorstCaseOptimalJoin(List<RuleBodyElement> ruleElts) {
+        if ( ! SysJenaRules.worstCaseOptimalJoins )
+            return false;
+        Set<Var> patternVars = new HashSet<>();
+        for ( RuleBodyElement elt : ruleElts ) {
+            if ( elt instanceof EltTuplePattern )
+                return false;
+            if ( elt instanceof EltTriplePattern )
+                patternVars.addAll(bindsVars(elt));
+        }
+        Set<Var> boundBefore = new HashSet<>();
+        for ( RuleBodyElement elt : ruleElts ) {
+            if ( ! isPattern(elt) ) {
+                Set<Var> mentioned = mentionedVars(elt);
+                if ( elt instanceof EltAssignment(Var var, Expr expression) ) {
+                    if ( patternVars.contains(var) )
+                        return false;
+                    mentioned.remove(var);
+                }
+                mentioned.retainAll(patternVars);
+                if ( ! boundBefore.containsAll(mentioned) )
+                    return false;
+            }
+            boundBefore.addAll(bindsVars(elt));
+        }
+        return isCyclic(ruleElts);
+    }
+
+    /**
+     * Whether the triple and tuple patterns of a body, as a hypergraph of their
+     * variables, are cyclic. Uses the GYO reduction: remove variables that occur in only one
+     * pattern, and patterns whose variables are all in another pattern; the body is
+     * acyclic if this removes all the patterns.
+     */
+    public static boolean isCyclic(List<RuleBodyElement> ruleElts) {
+        List<Set<Var>> edges = new ArrayList<>();
+        for ( RuleBodyElement elt : ruleElts ) {
+            if ( isPattern(elt) )
+                edges.add(bindsVars(elt));
+        }
+        boolean changed = true;
+        while ( changed && ! edges.isEmpty() ) {
+            changed = false;
+            Map<Var, Integer> occurrences = new HashMap<>();
+            for ( Set<Var> edge : edges )
+                edge.forEach(v -> occurrences.merge(v, 1, Integer::sum));
+            for ( Set<Var> edge : edges ) {
+                if ( edge.removeIf(v -> occurrences.get(v) == 1) )
+                    changed = true;
+            }
+            for ( int i = 0 ; i < edges.size() ; i++ ) {
+                Set<Var> edge = edges.get(i);
+                boolean contained = edge.isEmpty();
+                for ( int j = 0 ; j < edges.size() && ! contained ; j++ )
+                    contained = ( j != i && edges.get(j).containsAll(edge) );
+                if ( contained ) {
+                    edges.remove(i);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return ! edges.isEmpty();
+    }
+
+    /** An element can be placed if it does not bind a variable that an unplaced element requires to be unbound. */
+    private static boolean eligible(int idx, boolean[] placed, List<Set<Var>> binds, List<Set<Var>> forbids) {
+        Set<Var> b = binds.get(idx);
+        if ( b.isEmpty() )
+            return true;
+        for ( int j = 0 ; j < placed.length ; j++ ) {
+            if ( j == idx || placed[j] )
+                continue;
+            for ( Var v : forbids.get(j) ) {
+                if ( b.contains(v) )
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /*package*/ static boolean isPattern(RuleBodyElement elt) {
+        return elt instanceof EltTriplePattern || elt instanceof EltTuplePattern;
+    }
+
+    /*package*/ static Set<Var> bindsVars(RuleBodyElement elt) {
+        Set<Var> acc = new HashSet<>();
+        switch (elt) {
+            case EltTriplePattern(Triple triplePattern) -> addVars(acc, triplePattern);
+            case EltTuplePattern(Tuple tuplePattern) -> tuplePattern.terms().forEach(n -> addVars(acc, n));
+            case EltAssignment(Var var, Expr expression) -> acc.add(var);
+            case EltFilter(Expr condition) -> {}
+            case EltNegation(List<RuleBodyElement> inner, boolean grounded) -> {}
+        }
+        return acc;
+    }
+
+    /*package*/ static Set<Var> mentionedVars(RuleBodyElement elt) {
+        Set<Var> acc = new HashSet<>();
+        accMentionedVars(acc, elt);
+        return acc;
+    }
+
+    private static void accMentionedVars(Set<Var> acc, RuleBodyElement elt) {
+        switch (elt) {
+            case EltTriplePattern(Triple triplePattern) -> addVars(acc, triplePattern);
+            case EltTuplePattern(Tuple tuplePattern) -> tuplePattern.terms().forEach(n -> addVars(acc, n));
+            case EltAssignment(Var var, Expr expression) -> {
+                acc.add(var);
+                acc.addAll(expression.getVarsMentioned());
+            }
+            case EltFilter(Expr condition) -> acc.addAll(condition.getVarsMentioned());
+            case EltNegation(List<RuleBodyElement> inner, boolean grounded) -> inner.forEach(e -> accMentionedVars(acc, e));
+        }
+    }
+
+    private static void addVars(Set<Var> acc, Triple triple) {
+        addVars(acc, triple.getSubject());
+        addVars(acc, triple.getPredicate());
+        addVars(acc, triple.getObject());
+    }
+
+    private static void addVars(Set<Var> acc, Node node) {
+        if ( Var.isVar(node) )
+            acc.add(Var.alloc(node));
+        else if ( node.isTripleTerm() )
+            addVars(acc, node.getTriple());
+    }
+}
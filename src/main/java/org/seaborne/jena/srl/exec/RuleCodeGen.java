@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import static java.lang.constant.ConstantDescs.*;
+import static org.seaborne.jena.srl.exec.IntTripleStore.O;
+import static org.seaborne.jena.srl.exec.IntTripleStore.P;
+import static org.seaborne.jena.srl.exec.IntTripleStore.S;
+import static org.seaborne.jena.srl.exec.IntTripleStore.SPO;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.seaborne.jena.srl.exec.RulesEngineFwdEncoded.*;
+
+/**
+ * Generate a class for the body and head of a rule of the {@link RulesEngineFwdEncoded encoded engine},
+ * for one evaluation order and delta position.
+ * <p>
+ * The generated code is the nested loops of the join over the {@link IntTripleStore},
+ * with the rule variables as local variables, followed by adding the head triples.
+ * Whether a variable is bound at each step is known when the code is generated, so
+ * there are no checks of variable slots. Filters, assignments and negations call back
+ * to the engine ({@link Callbacks}), with the bound variables in an {@code int[]}.
+ * <p>
+ * Constants are read from an array given to {@link Body#run} so that the code does not
+ * depend on the ids of the dictionary of an evaluation: the terms of pattern
+ * {@code i} are at {@code 3*i}, {@code 3*i+1} and {@code 3*i+2} and the head terms
+ * follow the patterns (see {@link #constants}).
+ * <p>
+ * Classes are defined as hidden classes in this package.
+ * Rules with blank nodes in the head are not supported.
+ */
+class RuleCodeGen {
+
+    /** Generated code for a rule. */
+    interface Body {
+        /**
+         * Evaluate the rule over rows before {@code limit}, with the pattern at the delta
+         * position, if any, over the rows from {@code deltaFrom}. {@code slots} has an
+         * entry, set to -1, for each variable of the rule.
+         */
+        void run(Callbacks callbacks, IntTripleStore store, int[] constants, int[] slots, int deltaFrom, int limit);
+    }
+
+    /** Body elements that are not generated. The index is the position of the element in the body. */
+    interface Callbacks {
+        boolean filter(int idx, int[] slots);
+        /** The id of the assigned value, or -1 for an evaluation error. */
+        int assign(int idx, int[] slots);
+        /** Whether the negation at {@code idx} has a match. */
+        boolean exists(int idx, int[] slots);
+        void add(int s, int p, int o);
+    }
+
+    /** Whether code can be generated for a rule. */
+    static boolean canGenerate(CompiledRule rule) {
+        return ! rule.hasBlankNodes;
+    }
+
+    /** The constants array for a rule, for {@link Body#run}. */
+    static int[] constants(CompiledRule rule) {
+        int[] x = new int[3*rule.ops.length + rule.head.length];
+        for ( int i = 0 ; i < rule.ops.length ; i++ ) {
+            if ( rule.ops[i] instanceof OpPattern(int s, int p, int o) ) {
+                x[3*i] = s;
+                x[3*i+1] = p;
+                x[3*i+2] = o;
+            }
+        }
+        System.arraycopy(rule.head, 0, x, 3*rule.ops.length, rule.head.length);
+        return x;
+    }
+
+    private static final ClassDesc CD_IntTripleStore = desc(IntTripleStore.class);
+    private static final ClassDesc CD_Callbacks = desc(Callbacks.class);
+    private static final ClassDesc CD_Body = desc(Body.class);
+    private static final ClassDesc CD_intArray = CD_int.arrayType();
+
+    private static final MethodTypeDesc MTD_run = MethodTypeDesc.of(CD_void, CD_Callbacks, CD_IntTripleStore,
+                                                                     CD_intArray, CD_intArray, CD_int, CD_int);
+    private static final MethodTypeDesc MTD_find = MethodTypeDesc.of(CD_int, CD_int, CD_int, CD_int);
+    private static final MethodTypeDesc MTD_first = MethodTypeDesc.of(CD_int, CD_int, CD_int, CD_int, CD_int);
+    private static final MethodTypeDesc MTD_next = MethodTypeDesc.of(CD_int, CD_int, CD_int);
+    private static final MethodTypeDesc MTD_term = MethodTypeDesc.of(CD_int, CD_int);
+    private static final MethodTypeDesc MTD_test = MethodTypeDesc.of(CD_boolean, CD_int, CD_intArray);
+    private static final MethodTypeDesc MTD_assign = MethodTypeDesc.of(CD_int, CD_int, CD_intArray);
+    private static final MethodTypeDesc MTD_add = MethodTypeDesc.of(CD_void, CD_int, CD_int, CD_int);
+
+    private static final String[] termMethods = { "subject", "predicate", "object" };
+
+    // Arguments of run.
+    private static final int CALLBACKS = 1;
+    private static final int STORE = 2;
+    private static final int CONSTANTS = 3;
+    private static final int SLOTS = 4;
+    private static final int DELTA_FROM = 5;
+    private static final int LIMIT = 6;
+    // Then the rule variables, then the row of each step.
+    private static final int VARS = 7;
+
+    private static ClassDesc desc(Class<?> cls) {
+        return cls.describeConstable().orElseThrow();
+    }
+
+    /** Generate the code for a rule, evaluated in the given order and delta position. */
+    static Body generate(CompiledRule rule, int[] order, int deltaIndex) {
+        RuleCodeGen gen = new RuleCodeGen(rule, order, deltaIndex);
+        ClassDesc thisClass = ClassDesc.of(RuleCodeGen.class.getPackageName(), "GeneratedRuleBody");
+        byte[] bytes = ClassFile.of().build(thisClass, clb -> {
+            clb.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+            clb.withInterfaceSymbols(CD_Body);
+            clb.withMethodBody(INIT_NAME, MTD_void, ClassFile.ACC_PUBLIC,
+                               cb -> cb.aload(0).invokespecial(CD_Object, INIT_NAME, MTD_void).return_());
+            clb.withMethodBody("run", MTD_run, ClassFile.ACC_PUBLIC, gen::run);
+        });
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Body)lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable th) {
+            throw new RulesEvalException("Failed to generate code for rule: "+th.getMessage(), th);
+        }
+    }
+
+    private final CompiledRule rule;
+    private final int[] order;
+    private final int deltaIndex;
+    private final int numSlots;
+
+    private RuleCodeGen(CompiledRule rule, int[] order, int deltaIndex) {
+        this.rule = rule;
+        this.order = order;
+        this.deltaIndex = deltaIndex;
+        this.numSlots = rule.numSlots;
+    }
+
+    private void run(CodeBuilder cb) {
+        // Definitely assigned: all variables and rows.
+        for ( int j = 0 ; j < numSlots + order.length ; j++ ) {
+            cb.iconst_m1();
+            cb.istore(VARS+j);
+        }
+        Label end = cb.newLabel();
+        step(cb, 0, new boolean[numSlots], end);
+        cb.labelBinding(end);
+        cb.return_();
+    }
+
+    private static int varLocal(int slot) {
+        return VARS+slot;
+    }
+
+    private int rowLocal(int i) {
+        return VARS+numSlots+i;
+    }
+
+    /**
+     * Code for step {@code i} of the order and the steps after it.
+     * The code jumps to {@code fail} when a solution is rejected, otherwise it
+     * continues after the code generated.
+     */
+    private void step(CodeBuilder cb, int i, boolean[] bound, Label fail) {
+        if ( i == order.length ) {
+            head(cb, bound);
+            return;
+        }
+        int idx = order[i];
+        switch (rule.ops[idx]) {
+            case OpPattern(int s, int p, int o) -> pattern(cb, i, idx, new int[] {s, p, o}, bound, fail);
+            case OpFilter f -> {
+                callback(cb, "filter", MTD_test, idx, bound);
+                cb.ifeq(fail);
+                step(cb, i+1, bound, fail);
+            }
+            case OpAssign a -> {
+                callback(cb, "assign", MTD_assign, idx, bound);
+                cb.istore(varLocal(a.slot()));
+                cb.iload(varLocal(a.slot()));
+                cb.iflt(fail);
+                boolean[] bound2 = bound.clone();
+                bound2[a.slot()] = true;
+                step(cb, i+1, bound2, fail);
+            }
+            case OpNegation n -> {
+                callback(cb, "exists", MTD_test, idx, bound);
+                cb.ifne(fail);
+                step(cb, i+1, bound, fail);
+            }
+        }
+    }
+
+    private void pattern(CodeBuilder cb, int i, int idx, int[] terms, boolean[] bound, Label fail) {
+        int mask = 0;
+        for ( int k = 0 ; k < 3 ; k++ ) {
+            if ( terms[k] >= 0 || bound[-terms[k]-1] )
+                mask |= ( k == 0 ) ? S : ( k == 1 ) ? P : O;
+        }
+        int row = rowLocal(i);
+        if ( mask == SPO ) {
+            cb.aload(STORE);
+            for ( int k = 0 ; k < 3 ; k++ )
+                term(cb, 3*idx+k, terms[k]);
+            cb.invokevirtual(CD_IntTripleStore, "find", MTD_find);
+            cb.istore(row);
+            rowRange(cb, row, idx, fail, fail);
+            step(cb, i+1, bound, fail);
+            return;
+        }
+        Label loop = cb.newLabel();
+        Label next = cb.newLabel();
+        Label end = cb.newLabel();
+        // Newest first.
+        if ( mask == 0 ) {
+            cb.iload(LIMIT);
+            cb.iconst_1();
+            cb.isub();
+        } else {
+            cb.aload(STORE);
+            cb.loadConstant(mask);
+            for ( int k = 0 ; k < 3 ; k++ ) {
+                if ( isFree(terms[k], bound) )
+                    cb.iconst_m1();
+                else
+                    term(cb, 3*idx+k, terms[k]);
+            }
+            cb.invokevirtual(CD_IntTripleStore, "first", MTD_first);
+        }
+        cb.istore(row);
+        cb.labelBinding(loop);
+        rowRange(cb, row, idx, end, next);
+        // Bind the free variables; a variable may occur more than once.
+        boolean[] bound2 = bound.clone();
+        for ( int k = 0 ; k < 3 ; k++ ) {
+            if ( ! isFree(terms[k], bound) )
+                continue;
+            int slot = -terms[k]-1;
+            cb.aload(STORE);
+            cb.iload(row);
+            cb.invokevirtual(CD_IntTripleStore, termMethods[k], MTD_term);
+            if ( bound2[slot] ) {
+                cb.iload(varLocal(slot));
+                cb.if_icmpne(next);
+            } else {
+                cb.istore(varLocal(slot));
+                bound2[slot] = true;
+            }
+        }
+        step(cb, i+1, bound2, next);
+        cb.labelBinding(next);
+        if ( mask == 0 ) {
+            cb.iinc(row, -1);
+        } else {
+            cb.aload(STORE);
+            cb.loadConstant(mask);
+            cb.iload(row);
+            cb.invokevirtual(CD_IntTripleStore, "next", MTD_next);
+            cb.istore(row);
+        }
+        cb.goto_(loop);
+        cb.labelBinding(end);
+    }
+
+    /** Jump to {@code before} if the row is before the start of the range, to {@code after} if it is after the end. */
+    private void rowRange(CodeBuilder cb, int row, int idx, Label before, Label after) {
+        cb.iload(row);
+        if ( idx == deltaIndex )
+            cb.iload(DELTA_FROM);
+        else
+            cb.iconst_0();
+        cb.if_icmplt(before);
+        cb.iload(row);
+        cb.iload(LIMIT);
+        cb.if_icmpge(after);
+    }
+
+    private static boolean isFree(int term, boolean[] bound) {
+        return term < 0 && ! bound[-term-1];
+    }
+
+    /** Push the value of a constant, or a bound variable. */
+    private void term(CodeBuilder cb, int constantIndex, int term) {
+        if ( term < 0 ) {
+            cb.iload(varLocal(-term-1));
+            return;
+        }
+        cb.aload(CONSTANTS);
+        cb.loadConstant(constantIndex);
+        cb.iaload();
+    }
+
+    /** Call back with the variables in the slots array; unbound variables are -1. */
+    private void callback(CodeBuilder cb, String method, MethodTypeDesc type, int idx, boolean[] bound) {
+        for ( int slot = 0 ; slot < numSlots ; slot++ ) {
+            cb.aload(SLOTS);
+            cb.loadConstant(slot);
+            if ( bound[slot] )
+                cb.iload(varLocal(slot));
+            else
+                cb.iconst_m1();
+            cb.iastore();
+        }
+        cb.aload(CALLBACKS);
+        cb.loadConstant(idx);
+        cb.aload(SLOTS);
+        cb.invokeinterface(CD_Callbacks, method, type);
+    }
+
+    private void head(CodeBuilder cb, boolean[] bound) {
+        int[] head = rule.head;
+        int base = 3*rule.ops.length;
+        triples:
+        for ( int j = 0 ; j < head.length ; j += 3 ) {
+            // A variable not bound by the body: no triple.
+            for ( int k = 0 ; k < 3 ; k++ ) {
+                if ( head[j+k] < 0 && ! bound[-head[j+k]-1] )
+                    continue triples;
+            }
+            cb.aload(CALLBACKS);
+            for ( int k = 0 ; k < 3 ; k++ )
+                term(cb, base+j+k, head[j+k]);
+            cb.invokeinterface(CD_Callbacks, "add", MTD_add);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.main.solver.SolverLib;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.modify.TemplateLib;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.lang.RuleBodyElement.*;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+import org.seaborne.jena.srl.tuples.Tuple;
+import org.seaborne.jena.srl.tuples.TupleStore;
+import org.seaborne.jena.srl.tuples.Tuples;
+
+/**
+ * A rule compiled for repeated execution.
+ * <p>
+ * Body elements are compiled to steps, with the variable positions of triple patterns
+ * resolved, and head templates are split into constant triples and templates needing
+ * substitution. Triple patterns are matched directly on the graph, without an
+ * {@code ExecutionContext} for each execution.
+ * <p>
+ * The evaluation order of the body (see {@link RuleBodyPlanner}) is planned on first use
+ * in a pass over a stratum ({@link EvalScope}), and kept for the pass. At the start of
+ * each round of the pass, it is planned again if the counts of matches that it was
+ * planned with have changed significantly, for example, as the inferred triples grow.
+ * <p>
+ * Plans are created once per rule by {@link RulesExecCxt#rulePlan(Rule)}, or by
+ * {@link EvalScope#rulePlan} for a rule set that is evaluated once, and can be used
+ * from several threads.
+ */
+public class RulePlan {
+
+    public static RulePlan compile(Rule rule) {
+        return new RulePlan(rule);
+    }
+
+    private final Body body;
+    private final Set<Var> assigned;
+    private final Triple[] headTriples;
+    private final List<Tuple> headTuples;
+    private final boolean headBlankNodes;
+
+    private RulePlan(Rule rule) {
+        this.body = new Body(rule.getBodyElements());
+        this.assigned = new HashSet<>();
+        for ( RuleBodyElement elt : rule.getBodyElements() ) {
+            if ( elt instanceof EltAssignment(Var var, Expr expression) )
+                assigned.add(var);
+        }
+        this.headTriples = rule.getHeadTriples().toArray(Triple[]::new);
+        this.headTuples = rule.getHeadTuples();
+        boolean bnodes = false;
+        for ( Triple t : headTriples ) {
+            if ( t.getSubject().isBlank() || t.getObject().isBlank() )
+                bnodes = true;
+        }
+        this.headBlankNodes = bnodes;
+    }
+
+    /**
+     * Execute the rule. {@code scope} is the pass over a stratum that the execution is
+     * part of, or null.
+     */
+    public RuleEval eval(Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        Iterator<Binding> iter = body.eval(graph, tupleStore, BindingFactory.binding(), null, rCxt, scope);
+        return evalHead(iter);
+    }
+
+    /**
+     * Execute the rule, starting from a partial solution.
+     * Variables of the binding that the rule body assigns are not used.
+     */
+    public RuleEval eval(Binding binding, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        if ( ! assigned.isEmpty() ) {
+            BindingBuilder builder = Binding.builder();
+            binding.forEach((v,n)->{
+                if ( ! assigned.contains(v) )
+                    builder.add(v, n);
+            });
+            binding = builder.build();
+        }
+        Iterator<Binding> iter = body.eval(graph, tupleStore, binding, null, rCxt, scope);
+        return evalHead(iter);
+    }
+
+    /**
+     * Execute the rule with the body element at {@code deltaIndex} matched against the
+     * delta graph and delta tuple store.
+     */
+    public RuleEval evalDelta(int deltaIndex, Graph graph, TupleStore tupleStore,
+                              Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope) {
+        int[] order = body.order(graph, tupleStore, Set.of(), deltaIndex, scope);
+        Iterator<Binding> chain = Iter.singletonIterator(BindingFactory.binding());
+        for ( int idx : order ) {
+            Step step = body.steps[idx];
+            if ( idx == deltaIndex )
+                chain = step.eval(chain, deltaGraph, deltaTuples, rCxt, scope);
+            else
+                chain = step.eval(chain, graph, tupleStore, rCxt, scope);
+        }
+        return evalHead(chain);
+    }
+
+    private RuleEval evalHead(Iterator<Binding> iter) {
+        List<Triple> accTriples = new ArrayList<>();
+        List<Tuple> accTuples = new ArrayList<>();
+        iter.forEachRemaining(solution -> instantiateHead(accTriples, accTuples, solution));
+        return new RuleEval(accTriples, accTuples);
+    }
+
+    private void instantiateHead(List<Triple> accTriples, List<Tuple> accTuples, Binding solution) {
+        // New blank nodes for each solution.
+        Map<Node, Node> bNodeMap = ( headBlankNodes || ! headTuples.isEmpty() ) ? new HashMap<>() : null;
+        for ( Triple template : headTriples ) {
+            Triple triple;
+            if ( template.isConcrete() && ! headBlankNodes )
+                triple = template;
+            else if ( headBlankNodes )
+                triple = TemplateLib.subst(template, solution, bNodeMap);
+            else
+                triple = Substitute.substitute(template, solution);
+            // As TemplateLib.calcTriples: skip triples with unbound variables or that are not legal RDF.
+            if ( ! triple.isConcrete() || triple.getSubject().isLiteral() || ! triple.getPredicate().isURI() )
+                continue;
+            accTriples.add(triple);
+        }
+        for ( Tuple tuple : headTuples )
+            accTuples.add(Tuples.substituteTemplate(tuple, solution, bNodeMap));
+    }
+
+    /** Compiled body elements. */
+    private static class Body {
+        private final List<RuleBodyElement> elements;
+        private final Step[] steps;
+        private final boolean hasTuplePatterns;
+
+        // An evaluation order, kept in the scope of a pass over a stratum.
+        private record PlanKey(Body body, Graph graph, TupleStore tupleStore, Set<Var> bound, int deltaIndex) {}
+        private static class Planned { volatile Plan plan = null; }
+
+        /** An evaluation order, and the counts of matches and tuples it was planned with. */
+        private record Plan(int[] order, Map<Triple, Integer> counts, int tupleCount) {
+            // Plan again when a count has changed by more than this factor.
+            private static final int replanFactor = 2;
+
+            boolean changed(Graph graph, TupleStore tupleStore, EvalScope scope) {
+                for ( Map.Entry<Triple, Integer> e : counts.entrySet() ) {
+                    int now = RuleBodyPlanner.count(graph, e.getKey(), RuleBodyPlanner.countLimit, scope);
+                    if ( changed(e.getValue(), now) )
+                        return true;
+                }
+                return tupleCount >= 0 && changed(tupleCount, tupleStore.size());
+            }
+
+            private static boolean changed(int before, int now) {
+                return Math.max(before, now) + 1 > replanFactor * ( Math.min(before, now) + 1 );
+            }
+        }
+
+        Body(List<RuleBodyElement> elements) {
+            this.elements = elements;
+            this.hasTuplePatterns = elements.stream().anyMatch(EltTuplePattern.class::isInstance);
+            this.steps = new Step[elements.size()];
+            for ( int i = 0 ; i < steps.length ; i++ )
+                steps[i] = compile(elements.get(i));
+        }
+
+        /** Evaluate, starting from a binding. {@code order} may be null, to plan for this binding. */
+        Iterator<Binding> eval(Graph graph, TupleStore tupleStore, Binding binding, int[] order, RulesExecCxt rCxt, EvalScope scope) {
+            if ( order == null )
+                order = order(graph, tupleStore, vars(binding), -1, scope);
+            Iterator<Binding> chain = Iter.singletonIterator(binding);
+            for ( int idx : order )
+                chain = steps[idx].eval(chain, graph, tupleStore, rCxt, scope);
+            return chain;
+        }
+
+        /**
+         * The evaluation order. With a scope, the order is planned once for the pass over
+         * the stratum, and planned again, at most once in each round, if the counts it was
+         * planned with have changed significantly. {@code scope} may be null.
+         */
+        int[] order(Graph graph, TupleStore tupleStore, Set<Var> bound, int deltaIndex, EvalScope scope) {
+            if ( ! SysJenaRules.planRuleBodies || ( steps.length <= 1 && deltaIndex < 0 ) )
+                return ( deltaIndex < 0 ) ? writtenOrder(steps.length) : RulesExecLib.deltaOrder(elements, deltaIndex);
+            if ( scope == null )
+                return plan(graph, tupleStore, bound, deltaIndex, null).order();
+            Planned planned = scope.value(new PlanKey(this, graph, tupleStore, bound, deltaIndex), Planned::new);
+            scope.roundValue(planned, () -> {
+                Plan plan = planned.plan;
+                if ( plan == null || plan.changed(graph, tupleStore, scope) )
+                    planned.plan = plan(graph, tupleStore, bound, deltaIndex, scope);
+                return planned;
+            });
+            return planned.plan.order();
+        }
+
+        private Plan plan(Graph graph, TupleStore tupleStore, Set<Var> bound, int deltaIndex, EvalScope scope) {
+            Map<Triple, Integer> counts = new HashMap<>();
+            ToIntFunction<Triple> matches = findPattern ->
+                counts.computeIfAbsent(findPattern, t -> RuleBodyPlanner.count(graph, t, RuleBodyPlanner.countLimit, scope));
+            int[] order = RuleBodyPlanner.plan(elements, bound, RuleBodyPlanner.estimator(matches, tupleStore), deltaIndex);
+            int tupleCount = ( hasTuplePatterns && tupleStore != null ) ? tupleStore.size() : -1;
+            return new Plan(order, counts, tupleCount);
+        }
+
+        private static int[] writtenOrder(int N) {
+            int[] order = new int[N];
+            for ( int i = 0 ; i < N ; i++ )
+                order[i] = i;
+            return order;
+        }
+
+        private static Set<Var> vars(Binding binding) {
+            if ( binding.isEmpty() )
+                return Set.of();
+            Set<Var> vars = new HashSet<>();
+            binding.vars().forEachRemaining(vars::add);
+            return vars;
+        }
+    }
+
+    /** A compiled body element. */
+    private interface Step {
+        Iterator<Binding> eval(Iterator<Binding> input, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope);
+    }
+
+    private static Step compile(RuleBodyElement elt) {
+        return switch (elt) {
+            case EltTriplePattern(Triple triplePattern) -> StepTriple.create(triplePattern);
+            case EltTuplePattern(Tuple tuplePattern) -> (input, graph, tupleStore, rCxt, scope) -> {
+                if ( tupleStore == null )
+                    throw new RulesEvalException("No tuple store for tuple pattern: "+tuplePattern);
+                return AccessTuples.accessTupleStore(input, tupleStore, tuplePattern, rCxt);
+            };
+            case EltFilter(Expr condition) -> {
+                CompiledExpr compiled = CompiledExpr.compile(condition);
+                yield (input, graph, tupleStore, rCxt, scope) ->
+                    Iter.filter(input, solution -> compiled.isSatisfied(solution, rCxt));
+            }
+            case EltAssignment(Var var, Expr expression) -> {
+                CompiledExpr compiled = CompiledExpr.compile(expression);
+                yield (input, graph, tupleStore, rCxt, scope) ->
+                    Iter.iter(input).map(row -> {
+                        NodeValue nv = compiled.eval(row, rCxt);
+                        // Error in evaluation of the expression: omit this solution.
+                        return ( nv == null ) ? null : BindingFactory.binding(row, var, nv.asNode());
+                    }).removeNulls();
+            }
+            case EltNegation(List<RuleBodyElement> innerBody, boolean grounded) ->
+                new StepNegation(innerBody, grounded);
+        };
+    }
+
+    /**
+     * NOT, evaluated as a hash anti-join when the rule is executed as part of a pass over
+     * a stratum. The inner body is evaluated once, on its own, and its solutions projected
+     * to the variables shared with the incoming solutions are kept in a hash set for the
+     * rest of the pass (see {@link EvalScope}): what a negation tests is complete before
+     * the stratum starts. Each incoming solution is then a set lookup.
+     * <p>
+     * A {@code NOT DATA} tests the base graph and DATA ({@link EvalScope#groundedGraph}),
+     * which do not change during an evaluation or incremental update, so its hash set is
+     * computed once for each of these ({@link EvalScope#evaluationValue}) and not once
+     * per stratum.
+     * <p>
+     * Otherwise, or if the inner body uses a shared variable in a filter, assignment
+     * or negation before a pattern binds it, the inner body is evaluated for each solution.
+     */
+    private static final class StepNegation implements Step {
+        private final List<RuleBodyElement> innerBody;
+        private final boolean grounded;
+        private final Body inner;
+        private final Set<Var> innerVars = new HashSet<>();
+        private final boolean hasTuplePatterns;
+
+        private record CacheKey(StepNegation step, Graph graph, TupleStore tupleStore, Set<Var> shared) {}
+
+        StepNegation(List<RuleBodyElement> innerBody, boolean grounded) {
+            this.innerBody = innerBody;
+            this.grounded = grounded;
+            this.inner = new Body(innerBody);
+            innerBody.forEach(elt -> innerVars.addAll(RuleBodyPlanner.mentionedVars(elt)));
+            this.hasTuplePatterns = innerBody.stream().anyMatch(EltTuplePattern.class::isInstance);
+        }
+
+        @Override
+        public Iterator<Binding> eval(Iterator<Binding> input, Graph dataGraph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+            Graph graph = ( grounded && scope != null ) ? scope.groundedGraph() : dataGraph;
+            // Every solution has the same variables: decide on the first.
+            Var[][] keyVars = { null };
+            Set<?>[] keys = { null };
+            int[][] innerOrder = { null };
+            return Iter.filter(input, solution -> {
+                if ( keyVars[0] == null ) {
+                    Set<Var> shared = new HashSet<>(innerVars);
+                    shared.retainAll(Body.vars(solution));
+                    keyVars[0] = shared.stream().sorted(Comparator.comparing(Var::getVarName)).toArray(Var[]::new);
+                    if ( scope != null && antiJoin(shared) ) {
+                        Supplier<Set<List<Node>>> innerKeys = () -> innerKeys(keyVars[0], graph, tupleStore, rCxt, scope);
+                        // The tuple store grows during an evaluation.
+                        if ( grounded && ! hasTuplePatterns )
+                            keys[0] = scope.evaluationValue(new CacheKey(this, graph, null, shared), innerKeys);
+                        if ( keys[0] == null )
+                            keys[0] = scope.value(new CacheKey(this, graph, tupleStore, shared), innerKeys);
+                    }
+                    if ( keys[0] == null )
+                        innerOrder[0] = inner.order(graph, tupleStore, Body.vars(solution), -1, scope);
+                }
+                if ( keys[0] != null )
+                    return ! keys[0].contains(key(solution, keyVars[0]));
+                return ! inner.eval(graph, tupleStore, solution, innerOrder[0], rCxt, scope).hasNext();
+            });
+        }
+
+        /**
+         * Whether evaluating the inner body on its own then joining on the shared
+         * variables is the same as evaluating it for each solution.
+         */
+        private boolean antiJoin(Set<Var> shared) {
+            Set<Var> bound = new HashSet<>();
+            for ( RuleBodyElement elt : innerBody ) {
+                if ( RuleBodyPlanner.isPattern(elt) ) {
+                    bound.addAll(RuleBodyPlanner.bindsVars(elt));
+                    continue;
+                }
+                Set<Var> mentioned = RuleBodyPlanner.mentionedVars(elt);
+                mentioned.retainAll(shared);
+                if ( ! bound.containsAll(mentioned) )
+                    return false;
+            }
+            return bound.containsAll(shared);
+        }
+
+        private Set<List<Node>> innerKeys(Var[] keyVars, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+            Set<List<Node>> acc = new HashSet<>();
+            int[] order = inner.order(graph, tupleStore, Set.of(), -1, scope);
+            inner.eval(graph, tupleStore, BindingFactory.binding(), order, rCxt, scope)
+                 .forEachRemaining(row -> acc.add(key(row, keyVars)));
+            return acc;
+        }
+
+        private static List<Node> key(Binding binding, Var[] keyVars) {
+            Node[] nodes = new Node[keyVars.length];
+            for ( int i = 0 ; i < keyVars.length ; i++ )
+                nodes[i] = binding.get(keyVars[i]);
+            return Arrays.asList(nodes);
+        }
+    }
+
+    /** A triple pattern, matched with {@code Graph.find}. */
+    private record StepTriple(Triple pattern, Node s, Node p, Node o, Var vs, Var vp, Var vo) implements Step {
+        static Step create(Triple pattern) {
+            if ( pattern.getSubject().isTripleTerm() || pattern.getObject().isTripleTerm() )
+                return (input, graph, tupleStore, rCxt, scope) -> rCxt.countRows(Access.accessGraph(input, graph, pattern));
+            Node s = pattern.getSubject();
+            Node p = pattern.getPredicate();
+            Node o = pattern.getObject();
+            return new StepTriple(pattern, s, p, o, var(s), var(p), var(o));
+        }
+
+        private static Var var(Node node) {
+            return Var.isVar(node) ? Var.alloc(node) : null;
+        }
+
+        @Override
+        public Iterator<Binding> eval(Iterator<Binding> input, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+            Iterator<Binding> iter = HashJoin.join(input, graph, pattern, rCxt, scope, in -> Iter.flatMap(in, binding -> match(binding, graph)));
+            return rCxt.countRows(iter);
+        }
+
+        private Iterator<Binding> match(Binding binding, Graph graph) {
+            Node ms = slot(s, vs, binding);
+            Node mp = slot(p, vp, binding);
+            Node mo = slot(o, vo, binding);
+            // Variables to bind from the matched triple.
+            Var fs = ( ms == Node.ANY ) ? vs : null;
+            Var fp = ( mp == Node.ANY ) ? vp : null;
+            Var fo = ( mo == Node.ANY ) ? vo : null;
+            BindingBuilder builder = Binding.builder(binding);
+            return Iter.mapRemove(graph.find(ms, mp, mo), triple -> {
+                builder.reset();
+                if ( ! insert(builder, fs, triple.getSubject()) ||
+                     ! insert(builder, fp, triple.getPredicate()) ||
+                     ! insert(builder, fo, triple.getObject()) )
+                    return null;
+                return builder.build();
+            });
+        }
+
+        private static Node slot(Node node, Var var, Binding binding) {
+            if ( var == null )
+                return node;
+            Node x = binding.get(var);
+            return ( x == null ) ? Node.ANY : x;
+        }
+
+        private static boolean insert(BindingBuilder builder, Var var, Node dataNode) {
+            if ( var == null )
+                return true;
+            Node x = builder.get(var);
+            if ( x != null )
+                return SolverLib.sameTermAs(dataNode, x);
+            builder.add(var, dataNode);
+            return true;
+        }
+    }
+}
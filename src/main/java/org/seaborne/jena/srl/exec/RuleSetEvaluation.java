@@ -22,11 +22,15 @@
 package org.seaborne.jena.srl.exec;
 
 import java.util.Iterator;
+import java.util.function.Consumer;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
 import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.tuples.Tuple;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
 
@@ -37,7 +41,10 @@ import org.seaborne.jena.srl.tuples.TupleStore;
  * <li>baseGraph - the input, untouched.</li>
  * <li>inferredTriples - new triples generated by rule execution, not including DATA triples. Informational.</li>
  * <li>outputGraph - after evaluation: combination of baseGraph, inferred triples, and including DATA triples.</li>
+ * <li>tupleStore - after evaluation: the base tuples, DATA tuples and inferred tuples.</li>
+ * <li>inferredTuples - the tuples of tupleStore that are not base tuples.</li>
  * <li>prefixMap - a convenient set of prefixes for displaying results.</li>
+ * <li>stopReason - whether the evaluation finished or was stopped, see {@link RulesBudget}.</li>
  * </ul>
  */
 
@@ -49,10 +56,47 @@ public interface RuleSetEvaluation {
     public Graph outputGraph();
  //   public PrefixMap prefixMap();
 
+    /**
+     * Why the evaluation stopped. If it is not {@link StopReason#COMPLETE}, the
+     * graphs and tuples are those inferred up to the point it stopped.
+     */
+    public default StopReason stopReason() {
+        return StopReason.COMPLETE;
+    }
+
+    /** Whether the evaluation finished, rather than being stopped by its {@link RulesBudget}. */
+    public default boolean isComplete() {
+        return stopReason() == StopReason.COMPLETE;
+    }
+
+    /**
+     * The tuples inferred by the evaluation, and the DATA tuples of the rule set, but
+     * not the tuples of the base tuple store. Null if the engine does not have tuples.
+     */
+    public default TupleStore inferredTuples() {
+        return tupleStore();
+    }
+
     /**
      * "find" over the inferred triples.
      */
     public default Iterator<Triple> find(Node s, Node p, Node o) {
         return inferredTriples().find(s, p, o);
     }
+
+    /**
+     * Send the inferred triples to a {@link StreamRDF}, between {@code start()} and
+     * {@code finish()}, and the {@link #inferredTuples() inferred tuples} to
+     * {@code tupleOutput} if it is not null. These are what a streaming evaluation
+     * sends (see {@link org.seaborne.jena.srl.RulesEngine#evalStream}).
+     */
+    public default void sendTo(StreamRDF output, Consumer<Tuple> tupleOutput) {
+        output.start();
+        try {
+            inferredTriples().find().forEachRemaining(output::triple);
+            TupleStore inferredTuples = ( tupleOutput != null ) ? inferredTuples() : null;
+            if ( inferredTuples != null )
+                inferredTuples.all().forEachRemaining(tupleOutput);
+        } finally { output.finish(); }
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.time.Duration;
+
+import org.seaborne.jena.srl.ShaclRules;
+
+/**
+ * Limits on one evaluation of a rule set: a wall-clock timeout, the number of rounds,
+ * the number of triples and tuples inferred, and the number of intermediate rows
+ * produced by rule bodies. The limits are checked at cheap points, so an evaluation may
+ * go a little over a limit before it stops.
+ * <p>
+ * An evaluation that reaches a limit, or is cancelled, stops and returns the
+ * {@link RuleSetEvaluation} as it is at that point, with the {@link StopReason}.
+ * <p>
+ * A budget is set for an engine with the {@link ShaclRules#symBudget} context setting
+ * when the engine is created.
+ */
+public final class RulesBudget {
+
+    /** Why an evaluation stopped. */
+    public enum StopReason {
+        /** The evaluation finished. */
+        COMPLETE,
+        /** The cancel signal was set. */
+        CANCELLED,
+        TIMEOUT, MAX_ROUNDS, MAX_TRIPLES, MAX_ROWS
+    }
+
+    private static final long NONE = -1;
+
+    private static final RulesBudget unlimited = new RulesBudget(NONE, NONE, NONE, NONE);
+
+    /** A budget with no limits. */
+    public static RulesBudget unlimited() {
+        return unlimited;
+    }
+
+    private final long timeoutMillis;
+    private final long maxRounds;
+    private final long maxTriples;
+    private final long maxRows;
+
+    private RulesBudget(long timeoutMillis, long maxRounds, long maxTriples, long maxRows) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxRounds = maxRounds;
+        this.maxTriples = maxTriples;
+        this.maxRows = maxRows;
+    }
+
+    /** This budget, with a wall-clock limit for an evaluation. */
+    public RulesBudget timeout(Duration timeout) {
+        return new RulesBudget(timeout.toMillis(), maxRounds, maxTriples, maxRows);
+    }
+
+    /**
+     * This budget, with a limit on the number of rounds of an evaluation, over all strata.
+     * Engines without rounds count each pass of their fixpoint loop.
+     */
+    public RulesBudget maxRounds(long maxRounds) {
+        return new RulesBudget(timeoutMillis, maxRounds, maxTriples, maxRows);
+    }
+
+    /** This budget, with a limit on the number of new triples and tuples inferred. */
+    public RulesBudget maxTriples(long maxTriples) {
+        return new RulesBudget(timeoutMillis, maxRounds, maxTriples, maxRows);
+    }
+
+    /** This budget, with a limit on the number of intermediate rows of rule bodies. */
+    public RulesBudget maxRows(long maxRows) {
+        return new RulesBudget(timeoutMillis, maxRounds, maxTriples, maxRows);
+    }
+
+    /** The timeout in milliseconds, or -1 for none. */
+    public long getTimeoutMillis() { return timeoutMillis; }
+
+    /** The maximum number of rounds, or -1 for none. */
+    public long getMaxRounds() { return maxRounds; }
+
+    /** The maximum number of triples and tuples inferred, or -1 for none. */
+    public long getMaxTriples() { return maxTriples; }
+
+    /** The maximum number of intermediate rows, or -1 for none. */
+    public long getMaxRows() { return maxRows; }
+
+    @Override
+    public String toString() {
+        return String.format("RulesBudget[timeout=%d, rounds=%d, triples=%d, rows=%d]", timeoutMillis, maxRounds, maxTriples, maxRows);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
+
+/**
+ * An evaluation reached a limit of its {@link RulesBudget}.
+ * Engines catch this and return a partial {@link RuleSetEvaluation}.
+ */
+public class RulesBudgetExceededException extends RuleSetEvaluationCancelledException {
+    private final StopReason stopReason;
+
+    public RulesBudgetExceededException(StopReason stopReason) {
+        super("Rules evaluation stopped: "+stopReason);
+        this.stopReason = stopReason;
+    }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * The reason for an evaluation stopping with the exception, or one of its causes
+     * (exceptions from other threads may be wrapped).
+     */
+    public static StopReason stopReason(Throwable ex) {
+        for ( Throwable th = ex ; th != null ; th = th.getCause() ) {
+            if ( th instanceof RulesBudgetExceededException bex )
+                return bex.getStopReason();
+        }
+        return StopReason.CANCELLED;
+    }
+}
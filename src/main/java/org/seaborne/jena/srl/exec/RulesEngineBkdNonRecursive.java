@@ -45,11 +45,13 @@ import org.apache.jena.sparql.function.FunctionEnvBase;
 import org.apache.jena.sparql.graph.GraphFactory;
 import org.apache.jena.sparql.util.Context;
 import org.seaborne.jena.srl.*;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
 import org.seaborne.jena.srl.jena.AppendGraph;
 import org.seaborne.jena.srl.lang.RuleBodyElement;
 import org.seaborne.jena.srl.lang.RuleBodyElement.*;
 import org.seaborne.jena.srl.sys.DependencyGraph;
 import org.seaborne.jena.srl.sys.RuleDependencies;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
 import org.seaborne.jena.srl.sys.SysSRL;
 import org.seaborne.jena.srl.tuples.Tuple;
 import org.seaborne.jena.srl.tuples.TupleStore;
@@ -77,18 +79,20 @@ public class RulesEngineBkdNonRecursive implements RulesEngine {
             throw new RuleEvalException("Tuples not supported for "+RulesEngineBkdNonRecursive.class.getSimpleName());
         if ( ruleSet.hasTupleData() && ruleSet.getDataTuples().isEmpty() )
             throw new RuleEvalException("Tuples in rule set : not supported for "+RulesEngineBkdNonRecursive.class.getSimpleName());
-        RulesExecCxt rCxt = RulesExecCxt.create(SysSRL.getContext());
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
         RulesExecLib.prepare(ruleSet, rCxt);
-        return new RulesEngineBkdNonRecursive(graph, ruleSet);
+        return new RulesEngineBkdNonRecursive(graph, ruleSet, rCxt);
     }
 
     private final RuleSet ruleSet;
     private final DependencyGraph dependencyGraph;
     private final Graph baseGraph;
+    private final RulesExecCxt rCxt;
 
-    private RulesEngineBkdNonRecursive(Graph baseGraph, RuleSet ruleSet) {
+    private RulesEngineBkdNonRecursive(Graph baseGraph, RuleSet ruleSet, RulesExecCxt rCxt) {
         this.baseGraph = baseGraph;
         this.ruleSet = ruleSet;
+        this.rCxt = rCxt;
         this.dependencyGraph = DependencyGraph.create(ruleSet);
     }
 
@@ -169,6 +173,8 @@ public class RulesEngineBkdNonRecursive implements RulesEngine {
             ruleSet.getDataTriples().forEach(workingGraph::add);
 
         PrefixMap pmap = ruleSet.getPrefixMap();
+        rCxt.startBudget();
+        StopReason stopReason = StopReason.COMPLETE;
 
 
         // Detect cycles.
@@ -188,13 +194,15 @@ public class RulesEngineBkdNonRecursive implements RulesEngine {
         // XXX Is there two loops?
         // solveRule has the same pattern -  dependsOn->solveRule
 
-        for ( Rule rule : dependsOn ) {
-            Set<Rule> visited = new HashSet<>();
-            Stream<Triple> x = solveRule(rule, workingGraph, visited);
-            // No variables in triples :
+        try {
+            for ( Rule rule : dependsOn ) {
+                rCxt.countRound();
+                Set<Rule> visited = new HashSet<>();
+                Stream<Triple> x = solveRule(rule, workingGraph, visited);
+                // No variables in triples :
 
-            if ( x == null )
-                continue;
+                if ( x == null )
+                    continue;
 
 //            // CHECK
 //            if ( true ) {
@@ -207,8 +215,15 @@ public class RulesEngineBkdNonRecursive implements RulesEngine {
 //            }
 //            // /CHECK
 
-            // New graph?
-            GraphUtil.add(workingGraph, x.iterator());
+                // New graph?
+                x.forEach(triple -> {
+                    if ( workingGraph.addNew(triple) )
+                        rCxt.countTriple();
+                });
+            }
+        } catch (RuleSetEvaluationCancelledException ex) {
+            // Stopped by the budget or cancelled: the triples so far.
+            stopReason = RulesBudgetExceededException.stopReason(ex);
         }
 
         LOG.decIndent();
@@ -226,7 +241,7 @@ public class RulesEngineBkdNonRecursive implements RulesEngine {
         if ( ruleSet.hasData() )
             GraphUtil.addInto(output, ruleSet.getData());
 
-        Evaluation e = new Evaluation(workingGraph.get(), ruleSet, inferred, output, null);
+        Evaluation e = new Evaluation(workingGraph.get(), ruleSet, inferred, output, null, stopReason);
         return e;
     }
 
@@ -314,6 +329,7 @@ public class RulesEngineBkdNonRecursive implements RulesEngine {
         List<Triple> headTriples = rule.getHeadTriples();
         BasicPattern bgp = BasicPattern.wrap(headTriples);
         List<Triple> result = new ArrayList<>();
+        chain = rCxt.countRows(chain);
         while(chain.hasNext()) {
             Binding row = chain.next();
             BasicPattern outcome = Substitute.substitute(bgp, row);
@@ -0,0 +1,506 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.Prefixes;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.main.solver.SolverRX3;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.modify.TemplateLib;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.EvalAlgorithm;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.jena.AppendGraph;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.lang.RuleBodyElement.*;
+import org.seaborne.jena.srl.sys.RuleDependencies;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
+import org.seaborne.jena.srl.tuples.Tuple;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * Tabled backwards chaining rules engine (QSQR: query-subquery, recursive).
+ * <p>
+ * A query is a triple pattern (a subgoal). Each subgoal that rules can provide for
+ * has a table of answers. The answers of a subgoal are the matching triples of the
+ * data and the triples produced by the rules whose head matches the subgoal. A rule
+ * body is evaluated left-to-right with the bindings from the subgoal and the earlier
+ * body elements, so the subgoals of the body patterns are as specific as possible.
+ * Body patterns that no rule provides for are matched directly against the data.
+ * <p>
+ * Tables are evaluated until none of them change. A table is only re-evaluated
+ * if a table it read from has grown since its last evaluation.
+ * Negation is evaluated by completing the tables of the inner patterns first
+ * (the rule set is stratified). {@code NOT DATA} is matched against the base graph
+ * and the DATA of the rule set, without tables.
+ * <p>
+ * Supports: SRL: recursion, negation, run-once.
+ * Does not support: tuples
+ */
+public class RulesEngineBkdQSQR implements RulesEngine {
+
+    public static final RulesEngineFactory factory = RulesEngineBkdQSQR::build;
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#BKD_QSQR} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        if ( tupleStore != null || ruleSet.hasTupleData() )
+            throw new RulesEvalException("Tuples not supported for "+RulesEngineBkdQSQR.class.getSimpleName());
+        for ( Rule rule : ruleSet.getRules() ) {
+            if ( ! rule.getHeadTuples().isEmpty() )
+                throw new RulesEvalException("Tuples in rule head : not supported for "+RulesEngineBkdQSQR.class.getSimpleName());
+        }
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        // Checks the rule set can be stratified.
+        RulesExecLib.prepare(ruleSet, rCxt);
+        return new RulesEngineBkdQSQR(graph, ruleSet, rCxt);
+    }
+
+    private final Graph baseGraph;
+    private final RuleSet ruleSet;
+    private final RulesExecCxt rCxt;
+    // Subgoal -> rules that may provide triples for it.
+    private final Map<Triple, List<Rule>> rulesFor = new ConcurrentHashMap<>();
+
+    private RulesEngineBkdQSQR(Graph baseGraph, RuleSet ruleSet, RulesExecCxt rCxt) {
+        this.baseGraph = baseGraph;
+        this.ruleSet = ruleSet;
+        this.rCxt = rCxt;
+    }
+
+    private boolean TRACE = false;
+    @Override
+    public RulesEngineBkdQSQR setTrace(boolean traceSetting) {
+        TRACE = traceSetting;
+        return this;
+    }
+
+    @Override
+    public EvalAlgorithm engineType() {
+        return EvalAlgorithm.BKD_QSQR;
+    }
+
+    @Override
+    public Graph baseGraph() {
+        return baseGraph;
+    }
+
+    @Override
+    public RuleSet ruleSet() {
+        return ruleSet;
+    }
+
+    @Override
+    public Graph materializedGraph() {
+        return eval().outputGraph();
+    }
+
+    @Override
+    public Graph infer() {
+        return eval().inferredTriples();
+    }
+
+    /**
+     * Only the subgoals reachable from the query pattern are evaluated.
+     */
+    @Override
+    public Stream<Triple> solve(Node s, Node p, Node o) {
+        Triple goal = key(Triple.createMatch(s, p, o));
+        Answers answers = solveGoal(goal);
+        // Partial answers to a query are not returned.
+        if ( answers.stopReason() != StopReason.COMPLETE )
+            throw new RulesBudgetExceededException(answers.stopReason());
+        return answers.triples().stream();
+    }
+
+    @Override
+    public RuleSetEvaluation eval() {
+        Answers answers = solveGoal(key(Triple.ANY));
+        AppendGraph outputGraph = AppendGraph.create(baseGraph);
+        if ( ruleSet.hasData() )
+            GraphUtil.addInto(outputGraph, ruleSet.getData());
+        answers.triples().forEach(outputGraph::add);
+        Graph inferredGraph = outputGraph.getAdded();
+        inferredGraph.getPrefixMapping().setNsPrefixes(Prefixes.adapt(ruleSet.getPrefixMap()));
+        inferredGraph.getPrefixMapping().setNsPrefixes(baseGraph.getPrefixMapping());
+        return new Evaluation(baseGraph, ruleSet, inferredGraph, outputGraph, null, answers.stopReason());
+    }
+
+    /** The answers to a goal, which are the answers so far if the evaluation stopped. */
+    private record Answers(List<Triple> triples, StopReason stopReason) {}
+
+    private Answers solveGoal(Triple goal) {
+        // NOW()
+        Context.setCurrentDateTime(rCxt.getContext());
+        rCxt.startBudget();
+        AppendGraph dataGraph = AppendGraph.create(baseGraph);
+        if ( ruleSet.hasData() )
+            GraphUtil.addInto(dataGraph, ruleSet.getData());
+        Solver solver = new Solver(dataGraph, new HashMap<>(), new IdentityHashMap<>());
+        Table table = solver.table(goal);
+        StopReason stopReason = StopReason.COMPLETE;
+        try {
+            solver.fixpoint();
+        } catch (RuleSetEvaluationCancelledException ex) {
+            stopReason = RulesBudgetExceededException.stopReason(ex);
+        }
+        if ( TRACE )
+            rCxt.out().printf("solve %s : %d answers, %d tables\n", goal, table.answers.size(), solver.tableList.size());
+        return new Answers(List.copyOf(table.answers), stopReason);
+    }
+
+    /** The answers for one subgoal. */
+    private static class Table {
+        final Triple goal;
+        final List<Rule> rules;
+        final List<Triple> answers = new ArrayList<>();
+        final Set<Triple> answerSet = new HashSet<>();
+        // Tables read by the last evaluation, and how many answers they had when read.
+        final Map<Table, Integer> reads = new HashMap<>();
+        boolean evaluated = false;
+        boolean complete = false;
+
+        Table(Triple goal, List<Rule> rules) {
+            this.goal = goal;
+            this.rules = rules;
+        }
+
+        boolean add(Triple triple) {
+            if ( ! answerSet.add(triple) )
+                return false;
+            answers.add(triple);
+            return true;
+        }
+
+        boolean needsEval() {
+            if ( complete )
+                return false;
+            if ( ! evaluated )
+                return true;
+            for ( Map.Entry<Table, Integer> e : reads.entrySet() ) {
+                if ( e.getKey().answers.size() > e.getValue() )
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The tables of one query. Not thread safe.
+     * A grounded solver, for the inner body of {@code NOT DATA}, matches all patterns
+     * against the data graph and has no tables.
+     */
+    private class Solver {
+        private final Graph dataGraph;
+        private final boolean grounded;
+        // Shared with the solvers for negation.
+        private final Map<Triple, Table> completed;
+        private final Map<Rule, Map<Binding, List<Triple>>> headCache;
+
+        private final Map<Triple, Table> tables = new HashMap<>();
+        private final List<Table> tableList = new ArrayList<>();
+        // Changes each time there is a new table or a new answer.
+        private long version = 0;
+        // The table being evaluated.
+        private Table current = null;
+
+        Solver(Graph dataGraph, Map<Triple, Table> completed, Map<Rule, Map<Binding, List<Triple>>> headCache) {
+            this(dataGraph, false, completed, headCache);
+        }
+
+        private Solver(Graph dataGraph, boolean grounded, Map<Triple, Table> completed, Map<Rule, Map<Binding, List<Triple>>> headCache) {
+            this.dataGraph = dataGraph;
+            this.grounded = grounded;
+            this.completed = completed;
+            this.headCache = headCache;
+        }
+
+        Table table(Triple goal) {
+            Table table = completed.get(goal);
+            if ( table != null )
+                return table;
+            table = tables.get(goal);
+            if ( table == null ) {
+                table = new Table(goal, rulesFor(goal));
+                dataGraph.find(findPattern(goal)).forEachRemaining(table::add);
+                tables.put(goal, table);
+                tableList.add(table);
+                version++;
+            }
+            return table;
+        }
+
+        /** Evaluate tables until there are no changes. */
+        void fixpoint() {
+            long v;
+            do {
+                v = version;
+                rCxt.countRound();
+                // Tables created during the pass are evaluated in the same pass.
+                for ( int i = 0 ; i < tableList.size() ; i++ ) {
+                    Table table = tableList.get(i);
+                    if ( table.needsEval() )
+                        evalTable(table);
+                }
+            } while ( v != version );
+        }
+
+        private void evalTable(Table table) {
+            if ( TRACE )
+                rCxt.out().printf("Table %s (%d)\n", table.goal, table.answers.size());
+            Table outer = current;
+            current = table;
+            table.reads.clear();
+            table.evaluated = true;
+            try {
+                for ( Rule rule : table.rules )
+                    evalRule(table, rule);
+            } finally {
+                current = outer;
+            }
+        }
+
+        private void evalRule(Table table, Rule rule) {
+            Set<Var> assigned = assignedVars(rule);
+            for ( Triple headTriple : rule.getHeadTriples() ) {
+                Binding binding = unifyHead(headTriple, table.goal, assigned);
+                if ( binding == null )
+                    continue;
+                List<Binding> solutions = evalBody(rule.getBodyElements(), binding);
+                for ( Binding solution : solutions ) {
+                    for ( Triple triple : instantiate(rule, solution) ) {
+                        if ( triple.isConcrete() && matches(table.goal, triple) && table.add(triple) ) {
+                            version++;
+                            rCxt.countTriple();
+                        }
+                    }
+                }
+            }
+        }
+
+        private List<Triple> instantiate(Rule rule, Binding solution) {
+            if ( ! rule.hasTemplateBNodes() )
+                return rule.getHeadTriples().stream().map(t -> Substitute.substitute(t, solution)).toList();
+            // The same solution must give the same blank nodes each time the rule is evaluated.
+            return headCache.computeIfAbsent(rule, r -> new HashMap<>())
+                    .computeIfAbsent(solution, b -> Iter.toList(TemplateLib.calcTriples(rule.getHeadTriples(), Iter.singletonIterator(b))));
+        }
+
+        private List<Binding> evalBody(List<RuleBodyElement> ruleElts, Binding binding) {
+            List<Binding> chain = List.of(binding);
+            for ( RuleBodyElement elt : ruleElts ) {
+                if ( chain.isEmpty() )
+                    break;
+                chain = evalOneRuleElement(chain, elt);
+                rCxt.countRows(chain.size());
+            }
+            return chain;
+        }
+
+        private List<Binding> evalOneRuleElement(List<Binding> chainIn, RuleBodyElement elt) {
+            switch (elt) {
+                case EltTriplePattern(Triple triplePattern) -> {
+                    List<Binding> chainOut = new ArrayList<>();
+                    for ( Binding binding : chainIn )
+                        accessPattern(binding, triplePattern, chainOut);
+                    return chainOut;
+                }
+                case EltTuplePattern(Tuple tuplePattern) -> {
+                    throw new RulesEvalException("Tuples not supported for "+RulesEngineBkdQSQR.class.getSimpleName()+": "+tuplePattern);
+                }
+                case EltFilter(Expr condition) -> {
+                    // ExprNode.isSatisfied converts ExprEvalException to false.
+                    return chainIn.stream().filter(solution -> condition.isSatisfied(solution, rCxt)).toList();
+                }
+                case EltAssignment(Var var, Expr expression) -> {
+                    List<Binding> chainOut = new ArrayList<>(chainIn.size());
+                    for ( Binding row : chainIn ) {
+                        try {
+                            NodeValue nv = expression.eval(row, rCxt);
+                            chainOut.add(BindingFactory.binding(row, var, nv.asNode()));
+                        } catch (ExprEvalException ex) {
+                            // Omit this solution.
+                        }
+                    }
+                    return chainOut;
+                }
+                case EltNegation(List<RuleBodyElement> innerBody, boolean grounded) -> {
+                    return chainIn.stream().filter(solution -> !hasSolution(innerBody, grounded, solution)).toList();
+                }
+            }
+        }
+
+        /** Bindings for one body pattern, given the bindings so far. */
+        private void accessPattern(Binding binding, Triple triplePattern, List<Binding> output) {
+            Triple pattern = Substitute.substitute(triplePattern, binding);
+            Triple goal = key(pattern);
+            if ( grounded || rulesFor(goal).isEmpty() ) {
+                dataGraph.find(findPattern(goal)).forEachRemaining(t -> add(output, binding, t, triplePattern));
+                return;
+            }
+            Table table = table(goal);
+            int n = table.answers.size();
+            if ( current != null )
+                current.reads.merge(table, n, Math::min);
+            // The table may grow while being read.
+            for ( int i = 0 ; i < n ; i++ )
+                add(output, binding, table.answers.get(i), triplePattern);
+        }
+
+        private static void add(List<Binding> output, Binding binding, Triple triple, Triple triplePattern) {
+            Binding b = SolverRX3.matchTriple(binding, triple, triplePattern);
+            if ( b != null )
+                output.add(b);
+        }
+
+        /**
+         * Whether the inner body of a negation has a solution.
+         * The tables needed are completed by a separate solver; by stratification,
+         * they do not depend on the tables of this solver that are not complete.
+         * {@code NOT DATA} does not use tables: there is no dependency on the rules
+         * so the tables may not be complete.
+         */
+        private boolean hasSolution(List<RuleBodyElement> innerBody, boolean groundedNegation, Binding binding) {
+            if ( grounded || groundedNegation ) {
+                Solver inner = new Solver(dataGraph, true, completed, headCache);
+                return ! inner.evalBody(innerBody, binding).isEmpty();
+            }
+            Solver inner = new Solver(dataGraph, completed, headCache);
+            for (;;) {
+                long v = inner.version;
+                if ( ! inner.evalBody(innerBody, binding).isEmpty() )
+                    // Answers only grow.
+                    return true;
+                inner.fixpoint();
+                if ( v == inner.version ) {
+                    inner.tables.values().forEach(t -> t.complete = true);
+                    completed.putAll(inner.tables);
+                    return false;
+                }
+            }
+        }
+    }
+
+    private List<Rule> rulesFor(Triple goal) {
+        return rulesFor.computeIfAbsent(goal, g -> ruleSet.getRules().stream().filter(r -> RuleDependencies.dependsOn(g, r)).toList());
+    }
+
+    private static Var varS = Var.alloc("s");
+    private static Var varP = Var.alloc("p");
+    private static Var varO = Var.alloc("o");
+
+    /** The subgoal for a pattern : all variables (and wildcards) become distinct, fixed variables. */
+    private static Triple key(Triple pattern) {
+        return Triple.create(keyNode(pattern.getSubject(), varS),
+                             keyNode(pattern.getPredicate(), varP),
+                             keyNode(pattern.getObject(), varO));
+    }
+
+    private static Node keyNode(Node node, Var var) {
+        if ( node == null || node == Node.ANY || Var.isVar(node) )
+            return var;
+        return node;
+    }
+
+    private static Triple findPattern(Triple goal) {
+        return Triple.createMatch(findNode(goal.getSubject()), findNode(goal.getPredicate()), findNode(goal.getObject()));
+    }
+
+    private static Node findNode(Node node) {
+        return Var.isVar(node) ? Node.ANY : node;
+    }
+
+    private static boolean matches(Triple goal, Triple triple) {
+        return matches(goal.getSubject(), triple.getSubject()) &&
+               matches(goal.getPredicate(), triple.getPredicate()) &&
+               matches(goal.getObject(), triple.getObject());
+    }
+
+    private static boolean matches(Node goalNode, Node node) {
+        return Var.isVar(goalNode) || goalNode.equals(node);
+    }
+
+    /**
+     * Initial binding for a rule body from a head template and the subgoal.
+     * Returns null if the head can not provide triples for the subgoal.
+     */
+    private static Binding unifyHead(Triple headTriple, Triple goal, Set<Var> assigned) {
+        BindingBuilder builder = Binding.builder();
+        if ( unify(headTriple.getSubject(), goal.getSubject(), builder, assigned) &&
+             unify(headTriple.getPredicate(), goal.getPredicate(), builder, assigned) &&
+             unify(headTriple.getObject(), goal.getObject(), builder, assigned) )
+            return builder.build();
+        return null;
+    }
+
+    private static boolean unify(Node template, Node goalNode, BindingBuilder builder, Set<Var> assigned) {
+        if ( Var.isVar(goalNode) )
+            return true;
+        // Template blank nodes and assigned variables : the instantiated triple is checked.
+        if ( template.isBlank() )
+            return true;
+        if ( Var.isVar(template) ) {
+            Var var = Var.alloc(template);
+            if ( assigned.contains(var) )
+                return true;
+            Node x = builder.get(var);
+            if ( x == null ) {
+                builder.add(var, goalNode);
+                return true;
+            }
+            return x.equals(goalNode);
+        }
+        return template.equals(goalNode);
+    }
+
+    private static Set<Var> assignedVars(Rule rule) {
+        Set<Var> vars = new HashSet<>();
+        for ( RuleBodyElement elt : rule.getBodyElements() ) {
+            if ( elt instanceof EltAssignment(Var var, Expr expression) )
+                vars.add(var);
+        }
+        return vars;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.jena.AppendGraph;
+import org.seaborne.jena.srl.jena.Graph2;
+import org.seaborne.jena.srl.jena.SpillGraph;
+import org.seaborne.jena.srl.sys.RuleGroups;
+import org.seaborne.jena.srl.sys.RuleGroups.RuleGroup;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
+import org.seaborne.jena.srl.sys.Stratification;
+import org.seaborne.jena.srl.tuples.AppendTupleStore;
+import org.seaborne.jena.srl.tuples.TupleStore;
+import org.seaborne.jena.srl.tuples.UnionTupleStore;
+
+/**
+ * Semi-naive forward rules engine that schedules by rule dependencies, not by strata.
+ * <p>
+ * The rules are divided into {@link RuleGroups groups} (the strongly connected
+ * components of the dependency graph). A group is evaluated, to completion, as soon as
+ * all the groups it depends on have finished. Groups that do not depend on each other
+ * run in parallel.
+ * <p>
+ * Each group works over a read-only view of the base data and the output of the groups
+ * it directly depends on, and its output is kept separate until all groups have finished.
+ * <p>
+ * Supports: SRL: recursion, negation, run-once, tuples.
+ */
+public class RulesEngineFwdDataflow extends AbstractRulesEngineFwdSemiNaive implements RulesEngine {
+
+    public static final RulesEngineFactory factory = RulesEngineFwdDataflow::build;
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#DATAFLOW} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        return new RulesEngineFwdDataflow(graph, tupleStore, ruleSet, rCxt, ForkJoinPool.commonPool());
+    }
+
+    private final Executor executor;
+
+    private RulesEngineFwdDataflow(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt, Executor executor) {
+        super(baseGraph, tupleStore, ruleSet, rCxt);
+        this.executor = executor;
+    }
+
+    @Override
+    protected RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        return RulesExecLib.evalRule(rule, graph, tupleStore, rCxt, scope);
+    }
+
+    @Override
+    protected RuleEval evalRuleDelta(Rule rule, int deltaIndex, Graph graph, TupleStore tupleStore,
+                                     Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope) {
+        return RulesExecLib.evalRuleDelta(rule, deltaIndex, graph, tupleStore, deltaGraph, deltaTuples, rCxt, scope);
+    }
+
+    /** The output of evaluating one group. */
+    private record GroupOutput(Graph triples, TupleStore tuples) {}
+
+    @Override
+    protected RuleSetEvaluation evalStratification(AppendGraph dataGraph, Stratification stratification, TupleStore tupleStore,
+                                                   EvalScope evaluation) {
+        List<RuleGroup> groups = RuleGroups.create(stratification);
+        if ( trace() )
+            groups.forEach(g -> rCxt.out().println(g));
+
+        // Groups are in dependency order so the futures for dependencies already exist.
+        // dataGraph and tupleStore are only read until all groups have finished.
+        // Groups run concurrently and may infer the same triples: send the output when merging.
+        RulesExecCxt.Output output = rCxt.setOutput(null);
+        List<CompletableFuture<GroupOutput>> futures = new ArrayList<>(groups.size());
+        for ( RuleGroup group : groups ) {
+            List<CompletableFuture<GroupOutput>> dependencies = group.dependsOn().stream()
+                    .map(g -> futures.get(g.index()))
+                    .toList();
+            CompletableFuture<GroupOutput> f = CompletableFuture.allOf(dependencies.toArray(CompletableFuture<?>[]::new))
+                    .thenApplyAsync(x -> evalGroup(group, dataGraph, tupleStore, dependencies, evaluation), executor);
+            futures.add(f);
+        }
+
+        StopReason stopReason = StopReason.COMPLETE;
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException ex) {
+            // Stopped by the budget or cancelled: merge the groups that finished.
+            if ( ex.getCause() instanceof RuleSetEvaluationCancelledException )
+                stopReason = RulesBudgetExceededException.stopReason(ex);
+            else if ( ex.getCause() instanceof RuntimeException rex )
+                throw rex;
+            else
+                throw ex;
+        } finally { rCxt.setOutput(output); }
+
+        // Merge, lowest stratum first, recording the output of each stratum.
+        int min = stratification.minStratum();
+        List<Graph> stratumTriples = new ArrayList<>();
+        List<TupleStore> stratumTuples = new ArrayList<>();
+        for ( int i = min ; i <= stratification.maxStratum() ; i++ ) {
+            stratumTriples.add(SpillGraph.createWorkingGraph());
+            stratumTuples.add(TupleStore.create());
+        }
+        List<RuleGroup> mergeOrder = new ArrayList<>(groups);
+        mergeOrder.sort(Comparator.comparingInt(RuleGroup::stratum));
+        for ( RuleGroup group : mergeOrder ) {
+            CompletableFuture<GroupOutput> f = futures.get(group.index());
+            if ( f.isCompletedExceptionally() )
+                continue;
+            GroupOutput groupOutput = f.join();
+            Graph recordTriples = stratumTriples.get(group.stratum()-min);
+            TupleStore recordTuples = stratumTuples.get(group.stratum()-min);
+            groupOutput.triples().find().forEachRemaining(t -> {
+                if ( dataGraph.addNew(t) ) {
+                    recordTriples.add(t);
+                    rCxt.output(t);
+                }
+            });
+            groupOutput.tuples().all().forEachRemaining(t -> {
+                if ( ! tupleStore.contains(t) ) {
+                    tupleStore.add(t);
+                    recordTuples.add(t);
+                    rCxt.output(t);
+                }
+            });
+        }
+        if ( stopReason != StopReason.COMPLETE )
+            return evaluation(dataGraph, tupleStore, stopReason);
+        setIncrementalState(dataGraph, tupleStore, stratification, stratumTriples, stratumTuples);
+        return evaluation(dataGraph, tupleStore, StopReason.COMPLETE);
+    }
+
+    private GroupOutput evalGroup(RuleGroup group, AppendGraph dataGraph, TupleStore tupleStore,
+                                  List<CompletableFuture<GroupOutput>> dependencies, EvalScope evaluation) {
+        if ( trace() )
+            rCxt.out().printf("Group %d : stratum %d\n", group.index(), group.stratum());
+        // Input : the data and the outputs of the groups this group depends on.
+        // A view, not a copy. None of these change while the group runs.
+        Graph inputGraph = dataGraph;
+        TupleStore inputTuples = tupleStore;
+        if ( ! dependencies.isEmpty() ) {
+            Graph depTriples = null;
+            List<TupleStore> tupleStores = new ArrayList<>();
+            tupleStores.add(tupleStore);
+            for ( CompletableFuture<GroupOutput> dep : dependencies ) {
+                // Already complete.
+                GroupOutput depOutput = dep.join();
+                depTriples = ( depTriples == null ) ? depOutput.triples() : new Union(depTriples, depOutput.triples());
+                tupleStores.add(depOutput.tuples());
+            }
+            // The output of a group has no triples of the data graph.
+            inputGraph = Graph2.createDisjoint(depTriples, dataGraph);
+            inputTuples = UnionTupleStore.create(tupleStores);
+        }
+        AppendGraph groupGraph = AppendGraph.create(inputGraph);
+        AppendTupleStore groupTuples = AppendTupleStore.create(inputTuples);
+        // Groups of the same stratum run at the same time: each has its own scope.
+        evalStratum(group.stratum(), group.rules(), groupGraph, groupTuples, rCxt, evaluation.forStratum());
+        return new GroupOutput(groupGraph.getAdded(), groupTuples.getAdded());
+    }
+}
@@ -0,0 +1,859 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import static org.seaborne.jena.srl.exec.IntTripleStore.O;
+import static org.seaborne.jena.srl.exec.IntTripleStore.P;
+import static org.seaborne.jena.srl.exec.IntTripleStore.S;
+import static org.seaborne.jena.srl.exec.IntTripleStore.SPO;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.Prefixes;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.EvalAlgorithm;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.lang.RuleBodyElement.*;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
+import org.seaborne.jena.srl.sys.Stratification;
+import org.seaborne.jena.srl.sys.Stratum;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+import org.seaborne.jena.srl.tuples.Tuple;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * Semi-naive forward rules engine over dictionary-encoded triples.
+ * <p>
+ * Each evaluation encodes the terms of the base graph, the DATA and the rule
+ * constants as integer ids, and the triples as rows of ints in an
+ * {@link IntTripleStore}, which is also the set used to remove duplicates.
+ * Rule bodies are evaluated as nested loops over the rows, with the variables of a
+ * rule held in an {@code int[]}; there are no {@link Binding}s except to evaluate
+ * filter and assignment expressions. Terms are decoded when the output graphs are read.
+ * Bodies are evaluated over blocks of rows when {@link SysJenaRules#batchRuleExecution} is set.
+ * Cyclic rule bodies are evaluated with a {@link LeapfrogTriejoin} when
+ * {@link RuleBodyPlanner#useWorstCaseOptimalJoin} chooses it.
+ * <p>
+ * Supports: SRL: recursion, negation, run-once.
+ * Does not support: tuples, triple terms in rules.
+ */
+public class RulesEngineFwdEncoded implements RulesEngine {
+
+    public static final RulesEngineFactory factory = RulesEngineFwdEncoded::build;
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#ENCODED} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        check(tupleStore, ruleSet, RulesEngineFwdEncoded.class.getSimpleName());
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        // Checks the rule set can be stratified.
+        RulesExecLib.prepare(ruleSet, rCxt);
+        return new RulesEngineFwdEncoded(graph, ruleSet, rCxt);
+    }
+
+    /** Check the rule set only uses features this engine supports. */
+    /*package*/ static void check(TupleStore tupleStore, RuleSet ruleSet, String name) {
+        if ( tupleStore != null || ruleSet.hasTupleData() )
+            throw new RulesEvalException("Tuples not supported for "+name);
+        for ( Rule rule : ruleSet.getRules() ) {
+            if ( ! rule.getHeadTuples().isEmpty() )
+                throw new RulesEvalException("Tuples in rule head : not supported for "+name);
+            for ( Triple t : rule.getHeadTriples() ) {
+                if ( hasTripleTerm(t) )
+                    throw new RulesEvalException("Triple terms in rule head : not supported for "+name);
+            }
+            checkBody(rule.getBodyElements(), name);
+        }
+    }
+
+    private static void checkBody(List<RuleBodyElement> body, String name) {
+        for ( RuleBodyElement elt : body ) {
+            switch (elt) {
+                case EltTriplePattern(Triple triplePattern) -> {
+                    if ( hasTripleTerm(triplePattern) )
+                        throw new RulesEvalException("Triple terms in rule body : not supported for "+name);
+                }
+                case EltTuplePattern(Tuple tuplePattern) ->
+                    throw new RulesEvalException("Tuples in rule body : not supported for "+name);
+                case EltNegation(List<RuleBodyElement> inner, boolean grounded) -> checkBody(inner, name);
+                default -> {}
+            }
+        }
+    }
+
+    private static boolean hasTripleTerm(Triple triple) {
+        return triple.getSubject().isTripleTerm() || triple.getObject().isTripleTerm();
+    }
+
+    private final Graph baseGraph;
+    private final RuleSet ruleSet;
+    private final RulesExecCxt rCxt;
+
+    /*package*/ RulesEngineFwdEncoded(Graph baseGraph, RuleSet ruleSet, RulesExecCxt rCxt) {
+        this.baseGraph = baseGraph;
+        this.ruleSet = ruleSet;
+        this.rCxt = rCxt;
+    }
+
+    private boolean TRACE = false;
+    @Override
+    public RulesEngineFwdEncoded setTrace(boolean traceSetting) {
+        TRACE = traceSetting;
+        return this;
+    }
+
+    @Override
+    public EvalAlgorithm engineType() {
+        return EvalAlgorithm.FWD_SEMINAIVE;
+    }
+
+    @Override
+    public Graph baseGraph() {
+        return baseGraph;
+    }
+
+    @Override
+    public RuleSet ruleSet() {
+        return ruleSet;
+    }
+
+    @Override
+    public Graph materializedGraph() {
+        return eval().outputGraph();
+    }
+
+    @Override
+    public Graph infer() {
+        return eval().inferredTriples();
+    }
+
+    @Override
+    public Stream<Triple> solve(Node s, Node p, Node o) {
+        return eval().outputGraph().find(s, p, o).toList().stream();
+    }
+
+    @Override
+    public RuleSetEvaluation eval() {
+        // NOW()
+        Context.setCurrentDateTime(rCxt.getContext());
+        Stratification stratification = RulesExecLib.prepare(ruleSet, rCxt);
+        rCxt.startBudget();
+        Evaluator evaluator = new Evaluator();
+        evaluator.load(baseGraph);
+        int baseRows = evaluator.store.size();
+        if ( ruleSet.hasData() )
+            evaluator.loadData(ruleSet.getData());
+        evaluator.groundedRows = evaluator.store.size();
+        StopReason stopReason = StopReason.COMPLETE;
+        try {
+            for ( int i = stratification.minStratum() ; i <= stratification.maxStratum() ; i++ )
+                evaluator.evalStratum(stratification.getLevel(i));
+        } catch (RuleSetEvaluationCancelledException ex) {
+            // Stopped by the budget or cancelled: the rows so far.
+            stopReason = RulesBudgetExceededException.stopReason(ex);
+        }
+        if ( TRACE )
+            rCxt.out().printf("Encoded: %d terms, %d triples (base %d)\n", evaluator.dictionary.size(), evaluator.store.size(), baseRows);
+
+        Graph inferredGraph = new EncodedGraph(evaluator.dictionary, evaluator.store, baseRows);
+        inferredGraph.getPrefixMapping().setNsPrefixes(Prefixes.adapt(ruleSet.getPrefixMap()));
+        inferredGraph.getPrefixMapping().setNsPrefixes(baseGraph.getPrefixMapping());
+        Graph outputGraph = new EncodedGraph(evaluator.dictionary, evaluator.store, 0);
+        outputGraph.getPrefixMapping().setNsPrefixes(baseGraph.getPrefixMapping());
+        return new Evaluation(baseGraph, ruleSet, inferredGraph, outputGraph, null, stopReason);
+    }
+
+    @Override
+    public RuleSetEvaluation evalStream(StreamRDF output, Consumer<Tuple> tupleOutput, boolean keepOutput) {
+        RulesExecCxt.Output previous = rCxt.setOutput(new RulesExecCxt.Output(output, tupleOutput, keepOutput));
+        output.start();
+        try {
+            RuleSetEvaluation e = eval();
+            return keepOutput ? e : null;
+        } finally {
+            output.finish();
+            rCxt.setOutput(previous);
+        }
+    }
+
+    /**
+     * Generated code for a rule, for an evaluation order and delta position, or null
+     * to interpret the rule. See {@link RulesEngineFwdGenerated}.
+     */
+    /*package*/ RuleCodeGen.Body generatedBody(CompiledRule rule, int[] order, int deltaIndex) {
+        return null;
+    }
+
+    // Compiled body elements. Terms are ids (>= 0) or variable slots (-(slot+1)).
+    /*package*/ sealed interface Op permits OpPattern, OpFilter, OpAssign, OpNegation {}
+    /*package*/ record OpPattern(int s, int p, int o) implements Op {}
+    /*package*/ record OpFilter(CompiledExpr expr, Var[] vars, int[] varSlots) implements Op {}
+    /*package*/ record OpAssign(int slot, CompiledExpr expr, Var[] vars, int[] varSlots) implements Op {}
+    // A grounded negation (NOT DATA) only tests the rows of the base graph and DATA.
+    /*package*/ record OpNegation(Op[] body, int[] order, boolean grounded) implements Op {}
+
+    /** A rule compiled for one evaluation. */
+    /*package*/ static class CompiledRule {
+        final Rule source;
+        final List<RuleBodyElement> elements;
+        final Op[] ops;
+        final int[] patternIndexes;
+        final int numSlots;
+        // Head: 3 terms per triple; blank node labels by position, or null.
+        final int[] head;
+        final Node[] headBlank;
+        final boolean hasBlankNodes;
+        // Evaluation orders, by deltaIndex+1.
+        final int[][] orders;
+        // Worst-case optimal join of the patterns, then the other elements in restOrder; or null.
+        LeapfrogTriejoin triejoin = null;
+        int[] restOrder = null;
+        // Constants for generated code.
+        int[] constants = null;
+
+        CompiledRule(Rule source, List<RuleBodyElement> elements, Op[] ops, int numSlots, int[] head, Node[] headBlank) {
+            this.source = source;
+            this.elements = elements;
+            this.ops = ops;
+            this.numSlots = numSlots;
+            this.head = head;
+            this.headBlank = headBlank;
+            this.hasBlankNodes = Arrays.stream(headBlank).anyMatch(Objects::nonNull);
+            this.orders = new int[ops.length+1][];
+            int n = 0;
+            int[] x = new int[ops.length];
+            for ( int i = 0 ; i < ops.length ; i++ ) {
+                if ( ops[i] instanceof OpPattern )
+                    x[n++] = i;
+            }
+            this.patternIndexes = Arrays.copyOf(x, n);
+        }
+    }
+
+    /** Rule evaluation for one query; {@code rule} is null when testing a negation. */
+    private record Frame(CompiledRule rule, int deltaIndex, int deltaFrom, int limit) {}
+
+    /** The state of one evaluation. */
+    private class Evaluator {
+        final NodeDictionary dictionary = new NodeDictionary();
+        final IntTripleStore store = new IntTripleStore();
+        // Rows of the base graph and DATA: the rows before any inferred row.
+        int groundedRows = 0;
+        // Intermediate rows not yet counted for the budget.
+        private int pendingRows = 0;
+        final Map<Rule, CompiledRule> compiled = new IdentityHashMap<>();
+
+        void load(Graph graph) {
+            graph.find().forEachRemaining(t -> store.add(dictionary.encode(t.getSubject()),
+                                                         dictionary.encode(t.getPredicate()),
+                                                         dictionary.encode(t.getObject())));
+        }
+
+        /** Load the DATA of the rule set: these are inferred triples if not in the base graph. */
+        void loadData(Graph graph) {
+            graph.find().forEachRemaining(t -> {
+                if ( store.add(dictionary.encode(t.getSubject()), dictionary.encode(t.getPredicate()), dictionary.encode(t.getObject())) )
+                    rCxt.output(t);
+            });
+        }
+
+        void evalStratum(Stratum stratum) {
+            for ( Rule rule : stratum.runOnce() ) {
+                rCxt.checkBudget();
+                eval(compiled(rule), -1, 0, store.size());
+            }
+            List<CompiledRule> rules = new ArrayList<>();
+            stratum.runGeneral().forEach(r -> rules.add(compiled(r)));
+            if ( rules.isEmpty() )
+                return;
+            // First round: all rows.
+            rCxt.countRound();
+            int limit = store.size();
+            for ( CompiledRule rule : rules )
+                eval(rule, -1, 0, limit);
+            // Later rounds: the rows added in the previous round.
+            int deltaFrom = limit;
+            int round = 1;
+            while ( store.size() > deltaFrom ) {
+                round++;
+                rCxt.countRound();
+                int deltaTo = store.size();
+                if ( TRACE )
+                    rCxt.out().printf("Round %d: delta = %d\n", round, deltaTo-deltaFrom);
+                for ( CompiledRule rule : rules ) {
+                    for ( int idx : rule.patternIndexes )
+                        eval(rule, idx, deltaFrom, deltaTo);
+                }
+                deltaFrom = deltaTo;
+            }
+        }
+
+        /**
+         * Evaluate a rule over rows before {@code limit}, and with the pattern at
+         * {@code deltaIndex}, if not -1, only over the rows from {@code deltaFrom}.
+         * New triples are added to the store after the limit.
+         */
+        private void eval(CompiledRule rule, int deltaIndex, int deltaFrom, int limit) {
+            int[] slots = new int[rule.numSlots];
+            Arrays.fill(slots, -1);
+            Frame frame = new Frame(rule, deltaIndex, deltaFrom, limit);
+            RuleCodeGen.Body body = generatedBody(rule, order(rule, deltaIndex), deltaIndex);
+            if ( body != null ) {
+                if ( rule.constants == null )
+                    rule.constants = RuleCodeGen.constants(rule);
+                body.run(new Callbacks(frame), store, rule.constants, slots, deltaFrom, limit);
+                return;
+            }
+            if ( rule.triejoin != null ) {
+                rCxt.countOperator(RulesExecCxt.Operator.TRIEJOIN);
+                rule.triejoin.join(store, deltaIndex, deltaFrom, limit, slots, () -> { row(); return join(rule.ops, rule.restOrder, 0, slots, frame); });
+                return;
+            }
+            if ( SysJenaRules.batchRuleExecution ) {
+                new BatchJoin(rule, order(rule, deltaIndex), frame).run();
+                return;
+            }
+            join(rule.ops, order(rule, deltaIndex), 0, slots, frame);
+        }
+
+        /** An intermediate row, counted for the budget in blocks. */
+        private void row() {
+            if ( ++pendingRows == 1024 ) {
+                pendingRows = 0;
+                rCxt.countRows(1024);
+            }
+        }
+
+        /**
+         * The body elements of a rule that generated code does not include.
+         * Generated code counts rows for the budget at these calls.
+         */
+        private final class Callbacks implements RuleCodeGen.Callbacks {
+            private final Frame frame;
+            private final Op[] ops;
+
+            Callbacks(Frame frame) {
+                this.frame = frame;
+                this.ops = frame.rule().ops;
+            }
+
+            @Override
+            public boolean filter(int idx, int[] slots) {
+                row();
+                OpFilter op = (OpFilter)ops[idx];
+                return op.expr().isSatisfied(binding(op.vars(), op.varSlots(), slots), rCxt);
+            }
+
+            @Override
+            public int assign(int idx, int[] slots) {
+                row();
+                OpAssign op = (OpAssign)ops[idx];
+                NodeValue nv = op.expr().eval(binding(op.vars(), op.varSlots(), slots), rCxt);
+                return ( nv == null ) ? -1 : dictionary.encode(nv.asNode());
+            }
+
+            @Override
+            public boolean exists(int idx, int[] slots) {
+                row();
+                OpNegation op = (OpNegation)ops[idx];
+                Frame exists = new Frame(null, -1, 0, op.grounded() ? groundedRows : frame.limit());
+                return join(op.body(), op.order(), 0, slots, exists);
+            }
+
+            @Override
+            public void add(int s, int p, int o) {
+                row();
+                addTriple(s, p, o);
+            }
+        }
+
+        /**
+         * Evaluation of a rule body in blocks of rows, each row being the variable
+         * slots of one solution. Each step of the order takes a block of rows and passes
+         * on blocks of up to {@link SysJenaRules#batchSize} rows to the next step.
+         * Filters, assignments and negations work on the block in place.
+         */
+        private final class BatchJoin {
+            private final CompiledRule rule;
+            private final int[] order;
+            private final Frame frame;
+            private final int width;
+            private final int batchSize;
+            // Output block of each pattern step, and the number of rows in it.
+            private final int[][] blocks;
+            private final int[] counts;
+            // One row, for expressions, negation and the head.
+            private final int[] rowSlots;
+
+            BatchJoin(CompiledRule rule, int[] order, Frame frame) {
+                this.rule = rule;
+                this.order = order;
+                this.frame = frame;
+                this.width = rule.numSlots;
+                this.batchSize = Math.max(1, SysJenaRules.batchSize);
+                this.blocks = new int[order.length][];
+                this.counts = new int[order.length];
+                this.rowSlots = new int[width];
+            }
+
+            void run() {
+                int[] start = new int[width];
+                Arrays.fill(start, -1);
+                push(0, start, 1);
+                // Pass on the partly filled blocks, in step order.
+                for ( int i = 0 ; i < order.length ; i++ ) {
+                    int n = counts[i];
+                    counts[i] = 0;
+                    if ( n > 0 ) {
+                        rCxt.countRows(n);
+                        push(i+1, blocks[i], n);
+                    }
+                }
+            }
+
+            /** Process n rows at step i of the order. */
+            private void push(int i, int[] rows, int n) {
+                if ( n == 0 )
+                    return;
+                if ( i == order.length ) {
+                    for ( int r = 0 ; r < n ; r++ ) {
+                        System.arraycopy(rows, r*width, rowSlots, 0, width);
+                        emit(rule, rowSlots);
+                    }
+                    return;
+                }
+                switch (rule.ops[order[i]]) {
+                    case OpPattern pattern -> pattern(i, pattern, rows, n);
+                    case OpFilter(CompiledExpr expr, Var[] vars, int[] varSlots) -> {
+                        int m = 0;
+                        for ( int r = 0 ; r < n ; r++ ) {
+                            System.arraycopy(rows, r*width, rowSlots, 0, width);
+                            if ( expr.isSatisfied(binding(vars, varSlots, rowSlots), rCxt) )
+                                keep(rows, r, m++);
+                        }
+                        push(i+1, rows, m);
+                    }
+                    case OpAssign(int slot, CompiledExpr expr, Var[] vars, int[] varSlots) -> {
+                        int m = 0;
+                        for ( int r = 0 ; r < n ; r++ ) {
+                            System.arraycopy(rows, r*width, rowSlots, 0, width);
+                            NodeValue nv = expr.eval(binding(vars, varSlots, rowSlots), rCxt);
+                            // Error in evaluation of the expression: omit this solution.
+                            if ( nv == null )
+                                continue;
+                            rows[r*width+slot] = dictionary.encode(nv.asNode());
+                            keep(rows, r, m++);
+                        }
+                        push(i+1, rows, m);
+                    }
+                    case OpNegation(Op[] body, int[] bodyOrder, boolean grounded) -> {
+                        Frame exists = new Frame(null, -1, 0, grounded ? groundedRows : frame.limit());
+                        int m = 0;
+                        for ( int r = 0 ; r < n ; r++ ) {
+                            System.arraycopy(rows, r*width, rowSlots, 0, width);
+                            if ( ! join(body, bodyOrder, 0, rowSlots, exists) )
+                                keep(rows, r, m++);
+                        }
+                        push(i+1, rows, m);
+                    }
+                }
+            }
+
+            private void keep(int[] rows, int from, int to) {
+                if ( from != to )
+                    System.arraycopy(rows, from*width, rows, to*width, width);
+            }
+
+            private void pattern(int i, OpPattern pattern, int[] rows, int n) {
+                int idx = order[i];
+                int from = ( idx == frame.deltaIndex() ) ? frame.deltaFrom() : 0;
+                int limit = frame.limit();
+                if ( blocks[i] == null )
+                    blocks[i] = new int[batchSize*width];
+                int[] out = blocks[i];
+                for ( int r = 0 ; r < n ; r++ ) {
+                    int base = r*width;
+                    int s = valueAt(pattern.s(), rows, base);
+                    int p = valueAt(pattern.p(), rows, base);
+                    int o = valueAt(pattern.o(), rows, base);
+                    int mask = ( s >= 0 ? S : 0 ) | ( p >= 0 ? P : 0 ) | ( o >= 0 ? O : 0 );
+                    if ( mask == SPO ) {
+                        int row = store.find(s, p, o);
+                        if ( row >= from && row < limit ) {
+                            System.arraycopy(rows, base, out, counts[i]*width, width);
+                            added(i);
+                        }
+                        continue;
+                    }
+                    // Newest first.
+                    int row = ( mask == 0 ) ? limit-1 : store.first(mask, s, p, o);
+                    for ( ; row >= from ; row = ( mask == 0 ) ? row-1 : store.next(mask, row) ) {
+                        if ( row >= limit )
+                            continue;
+                        int outBase = counts[i]*width;
+                        System.arraycopy(rows, base, out, outBase, width);
+                        // Bind the free variables; a variable may occur more than once.
+                        if ( s < 0 )
+                            out[outBase-pattern.s()-1] = store.subject(row);
+                        if ( p < 0 && ! bindAt(out, outBase-pattern.p()-1, store.predicate(row)) )
+                            continue;
+                        if ( o < 0 && ! bindAt(out, outBase-pattern.o()-1, store.object(row)) )
+                            continue;
+                        added(i);
+                    }
+                }
+            }
+
+            // A row has been added to the block of step i.
+            private void added(int i) {
+                counts[i]++;
+                if ( counts[i] == batchSize ) {
+                    counts[i] = 0;
+                    rCxt.countRows(batchSize);
+                    rCxt.countOperator(RulesExecCxt.Operator.BATCH_BLOCK);
+                    push(i+1, blocks[i], batchSize);
+                }
+            }
+
+            private static boolean bindAt(int[] rows, int idx, int value) {
+                if ( rows[idx] >= 0 )
+                    return rows[idx] == value;
+                rows[idx] = value;
+                return true;
+            }
+
+            private static int valueAt(int term, int[] rows, int base) {
+                return ( term >= 0 ) ? term : rows[base-term-1];
+            }
+        }
+
+        /**
+         * Match the body elements from position {@code i} of the order, given the
+         * variables already bound. Returns true to stop, when a negation has found a match.
+         */
+        private boolean join(Op[] ops, int[] order, int i, int[] slots, Frame frame) {
+            if ( i == order.length ) {
+                if ( frame.rule() == null )
+                    return true;
+                emit(frame.rule(), slots);
+                return false;
+            }
+            int idx = order[i];
+            switch (ops[idx]) {
+                case OpPattern(int ps, int pp, int po) -> {
+                    int from = ( idx == frame.deltaIndex() ) ? frame.deltaFrom() : 0;
+                    int limit = frame.limit();
+                    int s = value(ps, slots);
+                    int p = value(pp, slots);
+                    int o = value(po, slots);
+                    int mask = ( s >= 0 ? S : 0 ) | ( p >= 0 ? P : 0 ) | ( o >= 0 ? O : 0 );
+                    if ( mask == SPO ) {
+                        int row = store.find(s, p, o);
+                        return row >= from && row < limit && join(ops, order, i+1, slots, frame);
+                    }
+                    // Newest first.
+                    int row = ( mask == 0 ) ? limit-1 : store.first(mask, s, p, o);
+                    for ( ; row >= from ; row = ( mask == 0 ) ? row-1 : store.next(mask, row) ) {
+                        if ( row >= limit )
+                            continue;
+                        // Bind the free variables; a variable may occur more than once.
+                        int bs = -1;
+                        int bp = -1;
+                        int bo = -1;
+                        boolean ok = true;
+                        if ( s < 0 ) {
+                            bs = -ps-1;
+                            slots[bs] = store.subject(row);
+                        }
+                        if ( p < 0 ) {
+                            int slot = -pp-1;
+                            if ( slots[slot] >= 0 )
+                                ok = ( slots[slot] == store.predicate(row) );
+                            else {
+                                bp = slot;
+                                slots[slot] = store.predicate(row);
+                            }
+                        }
+                        if ( o < 0 && ok ) {
+                            int slot = -po-1;
+                            if ( slots[slot] >= 0 )
+                                ok = ( slots[slot] == store.object(row) );
+                            else {
+                                bo = slot;
+                                slots[slot] = store.object(row);
+                            }
+                        }
+                        if ( ok )
+                            row();
+                        boolean stop = ok && join(ops, order, i+1, slots, frame);
+                        if ( bs >= 0 ) slots[bs] = -1;
+                        if ( bp >= 0 ) slots[bp] = -1;
+                        if ( bo >= 0 ) slots[bo] = -1;
+                        if ( stop )
+                            return true;
+                    }
+                    return false;
+                }
+                case OpFilter(CompiledExpr expr, Var[] vars, int[] varSlots) -> {
+                    if ( ! expr.isSatisfied(binding(vars, varSlots, slots), rCxt) )
+                        return false;
+                    return join(ops, order, i+1, slots, frame);
+                }
+                case OpAssign(int slot, CompiledExpr expr, Var[] vars, int[] varSlots) -> {
+                    NodeValue nv = expr.eval(binding(vars, varSlots, slots), rCxt);
+                    // Error in evaluation of the expression: omit this solution.
+                    if ( nv == null )
+                        return false;
+                    slots[slot] = dictionary.encode(nv.asNode());
+                    boolean stop = join(ops, order, i+1, slots, frame);
+                    slots[slot] = -1;
+                    return stop;
+                }
+                case OpNegation(Op[] body, int[] bodyOrder, boolean grounded) -> {
+                    Frame exists = new Frame(null, -1, 0, grounded ? groundedRows : frame.limit());
+                    if ( join(body, bodyOrder, 0, slots, exists) )
+                        return false;
+                    return join(ops, order, i+1, slots, frame);
+                }
+            }
+        }
+
+        private static int value(int term, int[] slots) {
+            return ( term >= 0 ) ? term : slots[-term-1];
+        }
+
+        private Binding binding(Var[] vars, int[] varSlots, int[] slots) {
+            BindingBuilder builder = Binding.builder();
+            for ( int j = 0 ; j < vars.length ; j++ ) {
+                int id = slots[varSlots[j]];
+                if ( id >= 0 )
+                    builder.add(vars[j], dictionary.decode(id));
+            }
+            return builder.build();
+        }
+
+        private void emit(CompiledRule rule, int[] slots) {
+            // New blank nodes for each solution.
+            Map<Node, Integer> bNodeMap = rule.hasBlankNodes ? new HashMap<>() : null;
+            int[] head = rule.head;
+            for ( int j = 0 ; j < head.length ; j += 3 ) {
+                int s = headTerm(rule, j, slots, bNodeMap);
+                int p = headTerm(rule, j+1, slots, bNodeMap);
+                int o = headTerm(rule, j+2, slots, bNodeMap);
+                if ( s < 0 || p < 0 || o < 0 )
+                    continue;
+                addTriple(s, p, o);
+            }
+        }
+
+        private void addTriple(int s, int p, int o) {
+            // As TemplateLib.calcTriples: skip triples that are not legal RDF.
+            if ( dictionary.decode(s).isLiteral() || ! dictionary.decode(p).isURI() )
+                return;
+            if ( ! store.add(s, p, o) )
+                return;
+            rCxt.countTriple();
+            if ( rCxt.hasOutput() )
+                rCxt.output(Triple.create(dictionary.decode(s), dictionary.decode(p), dictionary.decode(o)));
+        }
+
+        private int headTerm(CompiledRule rule, int j, int[] slots, Map<Node, Integer> bNodeMap) {
+            Node label = rule.headBlank[j];
+            if ( label != null )
+                return bNodeMap.computeIfAbsent(label, x -> dictionary.encode(NodeFactory.createBlankNode()));
+            return value(rule.head[j], slots);
+        }
+
+        private int[] order(CompiledRule rule, int deltaIndex) {
+            int[] order = rule.orders[deltaIndex+1];
+            if ( order == null ) {
+                if ( SysJenaRules.planRuleBodies )
+                    order = RuleBodyPlanner.plan(rule.elements, Set.of(), estimator(), deltaIndex);
+                else if ( deltaIndex >= 0 )
+                    order = RulesExecLib.deltaOrder(rule.elements, deltaIndex);
+                else
+                    order = writtenOrder(rule.ops.length);
+                rule.orders[deltaIndex+1] = order;
+            }
+            return order;
+        }
+
+        private RuleBodyPlanner.Estimator estimator() {
+            return (elt, bound) -> {
+                if ( ! ( elt instanceof EltTriplePattern(Triple triplePattern) ) )
+                    return 0;
+                Node[] nodes = { triplePattern.getSubject(), triplePattern.getPredicate(), triplePattern.getObject() };
+                int[] ids = new int[3];
+                double factor = 1.0;
+                for ( int j = 0 ; j < 3 ; j++ ) {
+                    ids[j] = -1;
+                    if ( Var.isVar(nodes[j]) ) {
+                        if ( bound.contains(Var.alloc(nodes[j])) )
+                            factor = factor * 0.1;
+                    } else {
+                        ids[j] = dictionary.get(nodes[j]);
+                        if ( ids[j] < 0 )
+                            return 0;
+                    }
+                }
+                int mask = ( ids[0] >= 0 ? S : 0 ) | ( ids[1] >= 0 ? P : 0 ) | ( ids[2] >= 0 ? O : 0 );
+                return factor * store.count(mask, ids[0], ids[1], ids[2], 1000);
+            };
+        }
+
+        private CompiledRule compiled(Rule rule) {
+            return compiled.computeIfAbsent(rule, this::compile);
+        }
+
+        private CompiledRule compile(Rule rule) {
+            Map<Var, Integer> varSlots = new HashMap<>();
+            List<RuleBodyElement> elements = rule.getBodyElements();
+            Op[] ops = compileBody(elements, varSlots);
+            List<Triple> headTriples = rule.getHeadTriples();
+            int[] head = new int[3*headTriples.size()];
+            Node[] headBlank = new Node[head.length];
+            for ( int j = 0 ; j < headTriples.size() ; j++ ) {
+                Triple t = headTriples.get(j);
+                Node[] nodes = { t.getSubject(), t.getPredicate(), t.getObject() };
+                for ( int k = 0 ; k < 3 ; k++ ) {
+                    if ( nodes[k].isBlank() )
+                        headBlank[3*j+k] = nodes[k];
+                    else
+                        head[3*j+k] = term(nodes[k], varSlots);
+                }
+            }
+            CompiledRule compiledRule = new CompiledRule(rule, elements, ops, varSlots.size(), head, headBlank);
+            if ( RuleBodyPlanner.useWorstCaseOptimalJoin(elements) )
+                setTriejoin(compiledRule);
+            return compiledRule;
+        }
+
+        /**
+         * Use a Leapfrog Triejoin for the patterns. Variables are bound in order of the
+         * number of patterns they occur in, most first.
+         */
+        private static void setTriejoin(CompiledRule rule) {
+            int N = rule.patternIndexes.length;
+            int[][] terms = new int[N][];
+            int[] occurrences = new int[rule.numSlots];
+            for ( int j = 0 ; j < N ; j++ ) {
+                OpPattern pattern = (OpPattern)rule.ops[rule.patternIndexes[j]];
+                terms[j] = new int[] { pattern.s(), pattern.p(), pattern.o() };
+                Set<Integer> vars = new HashSet<>();
+                for ( int term : terms[j] ) {
+                    if ( term < 0 )
+                        vars.add(-term-1);
+                }
+                vars.forEach(slot -> occurrences[slot]++);
+            }
+            int[] varOrder = IntStream.range(0, rule.numSlots)
+                    .filter(slot -> occurrences[slot] > 0)
+                    .boxed()
+                    .sorted((a, b) -> Integer.compare(occurrences[b], occurrences[a]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            int[] rest = new int[rule.ops.length-N];
+            int n = 0;
+            for ( int i = 0 ; i < rule.ops.length ; i++ ) {
+                if ( ! ( rule.ops[i] instanceof OpPattern ) )
+                    rest[n++] = i;
+            }
+            rule.triejoin = new LeapfrogTriejoin(rule.patternIndexes, terms, varOrder);
+            rule.restOrder = rest;
+        }
+
+        private Op[] compileBody(List<RuleBodyElement> elements, Map<Var, Integer> varSlots) {
+            Op[] ops = new Op[elements.size()];
+            for ( int i = 0 ; i < ops.length ; i++ )
+                ops[i] = compile(elements.get(i), varSlots);
+            return ops;
+        }
+
+        private Op compile(RuleBodyElement elt, Map<Var, Integer> varSlots) {
+            return switch (elt) {
+                case EltTriplePattern(Triple triplePattern) ->
+                    new OpPattern(term(triplePattern.getSubject(), varSlots),
+                                  term(triplePattern.getPredicate(), varSlots),
+                                  term(triplePattern.getObject(), varSlots));
+                case EltTuplePattern(Tuple tuplePattern) ->
+                    throw new RulesEvalException("Tuple pattern: "+tuplePattern);
+                case EltFilter(Expr condition) -> {
+                    Var[] vars = condition.getVarsMentioned().toArray(Var[]::new);
+                    yield new OpFilter(CompiledExpr.compile(condition), vars, slots(vars, varSlots));
+                }
+                case EltAssignment(Var var, Expr expression) -> {
+                    Var[] vars = expression.getVarsMentioned().toArray(Var[]::new);
+                    int[] exprSlots = slots(vars, varSlots);
+                    yield new OpAssign(slot(var, varSlots), CompiledExpr.compile(expression), vars, exprSlots);
+                }
+                case EltNegation(List<RuleBodyElement> inner, boolean grounded) ->
+                    new OpNegation(compileBody(inner, varSlots), writtenOrder(inner.size()), grounded);
+            };
+        }
+
+        private int term(Node node, Map<Var, Integer> varSlots) {
+            if ( Var.isVar(node) )
+                return -slot(Var.alloc(node), varSlots)-1;
+            return dictionary.encode(node);
+        }
+
+        private static int slot(Var var, Map<Var, Integer> varSlots) {
+            return varSlots.computeIfAbsent(var, v -> varSlots.size());
+        }
+
+        private static int[] slots(Var[] vars, Map<Var, Integer> varSlots) {
+            int[] x = new int[vars.length];
+            for ( int j = 0 ; j < vars.length ; j++ )
+                x[j] = slot(vars[j], varSlots);
+            return x;
+        }
+
+        private static int[] writtenOrder(int N) {
+            int[] order = new int[N];
+            for ( int i = 0 ; i < N ; i++ )
+                order[i] = i;
+            return order;
+        }
+    }
+}
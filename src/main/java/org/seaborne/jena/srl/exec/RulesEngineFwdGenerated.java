@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.*;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesEngineFwdEncoded.CompiledRule;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * The {@link RulesEngineFwdEncoded encoded engine}, with each rule, for each evaluation
+ * order and delta position used, compiled to a class by {@link RuleCodeGen}.
+ * <p>
+ * The generated code is kept by the engine, so it is created on the first evaluation and
+ * reused by later evaluations. Rules with blank nodes in the head are interpreted.
+ * <p>
+ * Supports: SRL: recursion, negation, run-once.
+ * Does not support: tuples, triple terms in rules.
+ */
+public class RulesEngineFwdGenerated extends RulesEngineFwdEncoded {
+
+    public static final RulesEngineFactory factory = RulesEngineFwdGenerated::build;
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#GENERATED} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        check(tupleStore, ruleSet, RulesEngineFwdGenerated.class.getSimpleName());
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        // Checks the rule set can be stratified.
+        RulesExecLib.prepare(ruleSet, rCxt);
+        return new RulesEngineFwdGenerated(graph, ruleSet, rCxt);
+    }
+
+    private record CodeKey(int deltaIndex, List<Integer> order) {}
+
+    // Rule does not have a hashCode: rules by identity.
+    private final Map<Rule, Map<CodeKey, RuleCodeGen.Body>> code = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private RulesEngineFwdGenerated(Graph baseGraph, RuleSet ruleSet, RulesExecCxt rCxt) {
+        super(baseGraph, ruleSet, rCxt);
+    }
+
+    @Override
+    RuleCodeGen.Body generatedBody(CompiledRule rule, int[] order, int deltaIndex) {
+        if ( ! RuleCodeGen.canGenerate(rule) )
+            return null;
+        CodeKey key = new CodeKey(deltaIndex, Arrays.stream(order).boxed().toList());
+        Map<CodeKey, RuleCodeGen.Body> bodies = code.computeIfAbsent(rule.source, r -> new HashMap<>());
+        synchronized(bodies) {
+            return bodies.computeIfAbsent(key, k -> RuleCodeGen.generate(rule, order, deltaIndex));
+        }
+    }
+}
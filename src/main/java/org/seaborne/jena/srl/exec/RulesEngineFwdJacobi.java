@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.EvalAlgorithm;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.jena.AppendGraph;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * Jacobi-style semi-naive forward rules engine.
+ * <p>
+ * All the rule evaluations of a round run concurrently on a {@link ForkJoinPool},
+ * all reading the graph and tuple store as they were at the start of the round.
+ * Nothing is written during the parallel phase; the results are then
+ * added, in rule order, and what is new becomes the next round's delta.
+ * <p>
+ * Supports: SRL: recursion, negation, run-once, tuples.
+ */
+public class RulesEngineFwdJacobi extends AbstractRulesEngineFwdSemiNaive implements RulesEngine {
+
+    public static final RulesEngineFactory factory = RulesEngineFwdJacobi::build;
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#JACOBI} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        return new RulesEngineFwdJacobi(graph, tupleStore, ruleSet, rCxt, ForkJoinPool.commonPool());
+    }
+
+    private final ForkJoinPool pool;
+
+    private RulesEngineFwdJacobi(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt, ForkJoinPool pool) {
+        super(baseGraph, tupleStore, ruleSet, rCxt);
+        this.pool = pool;
+    }
+
+    @Override
+    public EvalAlgorithm engineType() {
+        return EvalAlgorithm.FWD_NAIVE_JACOBI;
+    }
+
+    @Override
+    protected RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        return RulesExecLib.evalRule(rule, graph, tupleStore, rCxt, scope);
+    }
+
+    @Override
+    protected RuleEval evalRuleDelta(Rule rule, int deltaIndex, Graph graph, TupleStore tupleStore,
+                                     Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope) {
+        return RulesExecLib.evalRuleDelta(rule, deltaIndex, graph, tupleStore, deltaGraph, deltaTuples, rCxt, scope);
+    }
+
+    @Override
+    protected void evalRound(List<Supplier<RuleEval>> evaluations, AppendGraph dataGraph, TupleStore evalTupleStore,
+                             Graph nextDelta, TupleStore nextDeltaTuples, RulesExecCxt rCxt) {
+        if ( evaluations.size() <= 1 ) {
+            super.evalRound(evaluations, dataGraph, evalTupleStore, nextDelta, nextDeltaTuples, rCxt);
+            return;
+        }
+        // Parallel phase : read-only.
+        List<ForkJoinTask<RuleEval>> tasks = new ArrayList<>(evaluations.size());
+        for ( Supplier<RuleEval> evaluation : evaluations ) {
+            Callable<RuleEval> callable = evaluation::get;
+            tasks.add(pool.submit(callable));
+        }
+        // Wait for all evaluations to finish before changing the graph.
+        // ForkJoinTask.join rethrows the exception of a failed evaluation,
+        // such as the budget being exceeded, after all the evaluations have finished.
+        List<RuleEval> results = new ArrayList<>(tasks.size());
+        RuntimeException failure = null;
+        for ( ForkJoinTask<RuleEval> task : tasks ) {
+            try {
+                results.add(task.join());
+            } catch (RuntimeException ex) {
+                if ( failure == null )
+                    failure = ex;
+            }
+        }
+        if ( failure != null )
+            throw failure;
+        // Merge phase : in order, single threaded.
+        for ( RuleEval rEval : results )
+            RulesExecLib.accumulateOneRuleHeadDelta(rEval, dataGraph, evalTupleStore, nextDelta, nextDeltaTuples, rCxt);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * Semi-naive forward rules engine.
+ * <p>
+ * After the first round of a stratum, rules are only evaluated against the triples
+ * and tuples that were new in the previous round.
+ * <p>
+ * Supports: SRL: recursion, negation, run-once, tuples.
+ */
+public class RulesEngineFwdSemiNaive extends AbstractRulesEngineFwdSemiNaive implements RulesEngine {
+
+    public static final RulesEngineFactory factory = RulesEngineFwdSemiNaive::build;
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#SEMINAIVE} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        return new RulesEngineFwdSemiNaive(graph, tupleStore, ruleSet, rCxt);
+    }
+
+    private RulesEngineFwdSemiNaive(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt) {
+        super(baseGraph, tupleStore, ruleSet, rCxt);
+    }
+
+    @Override
+    protected RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        return RulesExecLib.evalRule(rule, graph, tupleStore, rCxt, scope);
+    }
+
+    @Override
+    protected RuleEval evalRuleDelta(Rule rule, int deltaIndex, Graph graph, TupleStore tupleStore,
+                                     Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope) {
+        return RulesExecLib.evalRuleDelta(rule, deltaIndex, graph, tupleStore, deltaGraph, deltaTuples, rCxt, scope);
+    }
+}
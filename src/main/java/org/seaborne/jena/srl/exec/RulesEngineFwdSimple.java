@@ -61,8 +61,8 @@ public class RulesEngineFwdSimple extends AbstractRulesEngineFwdSimple implement
      * The argument graph is updated.
      */
     @Override
-    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt) {
-        RuleEval rEval = RulesExecLib.evalRule(rule, graph, evalTupleStore, rCxt);
+    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope) {
+        RuleEval rEval = RulesExecLib.evalRule(rule, graph, evalTupleStore, rCxt, scope);
         RulesExecLib.accumulateOneRuleHead(rEval, graph, evalTupleStore, rCxt);
     }
 }
@@ -21,25 +21,28 @@
 
 package org.seaborne.jena.srl.exec;
 
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.query.Query;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.exec.QueryExec;
-import org.apache.jena.sparql.exec.RowSet;
 import org.apache.jena.sparql.util.Context;
 import org.seaborne.jena.srl.Rule;
 import org.seaborne.jena.srl.RuleSet;
 import org.seaborne.jena.srl.RulesEngine;
 import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesLibSparql.CompiledQuery;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
 /**
  * A simple rules engine that translates the body to a SPARQL query.
+ * The query is compiled to optimized algebra once for each rule.
  * <p>
  * Supports: SRL (recursion. negation, run-once)
  * Does not support: tuples
@@ -59,48 +62,47 @@ public class RulesEngineFwdSimpleSparqlBody extends AbstractRulesEngineFwdSimple
         return new RulesEngineFwdSimpleSparqlBody(graph, tupleStore, ruleSet, rCxt);
     }
 
+    private final Map<Rule, CompiledQuery> queries = Collections.synchronizedMap(new IdentityHashMap<>());
+
     private RulesEngineFwdSimpleSparqlBody(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt) {
         super(baseGraph, tupleStore, ruleSet, rCxt);
     }
 
+    @Override
+    protected boolean supportsTuples() {
+        return false;
+    }
+
     /**
      * One execution of one rule.
      * The argument graph is updated.
      */
     @Override
-    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt) {
-        execAccRuleSPARQL(graph, evalTupleStore, rule, rCxt);
+    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope) {
+        execAccRuleSPARQL(graph, evalTupleStore, rule, rCxt, scope);
     }
 
     /**
      * One execution of one rule.
      * The argument graph is updated.
      */
-    private void execAccRuleSPARQL(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt) {
-        // Can cache the query!
-        Query query = RulesLibSparql.ruleBodyToQuery(rule.getBody());
-
-        // Prefixes.adapt(query.getPrefixMapping()).putAll(P.prefixMap());
-        // System.out.println(query);
-        QueryExec qExec = QueryExec.graph(graph)
-                .query(query)
-                .context(rCxt.getContext())
-                .build();
-        RowSet rowSet = qExec.select();
-        Iterator<Binding> iter = rowSet;
+    private void execAccRuleSPARQL(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope) {
+        CompiledQuery compiled = queries.computeIfAbsent(rule, r -> CompiledQuery.compile(RulesLibSparql.ruleBodyToQuery(r.getBody())));
+        Query query = compiled.query();
+        List<Binding> rows;
+        QueryIterator qIter = compiled.exec(graph, scope.groundedGraph(), rCxt.getContext());
+        try {
+            rows = Iter.toList(rCxt.countRows(qIter));
+        } finally { qIter.close(); }
 
-        if ( true ) {
-            List<Binding> x = Iter.toList(iter);
-            x.forEach(row-> {
-                for ( Var v : query.getProjectVars()) {
-                    if ( row.get(v) == null )
-                        throw new RulesEvalException("Variable not set: "+v);
-                }
-            });
-            iter = x.iterator();
-        }
+        rows.forEach(row-> {
+            for ( Var v : query.getProjectVars()) {
+                if ( row.get(v) == null )
+                    throw new RulesEvalException("Variable not set: "+v);
+            }
+        });
 
-        RuleEval rEval = RulesExecLib.evalRuleHead(rule.getHead(), iter, rCxt);
+        RuleEval rEval = RulesExecLib.evalRuleHead(rule.getHead(), rows.iterator(), rCxt);
         RulesExecLib.accumulateOneRuleHead(rEval, graph, evalTupleStore, rCxt);
     }
 }
@@ -21,22 +21,28 @@
 
 package org.seaborne.jena.srl.exec;
 
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.graph.Graph;
-import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Query;
-import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.modify.TemplateLib;
 import org.apache.jena.sparql.util.Context;
 import org.seaborne.jena.srl.Rule;
 import org.seaborne.jena.srl.RuleSet;
 import org.seaborne.jena.srl.RulesEngine;
 import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesLibSparql.CompiledQuery;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
 /**
- * A simple rules engine that translates the body to a SPARQL query.
+ * A simple rules engine that translates the rule to a SPARQL CONSTRUCT query.
+ * The query pattern is compiled to optimized algebra once for each rule.
  * <p>
  * Supports: SRL (recursion. negation, run-once)
  * Does not support: tuples
@@ -56,23 +62,31 @@ public class RulesEngineFwdSimpleSparqlConstruct extends AbstractRulesEngineFwdS
         return new RulesEngineFwdSimpleSparqlConstruct(graph, tupleStore, ruleSet, rCxt);
     }
 
+    private final Map<Rule, CompiledQuery> queries = Collections.synchronizedMap(new IdentityHashMap<>());
+
     private RulesEngineFwdSimpleSparqlConstruct(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt) {
         super(baseGraph, tupleStore, ruleSet, rCxt);
     }
 
+    @Override
+    protected boolean supportsTuples() {
+        return false;
+    }
+
     /**
      * One execution of one rule.
      * The argument graph is updated.
      */
     @Override
-    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt) {
+    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope) {
         // Via CONSTRUCT
-        Query query = RulesLibSparql.ruleToConstruct(rule);
-        Iterator<Triple> triples = QueryExec.graph(graph)
-                .query(query)
-                .context(rCxt.getContext())
-                .build()
-                .constructTriples();
-        GraphUtil.add(graph, triples);
+        CompiledQuery compiled = queries.computeIfAbsent(rule, r -> CompiledQuery.compile(RulesLibSparql.ruleToConstruct(r)));
+        List<Triple> templateTriples = compiled.query().getConstructTemplate().getTriples();
+        List<Triple> triples;
+        QueryIterator qIter = compiled.exec(graph, scope.groundedGraph(), rCxt.getContext());
+        try {
+            triples = Iter.toList(TemplateLib.calcTriples(templateTriples, rCxt.countRows(qIter)));
+        } finally { qIter.close(); }
+        RulesExecLib.accumulateOneRuleHead(new RuleEval(triples, List.of()), graph, evalTupleStore, rCxt);
     }
 }
@@ -21,7 +21,13 @@
 
 package org.seaborne.jena.srl.exec;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
 import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.exec.UpdateExec;
 import org.apache.jena.sparql.util.Context;
 import org.apache.jena.update.Update;
@@ -29,10 +35,12 @@ import org.seaborne.jena.srl.Rule;
 import org.seaborne.jena.srl.RuleSet;
 import org.seaborne.jena.srl.RulesEngine;
 import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.tuples.Tuple;
 import org.seaborne.jena.srl.tuples.TupleStore;
 
 /**
- * A simple rules engine that translates the body to a SPARQL query.
+ * A simple rules engine that translates the rule to a SPARQL INSERT update.
+ * The update is built once for each rule.
  * <p>
  * Supports: SRL (recursion. negation, run-once)
  * Does not support: tuples
@@ -52,21 +60,40 @@ public class RulesEngineFwdSimpleSparqlInsert extends AbstractRulesEngineFwdSimp
         return new RulesEngineFwdSimpleSparqlInsert(graph, tupleStore, ruleSet, rCxt);
     }
 
+    private final Map<Rule, Update> updates = Collections.synchronizedMap(new IdentityHashMap<>());
+
     private RulesEngineFwdSimpleSparqlInsert(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt) {
         super(baseGraph, tupleStore, ruleSet, rCxt);
     }
 
+    @Override
+    protected boolean supportsTuples() {
+        return false;
+    }
+
+    /** Triples are added by SPARQL Update: the results are sent after the evaluation. */
+    @Override
+    public RuleSetEvaluation evalStream(StreamRDF output, Consumer<Tuple> tupleOutput, boolean keepOutput) {
+        RuleSetEvaluation e = eval();
+        e.sendTo(output, tupleOutput);
+        return keepOutput ? e : null;
+    }
+
     /**
      * One execution of one rule.
      * The argument graph is updated.
      */
     @Override
-    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt) {
-        Update insert = RulesLibSparql.ruleToInsert(rule);
+    protected void executeOneRule(Graph graph, TupleStore evalTupleStore, Rule rule, RulesExecCxt rCxt, EvalScope scope) {
+        Update insert = updates.computeIfAbsent(rule, RulesLibSparql::ruleToInsert);
 
-        UpdateExec.graph(graph)
+        // The update adds to the graph: count the triples afterwards.
+        rCxt.checkBudget();
+        long before = graph.size();
+        UpdateExec.dataset(RulesLibSparql.dataset(graph, scope.groundedGraph()))
             .update(insert)
             .context(rCxt.getContext())
             .execute();
+        rCxt.countTriples(graph.size()-before);
     }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.exec.RulesLibSparql.CompiledQuery;
+import org.seaborne.jena.srl.tuples.TupleStore;
+
+/**
+ * Semi-naive forward rules engine where rule bodies are evaluated as SPARQL queries.
+ * <p>
+ * In the rounds after the first, each rule is evaluated once for each body triple
+ * pattern that could match a triple inferred in the stratum, with that pattern in a
+ * {@code GRAPH} clause for the named graph {@link #deltaGraphName}. The delta graph of
+ * the previous round is the named graph in the dataset of the query, and the data is the
+ * default graph. Queries are compiled once for each rule and delta position.
+ * The delta is matched in place, as a graph, so the compiled query does not change
+ * from round to round.
+ * <p>
+ * {@code NOT DATA} is matched against the base graph and the DATA of the rule set,
+ * which are also a named graph of the dataset.
+ * <p>
+ * Supports: SRL (recursion. negation, run-once)
+ * Does not support: tuples
+ */
+public class RulesEngineFwdSparqlSemiNaive extends AbstractRulesEngineFwdSemiNaive implements RulesEngine {
+
+    public static final RulesEngineFactory factory = RulesEngineFwdSparqlSemiNaive::build;
+
+    /** The name of the graph of the triples new in the previous round. */
+    public static final Node deltaGraphName = NodeFactory.createURI("srl:deltaGraph");
+
+    /**
+     * Not public.
+     * Preferred: use {@link ShaclRulesExec#create(EngineType, Graph, TupleStore, RuleSet)}
+     * with {@link EngineType#SPARQL_SEMINAIVE} which goes via the RulesEngineRegistry
+     */
+    private
+    static RulesEngine build(Graph graph, TupleStore tupleStore, RuleSet ruleSet, Context cxt) {
+        RulesExecCxt rCxt = RulesExecCxt.create(cxt);
+        return new RulesEngineFwdSparqlSemiNaive(graph, tupleStore, ruleSet, rCxt);
+    }
+
+    // Per rule, queries by deltaIndex+1.
+    private final Map<Rule, CompiledQuery[]> queries = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private RulesEngineFwdSparqlSemiNaive(Graph baseGraph, TupleStore tupleStore, RuleSet ruleSet, RulesExecCxt rCxt) {
+        super(baseGraph, tupleStore, ruleSet, rCxt);
+    }
+
+    @Override
+    protected boolean supportsTuples() {
+        return false;
+    }
+
+    @Override
+    protected RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        CompiledQuery query = query(rule, -1);
+        return exec(rule, query, RulesLibSparql.dataset(graph, scope.groundedGraph()), rCxt);
+    }
+
+    @Override
+    protected RuleEval evalRuleDelta(Rule rule, int deltaIndex, Graph graph, TupleStore tupleStore,
+                                     Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope) {
+        if ( deltaGraph.isEmpty() )
+            return new RuleEval(List.of(), List.of());
+        CompiledQuery query = query(rule, deltaIndex);
+        DatasetGraph dsg = RulesLibSparql.dataset(graph, scope.groundedGraph());
+        dsg.addGraph(deltaGraphName, deltaGraph);
+        return exec(rule, query, dsg, rCxt);
+    }
+
+    private RuleEval exec(Rule rule, CompiledQuery query, DatasetGraph dsg, RulesExecCxt rCxt) {
+        List<Binding> rows;
+        QueryIterator qIter = query.exec(dsg, rCxt.getContext());
+        try {
+            rows = Iter.toList(rCxt.countRows(qIter));
+        } finally { qIter.close(); }
+        return RulesExecLib.evalRuleHead(rule.getHead(), rows.iterator(), rCxt);
+    }
+
+    private CompiledQuery query(Rule rule, int deltaIndex) {
+        CompiledQuery[] compiled = queries.computeIfAbsent(rule, r -> new CompiledQuery[r.getBodyElements().size()+1]);
+        synchronized(compiled) {
+            CompiledQuery query = compiled[deltaIndex+1];
+            if ( query == null ) {
+                query = ( deltaIndex < 0 )
+                        ? CompiledQuery.compile(RulesLibSparql.ruleBodyToQuery(rule.getBody()))
+                        : CompiledQuery.compile(RulesLibSparql.ruleBodyToQuery(rule.getBody(), deltaIndex, deltaGraphName));
+                compiled[deltaIndex+1] = query;
+            }
+            return query;
+        }
+    }
+}
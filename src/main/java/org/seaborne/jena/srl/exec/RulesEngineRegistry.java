@@ -38,10 +38,17 @@ public class RulesEngineRegistry {
     private static Map<EngineType, RulesEngineFactory> config = setup();
     private static Map<EngineType, RulesEngineFactory> setup() {
         return
-                Map.of(EngineType.SIMPLE, RulesEngineFwdSimple.factory,
-                       EngineType.SIMPLE_SPARQL, RulesEngineFwdSimpleSparqlBody.factory,
-                       EngineType.SIMPLE_SPARQL_INSERT, RulesEngineFwdSimpleSparqlInsert.factory,
-                       EngineType.SIMPLE_SPARQL_CONSTRUCT, RulesEngineFwdSimpleSparqlConstruct.factory
+                Map.ofEntries(Map.entry(EngineType.SIMPLE, RulesEngineFwdSimple.factory),
+                              Map.entry(EngineType.SIMPLE_SPARQL, RulesEngineFwdSimpleSparqlBody.factory),
+                              Map.entry(EngineType.SIMPLE_SPARQL_INSERT, RulesEngineFwdSimpleSparqlInsert.factory),
+                              Map.entry(EngineType.SIMPLE_SPARQL_CONSTRUCT, RulesEngineFwdSimpleSparqlConstruct.factory),
+                              Map.entry(EngineType.SEMINAIVE, RulesEngineFwdSemiNaive.factory),
+                              Map.entry(EngineType.JACOBI, RulesEngineFwdJacobi.factory),
+                              Map.entry(EngineType.DATAFLOW, RulesEngineFwdDataflow.factory),
+                              Map.entry(EngineType.ENCODED, RulesEngineFwdEncoded.factory),
+                              Map.entry(EngineType.GENERATED, RulesEngineFwdGenerated.factory),
+                              Map.entry(EngineType.SPARQL_SEMINAIVE, RulesEngineFwdSparqlSemiNaive.factory),
+                              Map.entry(EngineType.BKD_QSQR, RulesEngineBkdQSQR.factory)
                         );
     }
 
@@ -21,15 +21,27 @@
 
 package org.seaborne.jena.srl.exec;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.function.FunctionEnv;
 import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.Rule;
 import org.seaborne.jena.srl.ShaclRules;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
 import org.seaborne.jena.srl.sys.SysSRL;
+import org.seaborne.jena.srl.tuples.Tuple;
 
 /**
  * Rule execution environment.
@@ -48,6 +60,21 @@ public class RulesExecCxt implements FunctionEnv {
     private final Context context;
     private final boolean strict;
     private final AtomicBoolean cancelSignal;
+    private final RulesBudget budget;
+    // Whether rows need counting: a row limit, a timeout or a cancel signal from the caller.
+    private final boolean countsRows;
+    // Counts for the budget of the current evaluation.
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong triples = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private volatile long deadline = 0;
+    private volatile boolean hasDeadline = false;
+    // Rule does not have a hashCode: rules by identity.
+    private final Map<Rule, RulePlan> rulePlans = Collections.synchronizedMap(new IdentityHashMap<>());
+    // Where inferred triples and tuples are sent as they are accepted; null when not streaming.
+    private volatile Output output = null;
+    // Operators chosen at run time, by ordinal.
+    private final AtomicLongArray operatorCounts = new AtomicLongArray(Operator.values().length);
 
     /* A general purpose setting */
     private static RulesExecCxt global = RulesExecCxt.create();
@@ -64,14 +91,17 @@ public class RulesExecCxt implements FunctionEnv {
         Context context1 = context.copy();
         // XXX Replacement: Context.setCurrentDateTimeIfUndef(context1);
         Context.setCurrentDateTime(context1);
-        AtomicBoolean cancelSignal = new AtomicBoolean(false);
-        return new RulesExecCxt(context1, cancelSignal);
+        // A cancel signal can be provided by the caller.
+        AtomicBoolean callerSignal = ( context1.get(ShaclRules.symCancelSignal) instanceof AtomicBoolean signal ) ? signal : null;
+        return new RulesExecCxt(context1, callerSignal);
     }
 
-    private RulesExecCxt(Context context, AtomicBoolean cancelSignal) {
+    private RulesExecCxt(Context context, AtomicBoolean callerSignal) {
         this.context = context;
         this.strict = context.isTrue(ShaclRules.symStrict);
-        this.cancelSignal = cancelSignal;
+        this.cancelSignal = ( callerSignal != null ) ? callerSignal : new AtomicBoolean(false);
+        this.budget = ( context.get(ShaclRules.symBudget) instanceof RulesBudget b ) ? b : RulesBudget.unlimited();
+        this.countsRows = budget.getMaxRows() >= 0 || budget.getTimeoutMillis() >= 0 || callerSignal != null;
     }
 
     public boolean isStrict() {
@@ -98,6 +128,185 @@ public class RulesExecCxt implements FunctionEnv {
         return cancelSignal;
     }
 
+    /** The budget for each evaluation. */
+    public RulesBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Start counting for the {@link RulesBudget budget} of an evaluation or of an
+     * incremental update.
+     */
+    public void startBudget() {
+        rounds.set(0);
+        triples.set(0);
+        rows.set(0);
+        long timeout = budget.getTimeoutMillis();
+        hasDeadline = ( timeout >= 0 );
+        deadline = System.nanoTime() + timeout*1_000_000;
+    }
+
+    /**
+     * Check for cancellation and the time limit.
+     * Throws {@link RulesBudgetExceededException} to stop the evaluation.
+     */
+    public void checkBudget() {
+        if ( cancelSignal.get() )
+            throw new RulesBudgetExceededException(StopReason.CANCELLED);
+        if ( hasDeadline && System.nanoTime() - deadline > 0 )
+            throw new RulesBudgetExceededException(StopReason.TIMEOUT);
+    }
+
+    /** Start a round of an evaluation. */
+    public void countRound() {
+        checkBudget();
+        exceeds(rounds.incrementAndGet(), budget.getMaxRounds(), StopReason.MAX_ROUNDS);
+    }
+
+    /** A new triple or tuple has been inferred. */
+    public void countTriple() {
+        countTriples(1);
+    }
+
+    /** New triples or tuples have been inferred. */
+    public void countTriples(long n) {
+        exceeds(triples.addAndGet(n), budget.getMaxTriples(), StopReason.MAX_TRIPLES);
+    }
+
+    /** Intermediate rows of rule bodies. Call with small numbers for each row, larger for a block of rows. */
+    public void countRows(long n) {
+        long x = rows.addAndGet(n);
+        exceeds(x, budget.getMaxRows(), StopReason.MAX_ROWS);
+        // Check the time every 1024 rows or so.
+        if ( n > 1 || ( x & 0x3FF ) == 0 )
+            checkBudget();
+    }
+
+    /**
+     * Whether intermediate rows are counted: there is a row limit, a timeout or a
+     * cancel signal provided by the caller. Otherwise, the budget is only checked each
+     * round.
+     */
+    public boolean countsRows() {
+        return countsRows;
+    }
+
+    /**
+     * Count the items of an iterator as rows, in blocks of 1024.
+     * Return the iterator itself if rows are not counted.
+     */
+    public <X> Iterator<X> countRows(Iterator<X> iter) {
+        if ( ! countsRows )
+            return iter;
+        return new IteratorCountRows<>(iter);
+    }
+
+    private static final int rowBlockSize = 1024;
+
+    /** Count rows locally, adding to the shared count in blocks. */
+    private class IteratorCountRows<X> implements Iterator<X> {
+        private final Iterator<X> iter;
+        private int pending = 0;
+
+        IteratorCountRows(Iterator<X> iter) {
+            this.iter = iter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean b = iter.hasNext();
+            if ( !b && pending > 0 ) {
+                int n = pending;
+                pending = 0;
+                countRows(n);
+            }
+            return b;
+        }
+
+        @Override
+        public X next() {
+            X x = iter.next();
+            if ( ++pending == rowBlockSize ) {
+                pending = 0;
+                countRows(rowBlockSize);
+            }
+            return x;
+        }
+    }
+
+    private static void exceeds(long count, long max, StopReason stopReason) {
+        if ( max >= 0 && count > max )
+            throw new RulesBudgetExceededException(stopReason);
+    }
+
+    /** The compiled plan for a rule, created on first use. */
+    public RulePlan rulePlan(Rule rule) {
+        return rulePlans.computeIfAbsent(rule, RulePlan::compile);
+    }
+
+    /** Operators that evaluation chooses at run time. */
+    public enum Operator {
+        /** A full block of rows passed on by batch execution. */
+        BATCH_BLOCK,
+        /** A rule body evaluated by a worst-case optimal join. */
+        TRIEJOIN,
+        /** A hash join with a hash table of the matches of the triple pattern. */
+        HASH_JOIN_BUILD_ON_PATTERN,
+        /** A hash join with hash tables of blocks of the incoming solutions. */
+        HASH_JOIN_BUILD_ON_INPUT
+    }
+
+    /** An operator has been used. */
+    public void countOperator(Operator operator) {
+        operatorCounts.incrementAndGet(operator.ordinal());
+    }
+
+    /** The number of times an operator has been used, over all evaluations. */
+    public long getOperatorCount(Operator operator) {
+        return operatorCounts.get(operator.ordinal());
+    }
+
+    /**
+     * Destinations for the triples and tuples of an evaluation, sent as each one is
+     * accepted as new. {@code tuples} may be null, in which case tuples are not sent.
+     * {@code keep} is whether the engine keeps the results of the evaluation.
+     */
+    public record Output(StreamRDF triples, Consumer<Tuple> tuples, boolean keep) {}
+
+    /**
+     * Set the output for inferred triples and tuples; null for none.
+     * Return the previous setting.
+     */
+    public Output setOutput(Output output) {
+        Output previous = this.output;
+        this.output = output;
+        return previous;
+    }
+
+    /** The output for inferred triples and tuples, or null. */
+    public Output getOutput() {
+        return output;
+    }
+
+    /** Whether inferred triples and tuples are sent to an {@link Output}. */
+    public boolean hasOutput() {
+        return output != null;
+    }
+
+    /** Send a newly inferred triple to the output, if any. */
+    public void output(Triple triple) {
+        Output x = output;
+        if ( x != null )
+            x.triples().triple(triple);
+    }
+
+    /** Send a newly inferred tuple to the output, if any. */
+    public void output(Tuple tuple) {
+        Output x = output;
+        if ( x != null && x.tuples() != null )
+            x.tuples().accept(tuple);
+    }
+
     public void start() {}
 
     public void finish() {
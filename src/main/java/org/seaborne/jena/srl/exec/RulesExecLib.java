@@ -25,22 +25,13 @@ import java.util.*;
 import java.util.function.Function;
 
 import org.apache.jena.atlas.iterator.Iter;
-import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.graph.Graph;
-import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.out.NodeFmtLib;
-import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.binding.BindingFactory;
-import org.apache.jena.sparql.expr.Expr;
-import org.apache.jena.sparql.expr.ExprEvalException;
-import org.apache.jena.sparql.expr.NodeValue;
-import org.apache.jena.sparql.function.FunctionEnv;
 import org.apache.jena.sparql.modify.TemplateLib;
 import org.seaborne.jena.srl.Rule;
-import org.seaborne.jena.srl.RuleBody;
 import org.seaborne.jena.srl.RuleHead;
 import org.seaborne.jena.srl.RuleSet;
 import org.seaborne.jena.srl.jena.AppendGraph;
@@ -68,16 +59,62 @@ class RulesExecLib {
         // XXX Ought to do this once as a "prepare" step and keep in the RuleSet.
         DependencyGraph depGraph = DependencyGraph.create(ruleSet, rCxt);
         RecursionChecker.checkForIllegalRecursion(depGraph, rCxt);
-        return Stratification.create(ruleSet, depGraph, rCxt);
+        Stratification stratification = Stratification.create(ruleSet, depGraph, rCxt);
+        ruleSet.getRules().forEach(rCxt::rulePlan);
+        return stratification;
     }
 
-    /** Execute a rule */
-    public static RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt) {
-        Iterator<Binding> iter = evalBody(graph, tupleStore, rule.getBody(), rCxt);
-        // XXX Do better - avoid creating arrays that aren't used.
+    /**
+     * Execute a rule. {@code scope} is the pass over a stratum that the execution is part
+     * of, or null.
+     */
+    public static RuleEval evalRule(Rule rule, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
         // XXX Do better - pass around accumulators?
-        RuleEval ruleEval = evalRuleHead(rule.getHead(), iter, rCxt);
-        return ruleEval;
+        return rulePlan(rule, rCxt, scope).eval(graph, tupleStore, rCxt, scope);
+    }
+
+    /**
+     * Execute a rule, starting from a partial solution.
+     * Variables of the binding that the rule body assigns are not used.
+     */
+    public static RuleEval evalRule(Rule rule, Binding binding, Graph graph, TupleStore tupleStore, RulesExecCxt rCxt, EvalScope scope) {
+        return rulePlan(rule, rCxt, scope).eval(binding, graph, tupleStore, rCxt, scope);
+    }
+
+    /**
+     * Execute a rule with the body element at {@code deltaIndex} matched against
+     * the delta graph and delta tuple store, and all other body elements against
+     * the full graph and tuple store. This is the per-atom step of semi-naive evaluation.
+     */
+    public static RuleEval evalRuleDelta(Rule rule, int deltaIndex, Graph graph, TupleStore tupleStore,
+                                         Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt, EvalScope scope) {
+        return rulePlan(rule, rCxt, scope).evalDelta(deltaIndex, graph, tupleStore, deltaGraph, deltaTuples, rCxt, scope);
+    }
+
+    private static RulePlan rulePlan(Rule rule, RulesExecCxt rCxt, EvalScope scope) {
+        return ( scope == null ) ? rCxt.rulePlan(rule) : scope.rulePlan(rule, rCxt);
+    }
+
+    /**
+     * Order of evaluation of body elements for a delta step.
+     * The delta is usually small so, if it is only preceded by triple and tuple patterns,
+     * it is moved to the front. Filters, assignments and negation stay where they are
+     * so their variables are still bound when they are evaluated.
+     */
+    /*package*/ static int[] deltaOrder(List<RuleBodyElement> ruleElts, int deltaIndex) {
+        int N = ruleElts.size();
+        int[] order = new int[N];
+        for ( int i = 0 ; i < N ; i++ )
+            order[i] = i;
+        for ( int i = 0 ; i < deltaIndex ; i++ ) {
+            RuleBodyElement elt = ruleElts.get(i);
+            if ( ! ( elt instanceof EltTriplePattern || elt instanceof EltTuplePattern ) )
+                return order;
+        }
+        order[0] = deltaIndex;
+        for ( int i = 1 ; i <= deltaIndex ; i++ )
+            order[i] = i-1;
+        return order;
     }
 
     public static RuleEval evalRuleHead(RuleHead ruleHead, Iterator<Binding> iter, RulesExecCxt rCxt) {
@@ -91,7 +128,13 @@ class RulesExecLib {
         if ( rEval.tuples() != null && ! rEval.tuples().isEmpty() ) {
             if ( evalTupleStore == null )
                 throw new RulesEvalException("No tuple store for tuples in rule output");
-            evalTupleStore.addAll(rEval.tuples());
+            for ( Tuple tuple : rEval.tuples() ) {
+                if ( evalTupleStore.contains(tuple) )
+                    continue;
+                evalTupleStore.add(tuple);
+                rCxt.countTriple();
+                rCxt.output(tuple);
+            }
         }
         List<Triple> triples = rEval.triples();
 //        for ( Triple t : triples ) {
@@ -106,8 +149,56 @@ class RulesExecLib {
             });
         }
 
-        if ( ! triples.isEmpty() )
-            GraphUtil.add(graph, triples);
+        for ( Triple t : triples ) {
+            if ( addNew(graph, t) ) {
+                rCxt.countTriple();
+                rCxt.output(t);
+            }
+        }
+    }
+
+    /** Add a triple to a graph. Return true if it was not already in the graph. */
+    private static boolean addNew(Graph graph, Triple triple) {
+        if ( graph instanceof AppendGraph appendGraph )
+            return appendGraph.addNew(triple);
+        if ( graph.contains(triple) )
+            return false;
+        graph.add(triple);
+        return true;
+    }
+
+    /**
+     * Add the results of a rule evaluation to the graph and tuple store,
+     * recording the triples and tuples that are new in the delta graph and delta tuple store.
+     * Returns the number of new triples and tuples.
+     */
+    public static int accumulateOneRuleHeadDelta(RuleEval rEval, AppendGraph graph, TupleStore evalTupleStore,
+                                                 Graph deltaGraph, TupleStore deltaTuples, RulesExecCxt rCxt) {
+        int count = 0;
+        if ( rEval.tuples() != null && ! rEval.tuples().isEmpty() ) {
+            if ( evalTupleStore == null )
+                throw new RulesEvalException("No tuple store for tuples in rule output");
+            for ( Tuple tuple : rEval.tuples() ) {
+                if ( evalTupleStore.contains(tuple) )
+                    continue;
+                evalTupleStore.add(tuple);
+                deltaTuples.add(tuple);
+                count++;
+                rCxt.countTriple();
+                rCxt.output(tuple);
+            }
+        }
+        for ( Triple t : rEval.triples() ) {
+            if ( !t.isConcrete() )
+                throw new RulesEvalException("Triple not concrete: "+NodeFmtLib.displayStr(t));
+            if ( graph.addNew(t) ) {
+                deltaGraph.add(t);
+                count++;
+                rCxt.countTriple();
+                rCxt.output(t);
+            }
+        }
+        return count;
     }
 
 //    /**
@@ -139,10 +230,9 @@ class RulesExecLib {
         AppendTupleStore allTuples = AppendTupleStore.create(tupleStore);
 
         for ( Rule rule : ruleSet.getRules() ) {
-            Iterator<Binding> iter = evalBody(allGraph, tupleStore, rule.getBody(), rCxt);
-            List<Triple> accTriple = new ArrayList<>();
-            List<Tuple> accTuple = new ArrayList<>();
-            Iter.forEach(iter, solution -> accInstantiateHead(accTriple, accTuple, rule.getHead(), solution));
+            RuleEval rEval = evalRule(rule, allGraph, tupleStore, rCxt, null);
+            List<Triple> accTriple = rEval.triples();
+            List<Tuple> accTuple = rEval.tuples();
             accTriple.forEach(allGraph::add);
             if ( ! accTuple.isEmpty() ) {
                 if ( tupleStore == null )
@@ -153,75 +243,6 @@ class RulesExecLib {
         return new Evaluation(baseGraph, ruleSet, allGraph.getAdded(), allGraph, allTuples.getAdded());
     }
 
-    private static Iterator<Binding> evalBody(Graph graph, TupleStore tupleStore, RuleBody ruleBody, RulesExecCxt rCxt) {
-        Binding binding = BindingFactory.binding();
-        return evalBodyBinding(graph, tupleStore, binding, ruleBody.getBodyElements(), rCxt);
-    }
-
-    private static Iterator<Binding> evalBodyBinding(Graph graph, TupleStore tupleStore, Binding binding,
-                                                     List<RuleBodyElement> ruleElts, RulesExecCxt rCxt) {
-        Iterator<Binding> chain = Iter.singletonIterator(binding);
-        // Extract
-        for ( RuleBodyElement elt : ruleElts ) {
-            Iterator<Binding> chainIn = chain;
-            Iterator<Binding> chainOut = evalOneRuleElement(graph, tupleStore, chainIn, elt, rCxt);
-            chain = chainOut;
-            if ( false ) {
-                FmtLog.info(RulesExecLib.class, "chain: ");
-                chain = Iter.log(System.out, chain);
-            }
-        }
-        return chain;
-    }
-
-    private static Iterator<Binding> evalOneRuleElement(Graph graph, TupleStore tupleStore, Iterator<Binding> chainIn,
-                                                        RuleBodyElement elt, RulesExecCxt rCxt) {
-        switch (elt) {
-            case EltTriplePattern(Triple triplePattern) -> {
-                return Access.accessGraph(chainIn, graph, triplePattern);
-            }
-            case EltTuplePattern(Tuple tuplePattern) -> {
-                if ( tupleStore == null )
-                    throw new RulesEvalException("No tuple store for tuple pattern: "+tuplePattern);
-
-                return AccessTuples.accessTupleStore(chainIn, tupleStore, tuplePattern, rCxt);
-            }
-            case EltFilter(Expr condition) -> {
-                Iterator<Binding> chain2 = Iter.filter(chainIn, solution -> {
-                    FunctionEnv functionEnv = rCxt;
-                    // ExprNode.isSatisfied converts ExprEvalException to false.
-                    return condition.isSatisfied(solution, functionEnv);
-                });
-                return chain2;
-            }
-            case EltAssignment(Var var, Expr expression) -> {
-                Function<Binding, Binding> mapper = row -> {
-                    FunctionEnv funcEnv = rCxt;
-                    try {
-                        NodeValue nv = expression.eval(row, funcEnv);
-                        return BindingFactory.binding(row, var, nv.asNode());
-                    } catch (ExprEvalException ex) {
-                        // Error in evaluation of the expression.
-                        // Either continue, no binding.
-                        // return row;
-                        // ... or omit this solution
-                        return null;
-                    }
-                };
-                return Iter.iter(chainIn).map(mapper).removeNulls()/* .get() */;
-            }
-            case EltNegation(List<RuleBodyElement> innerBody, boolean grounded) -> {
-                // [NOT DATA]
-                Iterator<Binding> chain2 = Iter.filter(chainIn, solution -> {
-                    Iterator<Binding> chainInner = evalBodyBinding(graph, tupleStore, solution, innerBody, rCxt);
-                    boolean innerMatches = chainInner.hasNext();
-                    return !innerMatches;
-                });
-                return chain2;
-            }
-        }
-    }
-
     private static void accInstantiateHead(List<Triple> accTriples, List<Tuple> accTuples, RuleHead ruleHead, Binding solution) {
         // Unbound variables shouldn't happen.
         // Make it CONSTRUCT-like (but needs conditions to enable termination)
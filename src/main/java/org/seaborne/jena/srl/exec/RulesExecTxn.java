@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import java.util.Iterator;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.TransactionHandler;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.SimpleTransactionHandler;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.shared.DeleteDeniedException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.graph.GraphWrapper;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.system.Txn;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesEngine;
+import org.seaborne.jena.srl.RulesException;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+import org.seaborne.jena.srl.sys.SysSRL;
+
+/**
+ * Materialization of the inferences of a rule set into a graph of a transactional
+ * dataset, such as TDB2.
+ * <p>
+ * The rule set is evaluated over a read transaction, which sees a snapshot of the
+ * dataset and does not block readers or writers. All the inferred triples are kept by the
+ * evaluation (see {@link org.seaborne.jena.srl.jena.SpillGraph} for working storage larger
+ * than the heap) and written to the graph in one write transaction at the end.
+ * <p>
+ * The inferences are those of the snapshot; changes committed by other writers
+ * during the evaluation are not taken into account.
+ */
+public class RulesExecTxn {
+
+    /**
+     * Evaluate the rule set over the graph {@code graphName} of the dataset, or the
+     * default graph if {@code graphName} is null, and add the inferred triples to that
+     * graph. The dataset must not be in a transaction on this thread.
+     * <p>
+     * Only a complete evaluation is written. An evaluation that is stopped by its
+     * {@link RulesBudget budget} is returned, and nothing is written.
+     * <p>
+     * Use {@link RuleSetEvaluation#inferredTriples()} of the returned evaluation; the
+     * other graphs of the evaluation are views of the snapshot, and are not usable
+     * after this call.
+     */
+    public static RuleSetEvaluation materialize(DatasetGraph dsg, Node graphName, RuleSet ruleSet, EngineType engineType, Context context) {
+        if ( engineType == null )
+            engineType = SysJenaRules.dftEngineType;
+        switch (engineType) {
+            // Transactions are per-thread.
+            case JACOBI, DATAFLOW ->
+                throw new RulesException("Engine evaluates in parallel: not supported in a transaction: "+engineType);
+            // Updates the graph during evaluation.
+            case SIMPLE_SPARQL_INSERT ->
+                throw new RulesException("Engine updates the data graph: not supported in a transaction: "+engineType);
+            default -> {}
+        }
+        if ( dsg.isInTransaction() )
+            throw new RulesException("Already in a transaction");
+        if ( context == null )
+            context = SysSRL.getContext();
+
+        RuleSetEvaluation e;
+        dsg.begin(TxnType.READ);
+        try {
+            Graph snapshot = new SnapshotGraph(graph(dsg, graphName));
+            RulesEngine engine = ShaclRulesExec.create(engineType, snapshot, null, ruleSet, context);
+            if ( engine == null )
+                throw new RulesException("Engine type "+engineType.name()+" not currently supported");
+            e = engine.eval();
+        } finally { dsg.end(); }
+
+        if ( ! e.isComplete() )
+            return e;
+        Graph inferred = e.inferredTriples();
+        if ( inferred.isEmpty() )
+            return e;
+        // One write transaction.
+        Txn.executeWrite(dsg, ()->{
+            Graph graph = graph(dsg, graphName);
+            for ( Iterator<Triple> iter = inferred.find() ; iter.hasNext() ; )
+                graph.add(iter.next());
+        });
+        return e;
+    }
+
+    private static Graph graph(DatasetGraph dsg, Node graphName) {
+        return ( graphName == null ) ? dsg.getDefaultGraph() : dsg.getGraph(graphName);
+    }
+
+    /**
+     * Read-only view of a graph during a transaction managed by the caller.
+     * Graph-level transactions, such as those of {@code AppendGraph.flush}, run directly,
+     * and do not start nested transactions on the dataset.
+     */
+    private static class SnapshotGraph extends GraphWrapper {
+        private final TransactionHandler transactionHandler = new SimpleTransactionHandler();
+
+        SnapshotGraph(Graph graph) {
+            super(graph);
+        }
+
+        @Override
+        public TransactionHandler getTransactionHandler() {
+            return transactionHandler;
+        }
+
+        @Override
+        public void add(Triple t) {
+            throw new AddDeniedException("Snapshot graph");
+        }
+
+        @Override
+        public void delete(Triple t) {
+            throw new DeleteDeniedException("Snapshot graph");
+        }
+    }
+}
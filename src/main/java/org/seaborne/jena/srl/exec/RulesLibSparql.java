@@ -24,10 +24,19 @@ package org.seaborne.jena.srl.exec;
 import java.util.List;
 
 import org.apache.jena.atlas.lib.NotImplemented;
+import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
+import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.expr.E_Bound;
 import org.apache.jena.sparql.expr.E_NotExists;
 import org.apache.jena.sparql.expr.Expr;
@@ -35,6 +44,7 @@ import org.apache.jena.sparql.expr.ExprVar;
 import org.apache.jena.sparql.modify.request.QuadAcc;
 import org.apache.jena.sparql.modify.request.UpdateModify;
 import org.apache.jena.sparql.syntax.*;
+import org.apache.jena.sparql.util.Context;
 import org.apache.jena.update.Update;
 import org.seaborne.jena.srl.Rule;
 import org.seaborne.jena.srl.RuleBody;
@@ -44,27 +54,86 @@ import org.seaborne.jena.srl.lang.RuleBodyElement.*;
 /** This class is not API */
 class RulesLibSparql {
 
+    /**
+     * The name of the graph that {@code NOT DATA} is matched against, in the dataset
+     * of a query: the base graph and the DATA of the rule set.
+     */
+    static final Node groundedGraphName = NodeFactory.createURI("arq:baseGraph");
+
+    /**
+     * A dataset with {@code graph} as the default graph and {@code groundedGraph}
+     * as the graph {@link #groundedGraphName} for {@code NOT DATA}.
+     */
+    static DatasetGraph dataset(Graph graph, Graph groundedGraph) {
+        DatasetGraph dsg = DatasetGraphFactory.create(graph);
+        dsg.addGraph(groundedGraphName, groundedGraph);
+        return dsg;
+    }
+
+    /**
+     * A query and its optimized algebra, compiled once and executed many times.
+     */
+    record CompiledQuery(Query query, Op op) {
+        static CompiledQuery compile(Query query) {
+            query.setResultVars();
+            Op op = Algebra.optimize(Algebra.compile(query));
+            return new CompiledQuery(query, op);
+        }
+
+        /**
+         * Execute the algebra on a graph, with {@code groundedGraph} for {@code NOT DATA}.
+         * The caller must close the iterator.
+         */
+        QueryIterator exec(Graph graph, Graph groundedGraph, Context context) {
+            return exec(dataset(graph, groundedGraph), context);
+        }
+
+        /** Execute the algebra on a dataset. The caller must close the iterator. */
+        QueryIterator exec(DatasetGraph dsg, Context context) {
+            ExecutionContext execCxt = ExecutionContext.create(dsg, context);
+            return QC.execute(op, QueryIterRoot.create(execCxt), execCxt);
+        }
+    }
+
     /** RuleElements (i.e. a rule body) to a (SPARQL syntax) {@link ElementGroup}. */
     public static ElementGroup ruleBodyToElementGroup(RuleBody ruleBody) {
         return ruleBodyToElementGroup(ruleBody.getBodyElements());
     }
 
     private static ElementGroup ruleBodyToElementGroup(List<RuleBodyElement> ruleElts) {
+        return ruleBodyToElementGroup(ruleElts, -1, null);
+    }
+
+    /**
+     * RuleElements to an {@link ElementGroup}, with the triple pattern at {@code deltaIndex}, if not -1,
+     * matched in the named graph {@code deltaGraphName}. The delta pattern goes first, where it is
+     * smallest, unless there is an assignment before it.
+     */
+    private static ElementGroup ruleBodyToElementGroup(List<RuleBodyElement> ruleElts, int deltaIndex, Node deltaGraphName) {
         ElementGroup group = new ElementGroup();
-        ElementTriplesBlock tBlk = null;
-        for ( RuleBodyElement rElt : ruleElts ) {
+        boolean deltaFirst = false;
+        if ( deltaIndex >= 0 ) {
+            deltaFirst = ruleElts.subList(0, deltaIndex).stream().noneMatch(e -> e instanceof EltAssignment);
+            if ( deltaFirst )
+                group.addElement(deltaElement(ruleElts.get(deltaIndex), deltaGraphName));
+        }
+        for ( int i = 0 ; i < ruleElts.size() ; i++ ) {
+            RuleBodyElement rElt = ruleElts.get(i);
+            if ( i == deltaIndex ) {
+                if ( ! deltaFirst )
+                    group.addElement(deltaElement(rElt, deltaGraphName));
+                continue;
+            }
             switch (rElt) {
                 case EltTriplePattern(var triple) -> group.addTriplePattern(triple);
                 case EltTuplePattern(var tuple) -> { throw new NotImplemented(); }
                 case EltFilter(var expr) -> group.addElement(new ElementFilter(expr));
                 case EltNegation(var innerBody, boolean grounded ) -> {
                     Element inner = ruleBodyToElementGroup(innerBody);
-                    Element negationElt = new ElementFilter(new E_NotExists(inner));
-                    if ( grounded ) {
-                        Node n = NodeFactory.createURI("arq:baseGraph");
-                        negationElt = new ElementNamedGraph(n, negationElt);
-                    }
-                    group.addElement(negationElt);
+                    // The GRAPH is inside the NOT EXISTS so the inner body sees the variables of the row.
+                    if ( grounded )
+                        inner = new ElementNamedGraph(groundedGraphName, inner);
+                    group.addElement(new ElementFilter(new E_NotExists(inner)));
                 }
                 case EltAssignment(var assignedVar, var expr) -> {
                     // set(?x) is bind(?x) filter(bound(?x))
@@ -78,6 +147,14 @@ class RulesLibSparql {
         return group;
     }
 
+    private static Element deltaElement(RuleBodyElement rElt, Node deltaGraphName) {
+        if ( ! ( rElt instanceof EltTriplePattern(var triple) ) )
+            throw new NotImplemented("Delta element: "+rElt);
+        ElementTriplesBlock block = new ElementTriplesBlock();
+        block.addTriple(triple);
+        return new ElementNamedGraph(deltaGraphName, block);
+    }
+
     /** RuleElements (i.e. a rule body) to a SPARQL SELECT Query. */
     public static Query ruleBodyToQuery(RuleBody ruleBody) {
         var eltGroup = ruleBodyToElementGroup(ruleBody);
@@ -88,6 +165,19 @@ class RulesLibSparql {
         return query;
     }
 
+    /**
+     * RuleElements (i.e. a rule body) to a SPARQL SELECT Query, with the triple pattern
+     * at {@code deltaIndex} matched in the named graph {@code deltaGraphName}.
+     */
+    public static Query ruleBodyToQuery(RuleBody ruleBody, int deltaIndex, Node deltaGraphName) {
+        var eltGroup = ruleBodyToElementGroup(ruleBody.getBodyElements(), deltaIndex, deltaGraphName);
+        Query query = new Query();
+        query.setQuerySelectType();
+        query.setQueryResultStar(true);
+        query.setQueryPattern(eltGroup);
+        return query;
+    }
+
     /** Rule(rule head and rule body) to a SPARQL CONSTRUCT Query. */
     public static Query ruleToConstruct(Rule rule) {
         Element elt = RulesLibSparql.ruleBodyToElementGroup(rule.getBody());
@@ -24,8 +24,8 @@ package org.seaborne.jena.srl.jena;
 import static org.apache.jena.system.G.containsBySameTerm;
 import static org.apache.jena.system.G.execTxn;
 
+import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
-import org.apache.jena.graph.GraphMemFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.shared.impl.PrefixMappingImpl;
@@ -50,6 +50,9 @@ public class AppendGraph extends Graph2 implements BufferingCtl {
     //
     // If true, the added graph does not contain triples in the base graph.
     // The AppendGraph acts as a diff of the changes and the base graph
+    // and, as a Graph2, is disjoint: find does not remove duplicates and
+    // size is the sum of the sizes. This relies on the base graph not
+    // being changed to include added triples except by flush.
     //
     // If false, the added graph may contain duplicates of the base graph.
     // The AppendGraph acts as a record of all additions.
@@ -65,6 +68,12 @@ public class AppendGraph extends Graph2 implements BufferingCtl {
     private final boolean allowFlush;
     private final AppendPrefixMapping appendPrefixMapping;
 
+    // Optional: a Bloom filter over the base graph and the added triples, to
+    // avoid lookups for triples that are not present.
+    private TripleBloomFilter membershipFilter = null;
+    // The size of the base graph if every change to it has been notified.
+    private long filterBaseSize = -1;
+
     public static AppendGraph create(Graph graph) {
         return create(graph, true);
     }
@@ -75,10 +84,32 @@ public class AppendGraph extends Graph2 implements BufferingCtl {
         return new AppendGraph(graph, checkOnUpdate, false);
     }
 
+    /**
+     * Create an {@code AppendGraph} with a membership filter over the triples of the
+     * base graph and the added triples. An add or contains of a triple that is not present
+     * is usually answered by the filter, without a lookup in either graph.
+     * <p>
+     * Building the filter reads the whole base graph.
+     * <p>
+     * Contract: every change to the base graph after this, other than by {@link #flush},
+     * must be notified with {@link #baseGraphAdded} or {@link #baseGraphDeleted}.
+     * The filter answers "not present" for a triple added to the base graph without
+     * notification, so {@code add} records it as new and {@code contains} may be false.
+     * {@link #flush} checks the size of the base graph and, if a change was not notified,
+     * rebuilds the filter.
+     */
+    public static AppendGraph createWithFilter(Graph graph, int bitsPerTriple) {
+        AppendGraph appendGraph = new AppendGraph(graph, true, false);
+        appendGraph.membershipFilter = appendGraph.buildFilter(2*(long)graph.size(), bitsPerTriple);
+        appendGraph.filterBaseSize = graph.size();
+        return appendGraph;
+    }
+
     // Better : getPrefixMapping
 
     private AppendGraph(Graph graph, boolean checkOnUpdate, boolean allowFlush) {
-        super(addedTriplesGraph(), graph);
+        // Checking the base graph on update keeps the added triples disjoint from the base graph.
+        super(addedTriplesGraph(), graph, checkOnUpdate);
         this.checkOnUpdate = checkOnUpdate;
         this.allowFlush = allowFlush;
         PrefixMapping basePrefixes = graph.getPrefixMapping();
@@ -94,7 +125,7 @@ public class AppendGraph extends Graph2 implements BufferingCtl {
     }
 
     private static Graph addedTriplesGraph() {
-        return GraphMemFactory.createDefaultGraph();
+        return SpillGraph.createWorkingGraph();
     }
 
     @Override
@@ -129,9 +160,17 @@ public class AppendGraph extends Graph2 implements BufferingCtl {
     private void flushDirect(Graph base) {
         if ( allowFlush )
             throw new UnsupportedOperationException(this.getClass().getSimpleName()+".flush");
+        boolean notified = ( membershipFilter == null ) || base.size() == filterBaseSize;
         addedGraph().find().forEachRemaining(base::add);
         addedGraph().clear();
         appendPrefixMapping.flush();
+        if ( membershipFilter != null ) {
+            if ( ! notified ) {
+                Log.warn(AppendGraph.class, "Base graph changed without notification: rebuilding the membership filter");
+                rebuildFilter(2*(long)base.size());
+            }
+            filterBaseSize = base.size();
+        }
     }
 
 //    private void updateOperation() {}
@@ -143,20 +182,96 @@ public class AppendGraph extends Graph2 implements BufferingCtl {
         execAdd(t);
     }
 
+    /**
+     * Add a triple, and return whether the triple was new to the graph,
+     * that is, it was not already in the added triples nor, if checking on update,
+     * in the base graph.
+     */
+    public boolean addNew(Triple t) {
+        return execAdd(t);
+    }
+
     @Override
     public void delete(Triple t) {
         execDelete(t);
     }
 
-    private void execAdd(Triple triple) {
+    private boolean execAdd(Triple triple) {
         //updateOperation();
         Graph base = get();
+        if ( membershipFilter != null && ! membershipFilter.mightContain(triple) ) {
+            // Definitely new.
+            membershipFilter.recordNegative();
+            addedGraph().add(triple);
+            addToFilter(triple);
+            return true;
+        }
         if (containsBySameTerm(addedGraph(), triple) )
-            return ;
+            return false;
         if ( checkOnUpdate && containsBySameTerm(base, triple) )
             // Already in base graph
-            return;
+            return false;
         addedGraph().add(triple);
+        if ( membershipFilter != null ) {
+            membershipFilter.recordFalsePositive();
+            addToFilter(triple);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Triple triple) {
+        // Literals may match by value in the base graph.
+        if ( membershipFilter != null && triple.isConcrete() && ! triple.getObject().isLiteral()
+             && ! membershipFilter.mightContain(triple) )
+            return false;
+        return super.contains(triple);
+    }
+
+    /** The membership filter, or null if there isn't one. */
+    public TripleBloomFilter getMembershipFilter() {
+        return membershipFilter;
+    }
+
+    /**
+     * Note that a triple has been added directly to the base graph, not through this
+     * {@code AppendGraph}, so that the membership filter, if any, includes it.
+     */
+    public void baseGraphAdded(Triple triple) {
+        if ( membershipFilter != null ) {
+            filterBaseSize++;
+            addToFilter(triple);
+        }
+    }
+
+    /**
+     * Note that a triple that was in the base graph has been deleted directly from the
+     * base graph, not through this {@code AppendGraph}.
+     */
+    public void baseGraphDeleted(Triple triple) {
+        // The filter is unchanged: the triple is now a false positive.
+        if ( membershipFilter != null )
+            filterBaseSize--;
+    }
+
+    private void addToFilter(Triple triple) {
+        membershipFilter.add(triple);
+        if ( membershipFilter.count() > membershipFilter.capacity() )
+            // Rebuild larger.
+            rebuildFilter(2*membershipFilter.capacity());
+    }
+
+    private void rebuildFilter(long capacity) {
+        TripleBloomFilter filter = buildFilter(capacity, membershipFilter.bitsPerTriple());
+        filter.recordLookups(membershipFilter);
+        membershipFilter = filter;
+    }
+
+    private TripleBloomFilter buildFilter(long capacity, int bitsPerTriple) {
+        TripleBloomFilter filter = TripleBloomFilter.create(capacity, bitsPerTriple);
+        get().find().forEachRemaining(filter::add);
+        addedGraph().find().forEachRemaining(filter::add);
+        return filter;
     }
 
     private void execDelete(Triple triple) {
@@ -57,12 +57,24 @@ public class Graph2 extends GraphWrapper {
             Log.warn(Graph2.class, "Combining a Graph2 with a Graph2.");
         if ( baseGraph instanceof Graph2)
             Log.warn(Graph2.class, "Creating a Graph2 over a Graph2 base graph.");
-        return new Graph2(extraGraph, baseGraph);
+        return new Graph2(extraGraph, baseGraph, false);
+    }
+
+    /**
+     * Create a {@code Graph2} where the caller guarantees that no triple is in both
+     * graphs. {@code find} does not need to remove duplicates, and {@code size} is the
+     * sum of the sizes of the two graphs.
+     */
+    public static Graph createDisjoint(Graph extraGraph, Graph baseGraph) {
+        return new Graph2(extraGraph, baseGraph, true);
     }
 
     protected Graph2(Graph extraGraph, Graph baseGraph) {
+        this(extraGraph, baseGraph, false);
+    }
+
+    protected Graph2(Graph extraGraph, Graph baseGraph, boolean disjoint) {
         super(baseGraph);
-        final boolean disjoint = false; // For now ...
         this.additionalGraph = extraGraph;
         this.prefixMapping = setupPrefixMapping(baseGraph.getPrefixMapping());
         this.disjoint = disjoint;
@@ -81,6 +93,9 @@ public class Graph2 extends GraphWrapper {
 
     protected Graph additionalGraph() { return additionalGraph; }
 
+    /** Whether no triple is in both the additional graph and the base graph. */
+    public boolean isDisjoint() { return disjoint; }
+
     // ---- Graph2 is read-only: Update operations not provided
 
     @Override
@@ -0,0 +1,573 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.jena;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.atlas.RuntimeIOException;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.*;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+
+/**
+ * A graph for the working storage of an evaluation that moves triples to disk when
+ * the number of triples held in memory reaches a threshold.
+ * <p>
+ * Spilled triples are written as a run: the triples, encoded as three integers,
+ * sorted in each of the orders SPO, POS and OSP, one memory-mapped file per order.
+ * A {@code find} is a range scan of one sort order of each run, chosen by the terms
+ * of the pattern. When there are more than a few runs, the smaller runs are merged,
+ * removing duplicates.
+ * <p>
+ * RDF terms stay in memory, in a dictionary from term to integer.
+ * Triples deleted after they have been spilled are recorded in memory until the run
+ * is next merged.
+ * <p>
+ * The files of a run are deleted when the run is merged, and when the graph is cleared
+ * or closed. If the graph is not closed, they are deleted after the graph becomes
+ * unreachable.
+ * <p>
+ * Not thread safe for update; concurrent reads are safe.
+ */
+public class SpillGraph extends GraphBase {
+
+    /**
+     * A graph for the working storage of an evaluation.
+     * This is a {@code SpillGraph} if {@link SysJenaRules#spillThreshold} is set,
+     * otherwise an in-memory graph.
+     */
+    public static Graph createWorkingGraph() {
+        long threshold = SysJenaRules.spillThreshold;
+        if ( threshold <= 0 )
+            return GraphMemFactory.createDefaultGraph();
+        String dir = SysJenaRules.spillDirectory;
+        Path directory = Path.of( dir != null ? dir : System.getProperty("java.io.tmpdir") );
+        return create(threshold, directory);
+    }
+
+    /**
+     * Create a {@code SpillGraph} that spills to files in the directory when there
+     * are {@code threshold} triples in memory.
+     */
+    public static SpillGraph create(long threshold, Path directory) {
+        if ( threshold <= 0 )
+            throw new IllegalArgumentException("Threshold must be positive: "+threshold);
+        return new SpillGraph(threshold, directory);
+    }
+
+    // Number of runs before the smaller runs are merged.
+    private static final int maxRuns = 8;
+    // Largest run that can be mapped as one buffer.
+    private static final long maxRunTriples = Integer.MAX_VALUE / 12;
+
+    // The order of the triple components in each index of a run.
+    private static final int SPO = 0;
+    private static final int POS = 1;
+    private static final int OSP = 2;
+    private static final int[][] orders = { {0, 1, 2}, {1, 2, 0}, {2, 0, 1} };
+
+    // Deletes the files of graphs that were not closed.
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /** One sorted run: the same triples in each of the sort orders. */
+    private record Run(long size, Path[] files, IntBuffer[] indexes) {}
+
+    /**
+     * The files of a graph that have not been deleted.
+     * This is the cleaning action, so it must not refer to the graph.
+     */
+    private static class RunFiles implements Runnable {
+        private final Set<Path> files = ConcurrentHashMap.newKeySet();
+
+        void add(Path file) {
+            files.add(file);
+        }
+
+        void delete(Path file) {
+            files.remove(file);
+            try { Files.deleteIfExists(file); }
+            catch (IOException ex) { /* Ignore: left in the spill directory. */ }
+        }
+
+        @Override
+        public void run() {
+            List.copyOf(files).forEach(this::delete);
+        }
+    }
+
+    private final long threshold;
+    private final Path directory;
+    private final RunFiles runFiles = new RunFiles();
+    private final Cleaner.Cleanable cleanable;
+    private final Map<Node, Integer> nodeIds = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+    // Triples not yet spilled. Replaced, not cleared, so open iterators are not disturbed.
+    private Graph memory = GraphMemFactory.createDefaultGraph();
+    // Triples in runs that have been deleted.
+    private Graph deleted = GraphMemFactory.createDefaultGraph();
+    // Replaced, not changed, so open iterators see a fixed list of runs.
+    private List<Run> runs = List.of();
+
+    private SpillGraph(long threshold, Path directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+        this.cleanable = cleaner.register(this, runFiles);
+    }
+
+    /** Number of runs on disk. */
+    public int runCount() {
+        return runs.size();
+    }
+
+    @Override
+    public void performAdd(Triple triple) {
+        if ( deleted.contains(triple) ) {
+            // Still in a run.
+            deleted.delete(triple);
+            return;
+        }
+        if ( inRuns(triple) )
+            return;
+        memory.add(triple);
+        if ( memory.size() >= threshold )
+            spill();
+    }
+
+    @Override
+    public void performDelete(Triple triple) {
+        if ( memory.contains(triple) ) {
+            memory.delete(triple);
+            return;
+        }
+        if ( inRuns(triple) )
+            deleted.add(triple);
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple triple) {
+        if ( ! triple.isConcrete() )
+            return containsByFind(triple);
+        if ( memory.contains(triple) )
+            return true;
+        return inRuns(triple) && ! deleted.contains(triple);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        List<Run> current = runs;
+        if ( current.isEmpty() )
+            return memory.find(pattern);
+        Iterator<Triple> spilled = findInRuns(current, pattern);
+        if ( ! deleted.isEmpty() ) {
+            Graph deletedTriples = deleted;
+            spilled = Iter.filter(spilled, t -> ! deletedTriples.contains(t));
+        }
+        return WrappedIterator.create(Iter.iter(memory.find(pattern)).append(spilled));
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        long size = memory.size() - deleted.size();
+        for ( Run run : runs )
+            size += run.size();
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void clear() {
+        memory = GraphMemFactory.createDefaultGraph();
+        deleted = GraphMemFactory.createDefaultGraph();
+        deleteRuns();
+    }
+
+    @Override
+    public void close() {
+        runs = List.of();
+        // Deletes all the files.
+        cleanable.clean();
+        super.close();
+    }
+
+    private void deleteRuns() {
+        List<Run> current = runs;
+        runs = List.of();
+        current.forEach(this::delete);
+    }
+
+    private void delete(Run run) {
+        for ( Path file : run.files() )
+            runFiles.delete(file);
+    }
+
+    // ---- Dictionary
+
+    private int encode(Node node) {
+        Integer id = nodeIds.get(node);
+        if ( id != null )
+            return id;
+        int x = nodes.size();
+        nodes.add(node);
+        nodeIds.put(node, x);
+        return x;
+    }
+
+    private int id(Node node) {
+        Integer id = nodeIds.get(node);
+        return ( id == null ) ? -1 : id;
+    }
+
+    private Triple decode(int index, int a, int b, int c) {
+        Node[] spo = new Node[3];
+        int[] order = orders[index];
+        spo[order[0]] = nodes.get(a);
+        spo[order[1]] = nodes.get(b);
+        spo[order[2]] = nodes.get(c);
+        return Triple.create(spo[0], spo[1], spo[2]);
+    }
+
+    // ---- Access
+
+    private boolean inRuns(Triple triple) {
+        if ( runs.isEmpty() )
+            return false;
+        int s = id(triple.getSubject());
+        int p = id(triple.getPredicate());
+        int o = id(triple.getObject());
+        if ( s < 0 || p < 0 || o < 0 )
+            return false;
+        int[] key = { s, p, o };
+        for ( Run run : runs ) {
+            IntBuffer buf = run.indexes()[SPO];
+            if ( lowerBound(buf, run.size(), key) < upperBound(buf, run.size(), key) )
+                return true;
+        }
+        return false;
+    }
+
+    private Iterator<Triple> findInRuns(List<Run> current, Triple pattern) {
+        Node s = bound(pattern.getSubject());
+        Node p = bound(pattern.getPredicate());
+        Node o = bound(pattern.getObject());
+        // The index with the longest prefix of bound terms.
+        int index;
+        Node[] prefix;
+        if ( s != null ) {
+            if ( p == null && o != null ) {
+                index = OSP;
+                prefix = new Node[] {o, s};
+            } else {
+                index = SPO;
+                prefix = ( p == null ) ? new Node[] {s} : ( o == null ) ? new Node[] {s, p} : new Node[] {s, p, o};
+            }
+        } else if ( p != null ) {
+            index = POS;
+            prefix = ( o == null ) ? new Node[] {p} : new Node[] {p, o};
+        } else if ( o != null ) {
+            index = OSP;
+            prefix = new Node[] {o};
+        } else {
+            index = SPO;
+            prefix = new Node[0];
+        }
+        int[] key = new int[prefix.length];
+        for ( int i = 0 ; i < prefix.length ; i++ ) {
+            key[i] = id(prefix[i]);
+            if ( key[i] < 0 )
+                // Not in any run.
+                return Iter.nullIterator();
+        }
+        return Iter.flatMap(current.iterator(), run -> scan(run, index, key));
+    }
+
+    private static Node bound(Node node) {
+        return ( node != null && node.isConcrete() ) ? node : null;
+    }
+
+    private Iterator<Triple> scan(Run run, int index, int[] key) {
+        IntBuffer buf = run.indexes()[index];
+        long lo = lowerBound(buf, run.size(), key);
+        long hi = upperBound(buf, run.size(), key);
+        return new Iterator<>() {
+            private long row = lo;
+            @Override
+            public boolean hasNext() {
+                return row < hi;
+            }
+
+            @Override
+            public Triple next() {
+                if ( row >= hi )
+                    throw new NoSuchElementException();
+                int i = (int)(row*3);
+                row++;
+                return decode(index, buf.get(i), buf.get(i+1), buf.get(i+2));
+            }
+        };
+    }
+
+    /** First row greater than or equal to the key (a prefix of a row). */
+    private static long lowerBound(IntBuffer buf, long size, int[] key) {
+        long lo = 0;
+        long hi = size;
+        while ( lo < hi ) {
+            long mid = (lo + hi) >>> 1;
+            if ( comparePrefix(buf, mid, key) < 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /** First row greater than the key (a prefix of a row). */
+    private static long upperBound(IntBuffer buf, long size, int[] key) {
+        long lo = 0;
+        long hi = size;
+        while ( lo < hi ) {
+            long mid = (lo + hi) >>> 1;
+            if ( comparePrefix(buf, mid, key) <= 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static int comparePrefix(IntBuffer buf, long row, int[] key) {
+        int i = (int)(row*3);
+        for ( int j = 0 ; j < key.length ; j++ ) {
+            int x = Integer.compare(buf.get(i+j), key[j]);
+            if ( x != 0 )
+                return x;
+        }
+        return 0;
+    }
+
+    // ---- Spill and merge
+
+    /** Write the triples in memory as a new run. */
+    private void spill() {
+        int n = memory.size();
+        int[] rows = new int[n*3];
+        int i = 0;
+        for ( Iterator<Triple> iter = memory.find() ; iter.hasNext() ; ) {
+            Triple t = iter.next();
+            rows[i++] = encode(t.getSubject());
+            rows[i++] = encode(t.getPredicate());
+            rows[i++] = encode(t.getObject());
+        }
+        Path[] files = new Path[3];
+        IntBuffer[] indexes = new IntBuffer[3];
+        int[] sorted = new int[n*3];
+        for ( int index = 0 ; index < 3 ; index++ ) {
+            int[] order = orders[index];
+            for ( int r = 0 ; r < n*3 ; r += 3 ) {
+                sorted[r]   = rows[r+order[0]];
+                sorted[r+1] = rows[r+order[1]];
+                sorted[r+2] = rows[r+order[2]];
+            }
+            sortRows(sorted, 0, n-1);
+            files[index] = newFile();
+            try ( DataOutputStream out = output(files[index]) ) {
+                for ( int x : sorted )
+                    out.writeInt(x);
+            } catch (IOException ex) { throw new RuntimeIOException(ex); }
+            indexes[index] = map(files[index], n);
+        }
+        memory = GraphMemFactory.createDefaultGraph();
+        List<Run> x = new ArrayList<>(runs);
+        x.add(new Run(n, files, indexes));
+        runs = x;
+        if ( runs.size() > maxRuns )
+            merge();
+    }
+
+    /** Merge the smaller runs into one run, removing duplicates and deleted triples. */
+    private void merge() {
+        List<Run> bySize = new ArrayList<>(runs);
+        bySize.sort(Comparator.comparingLong(Run::size));
+        List<Run> inputs = new ArrayList<>();
+        long total = 0;
+        for ( Run run : bySize ) {
+            if ( total + run.size() > maxRunTriples )
+                break;
+            inputs.add(run);
+            total += run.size();
+        }
+        if ( inputs.size() < 2 )
+            return;
+        Path[] files = new Path[3];
+        IntBuffer[] indexes = new IntBuffer[3];
+        List<Triple> dropped = new ArrayList<>();
+        long size = 0;
+        for ( int index = 0 ; index < 3 ; index++ ) {
+            files[index] = newFile();
+            size = mergeIndex(inputs, index, files[index], index == SPO ? dropped : null);
+            indexes[index] = map(files[index], size);
+        }
+        dropped.forEach(deleted::delete);
+        List<Run> x = new ArrayList<>(runs);
+        x.removeAll(inputs);
+        x.add(new Run(size, files, indexes));
+        runs = x;
+        inputs.forEach(this::delete);
+    }
+
+    /** k-way merge of one sort order of the runs, returning the number of rows written. */
+    private long mergeIndex(List<Run> inputs, int index, Path file, List<Triple> dropped) {
+        int m = inputs.size();
+        long[] pos = new long[m];
+        long count = 0;
+        boolean hasLast = false;
+        int la = 0, lb = 0, lc = 0;
+        try ( DataOutputStream out = output(file) ) {
+            for (;;) {
+                int min = -1;
+                for ( int r = 0 ; r < m ; r++ ) {
+                    if ( pos[r] >= inputs.get(r).size() )
+                        continue;
+                    if ( min < 0 || compareRows(inputs.get(r).indexes()[index], pos[r], inputs.get(min).indexes()[index], pos[min]) < 0 )
+                        min = r;
+                }
+                if ( min < 0 )
+                    break;
+                IntBuffer buf = inputs.get(min).indexes()[index];
+                int i = (int)(pos[min]*3);
+                pos[min]++;
+                int a = buf.get(i), b = buf.get(i+1), c = buf.get(i+2);
+                if ( hasLast && a == la && b == lb && c == lc )
+                    continue;
+                if ( ! deleted.isEmpty() ) {
+                    Triple t = decode(index, a, b, c);
+                    if ( deleted.contains(t) ) {
+                        if ( dropped != null )
+                            dropped.add(t);
+                        continue;
+                    }
+                }
+                out.writeInt(a);
+                out.writeInt(b);
+                out.writeInt(c);
+                la = a; lb = b; lc = c;
+                hasLast = true;
+                count++;
+            }
+        } catch (IOException ex) { throw new RuntimeIOException(ex); }
+        return count;
+    }
+
+    private static int compareRows(IntBuffer buf1, long row1, IntBuffer buf2, long row2) {
+        int i1 = (int)(row1*3);
+        int i2 = (int)(row2*3);
+        for ( int j = 0 ; j < 3 ; j++ ) {
+            int x = Integer.compare(buf1.get(i1+j), buf2.get(i2+j));
+            if ( x != 0 )
+                return x;
+        }
+        return 0;
+    }
+
+    /** Quicksort of rows of three integers, rows lo to hi inclusive. */
+    private static void sortRows(int[] rows, int lo, int hi) {
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            int pa = rows[mid*3], pb = rows[mid*3+1], pc = rows[mid*3+2];
+            int i = lo;
+            int j = hi;
+            while ( i <= j ) {
+                while ( compareRow(rows, i, pa, pb, pc) < 0 )
+                    i++;
+                while ( compareRow(rows, j, pa, pb, pc) > 0 )
+                    j--;
+                if ( i <= j ) {
+                    swapRows(rows, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse on the smaller part.
+            if ( j - lo < hi - i ) {
+                sortRows(rows, lo, j);
+                lo = i;
+            } else {
+                sortRows(rows, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private static int compareRow(int[] rows, int row, int a, int b, int c) {
+        int i = row*3;
+        int x = Integer.compare(rows[i], a);
+        if ( x != 0 )
+            return x;
+        x = Integer.compare(rows[i+1], b);
+        if ( x != 0 )
+            return x;
+        return Integer.compare(rows[i+2], c);
+    }
+
+    private static void swapRows(int[] rows, int r1, int r2) {
+        int i1 = r1*3;
+        int i2 = r2*3;
+        for ( int j = 0 ; j < 3 ; j++ ) {
+            int x = rows[i1+j];
+            rows[i1+j] = rows[i2+j];
+            rows[i2+j] = x;
+        }
+    }
+
+    // ---- Files
+
+    private Path newFile() {
+        try {
+            Path file = Files.createTempFile(directory, "spill-", ".run");
+            runFiles.add(file);
+            return file;
+        } catch (IOException ex) { throw new RuntimeIOException(ex); }
+    }
+
+    private static DataOutputStream output(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64*1024));
+    }
+
+    private static IntBuffer map(Path file, long triples) {
+        try ( FileChannel channel = FileChannel.open(file, StandardOpenOption.READ) ) {
+            // The mapping remains valid after the channel is closed.
+            return channel.map(MapMode.READ_ONLY, 0, triples*12).asIntBuffer();
+        } catch (IOException ex) { throw new RuntimeIOException(ex); }
+    }
+}
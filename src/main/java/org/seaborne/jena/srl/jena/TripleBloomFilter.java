@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.jena;
+
+import org.apache.jena.graph.Triple;
+
+/**
+ * Bloom filter over triples (by term), to answer "definitely not present" without
+ * looking in a graph.
+ * <p>
+ * As well as the false positive rate expected from the number of triples, it records
+ * the outcome of lookups reported with {@link #recordNegative()} and
+ * {@link #recordFalsePositive()}.
+ * <p>
+ * Not thread safe for update; concurrent {@link #mightContain} calls are safe.
+ */
+public class TripleBloomFilter {
+
+    /** Create a filter for about {@code capacity} triples with {@code bitsPerTriple} bits for each. */
+    public static TripleBloomFilter create(long capacity, int bitsPerTriple) {
+        if ( bitsPerTriple <= 0 )
+            throw new IllegalArgumentException("Bits per triple must be positive: "+bitsPerTriple);
+        return new TripleBloomFilter(Math.max(capacity, 64), bitsPerTriple);
+    }
+
+    private final long capacity;
+    private final int bitsPerTriple;
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+    private long count = 0;
+    private long negatives = 0;
+    private long falsePositives = 0;
+
+    private TripleBloomFilter(long capacity, int bitsPerTriple) {
+        this.capacity = capacity;
+        this.bitsPerTriple = bitsPerTriple;
+        long words = Math.min((capacity*bitsPerTriple + 63) / 64, Integer.MAX_VALUE - 8);
+        this.bits = new long[(int)words];
+        this.numBits = words*64;
+        // Optimal number of hash functions: (m/n) ln 2
+        this.numHashes = Math.max(1, (int)Math.round(bitsPerTriple * Math.log(2)));
+    }
+
+    public void add(Triple triple) {
+        long h = hash(triple);
+        int h1 = (int)h;
+        int h2 = (int)(h >>> 32);
+        for ( int i = 0 ; i < numHashes ; i++ ) {
+            long idx = Math.floorMod(h1 + (long)i * h2, numBits);
+            bits[(int)(idx >>> 6)] |= 1L << idx;
+        }
+        count++;
+    }
+
+    /** Whether the triple may have been added. False means it has definitely not been added. */
+    public boolean mightContain(Triple triple) {
+        long h = hash(triple);
+        int h1 = (int)h;
+        int h2 = (int)(h >>> 32);
+        for ( int i = 0 ; i < numHashes ; i++ ) {
+            long idx = Math.floorMod(h1 + (long)i * h2, numBits);
+            if ( ( bits[(int)(idx >>> 6)] & (1L << idx) ) == 0 )
+                return false;
+        }
+        return true;
+    }
+
+    /** Number of triples added. */
+    public long count() { return count; }
+
+    /** The number of triples the filter was sized for. */
+    public long capacity() { return capacity; }
+
+    public int bitsPerTriple() { return bitsPerTriple; }
+
+    /** A lookup was answered by the filter as "not present". */
+    public void recordNegative() { negatives++; }
+
+    /** A lookup was "may be present" from the filter but the triple was not present. */
+    public void recordFalsePositive() { falsePositives++; }
+
+    /** Carry over the recorded lookups of a filter this one replaces. */
+    public void recordLookups(TripleBloomFilter other) {
+        negatives += other.negatives;
+        falsePositives += other.falsePositives;
+    }
+
+    /** The false positive rate expected for the number of triples added. */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double)numHashes * count / numBits), numHashes);
+    }
+
+    /** The proportion of recorded lookups of absent triples that were false positives, or 0 if none. */
+    public double observedFalsePositiveRate() {
+        long absent = negatives + falsePositives;
+        return ( absent == 0 ) ? 0 : (double)falsePositives / absent;
+    }
+
+    private static long hash(Triple triple) {
+        long h = triple.getSubject().hashCode();
+        h = h * 0x9E3779B97F4A7C15L + triple.getPredicate().hashCode();
+        h = h * 0x9E3779B97F4A7C15L + triple.getObject().hashCode();
+        // Finalizer from MurmurHash3.
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85B53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TripleBloomFilter[count=%d, capacity=%d, expectedFPR=%.4f, observedFPR=%.4f]",
+                             count, capacity, expectedFalsePositiveRate(), observedFalsePositiveRate());
+    }
+}
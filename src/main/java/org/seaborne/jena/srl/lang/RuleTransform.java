@@ -30,19 +30,28 @@ import org.seaborne.jena.srl.lang.RuleBodyElement.*;
 import org.seaborne.jena.srl.lang.RuleHeadElement.*;
 import org.seaborne.jena.srl.tuples.Tuple;
 
+/**
+ * Transform the elements of a rule. The default for each kind of element is no change.
+ * Returning {@code null} removes the element.
+ * @see RuleTransformer
+ */
 public interface RuleTransform {
 
-    public default RuleHeadElement transform(EltTripleTemplate eltTripleTemplate, Triple tripleTemplate) { return null; }
+    public default RuleHeadElement transform(EltTripleTemplate eltTripleTemplate, Triple tripleTemplate) { return eltTripleTemplate; }
 
-    public default RuleHeadElement transform(EltTupleTemplate eltTupleTemplate, Tuple tupleTemplate) { return null; }
+    public default RuleHeadElement transform(EltTupleTemplate eltTupleTemplate, Tuple tupleTemplate) { return eltTupleTemplate; }
 
-    public default RuleBodyElement transform(EltTriplePattern eltTriplePattern,Triple triplePattern) { return null; }
+    public default RuleBodyElement transform(EltTriplePattern eltTriplePattern,Triple triplePattern) { return eltTriplePattern; }
 
-    public default RuleBodyElement transform(EltTuplePattern eltTuplePattern, Tuple tuplePattern) { return null; }
+    public default RuleBodyElement transform(EltTuplePattern eltTuplePattern, Tuple tuplePattern) { return eltTuplePattern; }
 
-    public default RuleBodyElement transform(EltNegation eltNegation, List<RuleBodyElement> inner, boolean grounded) { return null; }
+    public default RuleBodyElement transform(EltNegation eltNegation, List<RuleBodyElement> inner, boolean grounded) {
+        if ( inner.equals(eltNegation.inner()) )
+            return eltNegation;
+        return new EltNegation(inner, grounded);
+    }
 
-    public default RuleBodyElement transform(EltFilter eltFilter, Expr expr) { return null; }
+    public default RuleBodyElement transform(EltFilter eltFilter, Expr expr) { return eltFilter; }
 
-    public default RuleBodyElement transform(EltAssignment eltAssignment, Var var, Expr value) { return null; }
+    public default RuleBodyElement transform(EltAssignment eltAssignment, Var var, Expr value) { return eltAssignment; }
 }
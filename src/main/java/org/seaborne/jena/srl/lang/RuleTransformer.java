@@ -22,7 +22,10 @@
 package org.seaborne.jena.srl.lang;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.Var;
@@ -41,22 +44,33 @@ public class RuleTransformer {
      *   transform triple patterns, tuples / head and body
      */
 
-    public static void transform(RuleSet ruleSet, RuleTransform transform) {
-        transformRuleSet(ruleSet, transform);
+    /** Apply a transform to each rule of a rule set, returning a new rule set. */
+    public static RuleSet transform(RuleSet ruleSet, RuleTransform transform) {
+        return transformRuleSet(ruleSet, transform);
     }
 
-    private static void transformRuleSet(RuleSet ruleSet, RuleTransform transform) {
-        ruleSet.getData();          // Graph
-        ruleSet.getDataTriples();
+    /**
+     * A rule set with the same base, prefixes and data as {@code ruleSet}
+     * but with different rules and, optionally, additional data tuples.
+     */
+    public static RuleSet replaceRules(RuleSet ruleSet, List<Rule> rules, List<Tuple> additionalDataTuples) {
+        List<Tuple> dataTuples = new ArrayList<>();
+        if ( ruleSet.hasTupleData() )
+            dataTuples.addAll(ruleSet.getDataTuples());
+        if ( additionalDataTuples != null )
+            dataTuples.addAll(additionalDataTuples);
+        Set<String> imports = ruleSet.hasImports() ? new LinkedHashSet<>(ruleSet.getImports()) : null;
+        return RuleSet.create(ruleSet.getBase(), ruleSet.getPrefixMap(), imports,
+                              List.copyOf(rules), ruleSet.getDataTriples(), dataTuples);
+    }
 
+    private static RuleSet transformRuleSet(RuleSet ruleSet, RuleTransform transform) {
         List<Rule> newRules = new ArrayList<>(ruleSet.getRules().size());
-
         ruleSet.getRules().forEach(rule->{
             Rule r = transformRule(rule, transform);
+            newRules.add(r);
         });
-
-        ruleSet.getDataTuples();
-        ruleSet.getTupleStore();    // TupleStore
+        return replaceRules(ruleSet, newRules, null);
     }
 
     private static Rule transformRule(Rule rule, RuleTransform transform) {
@@ -194,6 +208,7 @@ public class RuleTransformer {
     private static List<RuleBodyElement> transformBodyEltList(List<RuleBodyElement> bodyElts, RuleTransform transform) {
         return bodyElts.stream()
                         .map(elt->transformBodyElt(elt, transform))
+                        .filter(Objects::nonNull)
                         .toList();
     }
 }
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.sys;
+
+import java.util.*;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.RulesException;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.lang.RuleBodyElement.*;
+import org.seaborne.jena.srl.lang.RuleHeadElement;
+import org.seaborne.jena.srl.lang.RuleTransformer;
+import org.seaborne.jena.srl.tuples.Tuple;
+
+/**
+ * Magic sets rewriting of a rule set for a query triple pattern.
+ * <p>
+ * The rewritten rule set, evaluated forwards, only infers triples that are relevant to
+ * answering the query. Demand for a triple pattern is recorded as a tuple
+ * {@code (srl:magic_<adornment> bound terms...)} where the adornment marks each of the
+ * subject, predicate and object as bound ("b") or free ("f"). A rule that provides for
+ * a demanded pattern gets a guard tuple pattern at the start of its body. Demand flows
+ * left-to-right through a rule body: a body pattern that rules provide for is demanded
+ * with the terms bound by the guard and the patterns before it.
+ * <p>
+ * Negation is not used to restrict demand; the patterns inside a negation are demanded
+ * so the negation is tested on complete data. Run-once rules (assignment, blank nodes
+ * in the head) and rules with tuples in the head are kept unchanged, with demand
+ * for the patterns of their bodies.
+ * <p>
+ * If the rewritten rule set can not be stratified, the original rule set is returned.
+ * The {@link Rewrite} carries the stratification of the rewritten rule set so it is
+ * not calculated again.
+ */
+public class MagicSets {
+
+    /** The name of the magic tuples for an adornment. */
+    public static Node magicName(String adornment) {
+        return NodeFactory.createURI(SysSRL.NS+"magic_"+adornment);
+    }
+
+    /**
+     * The outcome of a rewrite: the rule set and its stratification, which has been
+     * checked. If the rewrite could not be used, this is the original rule set and the
+     * stratification is null.
+     */
+    public record Rewrite(RuleSet ruleSet, Stratification stratification) {
+        public boolean isRewritten() { return stratification != null; }
+    }
+
+    /**
+     * Rewrite the rule set for the query triple pattern.
+     * {@code null}, {@code Node.ANY} and variables in the pattern are free.
+     */
+    public static Rewrite transform(RuleSet ruleSet, Triple queryPattern) {
+        MagicSets magicSets = new MagicSets(ruleSet);
+        magicSets.query(queryPattern);
+        RuleSet ruleSet2 = RuleTransformer.replaceRules(ruleSet, magicSets.outputRules, magicSets.seeds);
+        try {
+            WellFormed.checkWellFormed(ruleSet2);
+            DependencyGraph depGraph = DependencyGraph.create(ruleSet2);
+            RecursionChecker.checkForIllegalRecursion(depGraph);
+            Stratification stratification = Stratification.create(ruleSet2, depGraph);
+            return new Rewrite(ruleSet2, stratification);
+        } catch (RulesException ex) {
+            return new Rewrite(ruleSet, null);
+        }
+    }
+
+    /** A demanded triple pattern : free terms and bound variables are replaced by variables. */
+    private record Demand(Triple pattern, String adornment) {}
+
+    private static final Var varS = Var.alloc("s");
+    private static final Var varP = Var.alloc("p");
+    private static final Var varO = Var.alloc("o");
+
+    private final List<Rule> rules;
+    private final List<Rule> outputRules = new ArrayList<>();
+    private final List<Tuple> seeds = new ArrayList<>();
+    private final Deque<Demand> pending = new ArrayDeque<>();
+    private final Set<Demand> demands = new HashSet<>();
+    // (rule index, head index, adornment) of guarded rules already generated.
+    private final Set<String> guarded = new HashSet<>();
+    // Rules by identity that have been added unchanged.
+    private final Set<Rule> unguarded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private MagicSets(RuleSet ruleSet) {
+        this.rules = ruleSet.getRules();
+    }
+
+    private void query(Triple queryPattern) {
+        Triple pattern = Triple.createMatch(queryPattern.getSubject(), queryPattern.getPredicate(), queryPattern.getObject());
+        Node s = queryNode(pattern.getSubject());
+        Node p = queryNode(pattern.getPredicate());
+        Node o = queryNode(pattern.getObject());
+        Triple goal = Triple.create(s, p, o);
+        String adornment = adornment(goal, Set.of());
+        seeds.add(magicTuple(adornment, goal));
+        demand(goal, Set.of());
+        while ( ! pending.isEmpty() ) {
+            Demand demand = pending.removeFirst();
+            for ( int i = 0 ; i < rules.size() ; i++ )
+                provide(i, demand);
+        }
+    }
+
+    private static Node queryNode(Node node) {
+        // Triple.createMatch turned null into Node.ANY.
+        return ( node == Node.ANY ) ? Var.alloc("_q") : node;
+    }
+
+    /** Guarded copies of a rule for each of its head triples that may provide for a demand. */
+    private void provide(int ruleIndex, Demand demand) {
+        Rule rule = rules.get(ruleIndex);
+        List<Triple> headTriples = rule.getHeadTriples();
+        for ( int j = 0 ; j < headTriples.size() ; j++ ) {
+            Triple headTriple = headTriples.get(j);
+            if ( ! RuleDependencies.dependsOn(demand.pattern(), headTriple) )
+                continue;
+            if ( rule.isRunOnceRule() || ! rule.getHeadTuples().isEmpty() ) {
+                addUnguarded(rule);
+                continue;
+            }
+            String adornment = demand.adornment();
+            if ( ! guarded.add(ruleIndex+"/"+j+"/"+adornment) )
+                continue;
+            Tuple guard = guardTuple(adornment, headTriple);
+            Set<Var> bound = new HashSet<>();
+            for ( Node n : guard.terms() )
+                addVars(bound, n);
+            Rule.Builder builder = Rule.newBuilder();
+            builder.addHeadElements(rule.getHeadElements());
+            builder.addBodyElement(new EltTuplePattern(guard));
+            builder.addBodyElements(rule.getBodyElements());
+            outputRules.add(builder.build());
+            List<RuleBodyElement> prefix = new ArrayList<>();
+            prefix.add(new EltTuplePattern(guard));
+            demandBody(rule.getBodyElements(), prefix, bound);
+        }
+    }
+
+    private void addUnguarded(Rule rule) {
+        if ( ! unguarded.add(rule) )
+            return;
+        outputRules.add(rule);
+        demandBody(rule.getBodyElements(), new ArrayList<>(), new HashSet<>());
+    }
+
+    /**
+     * Demand for the patterns of a body, given the guard and the bound variables.
+     * The prefix is the body of the magic rule for the next pattern.
+     */
+    private void demandBody(List<RuleBodyElement> body, List<RuleBodyElement> prefix, Set<Var> bound) {
+        for ( RuleBodyElement elt : body ) {
+            switch (elt) {
+                case EltTriplePattern(Triple triplePattern) -> {
+                    if ( isDerived(triplePattern) )
+                        magicRule(triplePattern, prefix, bound);
+                    prefix.add(elt);
+                    addVars(bound, triplePattern.getSubject());
+                    addVars(bound, triplePattern.getPredicate());
+                    addVars(bound, triplePattern.getObject());
+                }
+                case EltTuplePattern(Tuple tuplePattern) -> {
+                    for ( Rule r : rules ) {
+                        if ( RuleDependencies.dependsOn(tuplePattern, r) )
+                            addUnguarded(r);
+                    }
+                    prefix.add(elt);
+                    tuplePattern.terms().forEach(n -> addVars(bound, n));
+                }
+                case EltFilter(Expr condition) -> {
+                    if ( bound.containsAll(condition.getVarsMentioned()) )
+                        prefix.add(elt);
+                }
+                case EltAssignment(Var var, Expr expression) -> {
+                    // Not used to restrict demand: the variable is not bound for demand.
+                }
+                case EltNegation(List<RuleBodyElement> inner, boolean grounded) -> {
+                    demandBody(inner, new ArrayList<>(prefix), new HashSet<>(bound));
+                }
+            }
+        }
+    }
+
+    private void magicRule(Triple triplePattern, List<RuleBodyElement> prefix, Set<Var> bound) {
+        String adornment = adornment(triplePattern, bound);
+        Tuple magic = magicTuple(adornment, triplePattern);
+        if ( prefix.isEmpty() ) {
+            // Nothing restricts the demand.
+            if ( magic.isConcrete() )
+                seeds.add(magic);
+        } else {
+            Rule magicRule = Rule.newBuilder()
+                    .addHeadElement(new RuleHeadElement.EltTupleTemplate(magic))
+                    .addBodyElements(List.copyOf(prefix))
+                    .build();
+            outputRules.add(magicRule);
+        }
+        demand(triplePattern, bound);
+    }
+
+    private void demand(Triple triplePattern, Set<Var> bound) {
+        String adornment = adornment(triplePattern, bound);
+        Triple pattern = Triple.create(demandNode(triplePattern.getSubject(), varS),
+                                       demandNode(triplePattern.getPredicate(), varP),
+                                       demandNode(triplePattern.getObject(), varO));
+        Demand demand = new Demand(pattern, adornment);
+        if ( demands.add(demand) )
+            pending.add(demand);
+    }
+
+    private static Node demandNode(Node node, Var var) {
+        return node.isConcrete() ? node : var;
+    }
+
+    private boolean isDerived(Triple triplePattern) {
+        for ( Rule r : rules ) {
+            if ( RuleDependencies.dependsOn(triplePattern, r) )
+                return true;
+        }
+        return false;
+    }
+
+    private static String adornment(Triple triplePattern, Set<Var> bound) {
+        return new StringBuilder(3)
+                .append(isBound(triplePattern.getSubject(), bound) ? 'b' : 'f')
+                .append(isBound(triplePattern.getPredicate(), bound) ? 'b' : 'f')
+                .append(isBound(triplePattern.getObject(), bound) ? 'b' : 'f')
+                .toString();
+    }
+
+    /** The magic tuple of the bound terms of a triple pattern or head template. */
+    private static Tuple magicTuple(String adornment, Triple triple) {
+        List<Node> terms = new ArrayList<>(4);
+        terms.add(magicName(adornment));
+        if ( adornment.charAt(0) == 'b' )
+            terms.add(triple.getSubject());
+        if ( adornment.charAt(1) == 'b' )
+            terms.add(triple.getPredicate());
+        if ( adornment.charAt(2) == 'b' )
+            terms.add(triple.getObject());
+        return Tuple.create(terms);
+    }
+
+    private static Tuple guardTuple(String adornment, Triple headTriple) {
+        return magicTuple(adornment, headTriple);
+    }
+
+    private static boolean isBound(Node node, Set<Var> bound) {
+        Set<Var> vars = new HashSet<>();
+        addVars(vars, node);
+        if ( node.isBlank() )
+            return false;
+        return bound.containsAll(vars);
+    }
+
+    private static void addVars(Set<Var> acc, Node node) {
+        if ( Var.isVar(node) )
+            acc.add(Var.alloc(node));
+        else if ( node.isTripleTerm() ) {
+            Triple t = node.getTriple();
+            addVars(acc, t.getSubject());
+            addVars(acc, t.getPredicate());
+            addVars(acc, t.getObject());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.sys;
+
+import java.util.*;
+
+import org.seaborne.jena.srl.Rule;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.sys.DependencyGraph.DependencyEdge;
+
+/**
+ * The rules of a rule set divided into groups, where a group is a strongly connected
+ * component of the {@link DependencyGraph}. Rules in a group are mutually recursive
+ * and must be evaluated together. The groups form a DAG.
+ * <p>
+ * A group can be evaluated as soon as all the groups it depends on have been evaluated;
+ * it only needs the base data and the output of the groups it directly depends on.
+ * Groups that do not depend on each other can be evaluated independently.
+ */
+public class RuleGroups {
+
+    /**
+     * A group of rules, all in the same stratum, with the groups it directly depends on.
+     * The rules are split into run-once and general rules as for the stratum.
+     */
+    public record RuleGroup(int index, int stratum, Stratum rules, List<RuleGroup> dependsOn) {
+        @Override
+        public String toString() {
+            List<Integer> x = dependsOn.stream().map(RuleGroup::index).toList();
+            return String.format("RuleGroup[%d: stratum=%d, once=%d, general=%d, dependsOn=%s]",
+                                 index, stratum, rules.runOnce().size(), rules.runGeneral().size(), x);
+        }
+    }
+
+    /**
+     * Calculate the rule groups.
+     * The list is in dependency order: a group comes after all the groups it depends on.
+     */
+    public static List<RuleGroup> create(Stratification stratification) {
+        RuleSet ruleSet = stratification.ofRuleSet();
+        DependencyGraph depGraph = stratification.dependencyGraph();
+
+        Map<Rule, Integer> stratumOf = new HashMap<>();
+        Set<Rule> runOnce = new HashSet<>();
+        for ( int i = stratification.minStratum() ; i <= stratification.maxStratum() ; i++ ) {
+            Stratum stratum = stratification.getLevel(i);
+            for ( Rule r : stratum.runOnce() ) {
+                stratumOf.put(r, i);
+                runOnce.add(r);
+            }
+            for ( Rule r : stratum.runGeneral() )
+                stratumOf.put(r, i);
+        }
+
+        List<Rule> rules = ruleSet.getRules();
+        Map<Rule, Integer> position = new HashMap<>();
+        for ( int i = 0 ; i < rules.size() ; i++ )
+            position.put(rules.get(i), i);
+
+        List<List<Rule>> components = new Tarjan(depGraph).components(rules);
+
+        Map<Rule, RuleGroup> groupOf = new HashMap<>();
+        List<RuleGroup> groups = new ArrayList<>(components.size());
+        for ( List<Rule> component : components ) {
+            // Components are produced after all the components they depend on.
+            // Keep the rule set order within a group.
+            component.sort(Comparator.comparing(position::get));
+            int stratum = stratumOf.get(component.getFirst());
+            List<Rule> once = new ArrayList<>();
+            List<Rule> general = new ArrayList<>();
+            // Key by group index.
+            Map<Integer, RuleGroup> dependsOn = new LinkedHashMap<>();
+            for ( Rule r : component ) {
+                if ( runOnce.contains(r) )
+                    once.add(r);
+                else
+                    general.add(r);
+                for ( DependencyEdge e : depGraph.directDependencies(r) ) {
+                    RuleGroup g = groupOf.get(e.linkedRule());
+                    // null if the same component.
+                    if ( g != null )
+                        dependsOn.putIfAbsent(g.index(), g);
+                }
+            }
+            RuleGroup group = new RuleGroup(groups.size(), stratum, new Stratum(once, general), List.copyOf(dependsOn.values()));
+            groups.add(group);
+            component.forEach(r -> groupOf.put(r, group));
+        }
+        return groups;
+    }
+
+    /** Tarjan's strongly connected components algorithm over the "depends on" edges. */
+    private static class Tarjan {
+        private final DependencyGraph depGraph;
+        private final Map<Rule, Integer> index = new HashMap<>();
+        private final Map<Rule, Integer> lowLink = new HashMap<>();
+        private final Deque<Rule> stack = new ArrayDeque<>();
+        private final Set<Rule> onStack = new HashSet<>();
+        private final List<List<Rule>> components = new ArrayList<>();
+        private int counter = 0;
+
+        Tarjan(DependencyGraph depGraph) {
+            this.depGraph = depGraph;
+        }
+
+        /** Components, in reverse topological order of the "depends on" relationship. */
+        List<List<Rule>> components(List<Rule> rules) {
+            for ( Rule r : rules ) {
+                if ( ! index.containsKey(r) )
+                    visit(r);
+            }
+            return components;
+        }
+
+        private void visit(Rule rule) {
+            index.put(rule, counter);
+            lowLink.put(rule, counter);
+            counter++;
+            stack.push(rule);
+            onStack.add(rule);
+
+            for ( DependencyEdge e : depGraph.directDependencies(rule) ) {
+                Rule other = e.linkedRule();
+                if ( ! index.containsKey(other) ) {
+                    visit(other);
+                    lowLink.put(rule, Math.min(lowLink.get(rule), lowLink.get(other)));
+                } else if ( onStack.contains(other) ) {
+                    lowLink.put(rule, Math.min(lowLink.get(rule), index.get(other)));
+                }
+            }
+
+            if ( lowLink.get(rule).equals(index.get(rule)) ) {
+                List<Rule> component = new ArrayList<>();
+                Rule r;
+                do {
+                    r = stack.pop();
+                    onStack.remove(r);
+                    component.add(r);
+                } while ( r != rule );
+                components.add(component);
+            }
+        }
+    }
+}
@@ -26,4 +26,5 @@ import org.seaborne.jena.srl.RulesException;
 public class RuleSetEvaluationCancelledException extends RulesException {
     public RuleSetEvaluationCancelledException() { super("Rules evaluation cancelled"); }
     public RuleSetEvaluationCancelledException(Throwable cause) { super("Rules evaluation cancelled", cause) ; }
+    public RuleSetEvaluationCancelledException(String message) { super(message); }
 }
@@ -61,6 +61,7 @@ public class Stratification {
     static Integer minDependentStratum = Integer.valueOf(1);
 
     final private RuleSet ruleSet;
+    final private DependencyGraph depGraph;
     final private int minStratum;
     final private int maxStratum;
     final private List<Stratum> stratumLevels;
@@ -79,10 +80,11 @@ public class Stratification {
         return functionCreateStratification(ruleSet, depGraph, rCxt);
     }
 
-    private Stratification(int minStratum, int maxStratum, List<Stratum> stratumLevels, RuleSet ruleSet) {
+    private Stratification(int minStratum, int maxStratum, List<Stratum> stratumLevels, RuleSet ruleSet, DependencyGraph depGraph) {
         if ( minStratum < 0 )
             throw new IllegalArgumentException("Negative minStratum");
         this.ruleSet = ruleSet;
+        this.depGraph = depGraph;
         this.minStratum = minStratum;
         this.maxStratum = maxStratum;
         this.stratumLevels = stratumLevels;
@@ -92,6 +94,11 @@ public class Stratification {
         return ruleSet;
     }
 
+    /** The dependency graph used to calculate this stratification. */
+    public DependencyGraph dependencyGraph() {
+        return depGraph;
+    }
+
     public Stratum getLevel(int i) {
         return stratumLevels.get(i - minStratum);
     }
@@ -127,7 +134,7 @@ public class Stratification {
         List<Rule> rules = ruleSet.getRules();
 
         if ( rules.isEmpty() )
-            return new Stratification(0, -1, List.of(), ruleSet);
+            return new Stratification(0, -1, List.of(), ruleSet, depGraph);
 
         Map<Rule, Integer> stratumMap = new HashMap<>();
         int minStratum = dataStratum;
@@ -290,7 +297,7 @@ public class Stratification {
         int m = maxStratum;
 //        if ( ! seenDataLayer )
 //            m = m - (minDependentStratum-dataStratum);
-        return new Stratification(dataStratum, m, layers, ruleSet);
+        return new Stratification(dataStratum, m, layers, ruleSet, depGraph);
     }
 
     private static String ruleAsStr(Rule rule, PrefixMap prefixMap) {
@@ -51,6 +51,69 @@ public class SysJenaRules {
 //     */
 //    public static boolean safeDependencies() { return  !allowUnsafeAssigmments && !allowUnsafeTemplates; }
 
+    /**
+     * Whether forward engines answer {@code solve} by evaluating a
+     * {@link MagicSets magic sets} rewrite of the rule set for the query.
+     */
+    public static boolean magicSetsForSolve = true;
+
+    /**
+     * Whether rule bodies are reordered for evaluation, using estimates of the
+     * number of matches from the data. See {@link org.seaborne.jena.srl.exec.RuleBodyPlanner}.
+     */
+    public static boolean planRuleBodies = true;
+
+    /**
+     * Number of incoming solutions to a triple pattern in a rule body before a hash
+     * join is considered. Zero or less to always use index lookups.
+     */
+    public static int hashJoinThreshold = 1000;
+
+    /** Maximum number of rows held in memory for the build side of a hash join. */
+    public static int hashJoinMemoryLimit = 100_000;
+
+    /**
+     * Whether rule bodies with cyclic triple patterns use a worst-case optimal join
+     * (Leapfrog Triejoin) in engines that support it.
+     */
+    public static boolean worstCaseOptimalJoins = true;
+
+    /**
+     * Whether rule bodies are evaluated in blocks of solutions, rather than one
+     * solution at a time, in engines that support it.
+     */
+    public static boolean batchRuleExecution = true;
+
+    /** Number of solutions in a block for {@link #batchRuleExecution}. */
+    public static int batchSize = 1024;
+
+    /**
+     * Whether FILTER and SET expressions of rule bodies are compiled to direct evaluators
+     * for common shapes. See {@link org.seaborne.jena.srl.exec.CompiledExpr}.
+     */
+    public static boolean compileExpressions = true;
+
+    /**
+     * Number of triples held in memory by a working graph of an evaluation, such as the
+     * inferred triples or the delta of a round, before they are moved to sorted run files
+     * on disk. Zero or less to keep all triples in memory.
+     * See {@link org.seaborne.jena.srl.jena.SpillGraph}.
+     */
+    public static long spillThreshold = -1;
+
+    /** Directory for the files of {@link #spillThreshold}, or null for the system temporary directory. */
+    public static String spillDirectory = null;
+
+    /**
+     * Whether the graph of base and inferred triples of an evaluation has a Bloom filter,
+     * so that most checks for a new triple that is not already present do not look in
+     * the base graph. See {@link org.seaborne.jena.srl.jena.TripleBloomFilter}.
+     */
+    public static boolean membershipFilter = false;
+
+    /** Bits per triple for {@link #membershipFilter}. 10 gives about a 1% false positive rate. */
+    public static int membershipFilterBitsPerTriple = 10;
+
     /** Role triples for RDF syntax */
     public static boolean useRoleTriples = true;
 
@@ -40,7 +40,7 @@ public class TupleStoreSimple implements TupleStore {
     @Override
     public boolean contains(Tuple tuple) {
         checkConcrete(tuple);
-        return false;
+        return tupleSet.contains(tuple);
     }
 
     @Override
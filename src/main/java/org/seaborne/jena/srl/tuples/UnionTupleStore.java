@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.tuples;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.seaborne.jena.srl.RulesException;
+
+/**
+ * A read-only view of the union of some tuple stores.
+ * <p>
+ * {@link #size} is the sum of the sizes of the stores; it is more than the number of
+ * tuples if the stores have tuples in common.
+ */
+public class UnionTupleStore implements TupleStore {
+
+    private final List<TupleStore> stores;
+
+    public static TupleStore create(List<TupleStore> stores) {
+        if ( stores.size() == 1 )
+            return stores.get(0);
+        return new UnionTupleStore(stores);
+    }
+
+    private UnionTupleStore(List<TupleStore> stores) {
+        this.stores = List.copyOf(stores);
+    }
+
+    @Override
+    public boolean contains(Tuple tuple) {
+        for ( TupleStore store : stores ) {
+            if ( store.contains(tuple) )
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for ( TupleStore store : stores )
+            size += store.size();
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void add(Tuple tuple) {
+        throw new RulesException("Can't add tuple to "+this.getClass().getSimpleName());
+    }
+
+    @Override
+    public void delete(Tuple tuple) {
+        throw new RulesException("Can't delete tuple from "+this.getClass().getSimpleName());
+    }
+
+    @Override
+    public Iterator<Tuple> find(Tuple pattern) {
+        return Iter.iter(Iter.flatMap(stores.iterator(), store -> store.find(pattern))).distinct();
+    }
+
+    @Override
+    public Iterator<Tuple> all() {
+        return Iter.iter(Iter.flatMap(stores.iterator(), TupleStore::all)).distinct();
+    }
+}
@@ -21,6 +21,7 @@
 
 package org.seaborne.jena.srl;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -28,8 +29,10 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFParser;
@@ -120,6 +123,39 @@ public class LibEvalTest {
         RDFWriter.source(graph).format(RDFFormat.TURTLE_FLAT).output(out);
     }
 
+    /** Parse Turtle into a new in-memory graph. */
+    static Graph parse(String string) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        RDFParser.fromString(string, Lang.TURTLE).parse(graph);
+        return graph;
+    }
+
+    /**
+     * Data for comparing ways of evaluating joins, without the prefix ":".
+     * There are joins with several matches on each side, a triple with a repeated term,
+     * and a cycle for recursive rules.
+     */
+    static String joinTestData() {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; i < 20 ; i++ )
+            sb.append(String.format(":x%d :q :y%d .\n", i, i%5));
+        for ( int i = 0 ; i < 15 ; i++ )
+            sb.append(String.format(":y%d :r :z%d .\n", i%5, i));
+        sb.append(":y1 :s :y1 . :y2 :s :y3 .\n");
+        sb.append(":y0 :q :x1 .\n");
+        return sb.toString();
+    }
+
+    /**
+     * Infer with {@link EngineType#SIMPLE}, the reference for testing other engines and
+     * settings, and check that something is inferred.
+     */
+    static Set<Triple> inferReference(Graph graph, RuleSet ruleSet) {
+        Set<Triple> expected = ShaclRulesExec.create(EngineType.SIMPLE, graph, ruleSet).infer().find().toSet();
+        assertFalse(expected.isEmpty(), "Nothing inferred");
+        return expected;
+    }
+
     /** Immutable, empty graph */
     static Graph emptyGraph() { return GraphZero.instance(); }
 
@@ -73,5 +73,54 @@ public class Scripts_RuleEvalByEngine {
         return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.SIMPLE_SPARQL_INSERT));
     }
 
+    @Order(5)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Semi-naive)")
+    public Stream<DynamicNode> execution_semiNaive() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.SEMINAIVE));
+    }
+
+    @Order(6)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Jacobi)")
+    public Stream<DynamicNode> execution_jacobi() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.JACOBI));
+    }
+
+    @Order(7)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Dataflow)")
+    public Stream<DynamicNode> execution_dataflow() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.DATAFLOW));
+    }
+
+    @Order(8)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Backward QSQR)")
+    public Stream<DynamicNode> execution_backwardQSQR() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.BKD_QSQR));
+    }
+
+    @Order(9)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Encoded)")
+    public Stream<DynamicNode> execution_encoded() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.ENCODED));
+    }
+
+    @Order(10)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Semi-naive SPARQL)")
+    public Stream<DynamicNode> execution_sparqlSemiNaive() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.SPARQL_SEMINAIVE));
+    }
+
+    @Order(11)
+    @TestFactory
+    @DisplayName("Jena Rules (Execution - engine type : Generated)")
+    public Stream<DynamicNode> execution_generated() {
+        return Scripts.manifestTestFactory("src/test/files/eval/manifest.ttl", testMakerEngineType(EngineType.GENERATED));
+    }
+
 
 }
@@ -24,7 +24,10 @@ package org.seaborne.jena.srl;
 import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.Suite;
 
+import org.seaborne.jena.srl.exec.TestEvalOperators;
 import org.seaborne.jena.srl.sys.TestAppendGraph;
+import org.seaborne.jena.srl.sys.TestSpillGraph;
+import org.seaborne.jena.srl.sys.TestTripleBloomFilter;
 
 @Suite
 @SelectClasses({
@@ -34,6 +37,8 @@ import org.seaborne.jena.srl.sys.TestAppendGraph;
 
     // Infrastructure
     TestAppendGraph.class,
+    TestSpillGraph.class,
+    TestTripleBloomFilter.class,
 
     TestNodeExpressions.class,
 
@@ -45,6 +50,19 @@ import org.seaborne.jena.srl.sys.TestAppendGraph;
 
     TestRulesEvalMultipleEngines.class,
     TestRulesEvalMisc.class,
+    TestRulesIncremental.class,
+    TestRulesBkdQSQR.class,
+    TestMagicSets.class,
+    TestRuleBodyPlanner.class,
+    TestLeapfrogTriejoin.class,
+    TestEvalSettings.class,
+    TestEvalOperators.class,
+    TestNegationAntiJoin.class,
+    TestGroundedNegation.class,
+    TestCompiledExpr.class,
+    TestStreamOutput.class,
+    TestRulesBudget.class,
+    TestRulesExecTxn.class,
 
     TestImports.class,
 
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.seaborne.jena.srl.exec.CompiledExpr;
+import org.seaborne.jena.srl.exec.RulesExecCxt;
+
+/** Compiled expressions give the same outcome as the ARQ expression. */
+public class TestCompiledExpr {
+
+    private static final String[] values = {
+        null, "5", "'05'^^xsd:integer", "-3", "3.5", "'1e3'^^xsd:double", "123456789012345678901",
+        "'abc'", "'b'", "'abc'@en", "'http://ex/z'", "'rel'", "<http://ex/a>", "_:b", "true"
+    };
+
+    private static final Var x = Var.alloc("x");
+    private static final Var y = Var.alloc("y");
+
+    @Test public void compare_01()  { test("?x < ?y"); }
+    @Test public void compare_02()  { test("?x <= 5"); }
+    @Test public void compare_03()  { test("?x > ?y"); }
+    @Test public void compare_04()  { test("?x >= 'a'"); }
+
+    @Test public void equals_01()   { test("?x = ?y"); }
+    @Test public void equals_02()   { test("?x != <http://ex/a>"); }
+    @Test public void equals_03()   { test("?x = 5"); }
+    @Test public void sameTerm_01() { test("sameTerm(?x, ?y)"); }
+
+    @Test public void bound_01()    { test("bound(?x)"); }
+    @Test public void bound_02()    { test("! bound(?z)"); }
+
+    @Test public void logical_01()  { test("?x < 3 && ?y > 1"); }
+    @Test public void logical_02()  { test("?x < 3 || ?z"); }
+    @Test public void logical_03()  { test("?z && false"); }
+    @Test public void logical_04()  { test("! (?x = ?y)"); }
+    @Test public void logical_05()  { test("?x"); }
+
+    @Test public void string_01()   { test("str(?x)"); }
+    @Test public void string_02()   { test("strlen(?x)"); }
+    @Test public void string_03()   { test("contains(?x, 'b')"); }
+    @Test public void string_04()   { test("strstarts(?x, ?y)"); }
+    @Test public void string_05()   { test("strends(str(?x), 'a')"); }
+    @Test public void string_06()   { test("concat(?x, '-', ?y)"); }
+
+    @Test public void iri_01()      { test("iri(?x)"); }
+    @Test public void iri_02()      { test("iri(concat('http://ex/', str(?y)))"); }
+    @Test public void iri_03()      { test("iri('http://ex/a/../b')"); }
+
+    @Test public void other_01()    { test("1 + ?x"); }
+
+    private static void test(String exprStr) {
+        Expr expr = ExprUtils.parse(exprStr);
+        CompiledExpr compiled = CompiledExpr.compile(expr);
+        RulesExecCxt rCxt = RulesExecCxt.create();
+        for ( Binding binding : bindings() ) {
+            NodeValue expected;
+            try {
+                expected = expr.eval(binding, rCxt);
+            } catch (ExprEvalException ex) {
+                expected = null;
+            }
+            NodeValue actual = compiled.eval(binding, rCxt);
+            String label = exprStr+" "+binding;
+            assertEquals(expected == null ? null : expected.asNode(), actual == null ? null : actual.asNode(), label);
+            assertEquals(expr.isSatisfied(binding, rCxt), compiled.isSatisfied(binding, rCxt), label);
+        }
+    }
+
+    private static List<Binding> bindings() {
+        List<Binding> bindings = new ArrayList<>();
+        for ( String xStr : values ) {
+            for ( String yStr : values ) {
+                BindingBuilder builder = Binding.builder();
+                if ( xStr != null )
+                    builder.add(x, node(xStr));
+                if ( yStr != null )
+                    builder.add(y, node(yStr));
+                bindings.add(builder.build());
+            }
+        }
+        return bindings;
+    }
+
+    private static Node node(String str) {
+        return SSE.parseNode(str);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.seaborne.jena.srl.LibEvalTest.inferReference;
+import static org.seaborne.jena.srl.LibEvalTest.joinTestData;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedClass;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+
+/**
+ * Ways of evaluating rule bodies - hash joins, batch execution, worst-case optimal
+ * joins, generated code - compared to index lookups in the written order with the
+ * simple engine.
+ */
+@ParameterizedClass(name="{index}: {0}")
+@MethodSource("provideArgs")
+public class TestEvalSettings {
+
+    /** The settings of {@link SysJenaRules} for evaluating rule bodies. */
+    record Settings(boolean planRuleBodies, int hashJoinThreshold, int hashJoinMemoryLimit,
+                    boolean worstCaseOptimalJoins, boolean batchRuleExecution, int batchSize) {
+        static Settings current() {
+            return new Settings(SysJenaRules.planRuleBodies, SysJenaRules.hashJoinThreshold, SysJenaRules.hashJoinMemoryLimit,
+                                SysJenaRules.worstCaseOptimalJoins, SysJenaRules.batchRuleExecution, SysJenaRules.batchSize);
+        }
+
+        void set() {
+            SysJenaRules.planRuleBodies = planRuleBodies;
+            SysJenaRules.hashJoinThreshold = hashJoinThreshold;
+            SysJenaRules.hashJoinMemoryLimit = hashJoinMemoryLimit;
+            SysJenaRules.worstCaseOptimalJoins = worstCaseOptimalJoins;
+            SysJenaRules.batchRuleExecution = batchRuleExecution;
+            SysJenaRules.batchSize = batchSize;
+        }
+    }
+
+    // Index lookups, in the written order.
+    private static final Settings reference = new Settings(false, 0, 100_000, false, false, 1024);
+
+    private static Stream<Arguments> provideArgs() {
+        // Hash joins have the large pattern first: rule bodies are not planned.
+        // Settings: plan, hash join threshold, hash join memory, worst-case optimal joins, batch, batch size.
+        List<Arguments> x = List.of(Arguments.of("Simple (hash join)", EngineType.SIMPLE,
+                                                 new Settings(false, 2, 1000,  false, false, 1024)),
+                                    Arguments.of("Simple (hash join, blocks)", EngineType.SIMPLE,
+                                                 new Settings(false, 2, 5,     false, false, 1024)),
+                                    Arguments.of("Semi-naive (hash join)", EngineType.SEMINAIVE,
+                                                 new Settings(false, 2, 1000,  false, false, 1024)),
+                                    Arguments.of("Semi-naive (hash join, blocks)", EngineType.SEMINAIVE,
+                                                 new Settings(false, 2, 5,     false, false, 1024)),
+                                    Arguments.of("Encoded (batch 1)", EngineType.ENCODED,
+                                                 new Settings(true,  0, 1000,  false, true,  1)),
+                                    Arguments.of("Encoded (batch 3)", EngineType.ENCODED,
+                                                 new Settings(true,  0, 1000,  false, true,  3)),
+                                    Arguments.of("Encoded (batch 1024)", EngineType.ENCODED,
+                                                 new Settings(true,  0, 1000,  false, true,  1024)),
+                                    Arguments.of("Encoded (no batch)", EngineType.ENCODED,
+                                                 new Settings(true,  0, 1000,  false, false, 1024)),
+                                    Arguments.of("Encoded (triejoin)", EngineType.ENCODED,
+                                                 new Settings(true,  0, 1000,  true,  false, 1024)),
+                                    Arguments.of("Generated", EngineType.GENERATED,
+                                                 new Settings(true,  0, 1000,  true,  true,  1024)));
+        return x.stream();
+    }
+
+    EngineType engineType;
+    Settings settings;
+
+    public TestEvalSettings(String name, EngineType engineType, Settings settings) {
+        this.engineType = engineType;
+        this.settings = settings;
+    }
+
+    private Settings saved;
+
+    @BeforeEach public void before() {
+        saved = Settings.current();
+    }
+
+    @AfterEach public void after() {
+        saved.set();
+    }
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            PREFIX rdfs:    <http://www.w3.org/2000/01/rdf-schema#>
+            """;
+
+    static String SUB_PROPERTIES = """
+            :q rdfs:subPropertyOf :q1 . :r rdfs:subPropertyOf :r1 . :r rdfs:subPropertyOf :r2 .
+            """;
+
+    @Test public void eval_join() {
+        test("RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z }");
+    }
+
+    @Test public void eval_constants() {
+        test("RULE { ?x :r1 :z1 } WHERE { ?x :q :y1 . :y1 :r :z1 }");
+    }
+
+    @Test public void eval_allBound() {
+        test("RULE { ?x :both ?y } WHERE { ?x :q ?y . ?x :q ?y }");
+    }
+
+    @Test public void eval_scan() {
+        test("RULE { ?s :any ?o } WHERE { ?s ?p ?o }");
+    }
+
+    @Test public void eval_subProperty() {
+        // A large pattern first, joined with a small one.
+        test("RULE { ?a ?q ?b } WHERE { ?a ?p ?b . ?p rdfs:subPropertyOf ?q }");
+    }
+
+    @Test public void eval_repeatedVar() {
+        test("RULE { ?x :self ?x } WHERE { ?x :q ?y . ?y :s ?y }");
+    }
+
+    @Test public void eval_filter() {
+        test("RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z FILTER(?z != :z3) }");
+    }
+
+    @Test public void eval_assign() {
+        test("RULE { ?x :qr ?z } WHERE { ?x :q ?y . SET(?z := :z1) ?y :r ?z }");
+    }
+
+    @Test public void eval_assignError() {
+        test("""
+             RULE { ?x :num ?n } WHERE { ?x :q ?y . SET(?n := 1/0) }
+             RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z }
+             """);
+    }
+
+    @Test public void eval_negation() {
+        test("RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z NOT { ?y :s ?y } }");
+    }
+
+    @Test public void eval_recursive() {
+        test("RULE { ?x :q ?z } WHERE { ?x :q ?y . ?y :q ?z }");
+    }
+
+    @Test public void eval_unboundHeadVar() {
+        test("RULE { ?x :qr ?w . ?x :ok true } WHERE { ?x :q ?y . ?y :r ?z }");
+    }
+
+    @Test public void eval_blankNodeHead() {
+        test("RULE { ?x :link [ :to ?z ] } WHERE { ?x :q ?y . ?y :r ?z }");
+    }
+
+    @Test public void eval_triangle() {
+        test("RULE { ?a :triangle ?b } WHERE { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }");
+    }
+
+    @Test public void eval_triangleFilter() {
+        test("RULE { ?a :triangle ?c } WHERE { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a FILTER(?a != ?b) }");
+    }
+
+    @Test public void eval_triangleNegation() {
+        test("RULE { ?a :triangle ?b } WHERE { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a NOT { ?a :knows ?a } }");
+    }
+
+    @Test public void eval_triangleConstant() {
+        test("RULE { ?b :triangle ?c } WHERE { :n0 :knows ?b . ?b :knows ?c . ?c :knows :n0 }");
+    }
+
+    @Test public void eval_triangleRepeatedVar() {
+        test("RULE { ?a :loop ?b } WHERE { ?a :knows ?a . ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }");
+    }
+
+    @Test public void eval_triangleRecursive() {
+        test("""
+             RULE { ?a :knows ?c } WHERE { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }
+             RULE { ?a :knows ?b } WHERE { ?a :follows ?b }
+             """);
+    }
+
+    @Test public void eval_repeatedEvaluation() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, """
+                RULE { ?x :q ?z } WHERE { ?x :q ?y . ?y :q ?z }
+                RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z FILTER(?z != :z3) }
+                """));
+        Graph graph = parse(withPrefixes(PREFIXES, data()));
+        reference.set();
+        Set<Triple> expected = inferReference(graph, ruleSet);
+        settings.set();
+        RulesEngine engine = ShaclRulesExec.create(engineType, graph, ruleSet);
+        for ( int i = 0 ; i < 3 ; i++ )
+            assertEquals(expected, engine.infer().find().toSet(), "Evaluation "+i);
+    }
+
+    private void test(String rulesStr) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, rulesStr));
+        Graph graph = parse(withPrefixes(PREFIXES, data()));
+        reference.set();
+        Set<Triple> expected = inferReference(graph, ruleSet);
+        settings.set();
+        Set<Triple> actual = ShaclRulesExec.create(engineType, graph, ruleSet).infer().find().toSet();
+        assertEquals(expected.size(), actual.size());
+        // Blank nodes differ.
+        assertEquals(ground(expected), ground(actual));
+    }
+
+    private static Set<Triple> ground(Set<Triple> triples) {
+        return triples.stream().filter(t -> t.isConcrete() && ! t.getSubject().isBlank() && ! t.getObject().isBlank()).collect(Collectors.toSet());
+    }
+
+    /** The join test data, sub-properties, and a graph with triangles. */
+    private static String data() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(joinTestData());
+        sb.append(SUB_PROPERTIES);
+        for ( int i = 0 ; i < 12 ; i++ ) {
+            sb.append(String.format(":n%d :knows :n%d .\n", i, (i+1)%12));
+            sb.append(String.format(":n%d :knows :n%d .\n", i, (i+4)%12));
+            sb.append(String.format(":n%d :follows :n%d .\n", i, (i+3)%12));
+        }
+        sb.append(":n0 :knows :n0 .\n");
+        sb.append(":n8 :knows :n0 .\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedClass;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+
+/** NOT DATA tests only the base graph and the DATA of the rule set, not inferred triples. */
+@ParameterizedClass(name="{index}: {0}")
+@MethodSource("provideArgs")
+public class TestGroundedNegation {
+
+    private static Stream<Arguments> provideArgs() {
+        List<Arguments> x = List.of(Arguments.of("Simple (Java)", EngineType.SIMPLE),
+                                    Arguments.of("Simple (SPARQL)", EngineType.SIMPLE_SPARQL),
+                                    Arguments.of("Simple (CONSTRUCT)", EngineType.SIMPLE_SPARQL_CONSTRUCT),
+                                    Arguments.of("Simple (INSERT)", EngineType.SIMPLE_SPARQL_INSERT),
+                                    Arguments.of("Semi-naive", EngineType.SEMINAIVE),
+                                    Arguments.of("Jacobi", EngineType.JACOBI),
+                                    Arguments.of("Dataflow", EngineType.DATAFLOW),
+                                    Arguments.of("Encoded", EngineType.ENCODED),
+                                    Arguments.of("Generated", EngineType.GENERATED),
+                                    Arguments.of("Semi-naive (SPARQL)", EngineType.SPARQL_SEMINAIVE),
+                                    Arguments.of("Backward (QSQR)", EngineType.BKD_QSQR));
+        return x.stream();
+    }
+
+    // Engines with incremental update.
+    private static Set<EngineType> incrementalEngines =
+            Set.of(EngineType.SEMINAIVE, EngineType.JACOBI, EngineType.DATAFLOW, EngineType.SPARQL_SEMINAIVE);
+
+    EngineType engineType;
+
+    public TestGroundedNegation(String name, EngineType engineType) {
+        this.engineType = engineType;
+    }
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :a :candidate :x1 . :a :candidate :x2 . :a :candidate :x3 .
+            :b :candidate :x1 . :b :candidate :x4 .
+            :x1 :candidate :x4 .
+            :a :blockedBy :x1 . :b :blockedBy :x4 .
+            :x3 :level 5 .
+            """);
+
+    // Infers :a :blockedBy :x3
+    static String INFER_BLOCKED = "RULE { ?x :blockedBy ?y } WHERE { ?x :candidate ?y . ?y :level 5 }\n";
+
+    private static final Node ok = NodeFactory.createURI("http://example/ok");
+
+    @Test public void notData_base() {
+        test("RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT DATA { ?x :blockedBy ?y } }", 4);
+    }
+
+    @Test public void notData_inferred() {
+        // The inferred :blockedBy does not block.
+        test(INFER_BLOCKED+"RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT DATA { ?x :blockedBy ?y } }", 4);
+    }
+
+    @Test public void not_inferred() {
+        // Compare: NOT tests the inferred :blockedBy.
+        test(INFER_BLOCKED+"RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT { ?x :blockedBy ?y } }", 3);
+    }
+
+    @Test public void notData_ruleSetData() {
+        test("DATA { :x1 :blockedBy :x4 }\n"+
+             INFER_BLOCKED+"RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT DATA { ?x :blockedBy ?y } }", 3);
+    }
+
+    @Test public void notData_recursive() {
+        test(INFER_BLOCKED+"""
+             RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT DATA { ?x :blockedBy ?y } }
+             RULE { ?x :ok ?z } WHERE { ?x :ok ?y . ?y :ok ?z NOT DATA { ?x :blockedBy ?z } }
+             """, 4);
+    }
+
+    @Test public void notData_perSolution() {
+        // The filter uses a variable only bound outside: evaluated for each solution.
+        test(INFER_BLOCKED+"""
+             RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT DATA { ?x :blockedBy ?z FILTER(?z = ?y) } }
+             """, 4);
+    }
+
+    @Test public void notData_incremental() {
+        // Each incremental update tests the base graph as changed by the update.
+        assumeTrue(incrementalEngines.contains(engineType));
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, """
+             RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT DATA { ?x :blockedBy ?y } }
+             """));
+        RulesEngine engine = ShaclRulesExec.create(engineType, parse(DATA), ruleSet);
+        assertEquals(4, countOk(engine.eval()));
+        // Does not change the outcome of the negation: propagated.
+        assertEquals(5, countOk(engine.applyInserts(parse(withPrefixes(PREFIXES, ":c :candidate :x2 .")))));
+        // Changes the outcome of the negation: recalculated.
+        assertEquals(4, countOk(engine.applyInserts(parse(withPrefixes(PREFIXES, ":a :blockedBy :x2 .")))));
+        assertEquals(5, countOk(engine.applyDeletes(parse(withPrefixes(PREFIXES, ":a :blockedBy :x1 .")))));
+    }
+
+    private static long countOk(RuleSetEvaluation e) {
+        return e.inferredTriples().find(null, ok, null).toList().size();
+    }
+
+    private void test(String rulesStr, int expectedOk) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, rulesStr));
+        Graph graph = parse(DATA);
+        Graph inferred = ShaclRulesExec.create(engineType, graph, ruleSet).infer();
+        long count = inferred.find(null, ok, null).toList().size();
+        assertEquals(expectedOk, count);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.seaborne.jena.srl.exec.RuleBodyPlanner;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+
+/**
+ * Choosing a worst-case optimal join for cyclic rule bodies.
+ * Evaluation is tested by {@link TestEvalSettings}.
+ */
+public class TestLeapfrogTriejoin {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    @Test public void cyclic_01() {
+        assertTrue(RuleBodyPlanner.isCyclic(body("?a :knows ?b . ?b :knows ?c . ?c :knows ?a")));
+    }
+
+    @Test public void cyclic_02() {
+        assertFalse(RuleBodyPlanner.isCyclic(body("?a :knows ?b . ?b :knows ?c . ?c :knows ?d")));
+    }
+
+    @Test public void cyclic_03() {
+        // Two patterns with the same variables.
+        assertFalse(RuleBodyPlanner.isCyclic(body("?a :p ?b . ?b :q ?a")));
+    }
+
+    @Test public void cyclic_04() {
+        // The cycle is covered by a single pattern.
+        assertFalse(RuleBodyPlanner.isCyclic(body("?a ?b ?c . ?a :p ?b . ?b :q ?c . ?c :r ?a")));
+    }
+
+    @Test public void cyclic_05() {
+        assertTrue(RuleBodyPlanner.isCyclic(body("?a :p ?b . ?b :p ?c . ?c :p ?d . ?d :p ?a")));
+    }
+
+    @Test public void choose_01() {
+        assertTrue(RuleBodyPlanner.useWorstCaseOptimalJoin(body("?a :knows ?b . ?b :knows ?c . ?c :knows ?a . FILTER(?a != ?b)")));
+    }
+
+    @Test public void choose_02() {
+        // The filter is before ?c is bound.
+        assertFalse(RuleBodyPlanner.useWorstCaseOptimalJoin(body("?a :knows ?b . FILTER(?c != :x) ?b :knows ?c . ?c :knows ?a")));
+    }
+
+    @Test public void choose_03() {
+        assertFalse(RuleBodyPlanner.useWorstCaseOptimalJoin(body("?a :knows ?b . ?b :knows ?c . ?c :knows ?d")));
+    }
+
+    private static List<RuleBodyElement> body(String bodyStr) {
+        String rules = withPrefixes(PREFIXES, "RULE { :s :p :o } WHERE { "+bodyStr+" }");
+        RuleSet ruleSet = ShaclRulesParser.parseString(rules);
+        return ruleSet.getRules().get(0).getBodyElements();
+    }
+}
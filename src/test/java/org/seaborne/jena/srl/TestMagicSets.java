@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedClass;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.sys.MagicSets;
+
+/** Forward engine {@code solve} with magic sets, compared to complete materialization. */
+@ParameterizedClass(name="{index}: {0}")
+@MethodSource("provideArgs")
+public class TestMagicSets {
+
+    private static Stream<Arguments> provideArgs() {
+        List<Arguments> x = List.of(Arguments.of("Simple (Java)", EngineType.SIMPLE),
+                                    Arguments.of("Semi-naive", EngineType.SEMINAIVE),
+                                    Arguments.of("Jacobi", EngineType.JACOBI),
+                                    Arguments.of("Dataflow", EngineType.DATAFLOW));
+        return x.stream();
+    }
+
+    EngineType engineType;
+
+    public TestMagicSets(String name, EngineType engineType) {
+        this.engineType = engineType;
+    }
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            PREFIX rdf:     <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
+            PREFIX rdfs:    <http://www.w3.org/2000/01/rdf-schema#>
+            """;
+
+    static String RULES_TRANSITIVE = withPrefixes(PREFIXES, """
+            RULE { ?x :ancestor ?y } WHERE { ?x :parent ?y }
+            RULE { ?x :ancestor ?z } WHERE { ?x :parent ?y . ?y :ancestor ?z }
+            RULE { ?x :related ?y } WHERE { ?x :ancestor ?y }
+            """);
+
+    static String RULES_RDFS = withPrefixes(PREFIXES, """
+            RULE { ?s rdf:type ?T } WHERE { ?s ?p ?o . ?p rdfs:domain ?T }
+            RULE { ?o rdf:type ?T } WHERE { ?s ?p ?o . ?p rdfs:range ?T }
+            RULE { ?x rdf:type ?T } WHERE { ?x rdf:type ?S . ?S rdfs:subClassOf ?T }
+            RULE { ?C rdfs:subClassOf ?E } WHERE { ?C rdfs:subClassOf ?D . ?D rdfs:subClassOf ?E }
+            """);
+
+    static String RULES_NEGATION = withPrefixes(PREFIXES, """
+            RULE { ?x :ancestor ?y } WHERE { ?x :parent ?y }
+            RULE { ?x :ancestor ?z } WHERE { ?x :parent ?y . ?y :ancestor ?z }
+            RULE { ?x :root true } WHERE { ?x a :Person NOT { ?x :ancestor ?z } }
+            RULE { ?x :label ?L } WHERE { ?x :name ?N SET(?L := UCASE(?N)) }
+            """);
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :a :parent :b . :b :parent :c . :c :parent :d .
+            :x :parent :y . :y :parent :x .
+            :a a :Person . :d a :Person . :x a :Person .
+            :a :name "a" .
+            :p rdfs:domain :D . :p rdfs:range :R .
+            :D rdfs:subClassOf :E . :E rdfs:subClassOf :F .
+            :s :p :o . :s2 :q :o2 .
+            """);
+
+    @Test public void magic_01() {
+        test(DATA, RULES_TRANSITIVE, uri(":a"), uri(":ancestor"), Node.ANY);
+    }
+
+    @Test public void magic_02() {
+        test(DATA, RULES_TRANSITIVE, Node.ANY, uri(":related"), uri(":d"));
+    }
+
+    @Test public void magic_03() {
+        test(DATA, RULES_TRANSITIVE, uri(":x"), Node.ANY, Node.ANY);
+    }
+
+    @Test public void magic_04() {
+        // All types of :s
+        test(DATA, RULES_RDFS, uri(":s"), uri("rdf:type"), Node.ANY);
+    }
+
+    @Test public void magic_05() {
+        test(DATA, RULES_RDFS, Node.ANY, uri("rdf:type"), uri(":F"));
+    }
+
+    @Test public void magic_06() {
+        test(DATA, RULES_NEGATION, Node.ANY, uri(":root"), Node.ANY);
+    }
+
+    @Test public void magic_07() {
+        test(DATA, RULES_NEGATION, uri(":a"), Node.ANY, Node.ANY);
+    }
+
+    @Test public void magic_08() {
+        test(DATA, RULES_RDFS, Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    @Test public void magic_relevant_01() {
+        // Only triples relevant to the query are inferred.
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES_TRANSITIVE);
+        RuleSet magicRuleSet = MagicSets.transform(ruleSet, Triple.createMatch(uri(":a"), uri(":ancestor"), null)).ruleSet();
+        Graph inferred = ShaclRulesExec.create(engineType, parse(DATA), magicRuleSet).infer();
+        assertFalse(inferred.contains(uri(":x"), uri(":ancestor"), Node.ANY));
+        assertFalse(inferred.contains(Node.ANY, uri(":related"), Node.ANY));
+    }
+
+    @Test public void magic_rewrite_01() {
+        // The rewrite carries the stratification of the rewritten rule set.
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES_TRANSITIVE);
+        MagicSets.Rewrite rewrite = MagicSets.transform(ruleSet, Triple.createMatch(uri(":a"), uri(":ancestor"), null));
+        assertTrue(rewrite.isRewritten());
+        assertSame(rewrite.ruleSet(), rewrite.stratification().ofRuleSet());
+    }
+
+    private void test(String dataStr, String rulesStr, Node s, Node p, Node o) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(rulesStr);
+        Graph graph = parse(dataStr);
+        RulesEngine engine = ShaclRulesExec.create(engineType, graph, ruleSet);
+        Set<Triple> expected = engine.materializedGraph().find(s, p, o).toSet();
+        Set<Triple> actual = engine.solve(s, p, o).collect(Collectors.toSet());
+        assertEquals(expected, actual);
+    }
+
+    private static Node uri(String prefixedName) {
+        if ( prefixedName.startsWith("rdf:") )
+            return NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#"+prefixedName.substring(4));
+        return NodeFactory.createURI("http://example/"+prefixedName.substring(1));
+    }
+}
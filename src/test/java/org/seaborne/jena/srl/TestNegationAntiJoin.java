@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.seaborne.jena.srl.exec.EngineType;
+
+/** Negation as an anti-join, compared to evaluation for each solution (the encoded engine). */
+public class TestNegationAntiJoin {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :a :candidate :x1 . :a :candidate :x2 . :a :candidate :x3 .
+            :b :candidate :x1 . :b :candidate :x4 .
+            :x1 :candidate :x4 .
+            :a :blockedBy :x1 . :b :blockedBy :x4 .
+            :x2 :level 1 . :x3 :level 5 . :x4 :level 2 .
+            :a :max 3 .
+            """);
+
+    @Test public void antiJoin_shared_2() {
+        test("RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT { ?x :blockedBy ?y } }", 4);
+    }
+
+    @Test public void antiJoin_shared_1() {
+        test("RULE { ?x :clear true } WHERE { ?x :candidate ?y NOT { ?x :blockedBy ?z } }", 1);
+    }
+
+    @Test public void antiJoin_shared_0() {
+        test("RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT { ?z :unknown ?w } }", 6);
+    }
+
+    @Test public void antiJoin_filter() {
+        // The filter uses a shared variable after a pattern binds it.
+        test("RULE { ?x :ok ?y } WHERE { ?x :candidate ?y NOT { ?y :level ?L FILTER(?L > 1) } }", 3);
+    }
+
+    @Test public void antiJoin_outerFilter() {
+        // The filter uses a variable only bound outside: evaluated for each solution.
+        test("RULE { ?x :ok ?y } WHERE { ?x :candidate ?y . ?x :max ?M NOT { ?y :level ?L FILTER(?L > ?M) } }", 2);
+    }
+
+    @Test public void antiJoin_strata() {
+        test("""
+             RULE { ?x :reach ?y } WHERE { ?x :candidate ?y }
+             RULE { ?x :reach ?z } WHERE { ?x :reach ?y . ?y :candidate ?z }
+             RULE { ?x :open ?y } WHERE { ?x :reach ?y NOT { ?x :blockedBy ?y } }
+             """, 5);
+    }
+
+    private static void test(String rulesStr, int expectedInferred) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, rulesStr));
+        Graph graph = parse(DATA);
+        Set<Triple> expected = ShaclRulesExec.create(EngineType.ENCODED, graph, ruleSet).infer().find().toSet();
+        for ( EngineType engineType : new EngineType[] {EngineType.SIMPLE, EngineType.SEMINAIVE, EngineType.JACOBI, EngineType.DATAFLOW} ) {
+            Set<Triple> actual = ShaclRulesExec.create(engineType, graph, ruleSet).infer().find().toSet();
+            assertEquals(expected, actual, engineType.toString());
+        }
+        if ( expectedInferred >= 0 ) {
+            long count = expected.stream().filter(t -> ! t.getPredicate().getLocalName().equals("reach")).count();
+            assertEquals(expectedInferred, count);
+        }
+    }
+}
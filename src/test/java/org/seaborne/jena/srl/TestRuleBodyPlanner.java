@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.exec.RuleBodyPlanner;
+import org.seaborne.jena.srl.lang.RuleBodyElement;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+
+/** Order of evaluation of rule bodies. */
+public class TestRuleBodyPlanner {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            PREFIX rdfs:    <http://www.w3.org/2000/01/rdf-schema#>
+            """;
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :s1 :p :o1 . :s2 :p :o2 . :s3 :p :o3 . :s4 :p :o4 .
+            :s1 :q :o1 . :s2 :q :o2 . :s3 :q :o3 . :s4 :q :o4 .
+            :s1 :name "a" .
+            :p rdfs:domain :D .
+            """);
+
+    @Test public void plan_pattern_01() {
+        // The rdfs:domain pattern is the most selective.
+        testPlan("RULE { ?x a ?C } WHERE { ?x ?p ?y . ?p rdfs:domain ?C }", 1, 0);
+    }
+
+    @Test public void plan_pattern_02() {
+        // Already in a good order.
+        testPlan("RULE { ?x a ?C } WHERE { ?p rdfs:domain ?C . ?x ?p ?y }", 0, 1);
+    }
+
+    @Test public void plan_filter_01() {
+        // The filter moves to just after the pattern that binds its variable.
+        testPlan("RULE { ?x :r ?y } WHERE { ?x :p ?y . ?x :name ?N . FILTER(?N = 'a') }", 1, 2, 0);
+    }
+
+    @Test public void plan_assign_01() {
+        // The assignment goes first; the pattern that uses its variable is not moved before it.
+        testPlan("RULE { ?x :r ?y } WHERE { ?x :p ?y . SET(?z := :o1) ?x :q ?z }", 1, 2, 0);
+    }
+
+    @Test public void plan_negation_01() {
+        // ?z is unbound in the negation in the written order: the pattern that binds ?z
+        // is not moved before the negation.
+        testPlan("RULE { ?x :r ?y } WHERE { ?x :p ?y NOT { ?x :q ?z } ?x :name ?z }", 0, 1, 2);
+    }
+
+    @Test public void plan_negation_02() {
+        // Bound variables of the negation.
+        testPlan("RULE { ?x :r ?y } WHERE { ?x :p ?y . ?x :name ?N NOT { ?x :q ?y } }", 1, 0, 2);
+    }
+
+    @Test public void plan_counts_01() {
+        // Plan with given counts: the rdfs:domain pattern is now the least selective.
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, "RULE { ?x a ?C } WHERE { ?x ?p ?y . ?p rdfs:domain ?C }"));
+        List<RuleBodyElement> body = ruleSet.getRules().get(0).getBodyElements();
+        int[] order = RuleBodyPlanner.plan(body, Set.of(), RuleBodyPlanner.estimator(t -> t.getPredicate() == null ? 1 : 100, null));
+        assertArrayEquals(new int[] {0, 1}, order);
+    }
+
+    @Test public void plan_eval_01() {
+        String rules = withPrefixes(PREFIXES, """
+                RULE { ?x a ?C } WHERE { ?x ?p ?y . ?p rdfs:domain ?C }
+                RULE { ?x :r ?y } WHERE { ?x :p ?y . ?x :name ?N . FILTER(?N = 'a') }
+                RULE { ?x :s ?z } WHERE { ?x :p ?y NOT { ?x :q ?z } ?x :name ?z }
+                RULE { ?x :t ?z } WHERE { ?x :p ?y . SET(?z := :o1) ?x :q ?z }
+                """);
+        RuleSet ruleSet = ShaclRulesParser.parseString(rules);
+        Graph graph = parse(DATA);
+        boolean b = SysJenaRules.planRuleBodies;
+        try {
+            SysJenaRules.planRuleBodies = false;
+            Graph expected = ShaclRulesExec.create(EngineType.SIMPLE, graph, ruleSet).infer();
+            SysJenaRules.planRuleBodies = true;
+            for ( EngineType engineType : List.of(EngineType.SIMPLE, EngineType.SEMINAIVE, EngineType.JACOBI, EngineType.DATAFLOW) ) {
+                Graph actual = ShaclRulesExec.create(engineType, graph, ruleSet).infer();
+                assertEquals(expected.find().toSet(), actual.find().toSet(), engineType.toString());
+            }
+        } finally {
+            SysJenaRules.planRuleBodies = b;
+        }
+    }
+
+    private static void testPlan(String ruleStr, int... expected) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(withPrefixes(PREFIXES, ruleStr));
+        List<RuleBodyElement> body = ruleSet.getRules().get(0).getBodyElements();
+        Graph graph = parse(DATA);
+        int[] order = RuleBodyPlanner.plan(body, Set.of(), RuleBodyPlanner.estimator(graph, null));
+        assertArrayEquals(expected, order);
+    }
+}
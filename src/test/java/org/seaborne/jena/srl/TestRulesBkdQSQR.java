@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.seaborne.jena.srl.exec.EngineType;
+
+/** Queries with bound terms on the backwards tabled engine, compared to forward materialization. */
+public class TestRulesBkdQSQR {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    static String RULES_TRANSITIVE = withPrefixes(PREFIXES, """
+            RULE { ?x :ancestor ?y } WHERE { ?x :parent ?y }
+            RULE { ?x :ancestor ?z } WHERE { ?x :parent ?y . ?y :ancestor ?z }
+            """);
+
+    static String RULES_LEFT_RECURSIVE = withPrefixes(PREFIXES, """
+            RULE { ?x :ancestor ?y } WHERE { ?x :parent ?y }
+            RULE { ?x :ancestor ?z } WHERE { ?x :ancestor ?y . ?y :ancestor ?z }
+            """);
+
+    static String RULES_NEGATION = withPrefixes(PREFIXES, """
+            RULE { ?x :ancestor ?y } WHERE { ?x :parent ?y }
+            RULE { ?x :ancestor ?z } WHERE { ?x :parent ?y . ?y :ancestor ?z }
+            RULE { ?x :root true } WHERE { ?x a :Person NOT { ?x :ancestor ?z } }
+            """);
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :a :parent :b . :b :parent :c . :c :parent :d .
+            :x :parent :y . :y :parent :x .
+            :a a :Person . :d a :Person . :x a :Person .
+            """);
+
+    @Test public void solve_01() {
+        test(DATA, RULES_TRANSITIVE, uri(":a"), uri(":ancestor"), Node.ANY);
+    }
+
+    @Test public void solve_02() {
+        test(DATA, RULES_TRANSITIVE, Node.ANY, uri(":ancestor"), uri(":d"));
+    }
+
+    @Test public void solve_03() {
+        // Cycle.
+        test(DATA, RULES_TRANSITIVE, uri(":x"), uri(":ancestor"), Node.ANY);
+    }
+
+    @Test public void solve_04() {
+        test(DATA, RULES_LEFT_RECURSIVE, uri(":a"), uri(":ancestor"), Node.ANY);
+    }
+
+    @Test public void solve_05() {
+        test(DATA, RULES_LEFT_RECURSIVE, Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    @Test public void solve_06() {
+        test(DATA, RULES_NEGATION, Node.ANY, uri(":root"), Node.ANY);
+    }
+
+    @Test public void solve_07() {
+        test(DATA, RULES_NEGATION, uri(":d"), Node.ANY, Node.ANY);
+    }
+
+    private static void test(String dataStr, String rulesStr, Node s, Node p, Node o) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(rulesStr);
+        Graph graph = parse(dataStr);
+        Graph materialized = ShaclRulesExec.create(EngineType.SIMPLE, graph, ruleSet).materializedGraph();
+        Set<Triple> expected = materialized.find(s, p, o).toSet();
+        Set<Triple> actual = ShaclRulesExec.create(EngineType.BKD_QSQR, graph, ruleSet).solve(s, p, o).collect(Collectors.toSet());
+        assertEquals(expected, actual);
+    }
+
+    private static Node uri(String prefixedName) {
+        return NodeFactory.createURI("http://example/"+prefixedName.substring(1));
+    }
+}
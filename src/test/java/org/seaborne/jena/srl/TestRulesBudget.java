@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.util.Context;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+import org.seaborne.jena.srl.exec.RulesBudget;
+import org.seaborne.jena.srl.exec.RulesBudget.StopReason;
+import org.seaborne.jena.srl.exec.RulesBudgetExceededException;
+import org.seaborne.jena.srl.exec.RulesExecCxt;
+import org.seaborne.jena.srl.sys.RuleSetEvaluationCancelledException;
+import org.seaborne.jena.srl.sys.SysSRL;
+
+/** Evaluation budgets and cancellation. */
+public class TestRulesBudget {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    // Transitive closure of a chain: many rounds, many triples.
+    static String RULES = withPrefixes(PREFIXES, """
+            RULE { ?x :reach ?y } WHERE { ?x :q ?y }
+            RULE { ?x :reach ?z } WHERE { ?x :reach ?y . ?y :q ?z }
+            """);
+
+    private static EngineType[] forwardEngines = {
+        EngineType.SIMPLE, EngineType.SIMPLE_SPARQL, EngineType.SIMPLE_SPARQL_INSERT, EngineType.SIMPLE_SPARQL_CONSTRUCT,
+        EngineType.SEMINAIVE, EngineType.JACOBI, EngineType.DATAFLOW, EngineType.SPARQL_SEMINAIVE,
+        EngineType.ENCODED, EngineType.GENERATED
+    };
+
+    private static EngineType[] allRecursiveEngines = {
+        EngineType.SIMPLE, EngineType.SIMPLE_SPARQL, EngineType.SIMPLE_SPARQL_INSERT, EngineType.SIMPLE_SPARQL_CONSTRUCT,
+        EngineType.SEMINAIVE, EngineType.JACOBI, EngineType.DATAFLOW, EngineType.SPARQL_SEMINAIVE,
+        EngineType.ENCODED, EngineType.GENERATED, EngineType.BKD_QSQR
+    };
+
+    @Test public void budget_unlimited() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = chain(20);
+        long expected = ShaclRulesExec.create(EngineType.SEMINAIVE, graph, ruleSet).infer().size();
+        for ( EngineType engineType : allRecursiveEngines ) {
+            RuleSetEvaluation e = eval(engineType, graph, ruleSet, RulesBudget.unlimited(), null);
+            assertTrue(e.isComplete(), engineType.toString());
+            assertEquals(StopReason.COMPLETE, e.stopReason(), engineType.toString());
+            assertEquals(expected, e.inferredTriples().size(), engineType.toString());
+        }
+    }
+
+    @Test public void budget_maxRounds() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = chain(20);
+        long all = ShaclRulesExec.create(EngineType.SEMINAIVE, graph, ruleSet).infer().size();
+        for ( EngineType engineType : forwardEngines ) {
+            RuleSetEvaluation e = eval(engineType, graph, ruleSet, RulesBudget.unlimited().maxRounds(3), null);
+            assertEquals(StopReason.MAX_ROUNDS, e.stopReason(), engineType.toString());
+            assertFalse(e.isComplete(), engineType.toString());
+            assertTrue(e.inferredTriples().size() < all, engineType.toString());
+        }
+    }
+
+    @Test public void budget_maxTriples() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = chain(20);
+        long all = ShaclRulesExec.create(EngineType.SEMINAIVE, graph, ruleSet).infer().size();
+        for ( EngineType engineType : allRecursiveEngines ) {
+            RuleSetEvaluation e = eval(engineType, graph, ruleSet, RulesBudget.unlimited().maxTriples(10), null);
+            assertEquals(StopReason.MAX_TRIPLES, e.stopReason(), engineType.toString());
+            assertTrue(e.inferredTriples().size() < all, engineType.toString());
+        }
+    }
+
+    @Test public void budget_maxRows() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        // Enough rows for engines that count rows in blocks.
+        Graph graph = chain(60);
+        // SIMPLE_SPARQL_INSERT does not see intermediate rows.
+        for ( EngineType engineType : allRecursiveEngines ) {
+            if ( engineType == EngineType.SIMPLE_SPARQL_INSERT )
+                continue;
+            RuleSetEvaluation e = eval(engineType, graph, ruleSet, RulesBudget.unlimited().maxRows(50), null);
+            assertEquals(StopReason.MAX_ROWS, e.stopReason(), engineType.toString());
+        }
+    }
+
+    @Test public void budget_cancel() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = chain(20);
+        for ( EngineType engineType : allRecursiveEngines ) {
+            AtomicBoolean cancel = new AtomicBoolean(true);
+            RuleSetEvaluation e = eval(engineType, graph, ruleSet, RulesBudget.unlimited(), cancel);
+            assertEquals(StopReason.CANCELLED, e.stopReason(), engineType.toString());
+        }
+    }
+
+    @Test public void budget_eachEvaluation() {
+        // The budget applies to each evaluation, not to the engine.
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = chain(5);
+        RulesBudget budget = RulesBudget.unlimited().maxTriples(100);
+        Context cxt = SysSRL.getContext().copy();
+        cxt.set(ShaclRules.symBudget, budget);
+        RulesEngine engine = ShaclRulesExec.create(EngineType.SEMINAIVE, graph, null, ruleSet, cxt);
+        assertTrue(engine.eval().isComplete());
+        assertTrue(engine.eval().isComplete());
+    }
+
+    @Test public void budget_solveQSQR() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = chain(20);
+        Context cxt = SysSRL.getContext().copy();
+        cxt.set(ShaclRules.symBudget, RulesBudget.unlimited().maxTriples(10));
+        RulesEngine engine = ShaclRulesExec.create(EngineType.BKD_QSQR, graph, null, ruleSet, cxt);
+        // No partial answers to a query.
+        assertThrows(RuleSetEvaluationCancelledException.class, ()->engine.solve(null, null, null));
+    }
+
+    @Test public void budget_rowsNotCounted() {
+        // Without a row limit, timeout or cancel signal, rows are not counted.
+        Iterator<Integer> iter = List.of(1, 2, 3).iterator();
+        RulesExecCxt rCxt = RulesExecCxt.create(SysSRL.getContext());
+        assertFalse(rCxt.countsRows());
+        assertSame(iter, rCxt.countRows(iter));
+
+        Context cxt = SysSRL.getContext().copy();
+        cxt.set(ShaclRules.symBudget, RulesBudget.unlimited().maxRows(2));
+        RulesExecCxt rCxt2 = RulesExecCxt.create(cxt);
+        assertTrue(rCxt2.countsRows());
+        Iterator<Integer> iter2 = rCxt2.countRows(iter);
+        assertNotSame(iter, iter2);
+        // Counted when the iterator ends.
+        assertThrows(RulesBudgetExceededException.class, ()->iter2.forEachRemaining(x->{}));
+    }
+
+    private static RuleSetEvaluation eval(EngineType engineType, Graph graph, RuleSet ruleSet, RulesBudget budget, AtomicBoolean cancel) {
+        Context cxt = SysSRL.getContext().copy();
+        cxt.set(ShaclRules.symBudget, budget);
+        if ( cancel != null )
+            cxt.set(ShaclRules.symCancelSignal, cancel);
+        return ShaclRulesExec.create(engineType, graph, null, ruleSet, cxt).eval();
+    }
+
+    private static Graph chain(int n) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        for ( int i = 0 ; i < n ; i++ )
+            graph.add(Triple.create(node(i), node("q"), node(i+1)));
+        return graph;
+    }
+
+    private static Node node(Object x) {
+        return NodeFactory.createURI("http://example/"+x);
+    }
+}
@@ -46,7 +46,14 @@ public class TestRulesEvalMultipleEngines {
         List<Arguments> x = List.of(Arguments.of("Simple (Java)", EngineType.SIMPLE),
                                     Arguments.of("Simple (SPARQL)", EngineType.SIMPLE_SPARQL),
                                     Arguments.of("Simple (CONSTRUCT)", EngineType.SIMPLE_SPARQL_INSERT),
-                                    Arguments.of("Simple (INSERT)", EngineType.SIMPLE_SPARQL_CONSTRUCT));
+                                    Arguments.of("Simple (INSERT)", EngineType.SIMPLE_SPARQL_CONSTRUCT),
+                                    Arguments.of("Semi-naive", EngineType.SEMINAIVE),
+                                    Arguments.of("Jacobi", EngineType.JACOBI),
+                                    Arguments.of("Dataflow", EngineType.DATAFLOW),
+                                    Arguments.of("Encoded", EngineType.ENCODED),
+                                    Arguments.of("Generated", EngineType.GENERATED),
+                                    Arguments.of("Semi-naive (SPARQL)", EngineType.SPARQL_SEMINAIVE),
+                                    Arguments.of("Backward (QSQR)", EngineType.BKD_QSQR));
         return x.stream();
     }
 
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.system.Txn;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+import org.seaborne.jena.srl.exec.RulesBudget;
+import org.seaborne.jena.srl.exec.RulesExecTxn;
+import org.seaborne.jena.srl.sys.SysSRL;
+
+/** Evaluation over a transactional dataset. */
+public class TestRulesExecTxn {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :a :q :b . :b :q :c . :c :q :d .
+            """);
+
+    static String RULES = withPrefixes(PREFIXES, """
+            RULE { ?x :reach ?y } WHERE { ?x :q ?y }
+            RULE { ?x :reach ?z } WHERE { ?x :reach ?y . ?y :q ?z }
+            """);
+
+    private static EngineType[] engines = {
+        EngineType.SIMPLE, EngineType.SIMPLE_SPARQL, EngineType.SIMPLE_SPARQL_CONSTRUCT,
+        EngineType.SEMINAIVE, EngineType.SPARQL_SEMINAIVE, EngineType.ENCODED, EngineType.GENERATED
+    };
+
+    @Test public void txn_defaultGraph() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Set<Triple> expected = ShaclRulesExec.create(EngineType.SEMINAIVE, parse(DATA), ruleSet).infer().find().toSet();
+        for ( EngineType engineType : engines ) {
+            DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+            Txn.executeWrite(dsg, ()->RDFParser.fromString(DATA, Lang.TURTLE).parse(dsg));
+            RuleSetEvaluation e = RulesExecTxn.materialize(dsg, null, ruleSet, engineType, null);
+            assertTrue(e.isComplete(), engineType.toString());
+            assertFalse(dsg.isInTransaction());
+            Txn.executeRead(dsg, ()->{
+                assertEquals(3+expected.size(), dsg.getDefaultGraph().size(), engineType.toString());
+                expected.forEach(t -> assertTrue(dsg.getDefaultGraph().contains(t), engineType.toString()));
+            });
+        }
+    }
+
+    @Test public void txn_namedGraph() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Node gn = NodeFactory.createURI("http://example/graph");
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(dsg, ()->RDFParser.fromString(DATA, Lang.TURTLE).parse(dsg.getGraph(gn)));
+        ShaclRulesExec.materialize(dsg, gn, ruleSet);
+        Txn.executeRead(dsg, ()->{
+            assertTrue(dsg.getDefaultGraph().isEmpty());
+            assertEquals(9, dsg.getGraph(gn).size());
+        });
+    }
+
+    @Test public void txn_stopped() {
+        // An evaluation stopped by its budget is not written.
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(dsg, ()->RDFParser.fromString(DATA, Lang.TURTLE).parse(dsg));
+        Context cxt = SysSRL.getContext().copy();
+        cxt.set(ShaclRules.symBudget, RulesBudget.unlimited().maxTriples(1));
+        RuleSetEvaluation e = RulesExecTxn.materialize(dsg, null, ruleSet, EngineType.SEMINAIVE, cxt);
+        assertFalse(e.isComplete());
+        Txn.executeRead(dsg, ()->assertEquals(3, dsg.getDefaultGraph().size()));
+    }
+
+    @Test public void txn_parallelEngine() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        assertThrows(RulesException.class, ()->RulesExecTxn.materialize(dsg, null, ruleSet, EngineType.JACOBI, null));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedClass;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.sparql.util.IsoMatcher;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+
+/** Incremental update compared to a complete evaluation. */
+@ParameterizedClass(name="{index}: {0}")
+@MethodSource("provideArgs")
+public class TestRulesIncremental {
+
+    private static Stream<Arguments> provideArgs() {
+        List<Arguments> x = List.of(Arguments.of("Semi-naive", EngineType.SEMINAIVE),
+                                    Arguments.of("Jacobi", EngineType.JACOBI),
+                                    Arguments.of("Dataflow", EngineType.DATAFLOW));
+        return x.stream();
+    }
+
+    EngineType engineType;
+
+    public TestRulesIncremental(String name, EngineType engineType) {
+        this.engineType = engineType;
+    }
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    static String RULES_TRANSITIVE = withPrefixes(PREFIXES, """
+            RULE { ?x :ancestor ?y } WHERE { ?x :parent ?y }
+            RULE { ?x :ancestor ?z } WHERE { ?x :parent ?y . ?y :ancestor ?z }
+            """);
+
+    static String RULES_NEGATION = withPrefixes(PREFIXES, """
+            RULE { ?x :known true } WHERE { ?x :source ?s }
+            RULE { ?x :unknown true } WHERE { ?x a :Thing NOT { ?x :known true } }
+            RULE { ?x :reported true } WHERE { ?x :unknown true }
+            """);
+
+    @Test public void inserts_01() {
+        String base = withPrefixes(PREFIXES, ":a :parent :b . :b :parent :c .");
+        String inserts = withPrefixes(PREFIXES, ":c :parent :d .");
+        testInserts(base, RULES_TRANSITIVE, inserts);
+    }
+
+    @Test public void inserts_02() {
+        // Insert a triple that was inferred.
+        String base = withPrefixes(PREFIXES, ":a :parent :b . :b :parent :c .");
+        String inserts = withPrefixes(PREFIXES, ":a :ancestor :c . :x :parent :a .");
+        testInserts(base, RULES_TRANSITIVE, inserts);
+    }
+
+    @Test public void inserts_03() {
+        // Insert removes a conclusion that depended on negation.
+        String base = withPrefixes(PREFIXES, ":a a :Thing . :b a :Thing . :b :source :s .");
+        String inserts = withPrefixes(PREFIXES, ":a :source :t .");
+        testInserts(base, RULES_NEGATION, inserts);
+    }
+
+    @Test public void inserts_04() {
+        String base = withPrefixes(PREFIXES, ":a a :Thing .");
+        String inserts = withPrefixes(PREFIXES, ":c a :Thing .");
+        testInserts(base, RULES_NEGATION, inserts);
+    }
+
+    @Test public void deletes_01() {
+        String base = withPrefixes(PREFIXES, ":a :parent :b . :b :parent :c . :c :parent :d .");
+        String deletes = withPrefixes(PREFIXES, ":b :parent :c .");
+        testDeletes(base, RULES_TRANSITIVE, deletes);
+    }
+
+    @Test public void deletes_02() {
+        // Alternative derivation remains.
+        String base = withPrefixes(PREFIXES, ":a :parent :b . :b :parent :c . :a :parent :x . :x :parent :c .");
+        String deletes = withPrefixes(PREFIXES, ":b :parent :c .");
+        testDeletes(base, RULES_TRANSITIVE, deletes);
+    }
+
+    @Test public void deletes_03() {
+        // Delete a base triple that can also be inferred.
+        String base = withPrefixes(PREFIXES, ":a :parent :b . :b :parent :c . :a :ancestor :c .");
+        String deletes = withPrefixes(PREFIXES, ":a :ancestor :c .");
+        testDeletes(base, RULES_TRANSITIVE, deletes);
+    }
+
+    @Test public void deletes_04() {
+        // Delete enables a conclusion that depends on negation.
+        String base = withPrefixes(PREFIXES, ":a a :Thing . :a :source :s . :b a :Thing .");
+        String deletes = withPrefixes(PREFIXES, ":a :source :s .");
+        testDeletes(base, RULES_NEGATION, deletes);
+    }
+
+    @Test public void deletes_05() {
+        String base = withPrefixes(PREFIXES, ":a a :Thing . :b a :Thing .");
+        String deletes = withPrefixes(PREFIXES, ":a a :Thing .");
+        testDeletes(base, RULES_NEGATION, deletes);
+    }
+
+    private void testDeletes(String baseStr, String rulesStr, String deletesStr) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(rulesStr);
+        Graph baseGraph = parse(baseStr);
+        Graph deletes = parse(deletesStr);
+
+        RulesEngine engine = ShaclRulesExec.create(engineType, baseGraph, ruleSet);
+        engine.eval();
+        RuleSetEvaluation incremental = engine.applyDeletes(deletes);
+
+        Graph baseGraph2 = parse(baseStr);
+        GraphUtil.deleteFrom(baseGraph2, deletes);
+        check(baseGraph2, ruleSet, incremental);
+    }
+
+    private void testInserts(String baseStr, String rulesStr, String insertsStr) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(rulesStr);
+        Graph baseGraph = parse(baseStr);
+        Graph inserts = parse(insertsStr);
+
+        RulesEngine engine = ShaclRulesExec.create(engineType, baseGraph, ruleSet);
+        engine.eval();
+        RuleSetEvaluation incremental = engine.applyInserts(inserts);
+
+        Graph baseGraph2 = parse(baseStr);
+        GraphUtil.addInto(baseGraph2, inserts);
+        check(baseGraph2, ruleSet, incremental);
+    }
+
+    private void check(Graph expectedBase, RuleSet ruleSet, RuleSetEvaluation incremental) {
+        RuleSetEvaluation expected = ShaclRulesExec.create(EngineType.SIMPLE, expectedBase, ruleSet).eval();
+        if ( ! IsoMatcher.isomorphic(expectedBase, incremental.baseGraph()) ) {
+            LibEvalTest.printFailedEvalTest(expectedBase, incremental);
+            fail("Base graphs do not match");
+        }
+        if ( ! IsoMatcher.isomorphic(expected.inferredTriples(), incremental.inferredTriples()) ) {
+            LibEvalTest.printFailedEvalTest(expected.inferredTriples(), incremental);
+            fail("Inferred triples do not match");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.seaborne.jena.srl.LibEvalTest.parse;
+import static org.seaborne.jena.srl.LibEvalTest.withPrefixes;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.exec.RuleSetEvaluation;
+import org.seaborne.jena.srl.tuples.Tuple;
+import org.seaborne.jena.srl.tuples.TupleStore;
+import org.seaborne.jena.srl.tuples.Tuples;
+
+/** Inferred triples sent to a stream as they are inferred. */
+public class TestStreamOutput {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    static String DATA = withPrefixes(PREFIXES, """
+            :a :q :b . :b :q :c . :c :q :d .
+            :b :blocked true .
+            """);
+
+    static String RULES = withPrefixes(PREFIXES, """
+            DATA { :d :q :e . :a :q :b }
+            RULE { ?x :reach ?y } WHERE { ?x :q ?y }
+            RULE { ?x :reach ?z } WHERE { ?x :reach ?y . ?y :q ?z }
+            RULE { ?x :open ?y } WHERE { ?x :reach ?y NOT { ?y :blocked true } }
+            """);
+
+    private static class Collector extends StreamRDFBase {
+        final List<Triple> triples = new ArrayList<>();
+        int starts = 0;
+        int finishes = 0;
+        @Override public void start() { starts++; }
+        @Override public void triple(Triple triple) { triples.add(triple); }
+        @Override public void finish() { finishes++; }
+    }
+
+    private static EngineType[] forwardEngines = {
+        EngineType.SIMPLE, EngineType.SIMPLE_SPARQL, EngineType.SIMPLE_SPARQL_INSERT, EngineType.SIMPLE_SPARQL_CONSTRUCT,
+        EngineType.SEMINAIVE, EngineType.JACOBI, EngineType.DATAFLOW, EngineType.SPARQL_SEMINAIVE,
+        EngineType.ENCODED, EngineType.GENERATED
+    };
+
+    @Test public void stream_sameAsInfer() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = parse(DATA);
+        for ( EngineType engineType : forwardEngines ) {
+            Set<Triple> expected = ShaclRulesExec.create(engineType, graph, ruleSet).infer().find().toSet();
+            Collector collector = new Collector();
+            RuleSetEvaluation e = ShaclRulesExec.create(engineType, graph, ruleSet).evalStream(collector, null, false);
+            assertNull(e, engineType.toString());
+            assertEquals(1, collector.starts, engineType.toString());
+            assertEquals(1, collector.finishes, engineType.toString());
+            // Each triple once.
+            assertEquals(collector.triples.size(), new HashSet<>(collector.triples).size(), engineType.toString());
+            assertEquals(expected, new HashSet<>(collector.triples), engineType.toString());
+        }
+    }
+
+    @Test public void stream_keep() {
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = parse(DATA);
+        for ( EngineType engineType : new EngineType[] {EngineType.SIMPLE, EngineType.SEMINAIVE, EngineType.ENCODED} ) {
+            Collector collector = new Collector();
+            RuleSetEvaluation e = ShaclRulesExec.create(engineType, graph, ruleSet).evalStream(collector, null, true);
+            assertNotNull(e, engineType.toString());
+            assertEquals(e.inferredTriples().find().toSet(), new HashSet<>(collector.triples), engineType.toString());
+        }
+    }
+
+    @Test public void stream_incremental() {
+        // A kept streamed evaluation is the state for incremental updates.
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = parse(DATA);
+        RulesEngine engine = ShaclRulesExec.create(EngineType.SEMINAIVE, graph, ruleSet);
+        RuleSetEvaluation e = engine.evalStream(new Collector(), null, true);
+        RuleSetEvaluation e2 = engine.applyInserts(parse(withPrefixes(PREFIXES, ":e :q :f .")));
+        assertSame(e.inferredTriples(), e2.inferredTriples());
+    }
+
+    @Test public void stream_baseTuples() {
+        // Base tuples are not inferred: not sent, whether streamed or sent after the evaluation.
+        RuleSet ruleSet = ShaclRulesParser.parseString(RULES);
+        Graph graph = parse(DATA);
+        TupleStore baseTuples = TupleStore.create();
+        baseTuples.add(Tuples.createTuple("1", "2"));
+        for ( EngineType engineType : new EngineType[] {EngineType.SEMINAIVE, EngineType.SIMPLE_SPARQL_INSERT} ) {
+            List<Tuple> streamed = new ArrayList<>();
+            RuleSetEvaluation e = ShaclRulesExec.create(engineType, graph, baseTuples, ruleSet)
+                    .evalStream(new Collector(), streamed::add, true);
+            assertTrue(streamed.isEmpty(), engineType.toString());
+            assertEquals(1, e.tupleStore().size(), engineType.toString());
+            assertEquals(0, e.inferredTuples().size(), engineType.toString());
+            List<Tuple> sent = new ArrayList<>();
+            e.sendTo(new Collector(), sent::add);
+            assertTrue(sent.isEmpty(), engineType.toString());
+        }
+    }
+}
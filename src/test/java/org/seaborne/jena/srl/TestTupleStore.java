@@ -21,7 +21,7 @@
 
 package org.seaborne.jena.srl;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.Iterator;
 import java.util.List;
@@ -32,6 +32,7 @@ import org.apache.jena.atlas.iterator.Iter;
 import org.seaborne.jena.srl.tuples.Tuple;
 import org.seaborne.jena.srl.tuples.TupleStore;
 import org.seaborne.jena.srl.tuples.Tuples;
+import org.seaborne.jena.srl.tuples.UnionTupleStore;
 
 public class TestTupleStore {
 
@@ -89,4 +90,26 @@ public class TestTupleStore {
 
         assertEquals(0, store.size());
     }
+
+    @Test public void tupleStore_union() {
+        Tuple tuple1 = Tuples.createTuple(":x", ":a");
+        Tuple tuple2 = Tuples.createTuple(":y", ":a");
+        Tuple tuple3 = Tuples.createTuple(":z", ":b");
+        TupleStore store1 = store();
+        store1.add(tuple1);
+        store1.add(tuple2);
+        TupleStore store2 = store();
+        store2.add(tuple2);
+        store2.add(tuple3);
+
+        TupleStore union = UnionTupleStore.create(List.of(store1, store2));
+        assertTrue(union.contains(tuple1));
+        assertTrue(union.contains(tuple3));
+        assertEquals(3, Iter.count(union.all()));
+        assertEquals(2, Iter.count(union.find(Tuples.createTuple("_", ":a"))));
+        assertThrows(RulesException.class, ()->union.add(Tuples.createTuple(":w")));
+        // A view.
+        store2.add(Tuples.createTuple(":w", ":b"));
+        assertEquals(2, Iter.count(union.find(Tuples.createTuple("_", ":b"))));
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.exec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.main.solver.SolverRX3;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.ShaclRulesParser;
+import org.seaborne.jena.srl.exec.RulesExecCxt.Operator;
+import org.seaborne.jena.srl.sys.SysJenaRules;
+
+/** The join operators that are chosen at run time, used directly. */
+public class TestEvalOperators {
+
+    static String PREFIXES = """
+            PREFIX :        <http://example/>
+            """;
+
+    private boolean planRuleBodies;
+    private int hashJoinThreshold;
+    private int hashJoinMemoryLimit;
+    private boolean worstCaseOptimalJoins;
+    private boolean batchRuleExecution;
+    private int batchSize;
+
+    @BeforeEach public void before() {
+        planRuleBodies = SysJenaRules.planRuleBodies;
+        hashJoinThreshold = SysJenaRules.hashJoinThreshold;
+        hashJoinMemoryLimit = SysJenaRules.hashJoinMemoryLimit;
+        worstCaseOptimalJoins = SysJenaRules.worstCaseOptimalJoins;
+        batchRuleExecution = SysJenaRules.batchRuleExecution;
+        batchSize = SysJenaRules.batchSize;
+    }
+
+    @AfterEach public void after() {
+        SysJenaRules.planRuleBodies = planRuleBodies;
+        SysJenaRules.hashJoinThreshold = hashJoinThreshold;
+        SysJenaRules.hashJoinMemoryLimit = hashJoinMemoryLimit;
+        SysJenaRules.worstCaseOptimalJoins = worstCaseOptimalJoins;
+        SysJenaRules.batchRuleExecution = batchRuleExecution;
+        SysJenaRules.batchSize = batchSize;
+    }
+
+    private static final Var x = Var.alloc("x");
+    private static final Var y = Var.alloc("y");
+    private static final Var z = Var.alloc("z");
+    // 15 matches.
+    private static final Triple patternYRZ = Triple.create(y, uri(":r"), z);
+
+    @Test public void hashJoin_buildOnPattern() {
+        // More incoming solutions than matches of the pattern.
+        SysJenaRules.hashJoinThreshold = 2;
+        SysJenaRules.hashJoinMemoryLimit = 1000;
+        hashJoin(40, Operator.HASH_JOIN_BUILD_ON_PATTERN);
+    }
+
+    @Test public void hashJoin_buildOnInput() {
+        // More matches of the pattern than the memory limit.
+        SysJenaRules.hashJoinThreshold = 2;
+        SysJenaRules.hashJoinMemoryLimit = 5;
+        hashJoin(30, Operator.HASH_JOIN_BUILD_ON_INPUT);
+    }
+
+    @Test public void hashJoin_nestedLoop() {
+        // Fewer incoming solutions than the threshold.
+        SysJenaRules.hashJoinThreshold = 100;
+        hashJoin(30, null);
+    }
+
+    @Test public void hashJoin_lookup() {
+        // No more incoming solutions than matches: each is looked up.
+        SysJenaRules.hashJoinThreshold = 2;
+        SysJenaRules.hashJoinMemoryLimit = 1000;
+        hashJoin(10, null);
+    }
+
+    /** Join and check the hash join used: {@code operator} is null for a nested loop join. */
+    private static void hashJoin(int inputSize, Operator operator) {
+        Graph graph = joinData();
+        RulesExecCxt rCxt = RulesExecCxt.create();
+        Function<Iterator<Binding>, Iterator<Binding>> nestedLoop = nestedLoop(graph, patternYRZ);
+        List<Binding> expected = Iter.toList(nestedLoop.apply(input(inputSize).iterator()));
+        List<Binding> actual = Iter.toList(HashJoin.join(input(inputSize).iterator(), graph, patternYRZ, rCxt, null, nestedLoop));
+        // Each ?y has 3 matches.
+        assertEquals(3*inputSize, expected.size());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(Set.copyOf(expected), Set.copyOf(actual));
+        assertHashJoin(rCxt, operator);
+    }
+
+    @Test public void hashJoin_engine_buildOnPattern() {
+        // 20 solutions of the first pattern, 15 matches of the second.
+        SysJenaRules.hashJoinThreshold = 2;
+        SysJenaRules.hashJoinMemoryLimit = 1000;
+        hashJoinEngine(Operator.HASH_JOIN_BUILD_ON_PATTERN);
+    }
+
+    @Test public void hashJoin_engine_buildOnInput() {
+        SysJenaRules.hashJoinThreshold = 2;
+        SysJenaRules.hashJoinMemoryLimit = 5;
+        hashJoinEngine(Operator.HASH_JOIN_BUILD_ON_INPUT);
+    }
+
+    private static void hashJoinEngine(Operator operator) {
+        // Evaluate in the written order.
+        SysJenaRules.planRuleBodies = false;
+        RuleSet ruleSet = ShaclRulesParser.parseString(PREFIXES+"RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z }");
+        for ( EngineType engineType : new EngineType[] {EngineType.SIMPLE, EngineType.SEMINAIVE} ) {
+            AbstractRulesEngineFwdSimple engine = (AbstractRulesEngineFwdSimple)ShaclRulesExec.create(engineType, joinData(), ruleSet);
+            assertEquals(60, engine.infer().size(), engineType.toString());
+            assertHashJoin(engine.rCxt, operator);
+        }
+    }
+
+    private static void assertHashJoin(RulesExecCxt rCxt, Operator operator) {
+        for ( Operator op : new Operator[] {Operator.HASH_JOIN_BUILD_ON_PATTERN, Operator.HASH_JOIN_BUILD_ON_INPUT} )
+            assertEquals(op == operator, rCxt.getOperatorCount(op) > 0, op.toString());
+    }
+
+    @Test public void batch_boundary() {
+        SysJenaRules.worstCaseOptimalJoins = false;
+        SysJenaRules.batchRuleExecution = true;
+        SysJenaRules.batchSize = 1024;
+        String rules = "RULE { ?x :qr ?z } WHERE { ?x :q ?y . ?y :r ?z }";
+        // 60 solutions: no block is full.
+        Set<Triple> expected = infer(rules, joinData(), Operator.BATCH_BLOCK, false);
+        SysJenaRules.batchSize = 7;
+        Set<Triple> actual = infer(rules, joinData(), Operator.BATCH_BLOCK, true);
+        assertEquals(expected, actual);
+    }
+
+    @Test public void triejoin_chosen() {
+        SysJenaRules.worstCaseOptimalJoins = true;
+        SysJenaRules.batchRuleExecution = false;
+        String rules = "RULE { ?a :triangle ?b } WHERE { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }";
+        Set<Triple> actual = infer(rules, triangleData(), Operator.TRIEJOIN, true);
+        SysJenaRules.worstCaseOptimalJoins = false;
+        Set<Triple> expected = infer(rules, triangleData(), Operator.TRIEJOIN, false);
+        assertEquals(expected, actual);
+    }
+
+    @Test public void triejoin_notChosen() {
+        // Not cyclic.
+        SysJenaRules.worstCaseOptimalJoins = true;
+        infer("RULE { ?a :path ?c } WHERE { ?a :knows ?b . ?b :knows ?c }", triangleData(), Operator.TRIEJOIN, false);
+    }
+
+    /** Infer with the encoded engine and check whether the operator was used. */
+    private static Set<Triple> infer(String rulesStr, Graph graph, Operator operator, boolean used) {
+        RuleSet ruleSet = ShaclRulesParser.parseString(PREFIXES+rulesStr);
+        RulesExecCxt rCxt = RulesExecCxt.create();
+        Set<Triple> inferred = new RulesEngineFwdEncoded(graph, ruleSet, rCxt).infer().find().toSet();
+        assertFalse(inferred.isEmpty(), "Nothing inferred");
+        assertEquals(used, rCxt.getOperatorCount(operator) > 0, operator.toString());
+        return inferred;
+    }
+
+    private static Function<Iterator<Binding>, Iterator<Binding>> nestedLoop(Graph graph, Triple pattern) {
+        return input -> Iter.flatMap(input, binding ->
+            Iter.iter(graph.find()).map(triple -> SolverRX3.matchTriple(binding, triple, pattern)).removeNulls());
+    }
+
+    /** Solutions binding ?x and ?y. */
+    private static List<Binding> input(int size) {
+        List<Binding> input = new ArrayList<>(size);
+        for ( int i = 0 ; i < size ; i++ )
+            input.add(BindingFactory.binding(x, uri(":x"+i), y, uri(":y"+(i%5))));
+        return input;
+    }
+
+    /** 20 :q triples, 15 :r triples; each ?y has 3 matches for :r. */
+    private static Graph joinData() {
+        StringBuilder sb = new StringBuilder(PREFIXES);
+        for ( int i = 0 ; i < 20 ; i++ )
+            sb.append(String.format(":x%d :q :y%d .\n", i, i%5));
+        for ( int i = 0 ; i < 15 ; i++ )
+            sb.append(String.format(":y%d :r :z%d .\n", i%5, i));
+        return RDFParser.fromString(sb.toString(), Lang.TURTLE).toGraph();
+    }
+
+    private static Graph triangleData() {
+        StringBuilder sb = new StringBuilder(PREFIXES);
+        for ( int i = 0 ; i < 12 ; i++ ) {
+            sb.append(String.format(":n%d :knows :n%d .\n", i, (i+1)%12));
+            sb.append(String.format(":n%d :knows :n%d .\n", i, (i+4)%12));
+        }
+        return RDFParser.fromString(sb.toString(), Lang.TURTLE).toGraph();
+    }
+
+    private static Node uri(String prefixedName) {
+        return NodeFactory.createURI("http://example/"+prefixedName.substring(1));
+    }
+}
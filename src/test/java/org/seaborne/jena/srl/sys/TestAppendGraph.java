@@ -22,6 +22,7 @@
 package org.seaborne.jena.srl.sys;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -107,5 +108,34 @@ public class TestAppendGraph {
             assertFalse(graph.isEmpty());
         });
     }
-}
 
+    @Test public void disjoint_1() {
+        Triple t1 = SSE.parseTriple("(:s :p 1)");
+        Triple t2 = SSE.parseTriple("(:s :p 2)");
+        G.execTxn(base, ()->{
+            base.add(t1);
+            AppendGraph graph = buffered;
+            assertTrue(graph.isDisjoint());
+            // Already in the base graph: not added.
+            assertFalse(graph.addNew(t1));
+            assertTrue(graph.addNew(t2));
+            assertEquals(1, graph.getAdded().size());
+            assertEquals(2, graph.size());
+            assertEquals(2, graph.find().toList().size());
+        });
+    }
+
+    @Test public void disjoint_2() {
+        Triple t1 = SSE.parseTriple("(:s :p 1)");
+        G.execTxn(base, ()->{
+            base.add(t1);
+            // Not checking the base graph: may have duplicates.
+            AppendGraph graph = AppendGraph.create(base, false);
+            assertFalse(graph.isDisjoint());
+            graph.add(t1);
+            assertEquals(1, graph.getAdded().size());
+            assertEquals(1, graph.size());
+            assertEquals(1, graph.find().toList().size());
+        });
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.sys;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.jena.graph.*;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.ShaclRulesParser;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.jena.SpillGraph;
+
+public class TestSpillGraph {
+
+    @TempDir Path dir;
+
+    @Test public void spill_find() {
+        SpillGraph graph = SpillGraph.create(7, dir);
+        Graph expected = GraphFactory.createGraphMem();
+        fill(graph, expected);
+        assertTrue(graph.runCount() > 0);
+        assertEquals(expected.size(), graph.size());
+        Node[] terms = { null, node("s1"), node("p2"), node("o3"), node("unknown") };
+        for ( Node s : terms ) {
+            for ( Node p : terms ) {
+                for ( Node o : terms ) {
+                    Triple pattern = Triple.createMatch(s, p, o);
+                    assertEquals(expected.find(pattern).toSet(), graph.find(pattern).toSet(), pattern.toString());
+                }
+            }
+        }
+        expected.find().forEachRemaining(t -> assertTrue(graph.contains(t), t.toString()));
+    }
+
+    @Test public void spill_merge() {
+        // Enough runs to merge.
+        SpillGraph graph = SpillGraph.create(2, dir);
+        Graph expected = GraphFactory.createGraphMem();
+        fill(graph, expected);
+        assertTrue(graph.runCount() <= 9);
+        assertEquals(expected.find().toSet(), graph.find().toSet());
+    }
+
+    @Test public void spill_noDuplicates() {
+        SpillGraph graph = SpillGraph.create(3, dir);
+        Graph expected = GraphFactory.createGraphMem();
+        fill(graph, expected);
+        fill(graph, expected);
+        assertEquals(expected.size(), graph.size());
+        assertEquals(expected.size(), graph.find().toList().size());
+    }
+
+    @Test public void spill_delete() {
+        SpillGraph graph = SpillGraph.create(5, dir);
+        Graph expected = GraphFactory.createGraphMem();
+        fill(graph, expected);
+        Triple t = Triple.create(node("s1"), node("p1"), node("o1"));
+        assertTrue(graph.contains(t));
+        graph.delete(t);
+        expected.delete(t);
+        assertFalse(graph.contains(t));
+        assertEquals(expected.size(), graph.size());
+        assertEquals(expected.find().toSet(), graph.find().toSet());
+        graph.add(t);
+        assertTrue(graph.contains(t));
+    }
+
+    @Test public void spill_clear() {
+        SpillGraph graph = SpillGraph.create(5, dir);
+        fill(graph, GraphFactory.createGraphMem());
+        graph.clear();
+        assertTrue(graph.isEmpty());
+        assertEquals(0, graph.runCount());
+    }
+
+    @Test public void spill_close() throws IOException {
+        SpillGraph graph = SpillGraph.create(2, dir);
+        fill(graph, GraphFactory.createGraphMem());
+        assertTrue(graph.runCount() > 0);
+        // Three files for each run; merged runs have been deleted.
+        assertEquals(3*graph.runCount(), fileCount());
+        graph.close();
+        assertEquals(0, fileCount());
+    }
+
+    private long fileCount() throws IOException {
+        try ( Stream<Path> files = Files.list(dir) ) {
+            return files.count();
+        }
+    }
+
+    @Test public void spill_eval() {
+        String rules = """
+                PREFIX : <http://example/>
+                RULE { ?x :reach ?y } WHERE { ?x :q ?y }
+                RULE { ?x :reach ?z } WHERE { ?x :reach ?y . ?y :q ?z }
+                """;
+        RuleSet ruleSet = ShaclRulesParser.parseString(rules);
+        Graph data = GraphFactory.createGraphMem();
+        for ( int i = 0 ; i < 30 ; i++ )
+            data.add(Triple.create(node("n"+i), NodeFactory.createURI("http://example/q"), node("n"+(i+1))));
+        Graph expected = ShaclRulesExec.create(EngineType.SEMINAIVE, data, ruleSet).infer();
+        long x = SysJenaRules.spillThreshold;
+        String d = SysJenaRules.spillDirectory;
+        try {
+            SysJenaRules.spillThreshold = 10;
+            SysJenaRules.spillDirectory = dir.toString();
+            for ( EngineType engineType : new EngineType[] {EngineType.SIMPLE, EngineType.SEMINAIVE, EngineType.JACOBI} ) {
+                Graph inferred = ShaclRulesExec.create(engineType, data, ruleSet).infer();
+                assertEquals(expected.find().toSet(), inferred.find().toSet(), engineType.toString());
+            }
+        } finally {
+            SysJenaRules.spillThreshold = x;
+            SysJenaRules.spillDirectory = d;
+        }
+    }
+
+    private static void fill(Graph graph, Graph expected) {
+        for ( int i = 0 ; i < 4 ; i++ ) {
+            for ( int j = 0 ; j < 4 ; j++ ) {
+                for ( int k = 0 ; k < 4 ; k++ ) {
+                    Triple t = Triple.create(node("s"+i), node("p"+j), node("o"+((i+k)%5)));
+                    graph.add(t);
+                    expected.add(t);
+                }
+            }
+        }
+    }
+
+    private static Node node(String localName) {
+        return NodeFactory.createURI("http://example/"+localName);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ *   SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.seaborne.jena.srl.sys;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.seaborne.jena.srl.RuleSet;
+import org.seaborne.jena.srl.ShaclRulesExec;
+import org.seaborne.jena.srl.ShaclRulesParser;
+import org.seaborne.jena.srl.exec.EngineType;
+import org.seaborne.jena.srl.jena.AppendGraph;
+import org.seaborne.jena.srl.jena.TripleBloomFilter;
+
+public class TestTripleBloomFilter {
+
+    @Test public void filter_noFalseNegatives() {
+        TripleBloomFilter filter = TripleBloomFilter.create(1000, 10);
+        for ( int i = 0 ; i < 1000 ; i++ )
+            filter.add(triple(i));
+        for ( int i = 0 ; i < 1000 ; i++ )
+            assertTrue(filter.mightContain(triple(i)));
+        assertEquals(1000, filter.count());
+    }
+
+    @Test public void filter_falsePositiveRate() {
+        TripleBloomFilter filter = TripleBloomFilter.create(1000, 10);
+        for ( int i = 0 ; i < 1000 ; i++ )
+            filter.add(triple(i));
+        int fp = 0;
+        for ( int i = 1000 ; i < 11000 ; i++ ) {
+            if ( filter.mightContain(triple(i)) )
+                fp++;
+        }
+        // Expected about 1%.
+        assertTrue(fp < 500, "False positives: "+fp);
+        assertTrue(filter.expectedFalsePositiveRate() < 0.05);
+    }
+
+    @Test public void appendGraph_filter() {
+        Graph base = GraphFactory.createGraphMem();
+        for ( int i = 0 ; i < 100 ; i++ )
+            base.add(triple(i));
+        AppendGraph graph = AppendGraph.createWithFilter(base, 10);
+        assertNotNull(graph.getMembershipFilter());
+        // In the base graph.
+        assertFalse(graph.addNew(triple(5)));
+        assertTrue(graph.contains(triple(5)));
+        // New; then added.
+        assertFalse(graph.contains(triple(500)));
+        assertTrue(graph.addNew(triple(500)));
+        assertFalse(graph.addNew(triple(500)));
+        assertTrue(graph.contains(triple(500)));
+        // Grows beyond the initial capacity.
+        for ( int i = 1000 ; i < 2000 ; i++ )
+            assertTrue(graph.addNew(triple(i)));
+        for ( int i = 0 ; i < 2000 ; i++ )
+            assertEquals(i < 100 || i == 500 || i >= 1000, graph.contains(triple(i)), "triple "+i);
+        assertEquals(1001, graph.getAdded().size());
+        assertTrue(graph.getMembershipFilter().observedFalsePositiveRate() < 0.1);
+    }
+
+    @Test public void appendGraph_baseGraphAdded() {
+        Graph base = GraphFactory.createGraphMem();
+        AppendGraph graph = AppendGraph.createWithFilter(base, 10);
+        base.add(triple(1));
+        graph.baseGraphAdded(triple(1));
+        assertTrue(graph.contains(triple(1)));
+        assertFalse(graph.addNew(triple(1)));
+        assertTrue(graph.getAdded().isEmpty());
+    }
+
+    @Test public void appendGraph_baseGraphChanged() {
+        Graph base = GraphFactory.createGraphMem();
+        for ( int i = 0 ; i < 10 ; i++ )
+            base.add(triple(i));
+        AppendGraph graph = AppendGraph.createWithFilter(base, 10);
+        graph.add(triple(20));
+        // Notified: the filter is kept on flush.
+        base.add(triple(21));
+        graph.baseGraphAdded(triple(21));
+        base.delete(triple(0));
+        graph.baseGraphDeleted(triple(0));
+        TripleBloomFilter filter = graph.getMembershipFilter();
+        graph.flush();
+        assertSame(filter, graph.getMembershipFilter());
+        assertTrue(base.contains(triple(20)));
+        assertTrue(graph.getAdded().isEmpty());
+
+        // Not notified: the filter is rebuilt on flush.
+        base.add(triple(22));
+        graph.flush();
+        assertNotSame(filter, graph.getMembershipFilter());
+        assertTrue(graph.getMembershipFilter().mightContain(triple(22)));
+        assertTrue(graph.contains(triple(22)));
+        assertFalse(graph.addNew(triple(22)));
+        assertTrue(graph.getAdded().isEmpty());
+    }
+
+    @Test public void eval_filter() {
+        String rules = """
+                PREFIX : <http://example/>
+                RULE { ?x :reach ?y } WHERE { ?x :q ?y }
+                RULE { ?x :reach ?z } WHERE { ?x :reach ?y . ?y :q ?z }
+                """;
+        RuleSet ruleSet = ShaclRulesParser.parseString(rules);
+        Graph data = GraphFactory.createGraphMem();
+        for ( int i = 0 ; i < 20 ; i++ )
+            data.add(Triple.create(node("n"+i), node("q"), node("n"+(i+1))));
+        Graph expected = ShaclRulesExec.create(EngineType.SEMINAIVE, data, ruleSet).infer();
+        boolean x = SysJenaRules.membershipFilter;
+        try {
+            SysJenaRules.membershipFilter = true;
+            for ( EngineType engineType : new EngineType[] {EngineType.SIMPLE, EngineType.SEMINAIVE, EngineType.JACOBI} ) {
+                Graph inferred = ShaclRulesExec.create(engineType, data, ruleSet).infer();
+                assertEquals(expected.find().toSet(), inferred.find().toSet(), engineType.toString());
+            }
+        } finally {
+            SysJenaRules.membershipFilter = x;
+        }
+    }
+
+    private static Triple triple(int i) {
+        return Triple.create(node("s"+(i%37)), node("p"+(i%5)), node("o"+i));
+    }
+
+    private static Node node(String localName) {
+        return NodeFactory.createURI("http://example/"+localName);
+    }
+}